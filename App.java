@@ -1,4 +1,11 @@
+import gui.EdtStallMonitor;
 import gui.MainFrame;
+import logic.DuplicatePolicy;
+import server.QueueServer;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.Locale;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
@@ -6,10 +13,35 @@ import javax.swing.SwingUtilities;
  * Main entry point for the application.
  * This class asks the user to select a mode (Bank or Hospital)
  * and then launches the main GUI.
+ * Started with "--server", it runs headless instead and offers the queue
+ * over HTTP (see QueueServer):
+ *     java App --server [--mode Bank|Hospital] [--port 8080] [--branches folder [--idle-minutes 30]]
+ *                       [--replicate-port 7070 | --standby host:7070] [--off-heap]
+ *                       [--duplicates allow|warn|reject|merge]
+ * With "--branches" it hosts one queue per branch or department, each saved
+ * in its own sub-folder (see QueueServer.startBranches).
+ * With "--replicate-port" a hot standby started with "--standby" keeps a copy
+ * of the queue and takes over if this server dies (see QueueServer.startStandby).
+ * With "--off-heap" the waiting tokens are kept outside the Java heap
+ * (see ds.OffHeapTokenQueue), for queues of millions.
+ * "--duplicates" decides what happens when an ID asks for a second token
+ * on the same day (see logic.DuplicatePolicy).
+ * The GUI started with "--edt-monitor" prints on exit how long the window
+ * was blocked (see gui.EdtStallMonitor).
  */
 public class App {
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+
+        // 0. Headless server mode: no dialogs, no GUI
+        if (args.length > 0 && args[0].equals("--server")) {
+            startServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--edt-monitor")) {
+            EdtStallMonitor monitor = new EdtStallMonitor();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(monitor.summary())));
+        }
         
         // 1. Create options for the mode selection dialog
         Object[] options = {"Bank", "Hospital"};
@@ -43,4 +75,52 @@ public class App {
             frame.setVisible(true);
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the "--mode", "--port", "--branches", "--idle-minutes", "--replicate-port",
+     * "--standby", "--off-heap" and "--duplicates" options and starts the headless server (or standby).
+     */
+    private static void startServer(String[] args) throws Exception {
+        String mode = "Bank";
+        int port = 8080;
+        File branches = null;
+        long idleMinutes = 30;
+        int replicationPort = -1;
+        String standbyOf = null;
+        boolean offHeap = false;
+        DuplicatePolicy duplicates = DuplicatePolicy.ALLOW;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--mode") && i + 1 < args.length) {
+                mode = args[++i].equalsIgnoreCase("Hospital") ? "Hospital" : "Bank";
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--branches") && i + 1 < args.length) {
+                branches = new File(args[++i]);
+            } else if (args[i].equals("--idle-minutes") && i + 1 < args.length) {
+                idleMinutes = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--replicate-port") && i + 1 < args.length) {
+                replicationPort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--standby") && i + 1 < args.length && args[i + 1].lastIndexOf(':') > 0) {
+                standbyOf = args[++i];
+            } else if (args[i].equals("--off-heap")) {
+                offHeap = true;
+            } else if (args[i].equals("--duplicates") && i + 1 < args.length) {
+                duplicates = DuplicatePolicy.valueOf(args[++i].toUpperCase(Locale.ROOT));
+            } else {
+                System.err.println("Usage: java App --server [--mode Bank|Hospital] [--port 8080]"
+                        + " [--branches folder [--idle-minutes 30]] [--replicate-port 7070 | --standby host:7070]"
+                        + " [--off-heap] [--duplicates allow|warn|reject|merge]");
+                return;
+            }
+        }
+        if (standbyOf != null) {
+            int colon = standbyOf.lastIndexOf(':');
+            QueueServer.startStandby(mode, port, new InetSocketAddress(standbyOf.substring(0, colon),
+                    Integer.parseInt(standbyOf.substring(colon + 1))));
+        } else if (branches != null) {
+            QueueServer.startBranches(mode, port, branches, idleMinutes).setDuplicatePolicy(duplicates);
+        } else {
+            QueueServer.startHeadless(mode, port, replicationPort, offHeap).setDuplicatePolicy(duplicates);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+/**
+ * Somewhere for a benchmark to put results it does not need, like JMH's
+ * Blackhole. If a result is never used, the JIT compiler may notice and
+ * skip the work that computed it, and the benchmark then measures nothing.
+ * Passing the result to consume keeps it "used" at almost no cost:
+ * - a number is compared with two volatile fields that never both equal it,
+ *   so the JIT must compute it, but the branch is never taken
+ * - an object is stored in a field once in a while (at random, with ever
+ *   rarer stores), so the JIT cannot prove it unused, without a memory
+ *   write on every call
+ * It is safe to call from several threads (a lost update does not matter).
+ */
+public final class Blackhole {
+
+    // Never equal to each other, so no value can match both
+    private static volatile long long1 = 1;
+    private static volatile long long2 = 2;
+    // A random number generator and the mask deciding when an object is kept
+    private static int tlr = (int) System.nanoTime();
+    private static int tlrMask = 1;
+    // The last object kept; only there so the JIT must keep the objects
+    private static Object kept;
+
+    private Blackhole() {
+        // Only static helpers, so no instances
+    }
+
+    /**
+     * Uses a number so the work computing it cannot be removed.
+     * @param value The result to consume.
+     */
+    public static void consume(long value) {
+        if (value == long1 & value == long2) {
+            // Never happens (long1 != long2), but the JIT cannot know that
+            long1 = value;
+        }
+    }
+
+    /**
+     * Uses a boolean so the work computing it cannot be removed.
+     * @param value The result to consume.
+     */
+    public static void consume(boolean value) {
+        consume(value ? 1L : 0L);
+    }
+
+    /**
+     * Uses an object so the work creating it cannot be removed.
+     * @param object The result to consume (may be null).
+     */
+    public static void consume(Object object) {
+        int random = tlr * 1664525 + 1013904223; // A linear congruential step
+        tlr = random;
+        if ((random & tlrMask) == 0) {
+            // Rarely taken, and rarer each time, so the store costs next to nothing
+            kept = object;
+            tlrMask = (tlrMask << 1) + 1;
+        }
+    }
+}
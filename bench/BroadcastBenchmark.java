@@ -0,0 +1,128 @@
+package bench;
+
+import ds.ConcurrentQueue;
+import logic.QueueManager;
+import model.BankCustomer;
+import model.Person;
+import server.EventBroadcaster;
+import server.QueueServer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that display boards cannot slow the queue down.
+ * It starts a QueueServer, connects many /api/events subscribers (a share of
+ * them "stuck": they never read, like a frozen screen), and measures issue +
+ * serve on the manager with the Harness, first with no subscribers and then
+ * with all of them connected. The two results should be close; the stuck
+ * screens only show up as coalesced events.
+ *
+ * Run from the project root after compiling:
+ *     java bench.BroadcastBenchmark [subscribers] [stuck percent]
+ * e.g. "java bench.BroadcastBenchmark 2000 10".
+ */
+public class BroadcastBenchmark {
+
+    private static final int OPERATIONS = 1_000;
+    private static final Person PERSON = new BankCustomer("Benchmark Customer", "5550100", "Deposit");
+
+    public static void main(String[] args) throws Exception {
+        int subscriberCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int stuckPercent = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        QueueManager manager = new QueueManager(new ConcurrentQueue<>());
+        QueueServer server = new QueueServer(manager, "Bank",
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        EventBroadcaster broadcaster = server.getBroadcaster();
+
+        Harness.printHeader();
+        measureIssueAndServe("issue+serve, no subscribers", 0, manager);
+
+        // Connect the subscribers; the readers are drained by one selector thread
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<>(subscriberCount);
+        int stuckCount = subscriberCount * stuckPercent / 100;
+        byte[] request = "GET /api/events HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < subscriberCount; i++) {
+            SocketChannel channel = SocketChannel.open(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            channel.write(ByteBuffer.wrap(request));
+            channel.configureBlocking(false);
+            if (i >= stuckCount) {
+                channel.register(selector, SelectionKey.OP_READ);
+            }
+            channels.add(channel);
+        }
+        AtomicLong bytesRead = new AtomicLong();
+        Thread reader = new Thread(() -> drain(selector, bytesRead), "bench-subscribers");
+        reader.setDaemon(true);
+        reader.start();
+        long waitUntil = System.currentTimeMillis() + 30_000;
+        while (broadcaster.getSubscriberCount() < subscriberCount && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+
+        measureIssueAndServe("issue+serve, " + broadcaster.getSubscriberCount()
+                + " subscribers (" + stuckCount + " stuck)", subscriberCount, manager);
+
+        System.out.printf("bytes delivered to reading subscribers: %,d   events coalesced: %,d%n",
+                bytesRead.get(), broadcaster.getCoalescedEventCount());
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        selector.close();
+        server.stop();
+    }
+
+    /**
+     * One operation = issue a token or serve one; each run issues and serves OPERATIONS tokens.
+     */
+    private static void measureIssueAndServe(String name, int size, QueueManager manager) throws Exception {
+        Harness.measure(name, size, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                manager.generateNewToken(PERSON);
+                manager.serveNextToken();
+            }
+            return 2L * OPERATIONS;
+        });
+    }
+
+    /**
+     * Reads and discards everything the reading subscribers receive.
+     */
+    private static void drain(Selector selector, AtomicLong bytesRead) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (selector.isOpen()) {
+                selector.select(100);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    buffer.clear();
+                    int read = channel.read(buffer);
+                    if (read < 0) {
+                        key.cancel();
+                    } else {
+                        bytesRead.addAndGet(read);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // The benchmark is over and the selector was closed
+        }
+    }
+}
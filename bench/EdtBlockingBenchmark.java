@@ -0,0 +1,156 @@
+package bench;
+
+import ds.LatencyHistogram;
+import gui.EdtStallMonitor;
+import logic.QueueManager;
+import model.BankCustomer;
+import persistence.PersistenceEngine;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingWorker;
+
+/**
+ * Measures how long the Swing Event Dispatch Thread (EDT) is blocked by
+ * saving, with a served history of growing size, using EdtStallMonitor.
+ * - "clicks": the EDT issues and serves tokens back to back, as the GUI
+ *   buttons do, while PersistenceEngine takes its periodic snapshots
+ *   (older versions took one every 1000 operations; now one is taken when
+ *   the journal reaches half the snapshot's size, so a long history may see
+ *   none). A click waits whenever a snapshot holds the queue paused.
+ * - "reset on EDT": startNewDay runs on the EDT, as "Reset Data" used to.
+ * - "reset in worker": startNewDay runs on a SwingWorker, as it does now.
+ * For each it reports the longest and 99th percentile EDT stall, the
+ * slowest click, and how long the whole phase took.
+ * The same file also runs against older PersistenceEngine versions, so
+ * the "clicks" rows can be compared before and after a change.
+ *
+ * Run from the project root after compiling (headless is fine):
+ *     java -Xmx3g -Djava.awt.headless=true bench.EdtBlockingBenchmark [maxHistory]
+ */
+public class EdtBlockingBenchmark {
+
+    private static final int CLICKS = 10_000;
+    private static final int WAITING = 100;
+
+    public static void main(String[] args) throws Exception {
+        int maxHistory = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        clicks(10_000); // Warm-up, not reported
+        System.out.printf("%-16s %12s %14s %14s %14s %10s%n",
+                "phase", "history", "EDT max ms", "EDT p99 ms", "click max ms", "total ms");
+        for (int history = 10_000; history <= maxHistory; history *= 10) {
+            report("clicks", history, clicks(history));
+            report("reset on EDT", history, reset(history, false));
+            report("reset in worker", history, reset(history, true));
+        }
+    }
+
+    /**
+     * Issues and serves CLICKS tokens on the EDT while snapshots are taken.
+     */
+    private static Result clicks(int history) throws Exception {
+        PersistenceEngine engine = new PersistenceEngine(prepare(history), "Bench");
+        QueueManager manager = engine.recover();
+        engine.awaitHistoryLoaded();
+        LatencyHistogram clickTimes = new LatencyHistogram();
+        EdtStallMonitor monitor = new EdtStallMonitor();
+        long start = System.nanoTime();
+        for (int i = 0; i < CLICKS; i++) {
+            int number = i;
+            EventQueue.invokeAndWait(() -> {
+                long clickStart = System.nanoTime();
+                try {
+                    manager.generateNewToken(person(history + WAITING + number));
+                    manager.serveNextToken();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                clickTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - clickStart));
+            });
+        }
+        long total = System.nanoTime() - start;
+        monitor.close();
+        engine.close();
+        return new Result(monitor.getDelays(), clickTimes.getMax(), total);
+    }
+
+    /**
+     * Starts a new day, either on the EDT or on a SwingWorker.
+     */
+    private static Result reset(int history, boolean inWorker) throws Exception {
+        PersistenceEngine engine = new PersistenceEngine(prepare(history), "Bench");
+        engine.recover();
+        engine.awaitHistoryLoaded();
+        EdtStallMonitor monitor = new EdtStallMonitor();
+        Thread.sleep(20); // Let the monitor record an idle EDT first
+        long start = System.nanoTime();
+        if (inWorker) {
+            SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws Exception {
+                    engine.startNewDay(new QueueManager());
+                    return null;
+                }
+            };
+            worker.execute();
+            worker.get();
+        } else {
+            EventQueue.invokeAndWait(() -> {
+                try {
+                    engine.startNewDay(new QueueManager());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        long total = System.nanoTime() - start;
+        Thread.sleep(20); // The probe that was out during the reset
+        monitor.close();
+        engine.close();
+        return new Result(monitor.getDelays(), 0, total);
+    }
+
+    /**
+     * Writes a snapshot with history served tokens and WAITING waiting ones into a new folder.
+     */
+    private static File prepare(int history) throws Exception {
+        File directory = Files.createTempDirectory("edt-bench").toFile();
+        QueueManager manager = new QueueManager();
+        for (int i = 0; i < history + WAITING; i++) {
+            manager.generateNewToken(person(i));
+        }
+        for (int i = 0; i < history; i++) {
+            manager.serveNextToken();
+        }
+        PersistenceEngine engine = new PersistenceEngine(directory, "Bench");
+        engine.recover();
+        engine.attach(manager);
+        engine.close();
+        System.gc();
+        return directory;
+    }
+
+    private static BankCustomer person(int i) {
+        return new BankCustomer("Customer " + i, String.valueOf(5_550_000 + i), "Deposit");
+    }
+
+    private static void report(String phase, int history, Result result) {
+        System.out.printf("%-16s %,12d %14.1f %14.1f %14.1f %10.0f%n", phase, history,
+                result.edtDelays.getMax() / 1000.0, result.edtDelays.getValueAtPercentile(99) / 1000.0,
+                result.slowestClickMicros / 1000.0, result.totalNanos / 1e6);
+    }
+
+    private static final class Result {
+        final LatencyHistogram edtDelays;
+        final long slowestClickMicros;
+        final long totalNanos;
+
+        Result(LatencyHistogram edtDelays, long slowestClickMicros, long totalNanos) {
+            this.edtDelays = edtDelays;
+            this.slowestClickMicros = slowestClickMicros;
+            this.totalNanos = totalNanos;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Tests hot-standby replication with two real JVMs on loopback:
+ * 1. starts "java App --server --replicate-port ..." (the primary) and
+ *    "java App --server --standby ..." (the standby), each in its own temporary folder
+ * 2. issues and serves tokens on the primary over HTTP
+ * 3. kills the primary (like a crash: no shutdown hooks run)
+ * 4. polls the standby's HTTP port until it answers, and checks that it
+ *    has the same waiting tokens as the primary had
+ * It reports the failover time: from the kill to the first answer of the promoted standby.
+ *
+ * Run from the project root after compiling:
+ *     java bench.FailoverTest [tokens]
+ * The child JVMs' output goes to primary.log and standby.log in their folders.
+ */
+public class FailoverTest {
+
+    public static void main(String[] args) throws Exception {
+        int tokens = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int primaryPort = freePort();
+        int replicationPort = freePort();
+        int standbyPort = freePort();
+
+        Process primary = startJvm("primary", "--server", "--port", String.valueOf(primaryPort),
+                "--replicate-port", String.valueOf(replicationPort));
+        Process standby = startJvm("standby", "--server", "--port", String.valueOf(standbyPort),
+                "--standby", "127.0.0.1:" + replicationPort);
+        try {
+            String primaryUrl = "http://127.0.0.1:" + primaryPort;
+            waitUntilUp(primaryUrl, 20_000);
+            Thread.sleep(500); // Let the standby connect and receive its snapshot
+
+            byte[] form = "name=Ann Lee&id=5550100&detail=Deposit".getBytes(StandardCharsets.UTF_8);
+            long start = System.nanoTime();
+            for (int i = 0; i < tokens; i++) {
+                request(new URL(primaryUrl + "/api/tokens"), form);
+            }
+            for (int i = 0; i < tokens / 2; i++) {
+                request(new URL(primaryUrl + "/api/serve?counter=1"), new byte[0]);
+            }
+            double writeMillis = (System.nanoTime() - start) / 1e6;
+            int expectedWaiting = waitingCount(primaryUrl);
+            System.out.printf("primary: %d issues + %d serves in %.0f ms, %d waiting%n",
+                    tokens, tokens / 2, writeMillis, expectedWaiting);
+
+            primary.destroyForcibly();
+            long killed = System.nanoTime();
+            String standbyUrl = "http://127.0.0.1:" + standbyPort;
+            waitUntilUp(standbyUrl, 10_000);
+            double failoverMillis = (System.nanoTime() - killed) / 1e6;
+            int standbyWaiting = waitingCount(standbyUrl);
+
+            System.out.printf("failover: standby answered %.0f ms after the primary was killed%n", failoverMillis);
+            System.out.printf("standby: %d waiting (%s)%n", standbyWaiting,
+                    standbyWaiting == expectedWaiting ? "matches the primary" : "MISMATCH");
+            // The served tokens must have been replicated too
+            int status = request(new URL(standbyUrl + "/api/history/" + (tokens / 2)), null);
+            System.out.println("standby history lookup of token " + (tokens / 2) + ": HTTP " + status);
+        } finally {
+            primary.destroyForcibly();
+            standby.destroyForcibly();
+        }
+    }
+
+    /**
+     * Starts "java App ..." with this JVM's class path, in a new temporary folder.
+     */
+    private static Process startJvm(String name, String... appArgs) throws IOException {
+        File directory = Files.createTempDirectory("failover-" + name).toFile();
+        String[] command = new String[appArgs.length + 4];
+        command[0] = new File(System.getProperty("java.home"), "bin/java").getPath();
+        command[1] = "-cp";
+        command[2] = new File(System.getProperty("java.class.path")).getAbsolutePath();
+        command[3] = "App";
+        System.arraycopy(appArgs, 0, command, 4, appArgs.length);
+        return new ProcessBuilder(command)
+                .directory(directory)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(directory, name + ".log"))
+                .start();
+    }
+
+    private static void waitUntilUp(String baseUrl, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            try {
+                if (request(new URL(baseUrl + "/api/next"), null) == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(baseUrl + " did not come up");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static int waitingCount(String baseUrl) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/api/next").openConnection();
+        String json;
+        try (InputStream in = connection.getInputStream()) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int start = json.indexOf("\"waiting\":") + "\"waiting\":".length();
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(json.substring(start, end));
+    }
+
+    /**
+     * Sends one request (a POST when there is a body) and reads the whole response.
+     * @return The HTTP status code.
+     */
+    private static int request(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(1000);
+        if (body != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try (InputStream response = in) {
+                response.readAllBytes();
+            }
+        }
+        return status;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
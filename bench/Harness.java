@@ -0,0 +1,279 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A small micro-benchmark harness in the style of JMH, with no dependencies,
+ * so it compiles with the same plain javac command as the rest of the project.
+ * (JMH itself needs a Maven or Gradle build for its annotation processor,
+ * and this project has none.) It has its own versions of the two JMH parts
+ * that matter most for honest numbers:
+ * - Blackhole.consume, for results a benchmark does not otherwise use
+ * - fork, to run a benchmark in a fresh JVM, so the JIT has not already
+ *   been shaped by the benchmarks that ran before it (e.g. a call site that
+ *   has seen three queue classes is compiled slower than one that saw one)
+ * For every benchmark it runs a few warm-up iterations (to let the JIT compile
+ * the hot code) and then several measured iterations. Like JMH, an iteration
+ * is time-based: the workload is repeated until the iteration has run for at
+ * least ITERATION_MILLIS, so tiny sizes are measured as accurately as big ones.
+ * It reports:
+ * - ns/op and ops/sec (average over the measured iterations)
+ * - B/op: bytes allocated per operation, read from the JVM's per-thread
+ *   allocation counters (the same numbers JMH's "gc" profiler uses)
+ * - the number of GCs and the GC time during the measured iterations
+ */
+public final class Harness {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_MILLIS = 200;
+    // Set in a forked JVM to the one benchmark it runs: "<name>@<size>"
+    private static final String FORK_PROPERTY = "bench.fork";
+
+    /**
+     * A single-threaded piece of work to measure.
+     */
+    public interface Workload {
+        /**
+         * Prepares one iteration (not timed), e.g. fills a queue.
+         */
+        default void setup() throws Exception {
+        }
+
+        /**
+         * Does the timed work.
+         * @return The number of operations performed.
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * A piece of work run by several threads at the same time.
+     */
+    public interface ContendedWorkload {
+        /**
+         * Prepares one iteration (not timed).
+         */
+        default void setup() throws Exception {
+        }
+
+        /**
+         * Does the timed work for one of the threads.
+         * @param threadIndex The thread's index (0 to threads - 1).
+         * @return The number of operations this thread performed.
+         */
+        long run(int threadIndex) throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Harness() {
+        // Only static helpers, so no instances
+    }
+
+    /**
+     * Prints the header line for the result table (not in a forked JVM,
+     * whose result line goes under the header its parent printed).
+     */
+    public static void printHeader() {
+        if (isForkedChild()) {
+            return;
+        }
+        System.out.printf("%-44s %9s %4s %14s %16s %12s %5s %8s%n",
+                "benchmark", "size", "thr", "ns/op", "ops/sec", "B/op", "gc", "gc ms");
+    }
+
+    /**
+     * Measures a single-threaded workload and prints one result line.
+     * @param name The benchmark's name.
+     * @param size The data size it was run with (for the report).
+     * @param workload The work to measure.
+     */
+    public static void measure(String name, int size, Workload workload) throws Exception {
+        long[] totals = new long[3]; // operations, nanoseconds, bytes
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(workload, new long[3]);
+        }
+        long[] gcBefore = gcTotals();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            iteration(workload, totals);
+        }
+        report(name, size, 1, totals[0], totals[1], totals[2], gcBefore);
+    }
+
+    /**
+     * Measures a workload run by several threads at once and prints one result line.
+     * The time is taken from when all threads are released until the last one finishes.
+     * @param name The benchmark's name.
+     * @param size The data size it was run with (for the report).
+     * @param threads The number of threads.
+     * @param workload The work to measure.
+     */
+    public static void measureContended(String name, int size, int threads, ContendedWorkload workload) throws Exception {
+        long[] totals = new long[3]; // operations, nanoseconds, bytes
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(threads, workload, new long[3]);
+        }
+        long[] gcBefore = gcTotals();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            iteration(threads, workload, totals);
+        }
+        report(name, size, threads, totals[0], totals[1], totals[2], gcBefore);
+    }
+
+    /**
+     * Runs one benchmark in a new JVM and waits for it. The new JVM gets the
+     * same JVM options (e.g. -Xmx) and class path, runs mainClass with args,
+     * and prints its result line to this JVM's output. The main class must
+     * check isForkedBenchmark and run only that one benchmark.
+     * @param mainClass The class whose main method runs the benchmarks.
+     * @param args The arguments for its main method.
+     * @param name The benchmark's name.
+     * @param size The data size to run it with.
+     */
+    public static void fork(Class<?> mainClass, String[] args, String name, int size)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-D" + FORK_PROPERTY + "=" + name + "@" + size);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (exitCode != 0) {
+            System.out.printf("%-44s %,9d  forked JVM failed with exit code %d%n", name, size, exitCode);
+        }
+    }
+
+    /**
+     * Checks whether this JVM was started by fork.
+     * @return true in a forked JVM.
+     */
+    public static boolean isForkedChild() {
+        return System.getProperty(FORK_PROPERTY) != null;
+    }
+
+    /**
+     * Checks whether this is the benchmark a forked JVM was started for.
+     * @param name The benchmark's name.
+     * @param size The data size.
+     * @return true if this JVM was forked to run exactly this benchmark and size.
+     */
+    public static boolean isForkedBenchmark(String name, int size) {
+        return (name + "@" + size).equals(System.getProperty(FORK_PROPERTY));
+    }
+
+    /**
+     * Runs one time-based iteration of a single-threaded workload and adds to the totals.
+     */
+    private static void iteration(Workload workload, long[] totals) throws Exception {
+        long iterationNanos = 0;
+        while (iterationNanos < ITERATION_MILLIS * 1_000_000) {
+            workload.setup();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            totals[0] += workload.run();
+            long elapsed = System.nanoTime() - start;
+            totals[2] += allocatedBytes() - allocatedBefore;
+            totals[1] += elapsed;
+            iterationNanos += elapsed;
+        }
+    }
+
+    /**
+     * Runs one time-based iteration of a contended workload and adds to the totals.
+     */
+    private static void iteration(int threads, ContendedWorkload workload, long[] totals) throws Exception {
+        long iterationNanos = 0;
+        while (iterationNanos < ITERATION_MILLIS * 1_000_000) {
+            workload.setup();
+            AtomicLong operations = new AtomicLong();
+            AtomicLong allocated = new AtomicLong();
+            long elapsed = runThreads(threads, workload, operations, allocated);
+            totals[0] += operations.get();
+            totals[1] += elapsed;
+            totals[2] += allocated.get();
+            iterationNanos += elapsed;
+        }
+    }
+
+    /**
+     * Bytes allocated so far by the current thread.
+     */
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Starts the threads together and waits for all of them.
+     * @return The elapsed time in nanoseconds.
+     */
+    private static long runThreads(int threads, ContendedWorkload workload,
+                                   AtomicLong operations, AtomicLong allocated) throws Exception {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            final int threadIndex = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    ready.countDown();
+                    go.await();
+                    long allocatedBefore = allocatedBytes();
+                    operations.addAndGet(workload.run(threadIndex));
+                    allocated.addAndGet(allocatedBytes() - allocatedBefore);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "bench-" + t);
+            worker.start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Returns {total GC count, total GC milliseconds} over all collectors.
+     */
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, millis};
+    }
+
+    private static void report(String name, int size, int threads, long operations, long nanos,
+                               long allocated, long[] gcBefore) {
+        long[] gcAfter = gcTotals();
+        double nsPerOp = (double) nanos / operations;
+        System.out.printf("%-44s %,9d %4d %,14.1f %,16.0f %,12.1f %5d %8d%n",
+                name, size, threads, nsPerOp, 1e9 / nsPerOp, (double) allocated / operations,
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+    }
+}
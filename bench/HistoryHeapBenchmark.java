@@ -0,0 +1,116 @@
+package bench;
+
+import ds.ColumnarTokenStore;
+import ds.MyLinkedList;
+import logic.HistoryStore;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+import model.Token;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Measures how much heap a day of served history takes:
+ * - the old layout, a MyLinkedList of Token objects (Node + Token + Person + Strings)
+ * - a ColumnarTokenStore on its own
+ * - a HistoryStore (the columnar store plus its number / person / time indexes)
+ * Each structure is filled with the same tokens, and the heap is measured
+ * after a full GC before and after filling it (the retained size).
+ * The people look like a real day: names are unique-ish, some people come
+ * back more than once, and there are only a few service types, each typed
+ * in again for every token (so each Token has its own String copy).
+ *
+ * Run from the project root after compiling:
+ *     java -Xmx2g bench.HistoryHeapBenchmark [tokens]
+ */
+public class HistoryHeapBenchmark {
+
+    private static final String[] FIRST_NAMES = {"Ann", "Ravi", "Maria", "John", "Aisha", "Chen",
+            "Fatima", "Lucas", "Priya", "Omar", "Sofia", "Kwame"};
+    private static final String[] LAST_NAMES = {"Lee", "Kumar", "Garcia", "Smith", "Khan", "Wang",
+            "Ali", "Silva", "Nair", "Haddad", "Rossi", "Mensah", "Pillai", "Brown"};
+    private static final String[] SERVICES = {"Deposit", "Withdrawal", "Loan Enquiry", "Account Opening",
+            "Fever", "Checkup", "Injury", "Dental"};
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-40s %12s %10s%n", "layout (" + String.format("%,d", count) + " served tokens)",
+                "bytes", "B/token");
+
+        long before = usedHeapAfterGc();
+        MyLinkedList<Token> linkedList = new MyLinkedList<>();
+        for (int i = 0; i < count; i++) {
+            linkedList.addLast(servedToken(i));
+        }
+        long linkedBytes = usedHeapAfterGc() - before;
+        report("MyLinkedList<Token> (old layout)", linkedBytes, count);
+        if (linkedList.getSize() != count) {
+            throw new IllegalStateException("Lost tokens");
+        }
+        linkedList = null;
+
+        before = usedHeapAfterGc();
+        ColumnarTokenStore store = new ColumnarTokenStore();
+        for (int i = 0; i < count; i++) {
+            store.add(servedToken(i));
+        }
+        long storeBytes = usedHeapAfterGc() - before;
+        report("ColumnarTokenStore", storeBytes, count);
+        if (store.size() != count) {
+            throw new IllegalStateException("Lost tokens");
+        }
+        store = null;
+
+        before = usedHeapAfterGc();
+        HistoryStore history = new HistoryStore();
+        for (int i = 0; i < count; i++) {
+            history.addLast(servedToken(i));
+        }
+        long historyBytes = usedHeapAfterGc() - before;
+        report("HistoryStore (columns + indexes)", historyBytes, count);
+        if (history.getSize() != count) {
+            throw new IllegalStateException("Lost tokens");
+        }
+
+        System.out.printf("HistoryStore uses %.1f%% of the old layout's heap (%.1fx smaller)%n",
+                100.0 * historyBytes / linkedBytes, (double) linkedBytes / historyBytes);
+    }
+
+    /**
+     * Builds the i-th served token of the simulated day, with freshly created Strings.
+     */
+    private static Token servedToken(int i) {
+        String name = FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / 7) % LAST_NAMES.length]
+                + " " + (char) ('A' + i % 26);
+        String id = String.valueOf(9_000_000 + (i * 7919L) % (i / 3 + 1)); // Some people come back
+        String service = new String(SERVICES[i % SERVICES.length].toCharArray()); // Typed in again each time
+        Person person = i % 2 == 0 ? new BankCustomer(name, id, service) : new Patient(name, id, service);
+        Token token = new Token(i + 1, person, 1_700_000_000_000L + i * 1_000L);
+        token.markServed(1 + i % 4, 1_700_000_000_000L + i * 1_000L + 60_000L);
+        return token;
+    }
+
+    private static void report(String name, long bytes, int count) {
+        System.out.printf("%-40s %,12d %10.1f%n", name, bytes, (double) bytes / count);
+    }
+
+    /**
+     * Runs the garbage collector until the used heap stops shrinking, then returns it.
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = MEMORY.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,169 @@
+package bench;
+
+import ds.ConcurrentQueue;
+import exceptions.EmptyQueueException;
+import logic.QueueListener;
+import logic.QueueManager;
+import model.BankCustomer;
+import model.Token;
+import persistence.PersistenceEngine;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the journal survives a crash while several desks issue and
+ * serve at the same time, as the headless server does:
+ * 1. ISSUERS threads issue tokens while SERVERS threads serve them (one at
+ *    a time, or a few together), on a ConcurrentQueue, with a
+ *    PersistenceEngine journaling every operation
+ * 2. a listener checks that no token's serve is reported before its issue
+ * 3. the folder is copied without closing the engine (like a crash: the
+ *    copy only has what was already written)
+ * 4. the copy is recovered, and its waiting tokens and history (with the
+ *    counters) are compared with the manager that was running
+ * Prints PASS or FAIL and exits with status 1 if anything differs.
+ *
+ * Run from the project root after compiling:
+ *     java bench.JournalReplayTest [tokens per issuer] [rounds]
+ */
+public class JournalReplayTest {
+
+    private static final int ISSUERS = 4;
+    private static final int SERVERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int tokensPerIssuer = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        boolean passed = true;
+        for (int round = 1; round <= rounds; round++) {
+            passed &= round(round, tokensPerIssuer);
+        }
+        System.out.println(passed ? "PASS" : "FAIL");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one issue/serve burst, "crashes" and recovers it.
+     */
+    private static boolean round(int round, int tokensPerIssuer) throws Exception {
+        File directory = Files.createTempDirectory("journal-replay").toFile();
+        PersistenceEngine engine = new PersistenceEngine(directory, "Bench");
+        QueueManager manager = engine.recover();
+        engine.awaitHistoryLoaded();
+        manager.replaceWaitingQueue(new ConcurrentQueue<>());
+        OrderChecker checker = new OrderChecker();
+        manager.addQueueListener(checker);
+
+        AtomicInteger issuersLeft = new AtomicInteger(ISSUERS);
+        Thread[] threads = new Thread[ISSUERS + SERVERS];
+        for (int i = 0; i < ISSUERS; i++) {
+            int issuer = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int n = 0; n < tokensPerIssuer; n++) {
+                        int id = issuer * tokensPerIssuer + n;
+                        manager.generateNewToken(new BankCustomer("Customer " + id,
+                                String.valueOf(5_550_000 + id), "Deposit"));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace(); // Print error to console; the comparison will fail
+                } finally {
+                    issuersLeft.decrementAndGet();
+                }
+            });
+        }
+        for (int i = 0; i < SERVERS; i++) {
+            int counterId = i + 1;
+            threads[ISSUERS + i] = new Thread(() -> {
+                int served = 0;
+                // Stop once every token is issued (some may be left waiting)
+                while (issuersLeft.get() > 0) {
+                    try {
+                        if (++served % 10 == 0) {
+                            manager.serveNextTokens(counterId, 3);
+                        } else {
+                            manager.serveNextToken(counterId);
+                        }
+                    } catch (EmptyQueueException e) {
+                        Thread.yield(); // Nobody waiting yet
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Let pending snapshots finish, then copy the files as a crash would leave them
+        Thread.sleep(500);
+        File copy = Files.createTempDirectory("journal-replay-copy").toFile();
+        for (File file : directory.listFiles()) {
+            Files.copy(file.toPath(), new File(copy, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        PersistenceEngine recovering = new PersistenceEngine(copy, "Bench");
+        QueueManager recovered = recovering.recover();
+        recovering.awaitHistoryLoaded();
+
+        TreeSet<Integer> waiting = waitingNumbers(manager);
+        TreeMap<Integer, Integer> history = servedCounters(manager);
+        boolean sameWaiting = waiting.equals(waitingNumbers(recovered));
+        boolean sameHistory = history.equals(servedCounters(recovered));
+        System.out.printf("round %d: %,d issued, %,d served, %,d waiting; serves reported before their issue: %d;"
+                        + " recovered waiting %s, history %s%n",
+                round, ISSUERS * tokensPerIssuer, history.size(), waiting.size(), checker.outOfOrder.get(),
+                sameWaiting ? "matches" : "DIFFERS", sameHistory ? "matches" : "DIFFERS");
+
+        recovering.close();
+        engine.close();
+        return sameWaiting && sameHistory && checker.outOfOrder.get() == 0;
+    }
+
+    private static TreeSet<Integer> waitingNumbers(QueueManager manager) {
+        TreeSet<Integer> numbers = new TreeSet<>();
+        for (Token token : manager.getWaitingList()) {
+            numbers.add(token.getTokenNumber());
+        }
+        return numbers;
+    }
+
+    private static TreeMap<Integer, Integer> servedCounters(QueueManager manager) {
+        TreeMap<Integer, Integer> counters = new TreeMap<>();
+        for (Token token : manager.getHistoryList()) {
+            counters.put(token.getTokenNumber(), token.getServedByCounter());
+        }
+        return counters;
+    }
+
+    /**
+     * Counts serves that a listener hears about before the token's issue.
+     */
+    private static final class OrderChecker implements QueueListener {
+        private final Set<Integer> issued = ConcurrentHashMap.newKeySet();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+
+        @Override
+        public void tokenIssued(Token token) {
+            Thread.yield(); // Like a slower listener: widens the gap after the enqueue
+            issued.add(token.getTokenNumber());
+        }
+
+        @Override
+        public void tokenServed(Token token) {
+            if (!issued.contains(token.getTokenNumber())) {
+                outOfOrder.incrementAndGet();
+            }
+        }
+    }
+}
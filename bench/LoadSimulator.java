@@ -0,0 +1,559 @@
+package bench;
+
+import ds.LatencyHistogram;
+import exceptions.DuplicateTokenException;
+import exceptions.EmptyQueueException;
+import exceptions.InvalidInputException;
+import logic.PersonFactory;
+import logic.QueueManager;
+import logic.StrictPriorityPolicy;
+import logic.TokenScheduler;
+import model.Person;
+import model.Token;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * A headless discrete-event load simulator and capacity planner.
+ * It drives a real QueueManager (generateNewToken and serveNextToken, with
+ * its metrics and wait estimator) from simulated time instead of clicks:
+ * customers arrive, N counters each take the next token when they are free,
+ * and every service takes a random time. Nothing sleeps: the simulation jumps
+ * from one event (an arrival or a counter finishing) to the next, so a day
+ * of traffic or millions of tokens take seconds. That also makes it a stress
+ * test for the queue, the history store and the metrics.
+ *
+ * Arrivals are either a Poisson stream (random gaps with the given mean rate)
+ * or recorded in a CSV file, one arrival per line:
+ *     seconds,name,id,detail[,serviceSeconds]
+ * where seconds counts from the start of the recording (lines in time order)
+ * and serviceSeconds, if given, replaces the random service time.
+ * Service times are exponential with the given mean.
+ *
+ * It reports the wait percentiles (overall and per service class), the
+ * throughput, the counter utilization and the peak queue length. With
+ * "--plan" it finds the fewest counters that keep the 90th percentile wait
+ * within a target, which answers "how many desks do we need at this load?".
+ *
+ * Run from the project root after compiling:
+ *     java bench.LoadSimulator [--mode Bank|Hospital] [--counters 4] [--service 120]
+ *                              [--rate 108 | --arrivals file.csv] [--tokens 1000000]
+ *                              [--classes Deposit,Withdrawal,Loan] [--policy fifo|priority]
+ *                              [--seed 1] [--plan 600]
+ * e.g. "java bench.LoadSimulator --counters 5 --rate 130" or, for the desks
+ * needed to keep 90% of waits under 10 minutes, "java bench.LoadSimulator --plan 600".
+ * The rate is in arrivals per hour (default: 90% of what the counters can serve);
+ * the service time and the plan target are in seconds.
+ */
+public class LoadSimulator {
+
+    // When simulated time starts (any fixed time works; fixed so runs repeat exactly)
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    // Counters tried by --plan before giving up
+    private static final int MAX_PLAN_COUNTERS = 256;
+
+    private static final String[] FIRST_NAMES = {"Ann", "Ravi", "Maria", "John", "Aisha", "Chen",
+            "Fatima", "Lucas", "Priya", "Omar", "Sofia", "Kwame"};
+    private static final String[] LAST_NAMES = {"Lee", "Kumar", "Garcia", "Smith", "Khan", "Wang",
+            "Ali", "Silva", "Nair", "Haddad", "Rossi", "Mensah", "Pillai", "Brown"};
+
+    /**
+     * One customer arriving.
+     */
+    static final class Arrival {
+        final long time; // Simulated epoch milliseconds
+        final Person person;
+        final long serviceMillis; // 0 = use a random service time
+
+        Arrival(long time, Person person, long serviceMillis) {
+            this.time = time;
+            this.person = person;
+            this.serviceMillis = serviceMillis;
+        }
+    }
+
+    /**
+     * A stream of arrivals, in time order.
+     */
+    interface ArrivalStream extends java.io.Closeable {
+        /**
+         * @return The next arrival, or null when there are no more.
+         */
+        Arrival next() throws IOException, InvalidInputException;
+
+        @Override
+        default void close() throws IOException {
+            // Nothing to release by default
+        }
+    }
+
+    /**
+     * Opens a new stream of the same arrivals, so --plan can replay them for every counter count.
+     */
+    interface ArrivalSource {
+        ArrivalStream open() throws IOException;
+    }
+
+    /**
+     * Customers arriving at random (a Poisson process): the gaps between
+     * them are exponential, so their mean is fixed but any one gap is not.
+     * Each one asks for a random service class from the list.
+     */
+    static final class PoissonArrivals implements ArrivalStream {
+        private final String appMode;
+        private final String[] classes;
+        private final double meanGapMillis;
+        private final long count;
+        private final Random random;
+        private double time = START_MILLIS;
+        private long produced;
+
+        PoissonArrivals(String appMode, String[] classes, double perHour, long count, long seed) {
+            this.appMode = appMode;
+            this.classes = classes;
+            this.meanGapMillis = 3_600_000.0 / perHour;
+            this.count = count;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public Arrival next() throws InvalidInputException {
+            if (produced == count) {
+                return null;
+            }
+            produced++;
+            time += exponential(random, meanGapMillis);
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            Person person = PersonFactory.createPerson(appMode, name,
+                    String.valueOf(5_550_000 + produced), classes[random.nextInt(classes.length)]);
+            return new Arrival((long) time, person, 0);
+        }
+    }
+
+    /**
+     * Arrivals read from a CSV file: seconds,name,id,detail[,serviceSeconds].
+     * A first line starting with "seconds" (a header) and blank lines are skipped.
+     * Every person is checked like a typed-in one (PersonFactory.createPerson).
+     */
+    static final class RecordedArrivals implements ArrivalStream {
+        private final String appMode;
+        private final BufferedReader reader;
+        private int lineNumber;
+        private long lastTime = START_MILLIS;
+
+        RecordedArrivals(String appMode, File file) throws IOException {
+            this.appMode = appMode;
+            this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Arrival next() throws IOException, InvalidInputException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.trim().toLowerCase().startsWith("seconds"))) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 4 && fields.length != 5) {
+                    throw new InvalidInputException("Line " + lineNumber
+                            + ": expected seconds,name,id,detail[,serviceSeconds].");
+                }
+                try {
+                    long time = START_MILLIS + Math.round(Double.parseDouble(fields[0].trim()) * 1000);
+                    if (time < lastTime) {
+                        throw new InvalidInputException("Line " + lineNumber + ": arrivals must be in time order.");
+                    }
+                    lastTime = time;
+                    long service = fields.length == 5 ? Math.round(Double.parseDouble(fields[4].trim()) * 1000) : 0;
+                    Person person = PersonFactory.createPerson(appMode,
+                            fields[1].trim(), fields[2].trim(), fields[3].trim());
+                    return new Arrival(time, person, Math.max(0, service));
+                } catch (NumberFormatException e) {
+                    throw new InvalidInputException("Line " + lineNumber + ": the times must be numbers of seconds.");
+                } catch (InvalidInputException e) {
+                    throw new InvalidInputException(e.getMessage().startsWith("Line ")
+                            ? e.getMessage() : "Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * A clock that only moves when the simulation moves it.
+     * Only the simulation thread sets it, and QueueManager reads it on that same thread.
+     */
+    static final class SimulatedClock extends Clock {
+        private long millis = START_MILLIS;
+
+        void set(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException("A simulated clock has no other zones");
+        }
+    }
+
+    /**
+     * What one run measured.
+     */
+    static final class Result {
+        int counters;
+        long issued;
+        long served;
+        long durationMillis; // Simulated, first arrival to last service finished
+        long busyMillis; // Total over all counters
+        long[] servedPerCounter;
+        int peakQueue;
+        LatencyHistogram waits;
+        final Map<String, LatencyHistogram> waitsByClass = new TreeMap<>();
+        long wallNanos;
+
+        double utilization() {
+            return durationMillis == 0 ? 0 : (double) busyMillis / ((double) durationMillis * counters);
+        }
+
+        double servedPerHour() {
+            return durationMillis == 0 ? 0 : served * 3_600_000.0 / durationMillis;
+        }
+
+        void print() {
+            System.out.printf("Counters            %d (utilization %.1f%%)%n", counters, utilization() * 100);
+            System.out.printf("Tokens              %,d issued, %,d served in %s simulated%n",
+                    issued, served, formatDuration(durationMillis));
+            System.out.printf("Throughput          %.1f served per hour%n", servedPerHour());
+            System.out.printf("Peak queue          %,d waiting%n", peakQueue);
+            System.out.printf("%-20s%10s%10s%10s%10s%10s%n", "Wait (mm:ss)", "tokens", "mean", "p50", "p90", "p99");
+            printWaits("all", waits);
+            for (Map.Entry<String, LatencyHistogram> entry : waitsByClass.entrySet()) {
+                printWaits("  " + entry.getKey(), entry.getValue());
+            }
+            StringBuilder perCounter = new StringBuilder("Served per counter ");
+            for (int i = 0; i < servedPerCounter.length && i < 16; i++) {
+                perCounter.append(' ').append(servedPerCounter[i]);
+            }
+            if (servedPerCounter.length > 16) {
+                perCounter.append(" ...");
+            }
+            System.out.println(perCounter);
+            System.out.printf("Simulated in %.2f s (%,.0f tokens per second)%n",
+                    wallNanos / 1e9, served / (wallNanos / 1e9));
+        }
+
+        private static void printWaits(String label, LatencyHistogram histogram) {
+            System.out.printf("%-20s%10d%10s%10s%10s%10s%n", label, histogram.getCount(),
+                    formatDuration((long) histogram.getMean()),
+                    formatDuration(histogram.getValueAtPercentile(50)),
+                    formatDuration(histogram.getValueAtPercentile(90)),
+                    formatDuration(histogram.getValueAtPercentile(99)));
+        }
+    }
+
+    private final String appMode;
+    private final double meanServiceMillis;
+    private final String[] classes;
+    private final boolean priority;
+    private final long seed;
+
+    /**
+     * Constructor for a simulator.
+     * @param appMode "Bank" (BankCustomer) or "Hospital" (Patient).
+     * @param meanServiceSeconds The mean service time.
+     * @param classes The service classes (most urgent first for the priority policy).
+     * @param priority True to serve with a TokenScheduler and StrictPriorityPolicy, false for FIFO.
+     * @param seed The seed for the random service times.
+     */
+    LoadSimulator(String appMode, double meanServiceSeconds, String[] classes, boolean priority, long seed) {
+        this.appMode = appMode;
+        this.meanServiceMillis = meanServiceSeconds * 1000;
+        this.classes = classes;
+        this.priority = priority;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs one simulation to the end: every arrival is issued a token and served.
+     * @param arrivals The arrivals.
+     * @param counters The number of counters serving.
+     * @return What was measured.
+     */
+    Result run(ArrivalStream arrivals, int counters) throws IOException, InvalidInputException, EmptyQueueException,
+            DuplicateTokenException {
+        long wallStart = System.nanoTime();
+        QueueManager manager;
+        if (priority) {
+            TokenScheduler scheduler = new TokenScheduler(new StrictPriorityPolicy());
+            for (int i = 0; i < classes.length; i++) {
+                scheduler.defineLane(classes[i], i, 1);
+            }
+            manager = new QueueManager(scheduler);
+        } else {
+            manager = new QueueManager();
+        }
+        SimulatedClock clock = new SimulatedClock();
+        manager.setClock(clock);
+        // Not the arrivals' seed, so service times do not follow the arrival gaps
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + 1);
+
+        Result result = new Result();
+        result.counters = counters;
+        result.servedPerCounter = new long[counters];
+        // Free counters (a stack) and busy counters (a binary min-heap by the time they finish)
+        int[] idle = new int[counters];
+        int idleCount = counters;
+        for (int i = 0; i < counters; i++) {
+            idle[i] = counters - 1 - i; // Counter 0 on top
+        }
+        int[] busy = new int[counters];
+        int busyCount = 0;
+        long[] freeAt = new long[counters];
+        // Recorded service times, by token number (only when the file gives them)
+        HashMap<Integer, Long> recordedService = new HashMap<>();
+
+        Arrival next = arrivals.next();
+        long firstArrival = next == null ? START_MILLIS : next.time;
+        long now = firstArrival;
+        int waiting = 0;
+        while (next != null || busyCount > 0) {
+            // The next event is whichever comes first; a counter that finishes at
+            // the same moment as an arrival frees up first
+            if (next != null && (busyCount == 0 || next.time < freeAt[busy[0]])) {
+                now = next.time;
+                clock.set(now);
+                Token token = manager.generateNewToken(next.person);
+                if (next.serviceMillis > 0) {
+                    recordedService.put(token.getTokenNumber(), next.serviceMillis);
+                }
+                waiting++;
+                next = arrivals.next();
+                if (idleCount == 0) {
+                    continue;
+                }
+                busyCount = startService(manager, idle[--idleCount], now, random, recordedService,
+                        result, freeAt, busy, busyCount);
+                waiting--;
+            } else {
+                int counter = busy[0];
+                now = freeAt[counter];
+                clock.set(now);
+                busyCount = removeFirst(busy, busyCount, freeAt);
+                if (waiting == 0) {
+                    idle[idleCount++] = counter;
+                    continue;
+                }
+                busyCount = startService(manager, counter, now, random, recordedService,
+                        result, freeAt, busy, busyCount);
+                waiting--;
+            }
+        }
+        arrivals.close();
+
+        result.issued = manager.getMetrics().getIssuedCount();
+        result.served = manager.getMetrics().getServedCount();
+        result.durationMillis = now - firstArrival;
+        result.waits = manager.getMetrics().getWaitTimes();
+        result.peakQueue = manager.getMetrics().getPeakQueueDepth();
+        result.wallNanos = System.nanoTime() - wallStart;
+        return result;
+    }
+
+    /**
+     * Serves the next token at a free counter and marks the counter busy until its service ends.
+     * @return The new number of busy counters.
+     */
+    private int startService(QueueManager manager, int counter, long now, Random random,
+                             HashMap<Integer, Long> recordedService, Result result,
+                             long[] freeAt, int[] busy, int busyCount) throws EmptyQueueException {
+        Token token = manager.serveNextToken(counter + 1);
+        Long recorded = recordedService.isEmpty() ? null : recordedService.remove(token.getTokenNumber());
+        long service = recorded != null ? recorded : Math.max(1, Math.round(exponential(random, meanServiceMillis)));
+        result.busyMillis += service;
+        result.servedPerCounter[counter]++;
+        result.waitsByClass.computeIfAbsent(token.getPerson().getServiceClass(), c -> new LatencyHistogram())
+                .record(token.getServedTime() - token.getIssueTime());
+        freeAt[counter] = now + service;
+        // Sift the counter up the heap
+        int i = busyCount;
+        while (i > 0 && freeAt[busy[(i - 1) / 2]] > freeAt[counter]) {
+            busy[i] = busy[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        busy[i] = counter;
+        return busyCount + 1;
+    }
+
+    /**
+     * Removes the counter that finishes first from the heap.
+     * @return The new number of busy counters.
+     */
+    private static int removeFirst(int[] busy, int busyCount, long[] freeAt) {
+        int last = busy[--busyCount];
+        // Sift the last counter down from the top
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= busyCount) {
+                break;
+            }
+            if (child + 1 < busyCount && freeAt[busy[child + 1]] < freeAt[busy[child]]) {
+                child++;
+            }
+            if (freeAt[busy[child]] >= freeAt[last]) {
+                break;
+            }
+            busy[i] = busy[child];
+            i = child;
+        }
+        busy[i] = last;
+        return busyCount;
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -Math.log(1 - random.nextDouble()) * mean;
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds >= 3600) {
+            return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        }
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = "Bank";
+        int counters = 4;
+        double serviceSeconds = 120;
+        double rate = 0;
+        long tokens = 1_000_000;
+        File arrivalsFile = null;
+        String classList = null;
+        boolean priority = false;
+        long seed = 1;
+        double planSeconds = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--mode") && i + 1 < args.length) {
+                mode = args[++i].equalsIgnoreCase("Hospital") ? "Hospital" : "Bank";
+            } else if (args[i].equals("--counters") && i + 1 < args.length) {
+                counters = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--service") && i + 1 < args.length) {
+                serviceSeconds = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--rate") && i + 1 < args.length) {
+                rate = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--tokens") && i + 1 < args.length) {
+                tokens = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--arrivals") && i + 1 < args.length) {
+                arrivalsFile = new File(args[++i]);
+            } else if (args[i].equals("--classes") && i + 1 < args.length) {
+                classList = args[++i];
+            } else if (args[i].equals("--policy") && i + 1 < args.length) {
+                priority = args[++i].equalsIgnoreCase("priority");
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--plan") && i + 1 < args.length) {
+                planSeconds = Double.parseDouble(args[++i]);
+            } else {
+                System.err.println("Usage: java bench.LoadSimulator [--mode Bank|Hospital] [--counters 4] [--service 120]"
+                        + " [--rate 108 | --arrivals file.csv] [--tokens 1000000] [--classes a,b,c]"
+                        + " [--policy fifo|priority] [--seed 1] [--plan 600]");
+                System.exit(2);
+            }
+        }
+        if (counters < 1 || serviceSeconds <= 0 || tokens < 1) {
+            System.err.println("--counters, --service and --tokens must be positive.");
+            System.exit(2);
+        }
+        String[] classes = classList != null ? classList.split(",")
+                : mode.equals("Bank") ? new String[] {"Deposit", "Withdrawal", "Loan Enquiry"}
+                : new String[] {"Emergency", "Fever", "Checkup"};
+        if (rate <= 0) {
+            rate = 0.9 * counters * 3600 / serviceSeconds;
+        }
+
+        final String appMode = mode;
+        final double perHour = rate;
+        final long count = tokens;
+        final long arrivalSeed = seed;
+        final File file = arrivalsFile;
+        ArrivalSource source = file != null
+                ? () -> new RecordedArrivals(appMode, file)
+                : () -> new PoissonArrivals(appMode, classes, perHour, count, arrivalSeed);
+        LoadSimulator simulator = new LoadSimulator(mode, serviceSeconds, classes, priority, seed);
+
+        System.out.println(file != null
+                ? "Recorded arrivals from " + file + ", mean service " + serviceSeconds + " s"
+                : String.format("%,d Poisson arrivals at %.1f per hour, mean service %.0f s (%s, %s)",
+                        tokens, rate, serviceSeconds, mode, priority ? "priority" : "FIFO"));
+        try {
+            if (planSeconds <= 0) {
+                simulator.run(source.open(), counters).print();
+                return;
+            }
+            plan(simulator, source, file != null ? 1 : (int) (perHour * serviceSeconds / 3600) + 1,
+                    (long) (planSeconds * 1000));
+        } catch (InvalidInputException e) {
+            System.err.println("Bad arrivals: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Tries more and more counters until the 90th percentile wait is within the target.
+     * @param fromCounters The first count to try (below the offered load the queue only grows).
+     */
+    private static void plan(LoadSimulator simulator, ArrivalSource source, int fromCounters, long targetMillis)
+            throws IOException, InvalidInputException, EmptyQueueException, DuplicateTokenException {
+        System.out.println("Fewest counters with a 90th percentile wait of at most " + formatDuration(targetMillis));
+        System.out.printf("%10s%14s%10s%10s%10s%14s%n", "counters", "utilization", "p50", "p90", "p99", "served/hour");
+        for (int counters = Math.max(1, fromCounters); counters <= MAX_PLAN_COUNTERS; counters++) {
+            Result result = simulator.run(source.open(), counters);
+            long p90 = result.waits.getValueAtPercentile(90);
+            System.out.printf("%10d%13.1f%%%10s%10s%10s%14.1f%n", counters, result.utilization() * 100,
+                    formatDuration(result.waits.getValueAtPercentile(50)), formatDuration(p90),
+                    formatDuration(result.waits.getValueAtPercentile(99)), result.servedPerHour());
+            if (p90 <= targetMillis) {
+                System.out.println("=> " + counters + " counters");
+                System.out.println();
+                result.print();
+                return;
+            }
+        }
+        System.out.println("=> more than " + MAX_PLAN_COUNTERS + " counters");
+    }
+}
@@ -0,0 +1,175 @@
+package bench;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import ds.ArrayQueue;
+import ds.OffHeapTokenQueue;
+import ds.QueueADT;
+import logic.QueueManager;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+import model.Token;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Compares garbage collection pauses with a very large waiting queue kept
+ * on the heap (ArrayQueue: a Token, a Person and three Strings per person)
+ * and off the heap (OffHeapTokenQueue: one 32-byte record per person).
+ * For each queue a QueueManager is filled with N waiting tokens, and then
+ * N more are issued and N served, so the queue stays N long while the
+ * counters work through it. Every GC pause in that time is recorded from
+ * the collectors' notifications (count, total, 99th percentile and longest),
+ * along with the heap left after a full GC and the direct memory used.
+ *
+ * Run from the project root after compiling (one queue per JVM gives the
+ * cleanest numbers, since the first run's old objects do not linger):
+ *     java -Xmx4g bench.OffHeapGcBenchmark [tokens] [onheap|offheap|both]
+ */
+public class OffHeapGcBenchmark {
+
+    private static final String[] FIRST_NAMES = {"Ann", "Ravi", "Maria", "John", "Aisha", "Chen",
+            "Fatima", "Lucas", "Priya", "Omar", "Sofia", "Kwame"};
+    private static final String[] LAST_NAMES = {"Lee", "Kumar", "Garcia", "Smith", "Khan", "Wang",
+            "Ali", "Silva", "Nair", "Haddad", "Rossi", "Mensah", "Pillai", "Brown"};
+    private static final String[] SERVICES = {"Deposit", "Withdrawal", "Loan Enquiry", "Account Opening",
+            "Fever", "Checkup", "Injury", "Dental"};
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        String which = args.length > 1 ? args[1] : "both";
+        System.out.printf("%-24s %9s %9s %10s %9s %9s %9s %9s %9s%n",
+                String.format("queue (%,d)", count), "fill ms", "churn ms", "GC pauses",
+                "total ms", "max ms", "p99 ms", "heap MB", "direct MB");
+        if (!which.equals("offheap")) {
+            run("ArrayQueue (on heap)", new ArrayQueue<>(), count);
+        }
+        if (!which.equals("onheap")) {
+            run("OffHeapTokenQueue", new OffHeapTokenQueue(), count);
+        }
+    }
+
+    private static void run(String name, QueueADT<Token> queue, int count) throws Exception {
+        QueueManager manager = new QueueManager(queue);
+        usedHeapAfterGc();
+        PauseRecorder pauses = new PauseRecorder();
+        pauses.start();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            manager.generateNewToken(person(i));
+        }
+        long fillNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            manager.generateNewToken(person(count + i));
+            manager.serveNextToken(1 + i % 4);
+        }
+        long churnNanos = System.nanoTime() - start;
+        pauses.stop();
+
+        if (manager.getWaitingList().size() != count) {
+            throw new IllegalStateException("Lost tokens");
+        }
+        long heap = usedHeapAfterGc();
+        long direct = queue instanceof OffHeapTokenQueue ? ((OffHeapTokenQueue) queue).getOffHeapBytes() : 0;
+        double[] sorted = pauses.sortedMillis();
+        System.out.printf("%-24s %,9d %,9d %10d %,9.0f %9.1f %9.1f %,9.0f %,9.0f%n", name,
+                fillNanos / 1_000_000, churnNanos / 1_000_000, sorted.length, sum(sorted),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1], percentile(sorted, 0.99),
+                heap / 1e6, direct / 1e6);
+    }
+
+    /**
+     * Builds the i-th person of the drive, with freshly created Strings.
+     */
+    private static Person person(int i) {
+        String name = FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / 7) % LAST_NAMES.length]
+                + " " + (char) ('A' + i % 26);
+        String id = String.valueOf(9_000_000 + i);
+        String service = new String(SERVICES[i % SERVICES.length].toCharArray()); // Typed in again each time
+        return i % 2 == 0 ? new BankCustomer(name, id, service) : new Patient(name, id, service);
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static double percentile(double[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    /**
+     * Runs the garbage collector until the used heap stops shrinking, then returns it.
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = MEMORY.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    /**
+     * Collects the duration of every collection the JVM reports while it is started.
+     */
+    private static final class PauseRecorder implements NotificationListener {
+
+        private double[] millis = new double[256];
+        private int count;
+
+        void start() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+
+        void stop() throws Exception {
+            Thread.sleep(100); // Notifications arrive on their own thread, a little later
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).removeNotificationListener(this);
+            }
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (count == millis.length) {
+                millis = Arrays.copyOf(millis, count * 2);
+            }
+            millis[count++] = info.getGcInfo().getDuration();
+        }
+
+        synchronized double[] sortedMillis() {
+            double[] sorted = Arrays.copyOf(millis, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package bench;
+
+import ds.ArrayQueue;
+import ds.ConcurrentQueue;
+import ds.HierarchicalTimerWheel;
+import ds.MyLinkedList;
+import ds.MyQueue;
+import ds.QueueADT;
+import exceptions.DuplicateTokenException;
+import exceptions.EmptyQueueException;
+import logic.DuplicatePolicy;
+import logic.QueueManager;
+import model.Patient;
+import model.Person;
+import persistence.PersistenceEngine;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks for the hot paths of the ds and logic packages:
+ * - enqueue/dequeue for every QueueADT implementation
+ * - MyLinkedList iteration
+ * - QueueManager.generateNewToken, serveNextToken and findTokenInHistory
+ * - the save/load round trip used by MainFrame.saveData/loadData
+ *   (a PersistenceEngine snapshot followed by a recovery)
+ * - issuing with the journal attached, one token at a time and in groups
+ * - ConcurrentQueue and QueueManager with several threads at once
+ * - HierarchicalTimerWheel against scanning every appointment once a second
+ * Each benchmark runs with queue sizes from 10 up to 1,000,000.
+ *
+ * Run from the project root after compiling:
+ *     java bench.QueueBenchmarks [--fork] [name filter] [max size]
+ * e.g. "java bench.QueueBenchmarks QueueManager 100000".
+ * With --fork every benchmark and size runs in a JVM of its own (see
+ * Harness.fork), which is slower but keeps one benchmark's JIT decisions
+ * from affecting the next; use it when comparing numbers across runs.
+ */
+public class QueueBenchmarks {
+
+    private static final int[] SIZES = {10, 1_000, 100_000, 1_000_000};
+    private static final int THREADS = 4;
+    // Every benchmark uses the same Person, so only the queue's own work is measured
+    private static final Person PERSON = new Patient("Benchmark Patient", "5550100", "Checkup");
+
+    private static String filter = "";
+    private static int maxSize = Integer.MAX_VALUE;
+    private static boolean fork;
+
+    public static void main(String[] args) throws Exception {
+        int first = 0;
+        if (args.length > 0 && args[0].equals("--fork")) {
+            fork = true;
+            first = 1;
+        }
+        if (args.length > first) {
+            filter = args[first];
+        }
+        if (args.length > first + 1) {
+            maxSize = Integer.parseInt(args[first + 1]);
+        }
+        Harness.printHeader();
+        for (int size : SIZES) {
+            if (size > maxSize) {
+                continue;
+            }
+            queueBenchmark("MyQueue.enqueue+dequeue", size, MyQueue::new);
+            queueBenchmark("ArrayQueue.enqueue+dequeue", size, ArrayQueue::new);
+            queueBenchmark("ConcurrentQueue.enqueue+dequeue", size, ConcurrentQueue::new);
+            linkedListIteration(size);
+            generateNewToken(size);
+            duplicateCheckedIssue(size);
+            serveNextToken(size);
+            findTokenInHistory(size);
+            searchTokens(size);
+            saveLoadRoundTrip(size);
+            journaledIssue("QueueManager.generateNewToken (journaled)", size, 1);
+            journaledIssue("QueueManager.generateNewTokens x100 (journaled)", size, 100);
+            contendedQueue(size);
+            contendedManager(size);
+            timerWheel(size);
+            timerScan(size);
+        }
+    }
+
+    /**
+     * Decides whether to run a benchmark here. With --fork it is run in a
+     * new JVM instead, and a forked JVM runs only the benchmark it was started for.
+     */
+    private static boolean selected(String name, int size) throws Exception {
+        if (!name.contains(filter)) {
+            return false;
+        }
+        if (Harness.isForkedChild()) {
+            return Harness.isForkedBenchmark(name, size);
+        }
+        if (fork) {
+            Harness.fork(QueueBenchmarks.class, new String[] {filter, String.valueOf(maxSize)}, name, size);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fills an empty queue with size items and then empties it again.
+     */
+    private static void queueBenchmark(String name, int size, Supplier<QueueADT<Integer>> factory) throws Exception {
+        if (!selected(name, size)) {
+            return;
+        }
+        Integer item = 42;
+        Harness.measure(name, size, new Harness.Workload() {
+            private QueueADT<Integer> queue;
+
+            @Override
+            public void setup() {
+                queue = factory.get();
+            }
+
+            @Override
+            public long run() throws EmptyQueueException {
+                for (int i = 0; i < size; i++) {
+                    queue.enqueue(item);
+                }
+                for (int i = 0; i < size; i++) {
+                    Blackhole.consume(queue.dequeue());
+                }
+                return 2L * size;
+            }
+        });
+    }
+
+    /**
+     * Walks a full MyLinkedList with its iterator (a for-each loop).
+     */
+    private static void linkedListIteration(int size) throws Exception {
+        String name = "MyLinkedList.iterate";
+        if (!selected(name, size)) {
+            return;
+        }
+        MyLinkedList<Integer> list = new MyLinkedList<>();
+        for (int i = 0; i < size; i++) {
+            list.addLast(i);
+        }
+        Harness.measure(name, size, () -> {
+            long sum = 0;
+            for (int value : list) {
+                sum += value;
+            }
+            Blackhole.consume(sum); // Use the result so the loop is not optimised away
+            return size;
+        });
+    }
+
+    private static void generateNewToken(int size) throws Exception {
+        String name = "QueueManager.generateNewToken";
+        if (!selected(name, size)) {
+            return;
+        }
+        Harness.measure(name, size, new Harness.Workload() {
+            private QueueManager manager;
+
+            @Override
+            public void setup() {
+                manager = new QueueManager();
+            }
+
+            @Override
+            public long run() throws DuplicateTokenException {
+                for (int i = 0; i < size; i++) {
+                    Blackhole.consume(manager.generateNewToken(PERSON));
+                }
+                return size;
+            }
+        });
+    }
+
+    /**
+     * Issues tokens with the duplicate check on (WARN): every person has an ID
+     * of their own except every tenth, who asks again with an earlier person's ID.
+     * Half of the earlier tokens have been served, so both the waiting map and
+     * the history index are asked.
+     */
+    private static void duplicateCheckedIssue(int size) throws Exception {
+        String name = "QueueManager.generateNewToken (duplicate check)";
+        if (!selected(name, size)) {
+            return;
+        }
+        Person[] people = new Person[size];
+        for (int i = 0; i < size; i++) {
+            String id = String.valueOf(5_000_000 + (i % 10 == 9 ? i / 2 : i));
+            people[i] = new Patient("Benchmark Patient", id, "Checkup");
+        }
+        Harness.measure(name, size, new Harness.Workload() {
+            private QueueManager manager;
+
+            @Override
+            public void setup() {
+                manager = new QueueManager();
+                manager.setDuplicatePolicy(DuplicatePolicy.WARN);
+            }
+
+            @Override
+            public long run() throws DuplicateTokenException, EmptyQueueException {
+                for (int i = 0; i < size; i++) {
+                    manager.generateNewToken(people[i]);
+                    if (i % 2 == 1) {
+                        manager.serveNextToken();
+                    }
+                }
+                return size;
+            }
+        });
+    }
+
+    private static void serveNextToken(int size) throws Exception {
+        String name = "QueueManager.serveNextToken";
+        if (!selected(name, size)) {
+            return;
+        }
+        Harness.measure(name, size, new Harness.Workload() {
+            private QueueManager manager;
+
+            @Override
+            public void setup() {
+                manager = managerWith(size, 0);
+            }
+
+            @Override
+            public long run() throws EmptyQueueException {
+                for (int i = 0; i < size; i++) {
+                    Blackhole.consume(manager.serveNextToken());
+                }
+                return size;
+            }
+        });
+    }
+
+    private static void findTokenInHistory(int size) throws Exception {
+        String name = "QueueManager.findTokenInHistory";
+        if (!selected(name, size)) {
+            return;
+        }
+        QueueManager manager = managerWith(size, size);
+        Harness.measure(name, size, () -> {
+            int found = 0;
+            int number = 1;
+            for (int i = 0; i < size; i++) {
+                // Jump around the history instead of reading it in order
+                number = (int) ((number * 1103515245L + 12345) % size) + 1;
+                if (manager.findTokenInHistory(number) != null) {
+                    found++;
+                }
+            }
+            if (found != size) {
+                throw new IllegalStateException("Lookups failed: " + (size - found));
+            }
+            return size;
+        });
+    }
+
+    /**
+     * One operation = one typeahead search (up to 20 results) in a manager
+     * with size tokens of different people, half waiting and half served.
+     * The queries are what staff type: a few letters of a name, the start
+     * of a phone number, or two words.
+     */
+    private static void searchTokens(int size) throws Exception {
+        String name = "QueueManager.searchTokens (typeahead)";
+        if (!selected(name, size)) {
+            return;
+        }
+        String[] firstNames = {"Ann", "Ravi", "Maria", "John", "Aisha", "Chen", "Fatima", "Lucas"};
+        String[] lastNames = {"Lee", "Kumar", "Garcia", "Smith", "Khan", "Wang", "Ali", "Silva", "Nair"};
+        String[] ailments = {"Checkup", "Fever", "Injury", "Dental"};
+        QueueManager manager = new QueueManager();
+        for (int i = 0; i < size; i++) {
+            manager.generateNewToken(new Patient(firstNames[i % firstNames.length] + " "
+                    + lastNames[(i / 8) % lastNames.length], String.valueOf(5_550_000 + i * 7L),
+                    ailments[(i / 72) % ailments.length]));
+        }
+        for (int i = 0; i < size / 2; i++) {
+            manager.serveNextToken();
+        }
+        String[] queries = {"a", "ra", "mar", "555", "5551", "lee", "kh", "ann lee", "chen fev", "si 555"};
+        manager.searchTokens("warm up", 1); // Builds the index, which is not part of a search
+        Harness.measure(name, size, () -> {
+            int results = 0;
+            for (int i = 0; i < 1000; i++) {
+                results += manager.searchTokens(queries[i % queries.length], 20).getSize();
+            }
+            if (results == 0) {
+                throw new IllegalStateException("Nothing found");
+            }
+            return 1000;
+        });
+    }
+
+    /**
+     * One operation = write a snapshot of a manager with size tokens
+     * (half waiting, half served) and recover it again.
+     */
+    private static void saveLoadRoundTrip(int size) throws Exception {
+        String name = "PersistenceEngine.checkpoint+recover";
+        if (!selected(name, size)) {
+            return;
+        }
+        Harness.measure(name, size, new Harness.Workload() {
+            private PersistenceEngine engine;
+            private PersistenceEngine reloaded;
+            private File directory;
+
+            @Override
+            public void setup() throws Exception {
+                // Close the previous iteration's engines outside the timed part
+                if (engine != null) {
+                    engine.close();
+                    reloaded.close();
+                }
+                directory = Files.createTempDirectory("queue-bench").toFile();
+                engine = new PersistenceEngine(directory, "Bench");
+                QueueManager manager = engine.recover();
+                for (int i = 0; i < size; i++) {
+                    manager.generateNewToken(PERSON);
+                }
+                for (int i = 0; i < size / 2; i++) {
+                    manager.serveNextToken();
+                }
+            }
+
+            @Override
+            public long run() throws Exception {
+                engine.checkpoint();
+                reloaded = new PersistenceEngine(directory, "Bench");
+                QueueManager manager = reloaded.recover();
+                reloaded.awaitHistoryLoaded(); // Include the background history load
+                if (manager.getWaitingList().size() != size - size / 2
+                        || manager.getHistoryList().getSize() != size / 2) {
+                    throw new IllegalStateException("Round trip lost tokens");
+                }
+                return 1;
+            }
+        });
+    }
+
+    /**
+     * Issues size tokens into a manager whose PersistenceEngine journals every
+     * operation: one at a time (groupSize 1, one record each) or in groups
+     * (generateNewTokens, one record per group).
+     */
+    private static void journaledIssue(String name, int size, int groupSize) throws Exception {
+        if (!selected(name, size)) {
+            return;
+        }
+        MyLinkedList<Person> group = new MyLinkedList<>();
+        for (int i = 0; i < Math.min(groupSize, size); i++) {
+            group.addLast(PERSON);
+        }
+        Harness.measure(name, size, new Harness.Workload() {
+            private PersistenceEngine engine;
+            private QueueManager manager;
+
+            @Override
+            public void setup() throws Exception {
+                if (engine != null) {
+                    engine.close();
+                }
+                engine = new PersistenceEngine(Files.createTempDirectory("queue-bench").toFile(), "Bench");
+                manager = engine.recover();
+            }
+
+            @Override
+            public long run() throws DuplicateTokenException {
+                if (groupSize == 1) {
+                    for (int i = 0; i < size; i++) {
+                        manager.generateNewToken(PERSON);
+                    }
+                } else {
+                    for (int i = 0; i < size; i += group.getSize()) {
+                        manager.generateNewTokens(group);
+                    }
+                }
+                return size;
+            }
+        });
+    }
+
+    /**
+     * Each thread enqueues and dequeues its share of size items on one shared ConcurrentQueue.
+     */
+    private static void contendedQueue(int size) throws Exception {
+        String name = "ConcurrentQueue.enqueue+dequeue (contended)";
+        if (!selected(name, size)) {
+            return;
+        }
+        Integer item = 42;
+        Harness.measureContended(name, size, THREADS, new Harness.ContendedWorkload() {
+            private ConcurrentQueue<Integer> queue;
+
+            @Override
+            public void setup() {
+                queue = new ConcurrentQueue<>();
+            }
+
+            @Override
+            public long run(int threadIndex) {
+                int share = Math.max(1, size / THREADS);
+                for (int i = 0; i < share; i++) {
+                    queue.enqueue(item);
+                    while (true) {
+                        try {
+                            Blackhole.consume(queue.dequeue());
+                            break;
+                        } catch (EmptyQueueException e) {
+                            Thread.onSpinWait(); // Another thread took "our" item; one more is on its way
+                        }
+                    }
+                }
+                return 2L * share;
+            }
+        });
+    }
+
+    /**
+     * Half of the threads issue tokens ("kiosks") and half serve them ("counters")
+     * on one QueueManager backed by a ConcurrentQueue.
+     */
+    private static void contendedManager(int size) throws Exception {
+        String name = "QueueManager issue+serve (contended)";
+        if (!selected(name, size)) {
+            return;
+        }
+        Harness.measureContended(name, size, THREADS, new Harness.ContendedWorkload() {
+            private QueueManager manager;
+
+            @Override
+            public void setup() {
+                manager = new QueueManager(new ConcurrentQueue<>());
+            }
+
+            @Override
+            public long run(int threadIndex) throws DuplicateTokenException {
+                int share = Math.max(1, size / (THREADS / 2));
+                boolean kiosk = threadIndex % 2 == 0;
+                for (int i = 0; i < share; i++) {
+                    if (kiosk) {
+                        manager.generateNewToken(PERSON);
+                    } else {
+                        while (true) {
+                            try {
+                                manager.serveNextToken(1 + threadIndex);
+                                break;
+                            } catch (EmptyQueueException e) {
+                                Thread.onSpinWait(); // Wait for a kiosk to issue one
+                            }
+                        }
+                    }
+                }
+                return share;
+            }
+        });
+    }
+
+    /**
+     * One operation = one appointment: size timers spread over an hour are
+     * scheduled, then the wheel is advanced once a second (like the
+     * AppointmentClock) until all have fired.
+     */
+    private static void timerWheel(int size) throws Exception {
+        String name = "HierarchicalTimerWheel.schedule+fire (1h)";
+        if (!selected(name, size)) {
+            return;
+        }
+        long start = 1_700_000_000_000L;
+        Harness.measure(name, size, () -> {
+            HierarchicalTimerWheel<Integer> wheel = new HierarchicalTimerWheel<>(1000, start);
+            Integer item = 42;
+            for (int i = 0; i < size; i++) {
+                wheel.schedule(item, start + appointmentOffset(i));
+            }
+            MyLinkedList<Integer> due = new MyLinkedList<>();
+            int fired = 0;
+            for (long now = start; now <= start + 3_600_000; now += 1000) {
+                fired += wheel.advanceTo(now, due);
+                due = new MyLinkedList<>();
+            }
+            if (fired != size) {
+                throw new IllegalStateException("Timers lost: " + (size - fired));
+            }
+            return size;
+        });
+    }
+
+    /**
+     * The same work without a timer wheel: every second, every appointment
+     * is checked. O(n) per second, so only run up to 100,000 appointments.
+     */
+    private static void timerScan(int size) throws Exception {
+        String name = "Appointment full scan each second (1h)";
+        if (size > 100_000 || !selected(name, size)) {
+            return;
+        }
+        long start = 1_700_000_000_000L;
+        Harness.measure(name, size, () -> {
+            long[] deadlines = new long[size];
+            boolean[] done = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                deadlines[i] = start + appointmentOffset(i);
+            }
+            int fired = 0;
+            for (long now = start; now <= start + 3_600_000; now += 1000) {
+                for (int i = 0; i < size; i++) {
+                    if (!done[i] && deadlines[i] <= now) {
+                        done[i] = true;
+                        fired++;
+                    }
+                }
+            }
+            if (fired != size) {
+                throw new IllegalStateException("Timers lost: " + (size - fired));
+            }
+            return size;
+        });
+    }
+
+    /**
+     * A pseudo-random time within the hour, in milliseconds, for appointment i.
+     */
+    private static long appointmentOffset(int i) {
+        return (i * 2654435761L) % 3_600_000;
+    }
+
+    /**
+     * Builds a manager with issued tokens, of which the first served are already in the history.
+     */
+    private static QueueManager managerWith(int issued, int served) {
+        QueueManager manager = new QueueManager();
+        try {
+            for (int i = 0; i < issued; i++) {
+                manager.generateNewToken(PERSON);
+            }
+            for (int i = 0; i < served; i++) {
+                manager.serveNextToken();
+            }
+        } catch (DuplicateTokenException | EmptyQueueException e) {
+            throw new IllegalStateException(e);
+        }
+        return manager;
+    }
+}
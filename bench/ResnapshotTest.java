@@ -0,0 +1,108 @@
+package bench;
+
+import ds.LatencyHistogram;
+import logic.HistoryStore;
+import logic.QueueManager;
+import model.BankCustomer;
+import persistence.ReplicationPrimary;
+import persistence.ReplicationStandby;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that a fresh snapshot sent to a connected standby, with a long
+ * served history, neither makes the standby take over nor holds up the queue:
+ * 1. a ReplicationPrimary and a ReplicationStandby are connected in this
+ *    JVM, over loopback, for a manager with a long served history
+ * 2. the history is "restored" (as after a background snapshot load), so
+ *    the primary sends the standby a whole new snapshot
+ * 3. meanwhile a desk keeps issuing and serving tokens, each timed
+ * 4. once the standby has caught up, its copy is compared with the primary
+ * Prints the slowest issue/serve and PASS, or FAIL (exit status 1) if the
+ * standby was promoted while the primary was alive, its copy differs, or a
+ * desk waited longer than MAX_PAUSE_MILLIS.
+ *
+ * Both sides share this JVM, so a long stop-the-world garbage collection
+ * freezes the primary while the standby's read timeout keeps running. With
+ * a heap that is too small, or larger than the machine's free memory, that
+ * can show up as a takeover that two separate processes would not see.
+ *
+ * Run from the project root after compiling:
+ *     java -Xmx3g bench.ResnapshotTest [history]
+ */
+public class ResnapshotTest {
+
+    // Longer than this for one issue or serve counts as the queue being held up
+    private static final long MAX_PAUSE_MILLIS = 200;
+    private static final int WAITING = 100;
+
+    public static void main(String[] args) throws Exception {
+        int history = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        QueueManager manager = new QueueManager();
+        for (int i = 0; i < history + WAITING; i++) {
+            manager.generateNewToken(person(i));
+        }
+        for (int i = 0; i < history; i++) {
+            manager.serveNextToken();
+        }
+
+        ReplicationPrimary primary = new ReplicationPrimary(manager, new InetSocketAddress("127.0.0.1", 0));
+        primary.start();
+        AtomicBoolean promoted = new AtomicBoolean();
+        ReplicationStandby standby = new ReplicationStandby(
+                new InetSocketAddress("127.0.0.1", primary.getPort()), copy -> promoted.set(true));
+        standby.start();
+        boolean passed = awaitCaughtUp(primary, standby, 60_000);
+        System.out.printf("standby connected with a history of %,d: %s%n", history, passed ? "ok" : "FAIL");
+
+        // Time every issue and serve while the standby is sent a new snapshot
+        LatencyHistogram pauses = new LatencyHistogram();
+        long start = System.nanoTime();
+        manager.restoreEarlierHistory(new HistoryStore());
+        int number = history + WAITING;
+        while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            long opStart = System.nanoTime();
+            manager.generateNewToken(person(number++));
+            manager.serveNextToken();
+            pauses.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - opStart));
+            Thread.sleep(1);
+        }
+        boolean caughtUp = awaitCaughtUp(primary, standby, 60_000);
+
+        long slowestMillis = pauses.getMax() / 1000;
+        QueueManager copy = standby.getManager();
+        boolean sameState = caughtUp && copy != null
+                && copy.getWaitingList().size() == manager.getWaitingList().size()
+                && copy.getHistoryList().getSize() == manager.getHistoryList().getSize();
+        System.out.printf("during the new snapshot: %,d issue/serve pairs, slowest %d ms, p99 %.1f ms%n",
+                pauses.getCount(), slowestMillis, pauses.getValueAtPercentile(99) / 1000.0);
+        System.out.printf("standby: %s, copy %s%n", promoted.get() ? "PROMOTED while the primary was alive" : "not promoted",
+                sameState ? "matches the primary" : "DIFFERS");
+        passed &= !promoted.get() && sameState && slowestMillis <= MAX_PAUSE_MILLIS;
+        standby.close();
+        primary.close();
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Waits until the standby has applied everything the primary has sent.
+     */
+    private static boolean awaitCaughtUp(ReplicationPrimary primary, ReplicationStandby standby, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (standby.getManager() == null || primary.getAcknowledgedSequence() < primary.getSequence()) {
+            if (standby.isPromoted() || System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static BankCustomer person(int i) {
+        return new BankCustomer("Customer " + i, String.valueOf(5_550_000 + i), "Deposit");
+    }
+}
@@ -0,0 +1,214 @@
+package bench;
+
+import ds.MyLinkedList;
+import ds.MyQueue;
+import logic.QueueManager;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+import model.Token;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * Checks that 1,000,000 tokens can be saved and loaded again within a fixed
+ * time and heap budget, for each class with a streamed serialized form:
+ * - a MyLinkedList of tokens
+ * - a MyQueue of tokens
+ * - a QueueManager with half of them waiting and half served
+ * Every save and load runs on a thread with a small stack (STACK_BYTES).
+ * The old default serialization recursed once per node and would overflow
+ * it long before 1M, so passing also shows that nothing recurses per element.
+ * After each load the tokens are compared with the originals, and the heap
+ * still in use is measured after a GC.
+ * Prints PASS or FAIL for each check and exits with status 1 if any failed.
+ *
+ * Run from the project root after compiling (the -Xmx is part of the budget):
+ *     java -Xmx1g bench.RoundTripTest [tokens]
+ */
+public class RoundTripTest {
+
+    // Budgets for 1,000,000 tokens; scaled linearly for other counts
+    private static final double SAVE_MILLIS_PER_MILLION = 5_000;
+    private static final double LOAD_MILLIS_PER_MILLION = 5_000;
+    private static final double HEAP_MB_PER_MILLION = 400;
+    private static final long STACK_BYTES = 256 * 1024;
+
+    private static boolean failed;
+
+    public static void main(String[] args) throws Exception {
+        int tokens = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-14s %10s %10s %12s %10s%n", "structure", "save ms", "load ms", "heap MB", "file MB");
+
+        checkList(tokens);
+        checkQueue(tokens);
+        checkManager(tokens);
+
+        System.out.println(failed ? "FAIL" : "PASS");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void checkList(int tokens) throws Exception {
+        MyLinkedList<Token> list = new MyLinkedList<>();
+        for (int i = 1; i <= tokens; i++) {
+            list.addLast(token(i));
+        }
+        check("MyLinkedList", tokens, list, loaded -> sameTokens(list, loaded));
+    }
+
+    private static void checkQueue(int tokens) throws Exception {
+        MyQueue<Token> queue = new MyQueue<>();
+        for (int i = 1; i <= tokens; i++) {
+            queue.enqueue(token(i));
+        }
+        check("MyQueue", tokens, queue, loaded -> sameTokens(queue, loaded));
+    }
+
+    private static void checkManager(int tokens) throws Exception {
+        QueueManager manager = new QueueManager();
+        for (int i = 1; i <= tokens; i++) {
+            manager.restoreIssuedToken(token(i));
+        }
+        for (int i = 1; i <= tokens / 2; i++) {
+            manager.restoreServedToken(i, 1, 0);
+        }
+        check("QueueManager", tokens, manager, loaded -> {
+            QueueManager copy = (QueueManager) loaded;
+            return sameTokens(manager.getWaitingList(), copy.getWaitingList())
+                    && sameTokens(manager.getHistoryList(), copy.getHistoryList())
+                    && copy.getNextTokenInQueue().equals(manager.getNextTokenInQueue());
+        });
+    }
+
+    /**
+     * Compares the loaded copy with the original.
+     */
+    private interface Comparison {
+        boolean matches(Object loaded) throws Exception;
+    }
+
+    /**
+     * Saves an object to a temporary file and loads it back on a small-stack
+     * thread, then checks the result, the times and the heap against the budgets.
+     */
+    private static void check(String name, int tokens, Object original, Comparison comparison) throws Exception {
+        File file = Files.createTempFile("round-trip", ".dat").toFile();
+        file.deleteOnExit();
+        double scale = tokens / 1_000_000.0;
+
+        long[] saveNanos = new long[1];
+        runWithSmallStack(() -> {
+            long start = System.nanoTime();
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+                out.writeObject(original);
+            }
+            saveNanos[0] = System.nanoTime() - start;
+        });
+
+        long heapBefore = usedHeapAfterGc();
+        Object[] loaded = new Object[1];
+        long[] loadNanos = new long[1];
+        runWithSmallStack(() -> {
+            long start = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+                loaded[0] = in.readObject();
+            }
+            loadNanos[0] = System.nanoTime() - start;
+        });
+        double heapMb = (usedHeapAfterGc() - heapBefore) / (1024.0 * 1024.0);
+
+        System.out.printf("%-14s %,10.0f %,10.0f %,12.1f %,10.1f%n", name, saveNanos[0] / 1e6,
+                loadNanos[0] / 1e6, heapMb, file.length() / (1024.0 * 1024.0));
+        expect(name + " matches the original", comparison.matches(loaded[0]));
+        expect(name + " save within " + (long) (SAVE_MILLIS_PER_MILLION * scale) + " ms",
+                saveNanos[0] / 1e6 <= SAVE_MILLIS_PER_MILLION * scale);
+        expect(name + " load within " + (long) (LOAD_MILLIS_PER_MILLION * scale) + " ms",
+                loadNanos[0] / 1e6 <= LOAD_MILLIS_PER_MILLION * scale);
+        expect(name + " loaded copy within " + (long) (HEAP_MB_PER_MILLION * scale) + " MB of heap",
+                heapMb <= HEAP_MB_PER_MILLION * scale);
+        file.delete();
+    }
+
+    /**
+     * Something to run on the small-stack thread.
+     */
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a step on a new thread with a STACK_BYTES stack and waits for it.
+     * A StackOverflowError or exception there fails the check.
+     */
+    private static void runWithSmallStack(Step step) throws InterruptedException {
+        Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                step.run();
+            } catch (Throwable e) {
+                error[0] = e;
+            }
+        }, "round-trip", STACK_BYTES);
+        thread.start();
+        thread.join();
+        if (error[0] != null) {
+            error[0].printStackTrace();
+            System.out.println("FAIL");
+            System.exit(1);
+        }
+    }
+
+    private static void expect(String check, boolean passed) {
+        if (!passed) {
+            failed = true;
+            System.out.println("  FAIL: " + check);
+        }
+    }
+
+    /**
+     * Checks that two collections hold tokens with the same number, issue time and ID, in the same order.
+     */
+    private static boolean sameTokens(Iterable<?> original, Object copy) {
+        Iterator<?> copied = ((Iterable<?>) copy).iterator();
+        for (Object item : original) {
+            if (!copied.hasNext()) {
+                return false;
+            }
+            Token token = (Token) item;
+            Token other = (Token) copied.next();
+            if (other.getTokenNumber() != token.getTokenNumber() || other.getIssueTime() != token.getIssueTime()
+                    || !other.getPerson().getId().equals(token.getPerson().getId())) {
+                return false;
+            }
+        }
+        return !copied.hasNext();
+    }
+
+    private static Token token(int number) {
+        Person person = number % 2 == 0
+                ? new BankCustomer("Customer " + number, String.valueOf(5_550_000 + number), "Deposit")
+                : new Patient("Patient " + number, String.valueOf(7_770_000 + number), "Fever");
+        return new Token(number, person, 1_700_000_000_000L + number);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
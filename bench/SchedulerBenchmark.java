@@ -0,0 +1,70 @@
+package bench;
+
+import exceptions.DuplicateTokenException;
+import exceptions.EmptyQueueException;
+import logic.AgingPolicy;
+import logic.QueueManager;
+import logic.SchedulingPolicy;
+import logic.StrictPriorityPolicy;
+import logic.TokenScheduler;
+import logic.WeightedRoundRobinPolicy;
+import model.BankCustomer;
+import model.Person;
+
+import java.util.function.Supplier;
+
+/**
+ * Throughput benchmark for the TokenScheduler policies.
+ * For each policy and lane count it keeps a backlog of waiting tokens and
+ * then repeatedly serves one token (rotating over several counters) and
+ * issues a new one. One operation is one serve plus one issue.
+ *
+ * Run from the project root after compiling:
+ *     java bench.SchedulerBenchmark
+ */
+public class SchedulerBenchmark {
+
+    private static final int BACKLOG = 10_000;
+    private static final int OPERATIONS = 100_000;
+    private static final int COUNTERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        Harness.printHeader();
+        for (int lanes : new int[] {1, 8, 64, 512}) {
+            measure("StrictPriorityPolicy", lanes, StrictPriorityPolicy::new);
+            measure("WeightedRoundRobinPolicy", lanes, WeightedRoundRobinPolicy::new);
+            measure("AgingPolicy", lanes, () -> new AgingPolicy(60_000));
+        }
+    }
+
+    private static void measure(String policyName, int laneCount, Supplier<SchedulingPolicy> policy) throws Exception {
+        Person[] people = new Person[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            people[i] = new BankCustomer("Customer", String.valueOf(i), "Service " + i);
+        }
+        Harness.measure(policyName + " (" + laneCount + " lanes)", BACKLOG, new Harness.Workload() {
+            private QueueManager manager;
+
+            @Override
+            public void setup() throws DuplicateTokenException {
+                TokenScheduler scheduler = new TokenScheduler(policy.get());
+                for (int i = 0; i < laneCount; i++) {
+                    scheduler.defineLane("Service " + i, i % 5, 1 + i % 3);
+                }
+                manager = new QueueManager(scheduler);
+                for (int i = 0; i < BACKLOG; i++) {
+                    manager.generateNewToken(people[i % laneCount]);
+                }
+            }
+
+            @Override
+            public long run() throws EmptyQueueException, DuplicateTokenException {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    manager.serveNextToken(1 + i % COUNTERS);
+                    manager.generateNewToken(people[i % laneCount]);
+                }
+                return OPERATIONS;
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package bench;
+
+import logic.QueueManager;
+import logic.StrictPriorityPolicy;
+import logic.TokenScheduler;
+import model.BankCustomer;
+import model.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Checks the serve order of StrictPriorityPolicy when lanes share a priority:
+ * they must be served in the order they were created, whatever order they
+ * became non-empty in, and still after the scheduler is saved and loaded.
+ * - lanes created: A (priority 1), B (0), C (1), D (0), E (0)
+ * - tokens issued, two per lane, to E, C, D, A, B (so the heap is filled
+ *   in a different order from creation)
+ * - expected serve order: B B D D E E A A C C
+ * Prints PASS or FAIL and exits with status 1 on a wrong order.
+ *
+ * Run from the project root after compiling:
+ *     java bench.SchedulerOrderTest
+ */
+public class SchedulerOrderTest {
+
+    private static final String EXPECTED = "BBDDEEAACC";
+
+    public static void main(String[] args) throws Exception {
+        boolean passed = check("new scheduler", filledManager())
+                & check("after save and load", saveAndLoad(filledManager()));
+        System.out.println(passed ? "PASS" : "FAIL");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static QueueManager filledManager() throws Exception {
+        TokenScheduler scheduler = new TokenScheduler(new StrictPriorityPolicy());
+        scheduler.defineLane("A", 1, 1);
+        scheduler.defineLane("B", 0, 1);
+        scheduler.defineLane("C", 1, 1);
+        scheduler.defineLane("D", 0, 1);
+        scheduler.defineLane("E", 0, 1);
+        QueueManager manager = new QueueManager(scheduler);
+        for (String lane : new String[] {"E", "C", "D", "A", "B"}) {
+            for (int i = 0; i < 2; i++) {
+                manager.generateNewToken(new BankCustomer("Customer " + lane + i, lane + i, lane));
+            }
+        }
+        return manager;
+    }
+
+    private static QueueManager saveAndLoad(QueueManager manager) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(manager);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (QueueManager) in.readObject();
+        }
+    }
+
+    /**
+     * Serves every token and compares the lanes they came from with EXPECTED.
+     */
+    private static boolean check(String name, QueueManager manager) throws Exception {
+        StringBuilder order = new StringBuilder();
+        while (!manager.getWaitingList().isEmpty()) {
+            Token token = manager.serveNextToken();
+            order.append(token.getPerson().getServiceClass());
+        }
+        boolean passed = order.toString().equals(EXPECTED);
+        System.out.printf("%-20s served %s (expected %s)%s%n", name, order, EXPECTED, passed ? "" : "  FAIL");
+        return passed;
+    }
+}
@@ -0,0 +1,217 @@
+package bench;
+
+import ds.ConcurrentQueue;
+import logic.QueueManager;
+import persistence.PersistenceEngine;
+import server.QueueServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A load test for the headless HTTP API (QueueServer).
+ * Several client threads send a mix of requests as fast as they can:
+ * issue a token, serve a token, and every few requests peek at the next
+ * one and look a served token up in the history. It reports requests per
+ * second and latency percentiles per request.
+ *
+ * By default it starts its own server on a free localhost port, with
+ * journaling to a temporary directory, so the numbers include persistence.
+ * Run from the project root after compiling:
+ *     java bench.ServerLoadTest [threads] [seconds] [base url]
+ * e.g. "java bench.ServerLoadTest 32 10" or, against a running
+ * "java App --server", "java bench.ServerLoadTest 32 10 http://localhost:8080".
+ */
+public class ServerLoadTest {
+
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        QueueServer server = null;
+        PersistenceEngine persistence = null;
+        String baseUrl;
+        if (args.length > 2) {
+            baseUrl = args[2];
+        } else {
+            File directory = Files.createTempDirectory("queue-load").toFile();
+            persistence = new PersistenceEngine(directory, "Load");
+            QueueManager manager = persistence.recover();
+            manager.replaceWaitingQueue(new ConcurrentQueue<>());
+            server = new QueueServer(manager, "Bank",
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            server.start();
+            baseUrl = "http://localhost:" + server.getPort();
+        }
+
+        try {
+            System.out.println("Warming up for " + WARMUP_SECONDS + " s against " + baseUrl);
+            run(baseUrl, threads, WARMUP_SECONDS);
+            System.out.println("Measuring " + threads + " client threads for " + seconds + " s");
+            Result result = run(baseUrl, threads, seconds);
+            result.print(seconds);
+        } finally {
+            if (server != null) {
+                server.stop();
+                persistence.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the client threads for the given time and collects their latencies.
+     */
+    private static Result run(String baseUrl, int threads, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        LatencyLog[] logs = new LatencyLog[threads];
+        int[] errors = new int[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            logs[index] = new LatencyLog();
+            Thread worker = new Thread(() -> {
+                try {
+                    errors[index] = clientLoop(baseUrl, 1 + index, deadline, logs[index]);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + t);
+            worker.start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        Result result = new Result();
+        for (int t = 0; t < threads; t++) {
+            result.add(logs[t], errors[t]);
+        }
+        return result;
+    }
+
+    /**
+     * One client: issue, serve, issue, serve, ... with a peek and a history
+     * lookup every eighth request.
+     * @return The number of unexpected responses (5xx, or 4xx other than "queue empty").
+     */
+    private static int clientLoop(String baseUrl, int counterId, long deadline, LatencyLog log) throws Exception {
+        URL issue = new URL(baseUrl + "/api/tokens");
+        byte[] issueForm = "name=Load+Test&id=5550100&detail=Deposit".getBytes(StandardCharsets.UTF_8);
+        URL serve = new URL(baseUrl + "/api/serve?counter=" + counterId);
+        URL next = new URL(baseUrl + "/api/next");
+        URL history = new URL(baseUrl + "/api/history/1");
+
+        int errors = 0;
+        long requestCount = 0;
+        while (System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            int status;
+            if (requestCount % 8 == 6) {
+                status = request(next, null);
+            } else if (requestCount % 8 == 7) {
+                status = request(history, null);
+            } else if (requestCount % 2 == 0) {
+                status = request(issue, issueForm);
+            } else {
+                status = request(serve, new byte[0]);
+            }
+            log.add(System.nanoTime() - start);
+            // 409 means the queue was empty and 404 that token 1 was not served yet; both are fine
+            if (status >= 500 || status >= 400 && status != 409 && status != 404) {
+                errors++;
+            }
+            requestCount++;
+        }
+        return errors;
+    }
+
+    /**
+     * Sends one request (a POST when there is a body) and reads the whole response,
+     * so HttpURLConnection can reuse the keep-alive connection for the next one.
+     * @return The HTTP status code.
+     */
+    private static int request(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (body != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try (InputStream response = in) {
+                response.readAllBytes();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * A growable array of latencies in nanoseconds, one per client thread.
+     */
+    private static final class LatencyLog {
+        private long[] values = new long[1 << 16];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+    }
+
+    /**
+     * All client threads' latencies merged together.
+     */
+    private static final class Result {
+        private long[] latencies = new long[0];
+        private int errors;
+
+        void add(LatencyLog log, int threadErrors) {
+            int old = latencies.length;
+            latencies = Arrays.copyOf(latencies, old + log.size);
+            System.arraycopy(log.values, 0, latencies, old, log.size);
+            errors += threadErrors;
+        }
+
+        void print(int seconds) {
+            Arrays.sort(latencies);
+            int count = latencies.length;
+            System.out.printf("requests: %,d   errors: %,d   throughput: %,.0f req/s%n",
+                    count, errors, (double) count / seconds);
+            System.out.printf("latency ms   p50 %.3f   p90 %.3f   p99 %.3f   p99.9 %.3f   max %.3f%n",
+                    percentile(0.50), percentile(0.90), percentile(0.99), percentile(0.999),
+                    count == 0 ? 0.0 : latencies[count - 1] / 1e6);
+        }
+
+        private double percentile(double fraction) {
+            if (latencies.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.min(latencies.length - 1, Math.ceil(fraction * latencies.length) - 1);
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package bench;
+
+import logic.QueueManager;
+import model.BankCustomer;
+import model.Person;
+import persistence.PersistenceEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Measures how long startup takes before the first token can be served,
+ * for snapshots with a growing served history:
+ * - "split": the current snapshot, where recover only reads the waiting
+ *   queue and the history is loaded on a background thread
+ * - "single-stream": the older snapshot format, where recover has to
+ *   deserialize the whole manager (history included) first
+ * Each run copies the prepared snapshot into a fresh folder, then times
+ * new PersistenceEngine + recover + serveNextToken ("first serve"), and
+ * the time until the history has finished loading ("history ready").
+ * The median of several runs is reported.
+ *
+ * Run from the project root after compiling:
+ *     java -Xmx2g bench.StartupBenchmark [maxHistory]
+ */
+public class StartupBenchmark {
+
+    private static final int WAITING = 100;
+    private static final int RUNS = 5;
+    private static final Person PERSON = new BankCustomer("Ann Lee", "5550100", "Deposit");
+
+    public static void main(String[] args) throws Exception {
+        int maxHistory = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        measure(10_000, false); // Warm-up, not reported
+        measure(10_000, true);
+        System.out.printf("%-14s %12s %16s %18s%n", "format", "history", "first serve ms", "history ready ms");
+        for (int history = 0; history <= maxHistory; history = history == 0 ? 1_000 : history * 10) {
+            report("split", history, measure(history, false));
+            report("single-stream", history, measure(history, true));
+        }
+    }
+
+    /**
+     * Builds a snapshot with the given history size and times RUNS recoveries.
+     * @return The median {first serve, history ready} times in nanoseconds.
+     */
+    private static long[] measure(int history, boolean singleStream) throws Exception {
+        File prepared = Files.createTempDirectory("startup-bench").toFile();
+        writeSnapshot(prepared, history, singleStream);
+        File snapshot = new File(prepared, "Bench_queue.dat");
+
+        long[] firstServe = new long[RUNS];
+        long[] historyReady = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            File directory = Files.createTempDirectory("startup-bench").toFile();
+            Files.copy(snapshot.toPath(), new File(directory, snapshot.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            System.gc();
+
+            long start = System.nanoTime();
+            PersistenceEngine engine = new PersistenceEngine(directory, "Bench");
+            QueueManager manager = engine.recover();
+            manager.serveNextToken();
+            firstServe[run] = System.nanoTime() - start;
+            engine.awaitHistoryLoaded();
+            historyReady[run] = System.nanoTime() - start;
+
+            if (manager.getHistoryList().getSize() != history + 1) {
+                throw new IllegalStateException("History not restored: " + manager.getHistoryList().getSize());
+            }
+            engine.close();
+        }
+        Arrays.sort(firstServe);
+        Arrays.sort(historyReady);
+        return new long[] {firstServe[RUNS / 2], historyReady[RUNS / 2]};
+    }
+
+    /**
+     * Writes "Bench_queue.dat" for a manager with history served tokens and WAITING waiting ones.
+     * The manager is built in memory, so its operations are not journaled one by one.
+     */
+    private static void writeSnapshot(File directory, int history, boolean singleStream) throws Exception {
+        QueueManager manager = new QueueManager();
+        for (int i = 0; i < history + WAITING; i++) {
+            manager.generateNewToken(PERSON);
+        }
+        for (int i = 0; i < history; i++) {
+            manager.serveNextToken();
+        }
+        if (singleStream) {
+            // The layout PersistenceEngine wrote before the split snapshot
+            try (ObjectOutputStream oos = new ObjectOutputStream(
+                    new FileOutputStream(new File(directory, "Bench_queue.dat")))) {
+                oos.writeInt(0x44515331); // "DQS1"
+                oos.writeLong(0);
+                oos.writeObject(manager);
+            }
+            return;
+        }
+        PersistenceEngine engine = new PersistenceEngine(directory, "Bench");
+        engine.recover();
+        engine.attach(manager);
+        engine.close();
+    }
+
+    private static void report(String format, int history, long[] nanos) throws IOException {
+        System.out.printf("%-14s %,12d %16.1f %18.1f%n", format, history, nanos[0] / 1e6, nanos[1] / 1e6);
+    }
+}
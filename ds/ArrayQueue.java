@@ -0,0 +1,188 @@
+package ds;
+
+import exceptions.EmptyQueueException;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A custom Queue implementation backed by a growable circular array
+ * (a "ring buffer"), built from scratch.
+ * Unlike MyQueue, enqueue does not allocate a node for every item:
+ * items sit next to each other in one array, which is better for the
+ * CPU cache and creates far less garbage.
+ * - head is the index of the front item
+ * - the back of the queue is at (head + size) % capacity, wrapping around
+ * The array doubles when full and halves when it is only a quarter used,
+ * so enqueue and dequeue are amortized O(1).
+ * It is *not* thread-safe; see ConcurrentQueue for that.
+ */
+public class ArrayQueue<T> implements QueueADT<T>, java.io.Serializable {
+
+    private static final long serialVersionUID = 8236657887807910256L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    // The array never shrinks below this capacity
+    private static final int MIN_CAPACITY = 16;
+
+    // The items, stored in a circle starting at head
+    private transient Object[] items;
+    // Index of the front item
+    private transient int head;
+    // Keeps track of the number of items in the queue
+    private transient int size;
+
+    /**
+     * Constructor for a new, empty queue.
+     */
+    public ArrayQueue() {
+        this.items = new Object[MIN_CAPACITY];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Adds an item to the back of the queue (FIFO).
+     * @param data The data to add.
+     */
+    @Override
+    public void enqueue(T data) {
+        if (size == items.length) {
+            resize(items.length * 2);
+        }
+        items[(head + size) % items.length] = data;
+        size++;
+    }
+
+    /**
+     * Removes and returns the item from the front of the queue (FIFO).
+     * @return The data from the front of the queue.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T dequeue() throws EmptyQueueException {
+        if (size == 0) {
+            throw new EmptyQueueException("Cannot dequeue from an empty queue.");
+        }
+        T data = (T) items[head];
+        items[head] = null; // Let the garbage collector reclaim the item later
+        head = (head + 1) % items.length;
+        size--;
+        if (items.length > MIN_CAPACITY && size <= items.length / 4) {
+            resize(items.length / 2);
+        }
+        return data;
+    }
+
+    /**
+     * "Peeks" at the item in the front of the queue without removing it.
+     * @return The data from the front of the queue.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek() throws EmptyQueueException {
+        if (size == 0) {
+            throw new EmptyQueueException("Cannot peek into an empty queue.");
+        }
+        return (T) items[head];
+    }
+
+    /**
+     * Checks if the queue is empty.
+     * @return true if the queue is empty, false otherwise.
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of items in the queue.
+     * @return The size of the queue.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Provides an iterator from the front of the queue to the back.
+     * @return An iterator for the queue.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int visited = 0;
+
+            @Override
+            public boolean hasNext() {
+                return visited < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (T) items[(head + visited++) % items.length];
+            }
+        };
+    }
+
+    /**
+     * Copies the items into a new array of the given capacity,
+     * "unrolling" the circle so the front item ends up at index 0.
+     */
+    private void resize(int capacity) {
+        Object[] bigger = new Object[capacity];
+        int firstPart = Math.min(size, items.length - head);
+        System.arraycopy(items, head, bigger, 0, firstPart);
+        System.arraycopy(items, 0, bigger, firstPart, size - firstPart);
+        items = bigger;
+        head = 0;
+    }
+
+    /**
+     * Custom serialization: writes a version, the size, and then every item in order.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeObject(items[(head + i) % items.length]);
+        }
+    }
+
+    /**
+     * Custom deserialization: rebuilds the array with room for every item.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported ArrayQueue format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative ArrayQueue size: " + count);
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < count) {
+            capacity *= 2;
+        }
+        items = new Object[capacity];
+        head = 0;
+        for (int i = 0; i < count; i++) {
+            items[i] = in.readObject();
+        }
+        size = count;
+    }
+}
@@ -0,0 +1,135 @@
+package ds;
+
+/**
+ * A Bloom filter for strings, built from scratch.
+ * It answers "have I seen this string?" with either "definitely not" or
+ * "probably": a string that was added is always found, and one that was
+ * not is wrongly found with a small, chosen probability (the false
+ * positive rate). It never stores the strings themselves, only an array
+ * of bits, about 10 bits per string for a 1% rate, so it is far smaller
+ * than a HashSet of the same strings.
+ * - add(value) sets k bits, O(k)
+ * - mightContain(value) checks the same k bits, O(k)
+ *
+ * It is a "blocked" Bloom filter: the bits are split into blocks of 512
+ * (one 64-byte CPU cache line), and all k bits of a string are in the same
+ * block. A plain Bloom filter spreads them over the whole array, so with a
+ * million strings every check costs k cache misses; here it costs one.
+ * Bits in a block fill a little less evenly, so it is given about 20% more
+ * bits than the textbook size for the same false positive rate.
+ * The block (the low bits) and the k positions in it (two 9-bit pieces of
+ * the high bits, h1 + i * h2) all come from one 64-bit hash.
+ *
+ * Strings cannot be removed, and the filter cannot grow; when more strings
+ * than expected are added the rate rises, so the owner should build a
+ * bigger one (see getCount and getCapacity).
+ * It is *not* thread-safe; the owner must synchronize.
+ */
+public class BloomFilter {
+
+    // 8 longs = 512 bits = one cache line
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int BITS_PER_BLOCK = LONGS_PER_BLOCK * 64;
+    // 2^26 blocks = 4 GB of bits, far more than a day of IDs needs
+    private static final int MAX_BLOCKS = 1 << 26;
+
+    private final long[] bits;
+    // The number of blocks minus one (a power of two, so a block is hash & blockMask)
+    private final int blockMask;
+    private final int hashCount;
+    private final int capacity;
+    private int count;
+
+    /**
+     * Constructor for an empty filter sized for the given number of strings.
+     * @param expectedCount How many strings will be added (at least 1).
+     * @param falsePositiveRate The chance of a wrong "probably", between 0 and 1 (e.g. 0.01).
+     */
+    public BloomFilter(int expectedCount, double falsePositiveRate) {
+        if (expectedCount < 1) {
+            throw new IllegalArgumentException("expectedCount must be 1 or more");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        // The textbook sizes: m = -n ln(p) / (ln 2)^2 bits and k = (m / n) ln 2 hashes
+        double ln2 = Math.log(2);
+        double idealBits = -expectedCount * Math.log(falsePositiveRate) / (ln2 * ln2);
+        double neededBlocks = idealBits * 1.2 / BITS_PER_BLOCK;
+        int blocks = 1;
+        while (blocks < neededBlocks && blocks < MAX_BLOCKS) {
+            blocks <<= 1;
+        }
+        this.bits = new long[blocks * LONGS_PER_BLOCK];
+        this.blockMask = blocks - 1;
+        this.hashCount = Math.max(1, Math.min(16, (int) Math.round(idealBits / expectedCount * ln2)));
+        this.capacity = expectedCount;
+    }
+
+    /**
+     * Adds a string. O(k).
+     * @param value The string (must not be null).
+     */
+    public void add(String value) {
+        long hash = hash64(value);
+        int base = ((int) hash & blockMask) * LONGS_PER_BLOCK;
+        int position = (int) (hash >>> 32);
+        int step = (int) (hash >>> 41) | 1; // Odd, so the k positions in the block are all different
+        for (int i = 0; i < hashCount; i++) {
+            int bit = position & (BITS_PER_BLOCK - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+            position += step;
+        }
+        count++;
+    }
+
+    /**
+     * Checks whether a string may have been added. O(k).
+     * @param value The string to look for.
+     * @return False if it was certainly never added; true if it probably was.
+     */
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        int base = ((int) hash & blockMask) * LONGS_PER_BLOCK;
+        int position = (int) (hash >>> 32);
+        int step = (int) (hash >>> 41) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = position & (BITS_PER_BLOCK - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            position += step;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of times add has been called.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of strings the filter was sized for.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * A 64-bit hash of the characters (FNV-1a, then a final mix so that
+     * similar strings such as phone numbers spread over all the bits).
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,251 @@
+package ds;
+
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+import model.Token;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A compact, append-only store for served tokens, laid out in "columns"
+ * (one primitive array per field) instead of one object graph per token.
+ * A served token kept as objects costs a Token, a Person and two or three
+ * Strings. Here the same token costs:
+ * - token number, counter and issue/serve times in IntColumn / LongColumn
+ * - the name as UTF-8 bytes in a StringColumn
+ * - the person ID and the service type / ailment as ids into a
+ *   StringDictionary, so a value that repeats (e.g. "Deposit") is stored once
+ * Token objects are only built when get is called, so a token that is
+ * stored but never looked at again never exists as an object.
+ * Positions count from 0 in the order tokens were added.
+ * It is *not* thread-safe; HistoryStore synchronizes around it.
+ */
+public class ColumnarTokenStore implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    // The person kind is kept in the lowest bit of the class column
+    private static final int KIND_BANK_CUSTOMER = 0;
+    private static final int KIND_PATIENT = 1;
+
+    private transient IntColumn numbers;
+    private transient LongColumn issueTimes;
+    private transient LongColumn servedTimes;
+    private transient IntColumn counters;
+    private transient StringColumn names;
+    // Person ID / phone, as an id into personIds
+    private transient IntColumn personKeys;
+    // (service type or ailment id << 1) | person kind
+    private transient IntColumn classes;
+    private transient StringDictionary personIds;
+    private transient StringDictionary serviceClasses;
+
+    /**
+     * Constructor for a new, empty store.
+     */
+    public ColumnarTokenStore() {
+        clear();
+    }
+
+    private void clear() {
+        this.numbers = new IntColumn();
+        this.issueTimes = new LongColumn();
+        this.servedTimes = new LongColumn();
+        this.counters = new IntColumn();
+        this.names = new StringColumn();
+        this.personKeys = new IntColumn();
+        this.classes = new IntColumn();
+        this.personIds = new StringDictionary();
+        this.serviceClasses = new StringDictionary();
+    }
+
+    /**
+     * Copies a token's fields into the columns.
+     * @param token The token to add.
+     * @return The token's position in the store.
+     */
+    public int add(Token token) {
+        Person person = token.getPerson();
+        int position = numbers.size();
+        numbers.add(token.getTokenNumber());
+        issueTimes.add(token.getIssueTime());
+        servedTimes.add(token.getServedTime());
+        counters.add(token.getServedByCounter());
+        names.add(person.getName());
+        personKeys.add(personIds.intern(person.getId()));
+        int kind = person instanceof BankCustomer ? KIND_BANK_CUSTOMER : KIND_PATIENT;
+        classes.add(serviceClasses.intern(person.getServiceClass()) << 1 | kind);
+        return position;
+    }
+
+    /**
+     * Builds a Token (and its Person) from the columns.
+     * Every call returns a new object with the same values.
+     * @param position The position of the token.
+     * @return The rebuilt Token.
+     * @throws IndexOutOfBoundsException if there is no such position.
+     */
+    public Token get(int position) {
+        checkPosition(position);
+        String name = names.get(position);
+        String id = personIds.get(personKeys.get(position));
+        int serviceClass = classes.get(position);
+        String detail = serviceClasses.get(serviceClass >>> 1);
+        Person person = (serviceClass & 1) == KIND_BANK_CUSTOMER
+                ? new BankCustomer(name, id, detail)
+                : new Patient(name, id, detail);
+        return new Token(numbers.get(position), person, issueTimes.get(position),
+                counters.get(position), servedTimes.get(position));
+    }
+
+    /**
+     * Returns the token number at a position, without building the Token.
+     * @param position The position of the token.
+     * @return The token number.
+     */
+    public int getTokenNumber(int position) {
+        checkPosition(position);
+        return numbers.get(position);
+    }
+
+    /**
+     * Returns the issue time at a position, without building the Token.
+     * @param position The position of the token.
+     * @return The issue time in epoch milliseconds.
+     */
+    public long getIssueTime(int position) {
+        checkPosition(position);
+        return issueTimes.get(position);
+    }
+
+    /**
+     * Returns the served time at a position, without building the Token.
+     * @param position The position of the token.
+     * @return The served time in epoch milliseconds.
+     */
+    public long getServedTime(int position) {
+        checkPosition(position);
+        return servedTimes.get(position);
+    }
+
+    /**
+     * Returns the person key at a position: a small number that is the same
+     * for every token of the same person ID (see personKeyOf).
+     * @param position The position of the token.
+     * @return The person key.
+     */
+    public int getPersonKey(int position) {
+        checkPosition(position);
+        return personKeys.get(position);
+    }
+
+    /**
+     * Looks up the person key for a person ID.
+     * @param personId The ID / phone number of the person.
+     * @return The person key, or -1 if no stored token belongs to that person.
+     */
+    public int personKeyOf(String personId) {
+        return personIds.idOf(personId);
+    }
+
+    /**
+     * Returns the person ID for a person key.
+     * @param personKey A key from getPersonKey or personKeyOf (0 to getPersonCount() - 1).
+     * @return The ID / phone number.
+     */
+    public String getPersonId(int personKey) {
+        return personIds.get(personKey);
+    }
+
+    /**
+     * Returns the number of different person IDs in the store.
+     * @return The number of person keys.
+     */
+    public int getPersonCount() {
+        return personIds.size();
+    }
+
+    /**
+     * Returns the number of stored tokens.
+     * @return The size of the store.
+     */
+    public int size() {
+        return numbers.size();
+    }
+
+    /**
+     * Returns a read-only copy of the tokens added so far that shares the
+     * columns' storage (see IntColumn.frozenCopy), so it is made in
+     * O(size / 1024) and stays correct while this store keeps growing.
+     * Only get, size and serialization may be used on the copy.
+     * @return A store with the same tokens; it must not be changed.
+     */
+    public ColumnarTokenStore frozenCopy() {
+        ColumnarTokenStore copy = new ColumnarTokenStore();
+        copy.numbers = numbers.frozenCopy();
+        copy.issueTimes = issueTimes.frozenCopy();
+        copy.servedTimes = servedTimes.frozenCopy();
+        copy.counters = counters.frozenCopy();
+        copy.names = names.frozenCopy();
+        copy.personKeys = personKeys.frozenCopy();
+        copy.classes = classes.frozenCopy();
+        copy.personIds = personIds.frozenCopy();
+        copy.serviceClasses = serviceClasses.frozenCopy();
+        return copy;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= numbers.size()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + numbers.size());
+        }
+    }
+
+    /**
+     * Custom serialization: writes a version and then each column
+     * (each column and dictionary streams its own values).
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeObject(numbers);
+        out.writeObject(issueTimes);
+        out.writeObject(servedTimes);
+        out.writeObject(counters);
+        out.writeObject(names);
+        out.writeObject(personKeys);
+        out.writeObject(classes);
+        out.writeObject(personIds);
+        out.writeObject(serviceClasses);
+    }
+
+    /**
+     * Custom deserialization: reads the columns back in the same order and
+     * checks that they all have the same length.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported ColumnarTokenStore format version: " + version);
+        }
+        numbers = (IntColumn) in.readObject();
+        issueTimes = (LongColumn) in.readObject();
+        servedTimes = (LongColumn) in.readObject();
+        counters = (IntColumn) in.readObject();
+        names = (StringColumn) in.readObject();
+        personKeys = (IntColumn) in.readObject();
+        classes = (IntColumn) in.readObject();
+        personIds = (StringDictionary) in.readObject();
+        serviceClasses = (StringDictionary) in.readObject();
+        int count = numbers.size();
+        if (issueTimes.size() != count || servedTimes.size() != count || counters.size() != count
+                || names.size() != count || personKeys.size() != count || classes.size() != count) {
+            throw new InvalidObjectException("ColumnarTokenStore columns have different lengths");
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package ds;
+
+import exceptions.EmptyQueueException;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread-safe, lock-free FIFO queue, built from scratch.
+ * This is the classic Michael-Scott queue: a singly linked list that always
+ * starts with a "dummy" node, where threads use compare-and-set (CAS) on the
+ * head, the tail and each node's next link instead of taking a lock.
+ * Several kiosks can enqueue and several counters can dequeue at the same time.
+ *
+ * size() is kept in a separate counter, so while other threads are working
+ * it may be off by the operations that are still in progress.
+ * Iteration is "weakly consistent": it never fails, and it sees the items
+ * that were in the queue when it started, plus possibly some newer ones.
+ * Null items are not allowed: a node's item is cleared when it is dequeued
+ * (so the queue does not keep served items alive), and null marks that.
+ */
+public class ConcurrentQueue<T> implements QueueADT<T>, java.io.Serializable {
+
+    private static final long serialVersionUID = -6415480004174800026L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+
+    /**
+     * Inner class representing a single node in the queue.
+     * The next link is an AtomicReference so it can be changed with CAS.
+     * data is set to null once the node has been dequeued and is the dummy.
+     */
+    private static class Node<T> {
+        T data;
+        final AtomicReference<Node<T>> next = new AtomicReference<>();
+
+        Node(T data) {
+            this.data = data;
+        }
+    }
+
+    // Head points to the dummy node; the first real item is head.next
+    private transient AtomicReference<Node<T>> head;
+    // Tail points to the last node (or, briefly, the one before it)
+    private transient AtomicReference<Node<T>> tail;
+    // Keeps track of the number of items in the queue
+    private transient AtomicInteger size;
+
+    /**
+     * Constructor for a new, empty queue.
+     */
+    public ConcurrentQueue() {
+        init();
+    }
+
+    /**
+     * Sets up the dummy node that head and tail both start on.
+     */
+    private void init() {
+        Node<T> dummy = new Node<>(null);
+        this.head = new AtomicReference<>(dummy);
+        this.tail = new AtomicReference<>(dummy);
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Adds an item to the back of the queue (FIFO). Safe to call from many threads.
+     * @param data The data to add (not null).
+     */
+    @Override
+    public void enqueue(T data) {
+        if (data == null) {
+            throw new NullPointerException("A ConcurrentQueue cannot hold null items");
+        }
+        Node<T> newNode = new Node<>(data);
+        while (true) {
+            Node<T> last = tail.get();
+            Node<T> next = last.next.get();
+            if (last != tail.get()) {
+                continue; // Tail moved while we were reading, try again
+            }
+            if (next == null) {
+                // Tail really is the last node: try to link the new node after it
+                if (last.next.compareAndSet(null, newNode)) {
+                    tail.compareAndSet(last, newNode); // Fine if another thread already did this
+                    size.incrementAndGet();
+                    return;
+                }
+            } else {
+                // Another thread linked a node but has not moved tail yet: help it
+                tail.compareAndSet(last, next);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the item from the front of the queue (FIFO).
+     * Safe to call from many threads; each item is returned to exactly one caller.
+     * @return The data from the front of the queue.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    @Override
+    public T dequeue() throws EmptyQueueException {
+        while (true) {
+            Node<T> first = head.get();
+            Node<T> last = tail.get();
+            Node<T> next = first.next.get();
+            if (first != head.get()) {
+                continue; // Head moved while we were reading, try again
+            }
+            if (first == last) {
+                if (next == null) {
+                    throw new EmptyQueueException("Cannot dequeue from an empty queue.");
+                }
+                // Tail is behind: help move it forward
+                tail.compareAndSet(last, next);
+            } else {
+                // Read the item before the CAS: once next is the dummy, another dequeue may clear it
+                T data = next.data;
+                if (head.compareAndSet(first, next)) {
+                    // The old first real node becomes the new dummy; clear its item
+                    // so the queue no longer keeps it alive (as in Michael-Scott)
+                    next.data = null;
+                    size.decrementAndGet();
+                    return data;
+                }
+            }
+        }
+    }
+
+    /**
+     * "Peeks" at the item in the front of the queue without removing it.
+     * @return The data from the front of the queue.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    @Override
+    public T peek() throws EmptyQueueException {
+        while (true) {
+            Node<T> next = head.get().next.get();
+            if (next == null) {
+                throw new EmptyQueueException("Cannot peek into an empty queue.");
+            }
+            T data = next.data;
+            if (data != null) {
+                return data;
+            }
+            // Dequeued (and cleared) by another thread meanwhile: look again
+        }
+    }
+
+    /**
+     * Checks if the queue is empty.
+     * @return true if the queue is empty, false otherwise.
+     */
+    @Override
+    public boolean isEmpty() {
+        return head.get().next.get() == null;
+    }
+
+    /**
+     * Returns the number of items in the queue.
+     * @return The size of the queue (never negative).
+     */
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * Provides a weakly consistent iterator from the front of the queue to the back.
+     * @return An iterator for the queue.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            // The next node to return and its item, read together so another thread cannot clear it in between
+            private Node<T> current = head.get().next.get();
+            private T currentData = skipDequeued();
+
+            /**
+             * Moves current past nodes dequeued since we reached them (their item is cleared).
+             */
+            private T skipDequeued() {
+                while (current != null) {
+                    T data = current.data;
+                    if (data != null) {
+                        return data;
+                    }
+                    current = current.next.get();
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T data = currentData;
+                current = current.next.get();
+                currentData = skipDequeued();
+                return data;
+            }
+        };
+    }
+
+    /**
+     * Custom serialization: writes a version, the size, and then every item in order.
+     * The queue should not be changed by other threads while it is being saved.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        int count = 0;
+        for (T item : this) {
+            count++;
+        }
+        out.writeInt(count);
+        for (Iterator<T> items = iterator(); items.hasNext() && count > 0; count--) {
+            out.writeObject(items.next());
+        }
+    }
+
+    /**
+     * Custom deserialization: rebuilds the queue by enqueuing each item again.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported ConcurrentQueue format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative ConcurrentQueue size: " + count);
+        }
+        init();
+        for (int i = 0; i < count; i++) {
+            enqueue((T) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ds;
+
+/**
+ * A hierarchical timer wheel, built from scratch: it holds many timers
+ * (e.g. tens of thousands of appointments) and hands back the ones that are
+ * due, with O(1) work per timer instead of a thread each or a scan of all of them.
+ *
+ * Time is counted in ticks of tickMillis. There are LEVELS wheels of
+ * SLOTS slots each, like the hands of a clock:
+ * - level 0 has one slot per tick (the next 64 ticks)
+ * - level 1 has one slot per 64 ticks (the next 64 * 64 ticks), and so on
+ * A timer goes into the lowest level whose range covers its deadline. Each
+ * slot is a doubly linked list, so adding and cancelling a timer is O(1).
+ * When level 0 has gone all the way round, the next slot of level 1 is
+ * "cascaded": its timers are put back in, now into level 0, and so on up.
+ * A timer is moved at most LEVELS times before it fires, so the total cost
+ * per timer is O(1). Timers further away than the top level covers wait in
+ * the top level's last slot and are placed again each time it comes round.
+ *
+ * With 1 second ticks the four levels cover 64^4 seconds (about 194 days).
+ * A timer never fires early; it fires up to one tick late.
+ * It is *not* thread-safe: the caller must lock around every call.
+ */
+public class HierarchicalTimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS; // 64
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * One scheduled item. Keep it to cancel the timer later.
+     */
+    public static final class Timer<T> {
+        private final T item;
+        private final long deadline; // Epoch milliseconds
+        private final long deadlineTick;
+        // Links in the slot's list (null when the timer is not scheduled)
+        private Timer<T> previous;
+        private Timer<T> next;
+        private int level = -1;
+        private int slot;
+
+        private Timer(T item, long deadline, long deadlineTick) {
+            this.item = item;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return The item the timer was scheduled for.
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * @return When the timer is due, in epoch milliseconds.
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return True while the timer is waiting to fire (not fired or cancelled).
+         */
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+    }
+
+    private final long tickMillis;
+    // The first slot of every list, [level][slot]
+    private final Timer<T>[][] slots;
+    // The next tick to process; every tick before it has been processed
+    private long currentTick;
+    private int size;
+
+    /**
+     * Constructor for an empty wheel.
+     * @param tickMillis The length of one tick in milliseconds (the precision of the timers).
+     * @param startMillis The current time in epoch milliseconds.
+     */
+    public HierarchicalTimerWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be 1 or more: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        // An array of Timer<T> cannot be created directly; the cast is safe, since only Timer<T> are stored
+        @SuppressWarnings("unchecked")
+        Timer<T>[][] emptySlots = (Timer<T>[][]) new Timer<?>[LEVELS][SLOTS];
+        this.slots = emptySlots;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Schedules an item to be handed back by advanceTo once the deadline has passed. O(1).
+     * A deadline in the past fires within one tick.
+     * @param item The item.
+     * @param deadlineMillis When it is due, in epoch milliseconds.
+     * @return The timer, for cancel.
+     */
+    public Timer<T> schedule(T item, long deadlineMillis) {
+        // Round up, so the timer never fires before its deadline
+        long tick = Math.floorDiv(deadlineMillis, tickMillis)
+                + (Math.floorMod(deadlineMillis, tickMillis) == 0 ? 0 : 1);
+        Timer<T> timer = new Timer<>(item, deadlineMillis, tick);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Cancels a timer so it never fires. O(1).
+     * @param timer A timer returned by schedule.
+     * @return True if it was cancelled, false if it had already fired or been cancelled.
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (!timer.isScheduled()) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel on to the given time and hands back every item that is now due.
+     * The cost is O(1) per elapsed tick plus O(1) per timer.
+     * @param nowMillis The current time in epoch milliseconds.
+     * @param due The list the due items are added to, roughly in deadline order.
+     * @return The number of items added.
+     */
+    public int advanceTo(long nowMillis, MyLinkedList<T> due) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        int fired = 0;
+        while (currentTick <= targetTick) {
+            if (size == 0) {
+                // Nothing to fire, so there is no need to walk through the empty ticks
+                currentTick = targetTick + 1;
+                break;
+            }
+            // When a level has gone all the way round, bring down the next slot of the level above
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+            }
+            int slot = (int) (currentTick & SLOT_MASK);
+            Timer<T> timer = slots[0][slot];
+            slots[0][slot] = null;
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                timer.previous = null;
+                timer.next = null;
+                timer.level = -1;
+                size--;
+                due.addLast(timer.item);
+                fired++;
+                timer = next;
+            }
+            currentTick++;
+        }
+        return fired;
+    }
+
+    /**
+     * @return The number of scheduled timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Puts every timer of one slot back into the wheel, one level lower (or due now).
+     */
+    private void cascade(int level, int slot) {
+        Timer<T> timer = slots[level][slot];
+        slots[level][slot] = null;
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Adds a timer to the slot for its deadline tick, relative to currentTick.
+     */
+    private void place(Timer<T> timer) {
+        long tick = Math.max(timer.deadlineTick, currentTick);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        if (delta >= 1L << (SLOT_BITS * LEVELS)) {
+            // Beyond the top level: the slot that comes round last, then placed again
+            tick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timer.level = level;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = slots[level][slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        slots[level][slot] = timer;
+    }
+
+    /**
+     * Removes a timer from its slot's list.
+     */
+    private void unlink(Timer<T> timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+}
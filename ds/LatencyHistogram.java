@@ -0,0 +1,129 @@
+package ds;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A custom, thread-safe histogram of durations, built from scratch in the
+ * style of HdrHistogram ("high dynamic range").
+ * Instead of storing every value it counts how many values fell into each
+ * bucket. Buckets are exact below 128; above that every power of two is
+ * split into 64 equal buckets, so a bucket is never wider than about 1.6%
+ * of its values, from 1 ms up to years, in a fixed 2048 counters (16 KB).
+ * - record(value) is O(1): a little bit arithmetic and two atomic adds
+ *   (bucket and sum), with no locks and no allocation, so it can sit on a hot path
+ * - getValueAtPercentile(p) and getCount() walk the buckets, O(number of buckets)
+ * Values are longs in whatever unit the caller chooses (QueueMetrics uses ms).
+ */
+public class LatencyHistogram {
+
+    // Values below 2^7 = 128 each get their own bucket
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = 2048;
+    // The largest value with its own bucket; larger values are counted as this
+    public static final long MAX_TRACKABLE_VALUE = highestInBucket(BUCKET_COUNT - 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. Negative values (e.g. from a clock change) count as 0.
+     * @param value The value to record.
+     */
+    public void record(long value) {
+        long clamped = Math.min(Math.max(value, 0), MAX_TRACKABLE_VALUE);
+        counts.incrementAndGet(bucketOf(clamped));
+        sum.addAndGet(clamped);
+        if (clamped > max.get()) {
+            max.accumulateAndGet(clamped, Math::max);
+        }
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are at or below.
+     * The answer is the top of the bucket it falls in, so it is at most ~1.6% too high.
+     * @param percentile The percentile, from 0 to 100 (e.g. 99.9).
+     * @return The value, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(bucket), getMax());
+            }
+        }
+        return getMax(); // Values recorded while we were walking the buckets
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return The count.
+     */
+    public long getCount() {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            total += counts.get(bucket);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     * @return The sum.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return The maximum, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the average of the recorded values.
+     * @return The mean, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Finds the bucket for a value (0 to MAX_TRACKABLE_VALUE).
+     * Values below 128 are their own bucket. Otherwise the value is shifted
+     * right until it is between 64 and 127, and the shift picks the group of
+     * 64 buckets: e.g. 128-255 are buckets 128-191, 256-511 are 192-255.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - SUB_BUCKET_BITS) - Long.numberOfLeadingZeros(value);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket (the reverse of bucketOf).
+     */
+    static long highestInBucket(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_HALF - 1;
+        long subBucket = bucket % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,144 @@
+package ds;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A custom growable array of primitive longs, built from scratch.
+ * The values are stored in fixed-size long[] chunks, so growing never copies
+ * existing values (a full chunk stays where it is and a new one is added),
+ * and a value costs exactly 8 bytes, with no Long object per value.
+ * Used for the columns of ColumnarTokenStore and the HistoryStore indexes.
+ */
+public class LongColumn implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    // Each chunk holds 2^10 = 1024 values (8 KB)
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private transient long[][] chunks;
+    // One more than the highest index written so far
+    private transient int size;
+
+    /**
+     * Constructor for a new, empty column.
+     */
+    public LongColumn() {
+        this.chunks = new long[4][];
+        this.size = 0;
+    }
+
+    /**
+     * Adds a value after the last one.
+     * @param value The value to add.
+     */
+    public void add(long value) {
+        set(size, value);
+    }
+
+    /**
+     * Stores a value at the given index, growing the column if needed.
+     * Indexes that were skipped over read as 0.
+     * @param index The index to write to (must not be negative).
+     * @param value The value to store.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public void set(int index, long value) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        int chunkIndex = index >>> CHUNK_BITS;
+        if (chunkIndex >= chunks.length) {
+            // Double the chunk table until the index fits
+            int newLength = chunks.length;
+            while (newLength <= chunkIndex) {
+                newLength *= 2;
+            }
+            long[][] bigger = new long[newLength][];
+            System.arraycopy(chunks, 0, bigger, 0, chunks.length);
+            chunks = bigger;
+        }
+        if (chunks[chunkIndex] == null) {
+            chunks[chunkIndex] = new long[CHUNK_SIZE];
+        }
+        chunks[chunkIndex][index & CHUNK_MASK] = value;
+        if (index >= size) {
+            size = index + 1;
+        }
+    }
+
+    /**
+     * Reads the value at the given index.
+     * @param index The index to read.
+     * @return The value, or 0 if nothing was stored at that index.
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            return 0;
+        }
+        long[] chunk = chunks[index >>> CHUNK_BITS];
+        return chunk == null ? 0 : chunk[index & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the number of values (one more than the highest index written).
+     * @return The size of the column.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only copy of the values stored so far. Only the chunk
+     * table is copied (O(size / 1024)); the chunks themselves are shared.
+     * The copy stays correct while this column keeps growing, because add
+     * only writes past the copied size, so it can be read on another thread
+     * (e.g. to write a snapshot) without stopping the writers. Values below
+     * the current size must not be set again afterwards.
+     * @return A column with the same values; it must not be changed.
+     */
+    public LongColumn frozenCopy() {
+        LongColumn copy = new LongColumn();
+        copy.chunks = chunks.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Custom serialization: writes a version, the size, and then every value.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(get(i));
+        }
+    }
+
+    /**
+     * Custom deserialization: reads the values back into fresh chunks.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported LongColumn format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative LongColumn size: " + count);
+        }
+        chunks = new long[4][];
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            add(in.readLong());
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package ds;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -7,15 +11,22 @@ import java.util.NoSuchElementException;
  * A custom implementation of a Singly Linked List, built from scratch.
  * This class is the foundation for our custom Queue.
  * It implements Serializable to allow the list to be saved to a file.
+ * The nodes are *not* saved one inside the other (which would make Java
+ * recurse once per node and overflow the stack on a long list). Instead the
+ * list writes a version number, its size, and then each item in a loop.
  *
  */
 public class MyLinkedList<T> implements Iterable<T>, java.io.Serializable {
 
+    private static final long serialVersionUID = 3227549808832641441L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+
     /**
      * Inner class representing a single node in the linked list.
-     * It is also Serializable so it can be saved.
+     * Nodes are never serialized themselves; only their data is.
      */
-    private class Node implements java.io.Serializable {
+    private class Node {
         T data;
         Node next;
 
@@ -26,11 +37,11 @@ public class MyLinkedList<T> implements Iterable<T>, java.io.Serializable {
     }
 
     // Head points to the first node in the list
-    private Node head;
+    private transient Node head;
     // Tail points to the last node for efficient additions (O(1))
-    private Node tail;
+    private transient Node tail;
     // Keeps track of the number of items in the list
-    private int size;
+    private transient int size;
 
     /**
      * Constructor for a new, empty linked list.
@@ -129,4 +140,36 @@ public class MyLinkedList<T> implements Iterable<T>, java.io.Serializable {
             }
         };
     }
-}
\ No newline at end of file
+
+    /**
+     * Custom serialization: writes a version, the size, and then every item
+     * in a simple loop (no recursion, however long the list is).
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(size);
+        for (Node current = head; current != null; current = current.next) {
+            out.writeObject(current.data);
+        }
+    }
+
+    /**
+     * Custom deserialization: rebuilds the list by adding each item to the end.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported MyLinkedList format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative MyLinkedList size: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            addLast((T) in.readObject());
+        }
+    }
+}
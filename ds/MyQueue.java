@@ -1,18 +1,29 @@
 package ds;
 
 import exceptions.EmptyQueueException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
  * A custom Queue implementation, built from scratch.
  * This class uses the "Composition" principle, as it *contains* a MyLinkedList.
  * It maps Queue operations (enqueue, dequeue) to LinkedList operations.
+ * When saved, it streams its items in order after a version and size header.
+ * It is *not* thread-safe; see ConcurrentQueue for that.
  *
  */
-public class MyQueue<T> implements java.io.Serializable {
+public class MyQueue<T> implements QueueADT<T>, java.io.Serializable {
+
+    private static final long serialVersionUID = -145340382357720338L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
 
     // The underlying data structure is our custom linked list.
-    private MyLinkedList<T> list;
+    private transient MyLinkedList<T> list;
 
     /**
      * Constructor for a new, empty queue.
@@ -25,6 +36,7 @@ public class MyQueue<T> implements java.io.Serializable {
      * Adds an item to the back of the queue (FIFO).
      * @param data The data to add.
      */
+    @Override
     public void enqueue(T data) {
         list.addLast(data);
     }
@@ -34,6 +46,7 @@ public class MyQueue<T> implements java.io.Serializable {
      * @return The data from the front of the queue.
      * @throws EmptyQueueException if the queue is empty.
      */
+    @Override
     public T dequeue() throws EmptyQueueException {
         try {
             // This is where we use our custom exception
@@ -49,6 +62,7 @@ public class MyQueue<T> implements java.io.Serializable {
      * @return The data from the front of the queue.
      * @throws EmptyQueueException if the queue is empty.
      */
+    @Override
     public T peek() throws EmptyQueueException {
         try {
             return list.getFirst();
@@ -61,6 +75,7 @@ public class MyQueue<T> implements java.io.Serializable {
      * Checks if the queue is empty.
      * @return true if the queue is empty, false otherwise.
      */
+    @Override
     public boolean isEmpty() {
         return list.isEmpty();
     }
@@ -69,10 +84,20 @@ public class MyQueue<T> implements java.io.Serializable {
      * Returns the number of items in the queue.
      * @return The size of the queue.
      */
+    @Override
     public int size() {
         return list.getSize();
     }
 
+    /**
+     * Provides an iterator from the front of the queue to the back.
+     * @return An iterator for the queue.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return list.iterator();
+    }
+
     /**
      * Allows the logic layer to get the full list for display purposes.
      * @return The underlying MyLinkedList.
@@ -80,4 +105,36 @@ public class MyQueue<T> implements java.io.Serializable {
     public MyLinkedList<T> getList() {
         return list;
     }
-}
\ No newline at end of file
+
+    /**
+     * Custom serialization: writes a version, the size, and then every item in order.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(list.getSize());
+        for (T data : list) {
+            out.writeObject(data);
+        }
+    }
+
+    /**
+     * Custom deserialization: rebuilds the queue by enqueuing each item again.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported MyQueue format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative MyQueue size: " + count);
+        }
+        list = new MyLinkedList<>();
+        for (int i = 0; i < count; i++) {
+            list.addLast((T) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ds;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A pool of strings kept outside the Java heap, built from scratch.
+ * Like StringDictionary, every distinct string gets an int id and is stored
+ * once; but its UTF-8 bytes live in "direct" ByteBuffer pages, which the
+ * garbage collector never copies or scans. A string is stored as
+ *     [int hash][int length][bytes]
+ * and its id leads to where that starts. The only heap objects are a few
+ * large primitive arrays (the hash table and the starts), however many
+ * strings there are, so the GC has nothing per string to look at.
+ * - intern(value) is O(1) on average (open addressing, linear probing)
+ * - get(id) decodes a new String, O(length)
+ * Strings are never removed; the pages are freed with the pool.
+ * It is *not* thread-safe; the owner must synchronize.
+ */
+public class OffHeapStringPool {
+
+    // Bytes per page; a longer string gets a page of its own
+    private static final int PAGE_SIZE = 1024 * 1024;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private ByteBuffer[] pages = new ByteBuffer[4];
+    private int pageCount;
+    // Where each string starts: (page << 32) | offset, by id
+    private final LongColumn starts = new LongColumn();
+    // Hash table of (id + 1); 0 marks an empty slot. Its size is a power of two.
+    private int[] table = new int[MIN_TABLE_SIZE];
+
+    /**
+     * Returns the id of a string, adding it to the pool if it is new.
+     * @param value The string (must not be null).
+     * @return Its id.
+     */
+    public int intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = value.hashCode();
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0) {
+            if (matches(table[slot] - 1, hash, bytes)) {
+                return table[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = starts.size();
+        starts.add(store(hash, bytes));
+        table[slot] = id + 1;
+        if (starts.size() * 2 > table.length) {
+            rehash(table.length * 2); // Keep the table at most half full
+        }
+        return id;
+    }
+
+    /**
+     * Returns the string with the given id, decoded from its bytes.
+     * Every call returns a new String with the same value.
+     * @param id An id returned by intern.
+     * @return The string.
+     * @throws IndexOutOfBoundsException if there is no such id.
+     */
+    public String get(int id) {
+        long start = starts.get(id);
+        ByteBuffer page = pages[(int) (start >>> 32)];
+        int offset = (int) start;
+        byte[] bytes = new byte[page.getInt(offset + 4)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = page.get(offset + 8 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of distinct strings.
+     */
+    public int size() {
+        return starts.size();
+    }
+
+    /**
+     * @return The direct memory taken by the pages, in bytes.
+     */
+    public long getOffHeapBytes() {
+        long total = 0;
+        for (int i = 0; i < pageCount; i++) {
+            total += pages[i].capacity();
+        }
+        return total;
+    }
+
+    /**
+     * Copies a string's hash, length and bytes into the last page.
+     * @return Where it starts: (page << 32) | offset.
+     */
+    private long store(int hash, byte[] bytes) {
+        int recordSize = 8 + bytes.length;
+        ByteBuffer page = pageCount == 0 ? null : pages[pageCount - 1];
+        if (page == null || page.remaining() < recordSize) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            page = ByteBuffer.allocateDirect(Math.max(PAGE_SIZE, recordSize));
+            pages[pageCount++] = page;
+        }
+        int offset = page.position();
+        page.putInt(hash).putInt(bytes.length).put(bytes);
+        return ((long) (pageCount - 1) << 32) | offset;
+    }
+
+    /**
+     * Checks whether the stored string with the given id has these bytes.
+     */
+    private boolean matches(int id, int hash, byte[] bytes) {
+        long start = starts.get(id);
+        ByteBuffer page = pages[(int) (start >>> 32)];
+        int offset = (int) start;
+        if (page.getInt(offset) != hash || page.getInt(offset + 4) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (page.get(offset + 8 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int id = 0; id < starts.size(); id++) {
+            long start = starts.get(id);
+            int slot = spread(pages[(int) (start >>> 32)].getInt((int) start)) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Mixes the high bits of the hash into the low bits used for the slot.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
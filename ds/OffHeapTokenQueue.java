@@ -0,0 +1,261 @@
+package ds;
+
+import exceptions.EmptyQueueException;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+import model.Token;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A FIFO queue of tokens kept outside the Java heap, for very large queues
+ * (a vaccination drive or an exam day with millions waiting).
+ * A waiting token held as objects is a Token, a Person and three Strings;
+ * with millions of them, every garbage collection has millions of objects
+ * to copy or mark, and the pauses grow with the queue. Here each token is
+ * one fixed-size record in a "direct" ByteBuffer chunk:
+ *     [int number][int name][int person ID][int (detail << 1) | kind]
+ *     [long issue time][long expected serve time]
+ * and the strings are ids into an OffHeapStringPool. The GC sees a handful
+ * of chunk objects, however long the queue is.
+ *
+ * Records are numbered from the first one ever added; record n is in chunk
+ * n / RECORDS_PER_CHUNK, found through a small ring of chunks. enqueue fills
+ * the last chunk (taking a new one when it is full) and dequeue frees the
+ * first chunk once it has been read, so both are O(1).
+ *
+ * It offers the same QueueADT API as the other queues, but dequeue, peek and
+ * the iterator build a *new* Token (and Person) from the record on every call,
+ * like HistoryStore does. So compare tokens by number, not by identity.
+ * Strings are never removed from the pool; it goes with the queue.
+ * Every method is synchronized, so it can be shared between threads.
+ */
+public class OffHeapTokenQueue implements QueueADT<Token>, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    private static final int RECORD_SIZE = 32;
+    private static final int RECORDS_PER_CHUNK = 32 * 1024; // 1 MB per chunk
+    private static final int KIND_BANK_CUSTOMER = 0;
+    private static final int KIND_PATIENT = 1;
+
+    // The chunks in use; chunk c is at ring[c & (ring.length - 1)]
+    private transient ByteBuffer[] ring;
+    // A freed chunk kept for the next one needed, so a queue that goes up
+    // and down around a chunk boundary does not allocate every time
+    private transient ByteBuffer spare;
+    // The number of the front record, and of the next record to be added
+    private transient long head;
+    private transient long tail;
+    private transient OffHeapStringPool strings;
+
+    /**
+     * Constructor for a new, empty queue.
+     */
+    public OffHeapTokenQueue() {
+        init();
+    }
+
+    private void init() {
+        this.ring = new ByteBuffer[4];
+        this.spare = null;
+        this.head = 0;
+        this.tail = 0;
+        this.strings = new OffHeapStringPool();
+    }
+
+    /**
+     * Copies a token into a record at the back of the queue. O(1) amortized.
+     * @param token The token to add.
+     */
+    @Override
+    public synchronized void enqueue(Token token) {
+        if (tail % RECORDS_PER_CHUNK == 0) {
+            addChunk();
+        }
+        Person person = token.getPerson();
+        int kind = person instanceof BankCustomer ? KIND_BANK_CUSTOMER : KIND_PATIENT;
+        ByteBuffer chunk = chunkOf(tail);
+        int offset = offsetOf(tail);
+        chunk.putInt(offset, token.getTokenNumber());
+        chunk.putInt(offset + 4, strings.intern(person.getName()));
+        chunk.putInt(offset + 8, strings.intern(person.getId()));
+        chunk.putInt(offset + 12, strings.intern(person.getServiceClass()) << 1 | kind);
+        chunk.putLong(offset + 16, token.getIssueTime());
+        chunk.putLong(offset + 24, token.getExpectedServeTime());
+        tail++;
+    }
+
+    /**
+     * Removes the front record and builds its Token. O(1).
+     * @return A new Token with the front record's values.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    @Override
+    public synchronized Token dequeue() throws EmptyQueueException {
+        if (head == tail) {
+            throw new EmptyQueueException("Cannot dequeue from an empty queue.");
+        }
+        Token token = read(head);
+        head++;
+        if (head % RECORDS_PER_CHUNK == 0) {
+            // The chunk has been read to the end
+            int slot = (int) ((head - 1) / RECORDS_PER_CHUNK) & (ring.length - 1);
+            spare = ring[slot];
+            ring[slot] = null;
+        }
+        return token;
+    }
+
+    /**
+     * Builds the Token of the front record without removing it.
+     * @return A new Token with the front record's values.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    @Override
+    public synchronized Token peek() throws EmptyQueueException {
+        if (head == tail) {
+            throw new EmptyQueueException("Cannot peek into an empty queue.");
+        }
+        return read(head);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return head == tail;
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * Returns the direct memory taken by the records and the strings.
+     * @return The size in bytes.
+     */
+    public synchronized long getOffHeapBytes() {
+        long total = strings.getOffHeapBytes();
+        for (ByteBuffer chunk : ring) {
+            if (chunk != null) {
+                total += chunk.capacity();
+            }
+        }
+        return spare == null ? total : total + spare.capacity();
+    }
+
+    /**
+     * Provides an iterator from the front of the queue to the back, building
+     * each Token as it goes. Tokens served meanwhile are skipped and tokens
+     * added meanwhile are included.
+     * @return An iterator for the queue.
+     */
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            // The next record to read (moved up to head when that has passed it)
+            private long next;
+
+            @Override
+            public boolean hasNext() {
+                synchronized (OffHeapTokenQueue.this) {
+                    return Math.max(next, head) < tail;
+                }
+            }
+
+            @Override
+            public Token next() {
+                synchronized (OffHeapTokenQueue.this) {
+                    next = Math.max(next, head);
+                    if (next >= tail) {
+                        throw new NoSuchElementException();
+                    }
+                    return read(next++);
+                }
+            }
+        };
+    }
+
+    /**
+     * Builds a Token (and its Person) from a record.
+     */
+    private Token read(long record) {
+        ByteBuffer chunk = chunkOf(record);
+        int offset = offsetOf(record);
+        String name = strings.get(chunk.getInt(offset + 4));
+        String id = strings.get(chunk.getInt(offset + 8));
+        int detail = chunk.getInt(offset + 12);
+        Person person = (detail & 1) == KIND_BANK_CUSTOMER
+                ? new BankCustomer(name, id, strings.get(detail >>> 1))
+                : new Patient(name, id, strings.get(detail >>> 1));
+        Token token = new Token(chunk.getInt(offset), person, chunk.getLong(offset + 16));
+        token.setExpectedServeTime(chunk.getLong(offset + 24));
+        return token;
+    }
+
+    private ByteBuffer chunkOf(long record) {
+        return ring[(int) (record / RECORDS_PER_CHUNK) & (ring.length - 1)];
+    }
+
+    private static int offsetOf(long record) {
+        return (int) (record % RECORDS_PER_CHUNK) * RECORD_SIZE;
+    }
+
+    /**
+     * Puts a chunk in place for the record at tail, growing the ring if every slot is in use.
+     */
+    private void addChunk() {
+        long firstChunk = head / RECORDS_PER_CHUNK;
+        long newChunk = tail / RECORDS_PER_CHUNK;
+        if (newChunk - firstChunk + 1 > ring.length) {
+            ByteBuffer[] bigger = new ByteBuffer[ring.length * 2];
+            for (long c = firstChunk; c < newChunk; c++) {
+                bigger[(int) c & (bigger.length - 1)] = ring[(int) c & (ring.length - 1)];
+            }
+            ring = bigger;
+        }
+        ByteBuffer chunk = spare != null ? spare : ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE);
+        spare = null;
+        ring[(int) newChunk & (ring.length - 1)] = chunk;
+    }
+
+    /**
+     * Custom serialization: writes a version, the size, and then every token
+     * in order (as Token objects, so the saved form does not depend on the layout).
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(size());
+        for (long record = head; record < tail; record++) {
+            out.writeObject(read(record));
+        }
+    }
+
+    /**
+     * Custom deserialization: copies the tokens back into new records.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported OffHeapTokenQueue format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative OffHeapTokenQueue size: " + count);
+        }
+        init();
+        for (int i = 0; i < count; i++) {
+            enqueue((Token) in.readObject());
+        }
+    }
+}
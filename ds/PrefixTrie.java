@@ -0,0 +1,201 @@
+package ds;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A prefix tree (trie) from text keys to int values, built from scratch.
+ * It finds every value whose key starts with a prefix without looking at
+ * any other key: the search walks down one character at a time, and all
+ * the keys with that prefix are below the node where it ends.
+ *
+ * It is a compressed ("radix") trie: an edge holds a run of characters,
+ * not just one, so a key that shares no more characters with the others
+ * (e.g. most phone numbers after the first few digits) costs one node
+ * instead of one node per character. Every node also counts the values
+ * below it, so the number of matches for a prefix is known in O(prefix length).
+ *
+ * A key may have many values; values are never removed.
+ * It is *not* thread-safe: the caller must lock around every call.
+ */
+public class PrefixTrie {
+
+    private static final class Node {
+        // The characters on the edge into this node
+        String label;
+        // Children sorted by the first character of their label
+        Node[] children;
+        int childCount;
+        // The values of the key that ends exactly here
+        int[] values;
+        int valueCount;
+        // Values in this node and every node below it
+        int subtreeCount;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Binary search for the child whose label starts with c.
+         * @return Its index, or -(insertion point) - 1 if there is none.
+         */
+        int findChild(char c) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char first = children[middle].label.charAt(0);
+                if (first < c) {
+                    low = middle + 1;
+                } else if (first > c) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void insertChild(int index, Node child) {
+            if (children == null) {
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                Node[] bigger = new Node[childCount * 2];
+                System.arraycopy(children, 0, bigger, 0, childCount);
+                children = bigger;
+            }
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+            children[index] = child;
+            childCount++;
+        }
+
+        void addValue(int value) {
+            if (values == null) {
+                values = new int[1];
+            } else if (valueCount == values.length) {
+                int[] bigger = new int[valueCount * 2];
+                System.arraycopy(values, 0, bigger, 0, valueCount);
+                values = bigger;
+            }
+            values[valueCount++] = value;
+        }
+    }
+
+    private final Node root = new Node("");
+    private int keyCount;
+
+    /**
+     * Adds a value under a key. O(key length), plus O(children) when a new branch is made.
+     * @param key The key (not empty).
+     * @param value The value.
+     */
+    public void add(String key, int value) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("key cannot be empty");
+        }
+        Node node = root;
+        node.subtreeCount++;
+        int i = 0;
+        while (i < key.length()) {
+            int index = node.findChild(key.charAt(i));
+            if (index < 0) {
+                // Nothing shares the rest of the key: one new node holds all of it
+                Node leaf = new Node(key.substring(i));
+                leaf.subtreeCount = 1;
+                leaf.addValue(value);
+                node.insertChild(-index - 1, leaf);
+                keyCount++;
+                return;
+            }
+            Node child = node.children[index];
+            int common = 1;
+            int max = Math.min(child.label.length(), key.length() - i);
+            while (common < max && child.label.charAt(common) == key.charAt(i + common)) {
+                common++;
+            }
+            if (common < child.label.length()) {
+                // The key leaves the edge part way along: split it with a node at that point
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.insertChild(0, child);
+                middle.subtreeCount = child.subtreeCount;
+                node.children[index] = middle;
+                child = middle;
+            }
+            child.subtreeCount++;
+            node = child;
+            i += common;
+        }
+        if (node.valueCount == 0) {
+            keyCount++;
+        }
+        node.addValue(value);
+    }
+
+    /**
+     * Counts the values of every key that starts with a prefix. O(prefix length).
+     * @param prefix The prefix ("" counts every value).
+     * @return The number of values.
+     */
+    public int countWithPrefix(String prefix) {
+        Node node = find(prefix);
+        return node == null ? 0 : node.subtreeCount;
+    }
+
+    /**
+     * Visits the values of every key that starts with a prefix, in key order
+     * (the values of one key in the order they were added). Only the part of
+     * the trie below the prefix is walked, and the walk stops as soon as the
+     * visitor returns false, so taking the first k matches costs about O(k).
+     * @param prefix The prefix ("" visits every value).
+     * @param visitor Called with each value; returns false to stop.
+     * @return False if the visitor stopped the walk, true if every match was visited.
+     */
+    public boolean forEachWithPrefix(String prefix, IntPredicate visitor) {
+        Node node = find(prefix);
+        return node == null || visit(node, visitor);
+    }
+
+    /**
+     * @return The number of different keys.
+     */
+    public int keyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Finds the highest node whose keys all start with the prefix.
+     * @return The node, or null if no key starts with it.
+     */
+    private Node find(String prefix) {
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int index = node.findChild(prefix.charAt(i));
+            if (index < 0) {
+                return null;
+            }
+            node = node.children[index];
+            int length = Math.min(node.label.length(), prefix.length() - i);
+            if (!node.label.regionMatches(0, prefix, i, length)) {
+                return null;
+            }
+            i += length;
+        }
+        return node;
+    }
+
+    private static boolean visit(Node node, IntPredicate visitor) {
+        for (int i = 0; i < node.valueCount; i++) {
+            if (!visitor.test(node.values[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            if (!visit(node.children[i], visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package ds;
+
+import exceptions.EmptyQueueException;
+
+/**
+ * The common "Abstract Data Type" for all of our FIFO queues.
+ * QueueManager and the GUI only talk to this interface, so the
+ * implementation behind it (e.g. MyQueue or ConcurrentQueue)
+ * can be swapped without changing them.
+ * Iterating over a queue visits the items from front to back.
+ */
+public interface QueueADT<T> extends Iterable<T> {
+
+    /**
+     * Adds an item to the back of the queue (FIFO).
+     * @param data The data to add.
+     */
+    void enqueue(T data);
+
+    /**
+     * Removes and returns the item from the front of the queue (FIFO).
+     * @return The data from the front of the queue.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    T dequeue() throws EmptyQueueException;
+
+    /**
+     * "Peeks" at the item in the front of the queue without removing it.
+     * @return The data from the front of the queue.
+     * @throws EmptyQueueException if the queue is empty.
+     */
+    T peek() throws EmptyQueueException;
+
+    /**
+     * Checks if the queue is empty.
+     * @return true if the queue is empty, false otherwise.
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the number of items in the queue.
+     * @return The size of the queue.
+     */
+    int size();
+}
@@ -0,0 +1,159 @@
+package ds;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A custom append-only column of strings, built from scratch, for values
+ * that rarely repeat (e.g. names). Instead of one String object per value
+ * (a header, a byte[] and its header), the UTF-8 bytes of all values are
+ * packed one after another into large shared pages, and each value only
+ * remembers where its bytes start and how long they are.
+ * get(index) decodes a new String on demand, so read values that are kept
+ * around cost the same as before; values that are only stored cost far less.
+ * It is *not* thread-safe; the owner must synchronize.
+ */
+public class StringColumn implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    // Bytes per page; a longer value gets a page of its own
+    private static final int PAGE_SIZE = 8 * 1024;
+
+    private transient byte[][] pages;
+    private transient int pageCount;
+    // Bytes already used in the last page
+    private transient int pageFill;
+    // Where each value starts: (page << 32) | offset
+    private transient LongColumn starts;
+    // The length of each value in bytes
+    private transient IntColumn lengths;
+
+    /**
+     * Constructor for a new, empty column.
+     */
+    public StringColumn() {
+        this.pages = new byte[4][];
+        this.pageCount = 0;
+        this.pageFill = 0;
+        this.starts = new LongColumn();
+        this.lengths = new IntColumn();
+    }
+
+    /**
+     * Adds a value after the last one.
+     * @param value The string to add (must not be null).
+     */
+    public void add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (pageCount == 0 || bytes.length > PAGE_SIZE - pageFill) {
+            newPage(Math.max(PAGE_SIZE, bytes.length));
+        }
+        int page = pageCount - 1;
+        System.arraycopy(bytes, 0, pages[page], pageFill, bytes.length);
+        starts.add(((long) page << 32) | pageFill);
+        lengths.add(bytes.length);
+        pageFill += bytes.length;
+    }
+
+    /**
+     * Decodes the value at the given index.
+     * @param index The index of the value (0 = first added).
+     * @return A new String with the value.
+     * @throws IndexOutOfBoundsException if there is no such value.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= lengths.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + lengths.size());
+        }
+        long start = starts.get(index);
+        return new String(pages[(int) (start >>> 32)], (int) start, lengths.get(index), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of values.
+     * @return The size of the column.
+     */
+    public int size() {
+        return lengths.size();
+    }
+
+    /**
+     * Returns a read-only copy of the values added so far, sharing the pages
+     * (O(size / 1024), see IntColumn.frozenCopy). Later adds only write past
+     * the copied bytes, so the copy stays correct while this column grows.
+     * @return A column with the same values; it must not be changed.
+     */
+    public StringColumn frozenCopy() {
+        StringColumn copy = new StringColumn();
+        copy.pages = pages.clone();
+        copy.pageCount = pageCount;
+        copy.pageFill = pageFill;
+        copy.starts = starts.frozenCopy();
+        copy.lengths = lengths.frozenCopy();
+        return copy;
+    }
+
+    private void newPage(int pageSize) {
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount * 2);
+        }
+        pages[pageCount++] = new byte[pageSize];
+        pageFill = 0; // A page made for one long value is exactly filled by it
+    }
+
+    /**
+     * Custom serialization: writes a version, the size, and then every value.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        int count = size();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            long start = starts.get(i);
+            int length = lengths.get(i);
+            out.writeInt(length);
+            out.write(pages[(int) (start >>> 32)], (int) start, length);
+        }
+    }
+
+    /**
+     * Custom deserialization: packs the values into fresh pages.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported StringColumn format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative StringColumn size: " + count);
+        }
+        pages = new byte[4][];
+        pageCount = 0;
+        pageFill = 0;
+        starts = new LongColumn();
+        lengths = new IntColumn();
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new InvalidObjectException("Negative StringColumn value length: " + length);
+            }
+            if (pageCount == 0 || length > PAGE_SIZE - pageFill) {
+                newPage(Math.max(PAGE_SIZE, length));
+            }
+            int page = pageCount - 1;
+            in.readFully(pages[page], pageFill, length);
+            starts.add(((long) page << 32) | pageFill);
+            lengths.add(length);
+            pageFill += length;
+        }
+    }
+}
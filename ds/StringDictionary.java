@@ -0,0 +1,175 @@
+package ds;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * A custom string "dictionary" (interning table), built from scratch.
+ * Every distinct string gets a small int id (0, 1, 2, ...), so a column can
+ * store the id (4 bytes) instead of its own copy of a repeated string such
+ * as a bank service type or an ailment.
+ * - get(id) is an array lookup, O(1)
+ * - intern(value) and idOf(value) use an open-addressing hash table of
+ *   ids (linear probing), O(1) on average with no boxed Integer keys
+ * It is *not* thread-safe; the owner must synchronize.
+ */
+public class StringDictionary implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    // The distinct strings; a string's id is its index here
+    private transient String[] values;
+    private transient int size;
+    // Hash table of (id + 1); 0 marks an empty slot. Its size is a power of two.
+    private transient int[] table;
+
+    /**
+     * Constructor for a new, empty dictionary.
+     */
+    public StringDictionary() {
+        this.values = new String[MIN_TABLE_SIZE / 2];
+        this.size = 0;
+        this.table = new int[MIN_TABLE_SIZE];
+    }
+
+    /**
+     * Returns the id of a string, adding it to the dictionary if it is new.
+     * @param value The string (must not be null).
+     * @return Its id.
+     */
+    public int intern(String value) {
+        int slot = slotOf(value);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int id = size++;
+        values[id] = value;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2); // Keep the table at most half full
+        }
+        return id;
+    }
+
+    /**
+     * Looks up the id of a string without adding it.
+     * @param value The string to look up.
+     * @return Its id, or -1 if it is not in the dictionary.
+     */
+    public int idOf(String value) {
+        if (value == null) {
+            return -1;
+        }
+        return table[slotOf(value)] - 1;
+    }
+
+    /**
+     * Returns the string with the given id.
+     * @param id An id returned by intern.
+     * @return The string.
+     * @throws IndexOutOfBoundsException if there is no such id.
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Id: " + id + ", Size: " + size);
+        }
+        return values[id];
+    }
+
+    /**
+     * Returns the number of distinct strings.
+     * @return The size of the dictionary.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only copy of the strings interned so far, in O(1): the
+     * array of strings is shared (later interns only write past the copied
+     * size, or move to a bigger array). The hash table is not copied, so
+     * only get, size and serialization may be used on the copy.
+     * @return A dictionary with the same ids; it must not be changed.
+     */
+    public StringDictionary frozenCopy() {
+        StringDictionary copy = new StringDictionary();
+        copy.values = values;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Finds the slot that holds the string, or the empty slot where it belongs.
+     */
+    private int slotOf(String value) {
+        int mask = table.length - 1;
+        int slot = spread(value.hashCode()) & mask;
+        while (table[slot] != 0 && !values[table[slot] - 1].equals(value)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(values[id].hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Mixes the high bits of the hash into the low bits used for the slot.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Custom serialization: writes a version, the size, and then every string in id order.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeUTF(values[id]);
+        }
+    }
+
+    /**
+     * Custom deserialization: reads the strings back, so each keeps its id, and rebuilds the table.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported StringDictionary format version: " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative StringDictionary size: " + count);
+        }
+        values = new String[Math.max(MIN_TABLE_SIZE / 2, count)];
+        size = 0;
+        table = new int[MIN_TABLE_SIZE];
+        for (int i = 0; i < count; i++) {
+            if (intern(in.readUTF()) != i) {
+                throw new InvalidObjectException("Duplicate string in StringDictionary");
+            }
+        }
+    }
+}
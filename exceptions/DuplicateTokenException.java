@@ -0,0 +1,31 @@
+package exceptions;
+
+/**
+ * A custom checked exception for our application.
+ * This is thrown when a person asks for a token with an ID / phone number
+ * that already took one today, and the queue is set to reject duplicates.
+ * It implements Serializable so it can be properly handled.
+ */
+public class DuplicateTokenException extends Exception implements java.io.Serializable {
+
+    private static final long serialVersionUID = 5840444252584651248L;
+
+    private final int earlierTokenNumber;
+
+    /**
+     * Constructor for the DuplicateTokenException.
+     * @param message The error message to be displayed to the user.
+     * @param earlierTokenNumber The token the same ID already took today.
+     */
+    public DuplicateTokenException(String message, int earlierTokenNumber) {
+        super(message);
+        this.earlierTokenNumber = earlierTokenNumber;
+    }
+
+    /**
+     * @return The token the same ID already took today.
+     */
+    public int getEarlierTokenNumber() {
+        return earlierTokenNumber;
+    }
+}
@@ -0,0 +1,105 @@
+package gui;
+
+import ds.LatencyHistogram;
+
+import java.awt.EventQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long the Swing Event Dispatch Thread (EDT) is blocked.
+ * While the EDT is busy with one long task (e.g. writing a file), clicks
+ * and repaints wait, and the window looks frozen.
+ * A daemon "probe" thread posts a tiny task to the EDT every PROBE_INTERVAL
+ * and records how long it waited before running. An idle EDT runs it within
+ * microseconds; a blocked one runs it only when the long task is over, so
+ * the delay is how long the window was frozen (to within the interval).
+ * Only one probe is out at a time, so a long stall is counted once, not once
+ * per interval.
+ * Delays go into a LatencyHistogram in microseconds.
+ *
+ * Started from App with "--edt-monitor"; bench.EdtBlockingBenchmark uses it
+ * to compare saving on the EDT with saving in the background.
+ */
+public class EdtStallMonitor {
+
+    private static final long PROBE_INTERVAL_MILLIS = 1;
+
+    private final LatencyHistogram delays = new LatencyHistogram();
+    // The post time of the probe that has not run yet (0 when none is out)
+    private final AtomicLong postedAt = new AtomicLong();
+    private final Thread prober;
+
+    /**
+     * Constructor for a monitor; it starts probing at once.
+     */
+    public EdtStallMonitor() {
+        this.prober = new Thread(this::probe, "edt-stall-monitor");
+        prober.setDaemon(true);
+        prober.start();
+    }
+
+    /**
+     * The probe thread: posts a probe, waits for it to run, then sleeps.
+     */
+    private void probe() {
+        Object ran = new Object();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                postedAt.set(System.nanoTime());
+                EventQueue.invokeLater(() -> {
+                    delays.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - postedAt.get()));
+                    synchronized (ran) {
+                        postedAt.set(0);
+                        ran.notifyAll();
+                    }
+                });
+                synchronized (ran) {
+                    while (postedAt.get() != 0) {
+                        ran.wait();
+                    }
+                }
+                Thread.sleep(PROBE_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // close() was called
+        }
+    }
+
+    /**
+     * Returns how long the EDT has been blocked right now, if a probe is waiting.
+     * @return The current stall in microseconds (0 if the EDT is keeping up).
+     */
+    public long getCurrentStallMicros() {
+        long posted = postedAt.get();
+        return posted == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - posted);
+    }
+
+    /**
+     * Returns the recorded probe delays.
+     * @return The histogram, in microseconds.
+     */
+    public LatencyHistogram getDelays() {
+        return delays;
+    }
+
+    /**
+     * Describes the recorded delays in one line, e.g. for the console on exit.
+     * @return The number of probes and the p50 / p99 / p99.9 / max delays in ms.
+     */
+    public String summary() {
+        return String.format("EDT probes: %d, delay p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms",
+                delays.getCount(),
+                delays.getValueAtPercentile(50) / 1000.0,
+                delays.getValueAtPercentile(99) / 1000.0,
+                delays.getValueAtPercentile(99.9) / 1000.0,
+                delays.getMax() / 1000.0);
+    }
+
+    /**
+     * Stops probing.
+     */
+    public void close() {
+        prober.interrupt();
+    }
+}
@@ -0,0 +1,114 @@
+package gui;
+
+import logic.HistoryStore;
+
+import java.util.Arrays;
+import javax.swing.AbstractListModel;
+
+/**
+ * A "virtual" ListModel that shows the served history straight from the
+ * HistoryStore, without copying it.
+ * A JList only asks for the rows that are visible on screen, so showing
+ * a history of any length costs the same, and a newly served token only
+ * adds one row (tokenAdded) instead of rebuilding the whole list.
+ * The JList asks for the visible rows again on every repaint (scrolling,
+ * a new row, another window passing over it). The store rebuilds a Token
+ * for each request, so the rows' text is kept in a small cache: a row is
+ * built once when it scrolls into view, and repainting it costs nothing.
+ * All methods must be called on the Swing Event Dispatch Thread.
+ */
+public class HistoryListModel extends AbstractListModel<String> {
+
+    // Swing models are Serializable, but this one is never saved
+    private static final long serialVersionUID = 1L;
+
+    // Rows kept; more than a screenful, so the visible rows never evict each other
+    private static final int CACHE_SIZE = 256;
+
+    private HistoryStore history;
+    // The number of rows the JList has been told about so far
+    private int size;
+    // Row text by position % CACHE_SIZE, and the position + 1 it belongs to (0 = empty)
+    private final String[] cachedRows = new String[CACHE_SIZE];
+    private final int[] cachedPositions = new int[CACHE_SIZE];
+
+    /**
+     * Constructor for a model showing the given history.
+     * @param history The store of served tokens.
+     */
+    public HistoryListModel(HistoryStore history) {
+        this.history = history;
+        this.size = history.getSize();
+    }
+
+    /**
+     * Shows a different history (e.g. after a reset) and redraws the list.
+     * @param newHistory The new store of served tokens.
+     */
+    public void setHistory(HistoryStore newHistory) {
+        int oldSize = size;
+        this.history = newHistory;
+        this.size = 0;
+        clearCache();
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        tokenAdded();
+    }
+
+    /**
+     * Tells the JList about tokens added to the history since the last call.
+     */
+    public void tokenAdded() {
+        int newSize = history.getSize();
+        if (newSize > size) {
+            int first = size;
+            size = newSize;
+            fireIntervalAdded(this, first, newSize - 1);
+        }
+    }
+
+    /**
+     * Tells the JList that the tokens of an earlier session were put in
+     * front of the history (after a snapshot's history finished loading).
+     */
+    public void historyRestored() {
+        int newSize = history.getSize();
+        clearCache(); // Every row has a new position
+        if (newSize > size) {
+            int added = newSize - size;
+            size = newSize;
+            fireIntervalAdded(this, 0, added - 1);
+        }
+        if (size > 0) {
+            fireContentsChanged(this, 0, size - 1); // Every row has moved down
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the text of a row, from the cache if it was shown recently. O(1).
+     * Tokens added later do not change earlier positions, so only a new
+     * history or restored earlier tokens empty the cache.
+     * @param index The row (a position in the history).
+     * @return The token's display text.
+     */
+    @Override
+    public String getElementAt(int index) {
+        int slot = index % CACHE_SIZE;
+        if (cachedPositions[slot] != index + 1) {
+            cachedRows[slot] = history.get(index).toString();
+            cachedPositions[slot] = index + 1;
+        }
+        return cachedRows[slot];
+    }
+
+    private void clearCache() {
+        Arrays.fill(cachedRows, null);
+        Arrays.fill(cachedPositions, 0);
+    }
+}
@@ -1,29 +1,43 @@
 package gui;
 
 // DS and Logic imports
+import ds.ArrayQueue;
 import ds.MyLinkedList;
+import ds.OffHeapTokenQueue;
+import ds.QueueADT;
+import exceptions.DuplicateTokenException;
 import exceptions.EmptyQueueException;
 import exceptions.InvalidInputException; 
+import logic.AppointmentBook;
+import logic.AppointmentClock;
+import logic.DuplicatePolicy;
+import logic.PersonFactory;
+import logic.QueueListener;
 import logic.QueueManager;
-import model.BankCustomer;
-import model.Patient;
+import model.Appointment;
 import model.Person;
 import model.Token;
+import persistence.PersistenceEngine;
 
 // Swing and AWT imports for GUI
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Font;
 import java.awt.GridLayout;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
-// File I/O imports for Serialization
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+// File I/O imports for the journal and snapshot files, and CSV import
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The main application window (GUI).
@@ -32,18 +46,38 @@ import java.io.ObjectOutputStream;
  */
 public class MainFrame extends JFrame {
 
+    // The most search results shown at once
+    private static final int SEARCH_LIMIT = 50;
+
     // The single instance of the "Brain"
     private QueueManager manager;
     // Stores whether we are in "Bank" or "Hospital" mode
     private String appMode;
+    // Journals every operation and writes periodic snapshots
+    private PersistenceEngine persistence;
+    // Moves booked appointments into the queue when their time comes
+    private AppointmentClock appointmentClock;
 
     // --- Swing Components ---
     private JLabel nowServingLabel;
     private JLabel nextTokenLabel;
-    private JTextArea historyArea;
+    private JList<String> historyList;
+    private HistoryListModel historyListModel;
     private JList<Token> waitingQueueList;
     private DefaultListModel<Token> waitingListModel;
+    private JList<Appointment> appointmentList;
+    // The open appointments, ordered by time
+    private DefaultListModel<Appointment> appointmentListModel;
+    // Applies each issue/serve event to the display, one change at a time
+    private final QueueListener displayUpdater = new DisplayUpdater();
     private JTextField customerNameField, customerIdField, customerDetailField;
+    // What to do when an ID asks for a second token today (one entry per DuplicatePolicy)
+    private JComboBox<String> duplicatePolicyBox;
+    // Typeahead search over waiting and served tokens
+    private JTextField searchField;
+    private DefaultListModel<String> searchResultsModel;
+    // Set while a refreshSearchLater is waiting to run (EDT only)
+    private boolean searchRefreshPending;
 
     /**
      * Constructor for the MainFrame.
@@ -60,7 +94,8 @@ public class MainFrame extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                saveData(); // Save on close
+                setVisible(false); // Close at once; the final snapshot is written below
+                closeData(); // Save on close
                 System.exit(0); // Then exit
             }
         });
@@ -83,8 +118,13 @@ public class MainFrame extends JFrame {
         add(createInputPanel(), BorderLayout.WEST);
         add(createDataDisplayPanel(), BorderLayout.CENTER);
 
-        // 5. Refresh the display with the loaded data
-        updateDisplay(); 
+        // 5. Publish the metrics over JMX, follow each change as it happens, then show the loaded data
+        // (listening first, so a history that finishes loading meanwhile is not missed)
+        manager.setDuplicatePolicy(selectedDuplicatePolicy());
+        manager.getMetrics().registerMBean(appMode);
+        manager.addQueueListener(displayUpdater);
+        reloadDisplay();
+        appointmentClock = new AppointmentClock(manager);
     }
 
     /**
@@ -119,7 +159,7 @@ public class MainFrame extends JFrame {
         mainInputPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         // A sub-panel for the text fields
-        JPanel formPanel = new JPanel(new GridLayout(3, 2, 5, 5));
+        JPanel formPanel = new JPanel(new GridLayout(4, 2, 5, 5));
         formPanel.setBorder(BorderFactory.createTitledBorder("Generate Token"));
         
         formPanel.add(new JLabel("Name:"));
@@ -136,10 +176,21 @@ public class MainFrame extends JFrame {
         customerDetailField = new JTextField();
         formPanel.add(customerDetailField);
 
+        // Stops one ID / phone number from holding several places in the queue
+        formPanel.add(new JLabel("Same ID again:"));
+        duplicatePolicyBox = new JComboBox<>(new String[] {"Allow", "Warn", "Reject", "Keep first token"});
+        duplicatePolicyBox.setSelectedIndex(DuplicatePolicy.WARN.ordinal());
+        duplicatePolicyBox.addActionListener(e -> manager.setDuplicatePolicy(selectedDuplicatePolicy()));
+        formPanel.add(duplicatePolicyBox);
+
         // Button to generate a new token
         JButton generateButton = new JButton("Generate New Token");
         generateButton.addActionListener(e -> generateToken());
 
+        // Button to issue tokens for a whole group from a CSV file
+        JButton importButton = new JButton("Import Group (CSV)...");
+        importButton.addActionListener(e -> importGroup());
+
         // Button to serve the next token
         JButton serveNextButton = new JButton("Serve Next Token");
         serveNextButton.setFont(new Font("Arial", Font.BOLD, 18));
@@ -147,6 +198,10 @@ public class MainFrame extends JFrame {
         serveNextButton.setForeground(Color.WHITE);
         serveNextButton.addActionListener(e -> serveNext());
 
+        // Button to call several waiting people to the counter at once
+        JButton serveGroupButton = new JButton("Serve Group...");
+        serveGroupButton.addActionListener(e -> serveGroup());
+
         // Button to reset all data
         JButton resetButton = new JButton("Reset Data / New Day");
         resetButton.setBackground(new Color(220, 53, 69)); // Red
@@ -154,13 +209,30 @@ public class MainFrame extends JFrame {
         resetButton.addActionListener(e -> resetData());
 
         // A sub-panel for the action buttons at the bottom
-        JPanel southPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        JPanel southPanel = new JPanel(new GridLayout(3, 1, 5, 5));
         southPanel.add(serveNextButton);
+        southPanel.add(serveGroupButton);
         southPanel.add(resetButton);
 
+        // Buttons for booked appointments (the form above holds the person's details)
+        JButton bookButton = new JButton("Book Appointment...");
+        bookButton.addActionListener(e -> bookAppointment());
+        JButton checkInButton = new JButton("Check In Appointment...");
+        checkInButton.addActionListener(e -> checkInAppointment());
+        JButton cancelAppointmentButton = new JButton("Cancel Appointment...");
+        cancelAppointmentButton.addActionListener(e -> cancelAppointment());
+
+        // A sub-panel for the ways of issuing tokens
+        JPanel issuePanel = new JPanel(new GridLayout(5, 1, 5, 5));
+        issuePanel.add(generateButton);
+        issuePanel.add(importButton);
+        issuePanel.add(bookButton);
+        issuePanel.add(checkInButton);
+        issuePanel.add(cancelAppointmentButton);
+
         // Add sub-panels to the main input panel
         mainInputPanel.add(formPanel, BorderLayout.NORTH);
-        mainInputPanel.add(generateButton, BorderLayout.CENTER);
+        mainInputPanel.add(issuePanel, BorderLayout.CENTER);
         mainInputPanel.add(southPanel, BorderLayout.SOUTH);
 
         return mainInputPanel;
@@ -174,19 +246,61 @@ public class MainFrame extends JFrame {
         // The waiting list uses a JList with a DefaultListModel
         waitingListModel = new DefaultListModel<>();
         waitingQueueList = new JList<>(waitingListModel);
+        waitingQueueList.setFixedCellHeight(18);
         
         JScrollPane waitingScrollPane = new JScrollPane(waitingQueueList);
         waitingScrollPane.setBorder(BorderFactory.createTitledBorder("Waiting in Queue"));
 
-        // The history list just uses a non-editable JTextArea
-        historyArea = new JTextArea();
-        historyArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-        historyArea.setEditable(false);
-        historyArea.setBorder(BorderFactory.createTitledBorder("Served History"));
-        JScrollPane historyScrollPane = new JScrollPane(historyArea);
+        // The appointments that have not joined the queue yet, on a second tab
+        appointmentListModel = new DefaultListModel<>();
+        appointmentList = new JList<>(appointmentListModel);
+        appointmentList.setFixedCellHeight(18);
+        JScrollPane appointmentScrollPane = new JScrollPane(appointmentList);
+        appointmentScrollPane.setBorder(BorderFactory.createTitledBorder("Booked Appointments"));
+        JTabbedPane queueTabs = new JTabbedPane();
+        queueTabs.addTab("Waiting", waitingScrollPane);
+        queueTabs.addTab("Appointments", appointmentScrollPane);
+
+        // Search as you type, on a third tab (each keystroke runs one indexed search)
+        searchField = new JTextField();
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refreshSearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refreshSearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refreshSearch();
+            }
+        });
+        searchResultsModel = new DefaultListModel<>();
+        JList<String> searchResults = new JList<>(searchResultsModel);
+        searchResults.setFixedCellHeight(18);
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 5));
+        searchPanel.setBorder(BorderFactory.createTitledBorder("Search by Name, ID / Phone or Details"));
+        searchPanel.add(searchField, BorderLayout.NORTH);
+        searchPanel.add(new JScrollPane(searchResults), BorderLayout.CENTER);
+        queueTabs.addTab("Search", searchPanel);
+
+        // The history list reads rows straight from the HistoryStore, and only
+        // for the rows on screen. A fixed row size stops the JList from
+        // measuring every row whenever one is added.
+        historyListModel = new HistoryListModel(manager.getHistoryList());
+        historyList = new JList<>(historyListModel);
+        historyList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        historyList.setFixedCellHeight(18);
+        historyList.setFixedCellWidth(700);
+        JScrollPane historyScrollPane = new JScrollPane(historyList);
+        historyScrollPane.setBorder(BorderFactory.createTitledBorder("Served History"));
         
         // JSplitPane divides the panel into two resizable sections
-        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, waitingScrollPane, historyScrollPane);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, queueTabs, historyScrollPane);
         splitPane.setDividerLocation(200); // Set initial split
         splitPane.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
         
@@ -206,57 +320,173 @@ public class MainFrame extends JFrame {
             String id = customerIdField.getText();
             String detail = customerDetailField.getText();
 
-            // --- Input Validation ---
+            // Validate the input and create the right kind of Person for the appMode
+            Person person = PersonFactory.createPerson(appMode, name, id, detail);
 
-            // Check if any field is empty
-            if (name.isEmpty() || id.isEmpty() || detail.isEmpty()) {
-                throw new InvalidInputException("Please fill in all fields.");
-            }
-            
-            // Check if name contains only letters and spaces
-            // This is a "regular expression"
-            if (!name.matches("[a-zA-Z\\s]+")) {
-                throw new InvalidInputException("Name must contain only letters and spaces.");
+            // Tell the "Brain" to create the token
+            Token newToken = manager.generateNewToken(person);
+            if (newToken.getPerson() != person) {
+                // MERGE gave back the token this ID is already waiting with
+                JOptionPane.showMessageDialog(this, "ID " + person.getId() + " is already waiting with token "
+                        + newToken.getTokenNumber() + ", so no new token was issued.",
+                        "Already Waiting", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, "Token Generated: " + newToken.getTokenNumber()
+                        + "\nEstimated wait: " + describeWait(newToken.getExpectedWaitMillis()),
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
             }
             
-            // Check if ID/Phone contains only numbers
-            if (!id.matches("\\d+")) {
-                throw new InvalidInputException("ID / Phone must contain only numbers.");
-            }
+            clearInputFields();
+            // No refresh needed: the DisplayUpdater has already added the token
 
-            // --- End Validation ---
+        } catch (InvalidInputException e) {
+            // If any validation check fails, this block runs
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
+        } catch (DuplicateTokenException e) {
+            // The policy is REJECT and this ID already took a token today
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Duplicate ID", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-            // Create the correct Person object based on the appMode
-            Person person;
-            if (appMode.equals("Bank")) {
-                person = new BankCustomer(name, id, detail);
-            } else {
-                person = new Patient(name, id, detail);
+    /**
+     * Action handler for the "Import Group (CSV)" button.
+     * Reads a CSV file of "name,id,detail" lines and issues the whole group
+     * at once: consecutive token numbers, one journal record and one refresh.
+     * Nothing is issued if any line is invalid.
+     */
+    private void importGroup() {
+        JFileChooser chooser = new JFileChooser(new File("."));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(chooser.getSelectedFile().toPath())) {
+            MyLinkedList<Person> people = PersonFactory.createPeopleFromCsv(appMode, reader);
+            if (people.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "The file has no people in it.", "Import", JOptionPane.INFORMATION_MESSAGE);
+                return;
             }
+            MyLinkedList<Token> tokens = manager.generateNewTokens(people);
+            int first = tokens.getFirst().getTokenNumber();
+            JOptionPane.showMessageDialog(this, "Tokens Generated: " + first + " to " + (first + tokens.getSize() - 1)
+                    + " (" + tokens.getSize() + " people)", "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (InvalidInputException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Could not read the file.\n" + e.getMessage(), "Import Failed", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-            // Tell the "Brain" to create the token
-            Token newToken = manager.generateNewToken(person);
-            JOptionPane.showMessageDialog(this, "Token Generated: " + newToken.getTokenNumber(), "Success", JOptionPane.INFORMATION_MESSAGE);
-            
+    /**
+     * Action handler for the "Book Appointment" button.
+     * Books the person in the form for a time the user types in; they join
+     * the queue at that time once they have checked in.
+     */
+    private void bookAppointment() {
+        try {
+            Person person = PersonFactory.createPerson(appMode, customerNameField.getText(),
+                    customerIdField.getText(), customerDetailField.getText());
+            String answer = JOptionPane.showInputDialog(this,
+                    "Appointment time (HH:mm for today, or yyyy-MM-dd HH:mm):", "Book Appointment",
+                    JOptionPane.QUESTION_MESSAGE);
+            if (answer == null) {
+                return; // Cancelled
+            }
+            Appointment appointment = manager.bookAppointment(person, AppointmentBook.parseTime(answer));
+            JOptionPane.showMessageDialog(this, "Appointment Booked: " + appointment.getAppointmentNumber()
+                    + "\nPlease check in on arrival.", "Success", JOptionPane.INFORMATION_MESSAGE);
             clearInputFields();
-            updateDisplay(); // Refresh the screen
+        } catch (InvalidInputException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
+    /**
+     * Action handler for the "Check In Appointment" button.
+     * Asks for the appointment number (the selected appointment is suggested).
+     */
+    private void checkInAppointment() {
+        Integer appointmentNumber = askAppointmentNumber("Check In");
+        if (appointmentNumber == null) {
+            return;
+        }
+        try {
+            Token token = manager.checkInAppointment(appointmentNumber);
+            String message = token == null
+                    ? "Checked in. The token will be issued at the appointment time."
+                    : "Token Generated: " + token.getTokenNumber()
+                            + "\nEstimated wait: " + describeWait(token.getExpectedWaitMillis());
+            JOptionPane.showMessageDialog(this, message, "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (InvalidInputException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Action handler for the "Cancel Appointment" button.
+     */
+    private void cancelAppointment() {
+        Integer appointmentNumber = askAppointmentNumber("Cancel Appointment");
+        if (appointmentNumber == null) {
+            return;
+        }
+        try {
+            manager.cancelAppointment(appointmentNumber);
         } catch (InvalidInputException e) {
-            // If any validation check fails, this block runs
             JOptionPane.showMessageDialog(this, e.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    /**
+     * Asks for an appointment number, suggesting the one selected in the list.
+     * @return The number, or null if the user cancelled or did not type a number.
+     */
+    private Integer askAppointmentNumber(String title) {
+        Appointment selected = appointmentList.getSelectedValue();
+        String answer = JOptionPane.showInputDialog(this, "Appointment number:",
+                selected == null ? "" : String.valueOf(selected.getAppointmentNumber()));
+        if (answer == null) {
+            return null; // Cancelled
+        }
+        try {
+            return Integer.parseInt(answer.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter an appointment number.", title, JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    /**
+     * Action handler for the "Serve Group" button.
+     * Asks how many people to call and serves up to that many at once.
+     */
+    private void serveGroup() {
+        String answer = JOptionPane.showInputDialog(this, "How many people should be called to the counter?", "2");
+        if (answer == null) {
+            return; // Cancelled
+        }
+        try {
+            int count = Integer.parseInt(answer.trim());
+            if (count < 1) {
+                throw new NumberFormatException();
+            }
+            manager.serveNextTokens(1, count);
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Please enter a whole number of 1 or more.", "Input Error", JOptionPane.ERROR_MESSAGE);
+        } catch (EmptyQueueException ex) {
+            JOptionPane.showMessageDialog(this, "No customers are currently waiting.", "Queue Empty", JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+
     /**
      * Action handler for the "Serve Next Token" button.
      * This is where we use our try-catch block for the EmptyQueueException.
      */
     private void serveNext() {
         try {
-            // Tell the "Brain" to serve a token
-            Token servingToken = manager.serveNextToken();
-            nowServingLabel.setText(String.valueOf(servingToken.getTokenNumber()));
-            updateDisplay(); // Refresh the screen
+            // Tell the "Brain" to serve a token.
+            // The DisplayUpdater moves it from the waiting list to the history.
+            manager.serveNextToken();
         } catch (EmptyQueueException ex) {
             // This code runs *only* if the manager throws our custom exception
             JOptionPane.showMessageDialog(this, "No customers are currently waiting.", "Queue Empty", JOptionPane.INFORMATION_MESSAGE);
@@ -266,52 +496,294 @@ public class MainFrame extends JFrame {
     /**
      * Action handler for the "Reset Data" button.
      * Asks for confirmation before wiping all data.
+     * Archiving the day and writing the new snapshot take O(history), so they
+     * run on a SwingWorker instead of the Event Dispatch Thread; the window
+     * ignores input until they are done, but keeps repainting.
      */
     private void resetData() {
         // Show a confirmation dialog
         int choice = JOptionPane.showConfirmDialog(this,
-                "Are you sure you want to clear all data and start a new day?\nThis cannot be undone.",
+                "Are you sure you want to clear all data and start a new day?\nServed tokens will be moved to the archive; waiting tokens will be lost."
+                        + "\nBooked appointments are kept.",
                 "Confirm Reset",
                 JOptionPane.YES_NO_OPTION,
                 JOptionPane.WARNING_MESSAGE);
 
         if (choice == JOptionPane.YES_OPTION) {
             // User confirmed. Create a new, empty "Brain".
-            manager = new QueueManager();
-            // Overwrite the save file with this new empty data.
-            saveData();
-            // Refresh the screen
-            updateDisplay();
-            nowServingLabel.setText("--");
-            JOptionPane.showMessageDialog(this, "Data has been reset. Ready for a new day.", "Reset Complete", JOptionPane.INFORMATION_MESSAGE);
+            QueueManager newManager = new QueueManager();
+            newManager.carryOverAppointments(manager);
+            if (persistence == null) {
+                finishReset(newManager);
+                return;
+            }
+            // Archive today's history, journal the new "Brain" and overwrite the save file with its empty data.
+            setEnabled(false);
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    persistence.startNewDay(newManager);
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    // Runs on the Event Dispatch Thread again
+                    setEnabled(true);
+                    setCursor(Cursor.getDefaultCursor());
+                    try {
+                        get();
+                        finishReset(newManager);
+                    } catch (ExecutionException e) {
+                        e.getCause().printStackTrace();
+                        manager.carryOverAppointments(newManager); // Nothing was reset, so take them back
+                        JOptionPane.showMessageDialog(MainFrame.this, "Could not archive today's tokens, so the data was not reset.\n"
+                                + e.getCause().getMessage(), "Reset Failed", JOptionPane.ERROR_MESSAGE);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }.execute();
         }
     }
 
     /**
-     * This is the "refresh" method. It updates all lists and labels
-     * with the current data from the QueueManager.
+     * Switches the screen over to the new day's manager once its data is saved.
+     * @param newManager The (usually empty) manager for the new day.
+     */
+    private void finishReset(QueueManager newManager) {
+        manager.removeQueueListener(displayUpdater);
+        manager = newManager;
+        manager.setDuplicatePolicy(selectedDuplicatePolicy());
+        manager.getMetrics().registerMBean(appMode);
+        manager.addQueueListener(displayUpdater);
+        appointmentClock.attach(manager);
+        // Rebuild the screen for the new, empty data
+        reloadDisplay();
+        nowServingLabel.setText("--");
+        JOptionPane.showMessageDialog(this, "Data has been reset. Ready for a new day.", "Reset Complete", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * This is the full "refresh" method. It rebuilds all lists and labels
+     * from the QueueManager. It costs O(n), so it is only used at startup
+     * and after a reset; normal operations go through the DisplayUpdater.
      */
-    private void updateDisplay() {
+    private void reloadDisplay() {
         // Update the "Next Token" label
         nextTokenLabel.setText(manager.getNextTokenInQueue());
 
         // Update the "Waiting in Queue" list
         waitingListModel.clear();
-        MyLinkedList<Token> waiting = manager.getWaitingList();
-        // This for-each loop uses our custom list's iterator (Traversal)
+        QueueADT<Token> waiting = manager.getWaitingList();
+        // This for-each loop uses our custom queue's iterator (Traversal)
         for (Token token : waiting) {
             waitingListModel.addElement(token);
         }
-        
-        // Update the "Served History" text area
-        historyArea.setText("");
-        MyLinkedList<Token> history = manager.getHistoryList();
-        // This for-each loop is also a traversal
-        for (Token token : history) {
-            historyArea.append(token.toString() + "\n");
+
+        // Point the "Served History" list at the (possibly new) history
+        historyListModel.setHistory(manager.getHistoryList());
+
+        appointmentListModel.clear();
+        for (Appointment appointment : manager.getOpenAppointments()) {
+            appointmentListModel.addElement(appointment);
+        }
+        refreshSearch();
+    }
+
+    /**
+     * Refreshes the search results once the current event is over. Listeners
+     * use this instead of refreshSearch: they run while the QueueManager is
+     * still in the middle of an issue or serve, and the first search has to
+     * wait for it to finish (see QueueManager.searchTokens). Several changes
+     * in a row (e.g. a burst from the server) cause only one refresh.
+     */
+    private void refreshSearchLater() {
+        if (!searchRefreshPending) {
+            searchRefreshPending = true;
+            SwingUtilities.invokeLater(() -> {
+                searchRefreshPending = false;
+                refreshSearch();
+            });
         }
     }
 
+    /**
+     * Shows the first SEARCH_LIMIT tokens that match the search text, waiting or served.
+     * The first search of a manager builds its index (see QueueManager.searchTokens);
+     * after that a search only looks at the matching entries, so it keeps up with typing.
+     */
+    private void refreshSearch() {
+        searchResultsModel.clear();
+        String query = searchField.getText();
+        if (query.isBlank()) {
+            return;
+        }
+        ArrayList<String> rows = new ArrayList<>();
+        for (Token token : manager.searchTokens(query, SEARCH_LIMIT)) {
+            String state = token.getServedTime() != 0 ? "Served at counter " + token.getServedByCounter() : "Waiting";
+            rows.add(state + " | " + token);
+        }
+        searchResultsModel.addAll(rows);
+    }
+
+    /**
+     * Listens to the QueueManager and applies each change to the display:
+     * an issued token adds one row, a served token moves one row.
+     * Events from other threads are handed over to the Swing EDT first.
+     */
+    private class DisplayUpdater implements QueueListener {
+
+        @Override
+        public void tokenIssued(Token token) {
+            runOnEdt(() -> {
+                waitingListModel.addElement(token);
+                nextTokenLabel.setText(manager.getNextTokenInQueue());
+                refreshSearchLater();
+            });
+        }
+
+        @Override
+        public void tokenServed(Token token) {
+            runOnEdt(() -> {
+                // The served token is normally the first row, so this is quick
+                waitingListModel.removeElement(token);
+                historyListModel.tokenAdded();
+                historyList.ensureIndexIsVisible(historyListModel.getSize() - 1);
+                nowServingLabel.setText(String.valueOf(token.getTokenNumber()));
+                nextTokenLabel.setText(manager.getNextTokenInQueue());
+                refreshSearchLater();
+            });
+        }
+
+        @Override
+        public void tokensIssued(MyLinkedList<Token> tokens) {
+            // One change for the whole group, so the list is redrawn once
+            ArrayList<Token> rows = new ArrayList<>(tokens.getSize());
+            for (Token token : tokens) {
+                rows.add(token);
+            }
+            runOnEdt(() -> {
+                waitingListModel.addAll(rows);
+                nextTokenLabel.setText(manager.getNextTokenInQueue());
+                refreshSearchLater();
+            });
+        }
+
+        @Override
+        public void tokensServed(MyLinkedList<Token> tokens) {
+            ArrayList<Token> served = new ArrayList<>(tokens.getSize());
+            for (Token token : tokens) {
+                served.add(token);
+            }
+            runOnEdt(() -> {
+                if (isFirstRows(served)) {
+                    waitingListModel.removeRange(0, served.size() - 1); // The usual case: one change
+                } else {
+                    for (Token token : served) {
+                        waitingListModel.removeElement(token);
+                    }
+                }
+                historyListModel.tokenAdded();
+                historyList.ensureIndexIsVisible(historyListModel.getSize() - 1);
+                nowServingLabel.setText(describeGroup(served));
+                nextTokenLabel.setText(manager.getNextTokenInQueue());
+                refreshSearchLater();
+            });
+        }
+
+        /**
+         * Checks whether the tokens are the first rows of the waiting list, in order.
+         */
+        private boolean isFirstRows(ArrayList<Token> tokens) {
+            if (tokens.size() > waitingListModel.getSize()) {
+                return false;
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                if (waitingListModel.getElementAt(i) != tokens.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void historyRestored() {
+            runOnEdt(() -> {
+                historyListModel.historyRestored();
+                historyList.ensureIndexIsVisible(historyListModel.getSize() - 1);
+                refreshSearchLater();
+            });
+        }
+
+        @Override
+        public void duplicateIssued(Token token, int earlierTokenNumber) {
+            // Always later, so the modal dialog never opens in the middle of an issue
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(MainFrame.this, "ID " + token.getPerson().getId()
+                    + " already took token " + earlierTokenNumber + " today; token " + token.getTokenNumber()
+                    + " was issued anyway.", "Duplicate ID", JOptionPane.WARNING_MESSAGE));
+        }
+
+        @Override
+        public void appointmentChanged(Appointment appointment) {
+            runOnEdt(() -> {
+                Appointment.Status status = appointment.getStatus();
+                if (status == Appointment.Status.BOOKED) {
+                    // Keep the list in time order
+                    int index = 0;
+                    while (index < appointmentListModel.getSize() && appointmentListModel.getElementAt(index)
+                            .getAppointmentTime() <= appointment.getAppointmentTime()) {
+                        index++;
+                    }
+                    appointmentListModel.add(index, appointment);
+                } else if (status == Appointment.Status.CHECKED_IN) {
+                    int index = appointmentListModel.indexOf(appointment);
+                    if (index >= 0) {
+                        appointmentListModel.set(index, appointment); // Redraws the row
+                    }
+                } else {
+                    appointmentListModel.removeElement(appointment);
+                }
+            });
+        }
+
+        private void runOnEdt(Runnable update) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                update.run();
+            } else {
+                SwingUtilities.invokeLater(update);
+            }
+        }
+    }
+
+    /**
+     * The DuplicatePolicy chosen in the "Same ID again" box.
+     */
+    private DuplicatePolicy selectedDuplicatePolicy() {
+        return DuplicatePolicy.values()[duplicatePolicyBox.getSelectedIndex()];
+    }
+
+    /**
+     * The "Now Serving" text for a group, e.g. "12-15" (or "12" for one token).
+     */
+    private static String describeGroup(ArrayList<Token> served) {
+        int first = served.get(0).getTokenNumber();
+        int last = served.get(served.size() - 1).getTokenNumber();
+        return served.size() == 1 ? String.valueOf(first) : first + "-" + last;
+    }
+
+    /**
+     * Turns an estimated wait into text for the customer, e.g. "about 12 minutes".
+     */
+    private static String describeWait(long millis) {
+        long minutes = Math.round(millis / 60_000.0);
+        if (minutes < 1) {
+            return "less than a minute";
+        }
+        return "about " + minutes + (minutes == 1 ? " minute" : " minutes");
+    }
+
     /**
      * A helper method to clear the input fields after token generation.
      */
@@ -322,29 +794,48 @@ public class MainFrame extends JFrame {
     }
 
     /**
-     * Saves the *entire* QueueManager object to a file using Serialization.
-     *
+     * Takes a final snapshot and closes the journal before exiting.
      */
-    private void saveData() {
-        // The filename is based on the appMode (e.g., "Bank_queue.dat")
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(appMode + "_queue.dat"))) {
-            oos.writeObject(manager);
+    private void closeData() {
+        if (appointmentClock != null) {
+            appointmentClock.close();
+        }
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.close();
         } catch (Exception e) {
             e.printStackTrace(); // Print error to console if saving fails
         }
     }
 
     /**
-     * Loads the QueueManager object from a file using Deserialization.
-     *
+     * Loads the QueueManager from the last snapshot and replays the journal.
+     * The file names are based on the appMode (e.g. "Bank_queue.dat").
+     * Only the waiting queue is loaded here; the served history fills in
+     * from a background thread (see DisplayUpdater.historyRestored).
      */
     private void loadData() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(appMode + "_queue.dat"))) {
-            // Read the object and cast it back to QueueManager
-            manager = (QueueManager) ois.readObject();
+        persistence = new PersistenceEngine(new File("."), appMode);
+        try {
+            manager = persistence.recover();
+            if (manager.getWaitingList() instanceof OffHeapTokenQueue) {
+                // Saved by a server started with --off-heap; the rows below are found by identity,
+                // and that queue builds a new Token on every read
+                manager.replaceWaitingQueue(new ArrayQueue<>());
+            }
+            if (persistence.getRecoveryWarning() != null) {
+                JOptionPane.showMessageDialog(null, persistence.getRecoveryWarning(),
+                        "Saved Data Problem", JOptionPane.WARNING_MESSAGE);
+            }
         } catch (Exception e) {
-            // If file not found or any other error, just create a new manager
-            manager = new QueueManager(); 
+            // If the journal cannot be used, run without saving
+            e.printStackTrace();
+            persistence = null;
+            manager = new QueueManager();
+            JOptionPane.showMessageDialog(null, "The saved data could not be loaded, so this session starts empty"
+                    + " and will not be saved.\n" + e, "Saved Data Problem", JOptionPane.ERROR_MESSAGE);
         }
     }
 }
@@ -0,0 +1,70 @@
+package logic;
+
+import exceptions.EmptyQueueException;
+
+import java.util.Comparator;
+
+/**
+ * Priority scheduling with "aging", so no lane starves.
+ * Each lane's front token gets a deadline:
+ *     issue time + priority * agingStepMillis
+ * and the token with the earliest deadline is served first. A token in a
+ * priority-2 lane therefore overtakes a newer priority-0 token once it has
+ * waited 2 * agingStepMillis longer.
+ * Tokens inside a lane are FIFO, so only each lane's front token matters:
+ * the non-empty lanes sit in a LaneHeap keyed by that deadline, which
+ * makes each serve O(log k) for k lanes.
+ */
+public class AgingPolicy implements SchedulingPolicy {
+
+    private static final long serialVersionUID = -4347056778198142401L;
+
+    private final long agingStepMillis;
+    private transient LaneHeap activeLanes;
+
+    /**
+     * Constructor for an aging policy.
+     * @param agingStepMillis How much extra waiting makes up for one priority level.
+     */
+    public AgingPolicy(long agingStepMillis) {
+        this.agingStepMillis = agingStepMillis;
+    }
+
+    @Override
+    public void reset() {
+        if (activeLanes != null) {
+            activeLanes.clear();
+        }
+        activeLanes = new LaneHeap(Comparator.comparingLong(this::deadline));
+    }
+
+    @Override
+    public void laneActivated(ServiceLane lane) {
+        activeLanes.add(lane);
+    }
+
+    @Override
+    public ServiceLane peekLane() {
+        return activeLanes.peek();
+    }
+
+    @Override
+    public void laneServed(ServiceLane lane) {
+        if (lane.isEmpty()) {
+            activeLanes.remove(lane);
+        } else {
+            activeLanes.update(lane); // The lane has a new front token
+        }
+    }
+
+    /**
+     * The deadline of a lane's front token (earlier is served first).
+     */
+    private long deadline(ServiceLane lane) {
+        try {
+            return lane.peek().getIssueTime() + lane.getPriority() * agingStepMillis;
+        } catch (EmptyQueueException e) {
+            return Long.MAX_VALUE; // Empty lanes are never in the heap
+        }
+    }
+}
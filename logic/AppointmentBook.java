@@ -0,0 +1,239 @@
+package logic;
+
+import ds.HierarchicalTimerWheel;
+import ds.MyLinkedList;
+import exceptions.InvalidInputException;
+import model.Appointment;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Holds the open appointments (booked slots) and decides when each one
+ * joins the queue or expires. It is used by QueueManager, which locks
+ * around every call; on its own it is *not* thread-safe.
+ *
+ * Every open appointment has exactly one timer in a HierarchicalTimerWheel:
+ * - until the appointment time, a timer for the appointment time. When it
+ *   fires, a checked-in person joins the queue; someone who has not arrived
+ *   gets a second timer, for the end of the grace period.
+ * - when that one fires and they still have not arrived, it is a no-show.
+ * Someone who checks in late (within the grace period) joins the queue at once.
+ * So the cost is O(1) per appointment, however many are booked, and advance
+ * only looks at the timers that are actually due.
+ *
+ * Only the appointments are saved; the timers are rebuilt on load.
+ */
+public class AppointmentBook implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+    // The precision of the timers
+    static final long TICK_MILLIS = 1000;
+    // How long after the appointment time a person may still check in
+    public static final long GRACE_MILLIS = 15 * 60 * 1000L;
+
+    // The open appointments by number, each with its current timer
+    private transient HashMap<Integer, HierarchicalTimerWheel.Timer<Appointment>> open;
+    private transient HierarchicalTimerWheel<Appointment> wheel;
+    // The number for the next appointment to be booked
+    private transient int nextAppointmentNumber;
+
+    /**
+     * Constructor for an empty book.
+     */
+    public AppointmentBook() {
+        this.nextAppointmentNumber = 1;
+        initTimers();
+    }
+
+    /**
+     * Parses an appointment time typed by a user: "HH:mm" for today, or
+     * "yyyy-MM-dd HH:mm" (a 'T' instead of the space also works).
+     * @param text The text to parse.
+     * @return The time in epoch milliseconds, in the system time zone.
+     * @throws InvalidInputException if the text is not a time in one of those forms.
+     */
+    public static long parseTime(String text) throws InvalidInputException {
+        if (text == null || text.trim().isEmpty()) {
+            throw new InvalidInputException("Appointment time cannot be empty.");
+        }
+        String trimmed = text.trim().replace(' ', 'T');
+        try {
+            LocalDateTime time = trimmed.indexOf('T') < 0
+                    ? LocalDate.now().atTime(LocalTime.parse(trimmed))
+                    : LocalDateTime.parse(trimmed);
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new InvalidInputException("Appointment time must look like 14:30 or 2025-03-01 14:30.");
+        }
+    }
+
+    private void initTimers() {
+        this.open = new HashMap<>();
+        this.wheel = new HierarchicalTimerWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    }
+
+    /**
+     * Books a new appointment. O(1).
+     * @param appointment The appointment, built with the number from takeNextNumber.
+     */
+    void book(Appointment appointment) {
+        open.put(appointment.getAppointmentNumber(),
+                wheel.schedule(appointment, appointment.getAppointmentTime()));
+    }
+
+    /**
+     * Hands out the number for a new appointment.
+     * @return The next appointment number.
+     */
+    int takeNextNumber() {
+        return nextAppointmentNumber++;
+    }
+
+    /**
+     * Finds an open appointment.
+     * @param appointmentNumber The number of the appointment.
+     * @return The appointment, or null if there is no open one with that number.
+     */
+    Appointment get(int appointmentNumber) {
+        HierarchicalTimerWheel.Timer<Appointment> timer = open.get(appointmentNumber);
+        return timer == null ? null : timer.getItem();
+    }
+
+    /**
+     * Marks that the person has arrived. O(1).
+     * @param appointment An open appointment.
+     * @param now The current time in epoch milliseconds.
+     * @return True if the person must join the queue now (the appointment time
+     *         has passed); the appointment is then closed and forgotten.
+     */
+    boolean checkIn(Appointment appointment, long now) {
+        appointment.setStatus(Appointment.Status.CHECKED_IN);
+        if (now < appointment.getAppointmentTime()) {
+            return false; // Early: joins when its timer fires
+        }
+        close(appointment);
+        return true;
+    }
+
+    /**
+     * Forgets an appointment and cancels its timer, e.g. when it is cancelled. O(1).
+     * @param appointment The appointment (nothing happens if it is not open).
+     */
+    void close(Appointment appointment) {
+        HierarchicalTimerWheel.Timer<Appointment> timer = open.remove(appointment.getAppointmentNumber());
+        if (timer != null) {
+            wheel.cancel(timer);
+        }
+    }
+
+    /**
+     * Fires every timer that is due by now.
+     * @param now The current time in epoch milliseconds.
+     * @param joining Receives the checked-in appointments whose time has come
+     *                (closed and forgotten; the caller issues their tokens).
+     * @param noShows Receives the appointments whose grace period has passed
+     *                (marked NO_SHOW, closed and forgotten).
+     */
+    void advance(long now, MyLinkedList<Appointment> joining, MyLinkedList<Appointment> noShows) {
+        MyLinkedList<Appointment> due = new MyLinkedList<>();
+        wheel.advanceTo(now, due);
+        for (Appointment appointment : due) {
+            if (appointment.getStatus() == Appointment.Status.CHECKED_IN) {
+                open.remove(appointment.getAppointmentNumber());
+                joining.addLast(appointment);
+                continue;
+            }
+            long expiry = appointment.getAppointmentTime() + GRACE_MILLIS;
+            if (now < expiry) {
+                // Not here yet: wait for the end of the grace period
+                open.put(appointment.getAppointmentNumber(), wheel.schedule(appointment, expiry));
+            } else {
+                appointment.setStatus(Appointment.Status.NO_SHOW);
+                open.remove(appointment.getAppointmentNumber());
+                noShows.addLast(appointment);
+            }
+        }
+    }
+
+    /**
+     * Puts back an appointment from an earlier session (e.g. from the journal)
+     * and makes sure later bookings get higher numbers.
+     * @param appointment The appointment, BOOKED or CHECKED_IN.
+     */
+    void restore(Appointment appointment) {
+        close(appointment); // In case it is already there
+        book(appointment);
+        nextAppointmentNumber = Math.max(nextAppointmentNumber, appointment.getAppointmentNumber() + 1);
+    }
+
+    /**
+     * Returns the open appointments, ordered by time (O(n log n); for display).
+     * @return A new list of the open appointments.
+     */
+    MyLinkedList<Appointment> listOpen() {
+        List<Appointment> sorted = new ArrayList<>(open.size());
+        for (HierarchicalTimerWheel.Timer<Appointment> timer : open.values()) {
+            sorted.add(timer.getItem());
+        }
+        sorted.sort(Comparator.comparingLong(Appointment::getAppointmentTime)
+                .thenComparingInt(Appointment::getAppointmentNumber));
+        MyLinkedList<Appointment> list = new MyLinkedList<>();
+        for (Appointment appointment : sorted) {
+            list.addLast(appointment);
+        }
+        return list;
+    }
+
+    /**
+     * @return The number of open appointments.
+     */
+    int size() {
+        return open.size();
+    }
+
+    /**
+     * Custom serialization: writes a version, the appointment counter and
+     * then the open appointments (the timers are not saved).
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(nextAppointmentNumber);
+        out.writeInt(open.size());
+        for (HierarchicalTimerWheel.Timer<Appointment> timer : open.values()) {
+            out.writeObject(timer.getItem());
+        }
+    }
+
+    /**
+     * Custom deserialization: reads the appointments and schedules their timers again.
+     * Any that became due while the app was closed fire on the next advance.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported AppointmentBook format version: " + version);
+        }
+        nextAppointmentNumber = in.readInt();
+        int count = in.readInt();
+        initTimers();
+        for (int i = 0; i < count; i++) {
+            book((Appointment) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package logic;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves booked appointments into the queue on time: one background thread
+ * calls QueueManager.advanceAppointments once per tick (every second).
+ * That is all the threads appointments need, however many are booked.
+ */
+public class AppointmentClock implements java.io.Closeable {
+
+    private final ScheduledExecutorService ticker;
+    // The manager whose appointments are advanced (replaced after "Reset Data / New Day")
+    private volatile QueueManager manager;
+
+    /**
+     * Constructor for a clock that starts ticking at once.
+     * @param manager The manager whose appointments to advance.
+     */
+    public AppointmentClock(QueueManager manager) {
+        this.manager = manager;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "appointment-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, 0, AppointmentBook.TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Advances the appointments of a different manager from now on.
+     * @param newManager The manager to advance.
+     */
+    public void attach(QueueManager newManager) {
+        this.manager = newManager;
+    }
+
+    /**
+     * Stops the clock, waiting for a tick that is running (so nothing is
+     * journaled after the final snapshot).
+     */
+    @Override
+    public void close() {
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void tick() {
+        try {
+            manager.advanceAppointments(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // Keep ticking: one failure must not stop every later appointment
+            e.printStackTrace();
+        }
+    }
+}
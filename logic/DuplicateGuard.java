@@ -0,0 +1,149 @@
+package logic;
+
+import ds.BloomFilter;
+import ds.MyLinkedList;
+import ds.QueueADT;
+import model.Token;
+
+import java.util.HashMap;
+
+/**
+ * Finds out, in O(1), whether an ID / phone number already took a token
+ * today, so one person cannot hold several places in the queue (see
+ * DuplicatePolicy). Looking through the waiting queue and the history for
+ * every new token would be O(n).
+ *
+ * Three structures answer it together:
+ * - a BloomFilter of every ID that took a token today (waiting or served).
+ *   Most people asking for a token are new, and for them it says
+ *   "definitely not" after a few bit checks, so nothing else is looked at.
+ * - a HashMap from ID to the token it has waiting, for the live queue
+ *   (and so that MERGE can give that token back)
+ * - the HistoryStore's person index, for IDs that were already served
+ * Only a "probably" from the filter goes on to the exact checks, which
+ * also weed out its rare false positives.
+ *
+ * The QueueManager keeps it up to date on every issue and serve. The filter
+ * cannot grow, so when more IDs than it was sized for have been added it is
+ * built again, twice as big, from the map and the history (O(n), amortized
+ * O(1) per token, like a growing array).
+ * All methods are synchronized, so counters on different threads can share it.
+ */
+class DuplicateGuard {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int LOCK_STRIPES = 64;
+
+    // Every ID that took a token today ("probably" may be wrong, "no" never is)
+    private BloomFilter issuedIds;
+    // ID -> the last token it took that is still waiting
+    private final HashMap<String, Token> waiting = new HashMap<>();
+    private final HistoryStore history;
+    // Issuing to the same ID takes turns on one of these; different IDs rarely wait for each other
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+
+    /**
+     * Constructor for a guard that already knows today's tokens.
+     * @param history The served tokens of today.
+     * @param waitingQueue The tokens waiting now.
+     */
+    DuplicateGuard(HistoryStore history, QueueADT<Token> waitingQueue) {
+        this.history = history;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        for (Token token : waitingQueue) {
+            waiting.put(token.getPerson().getId(), token);
+        }
+        rebuild(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns the lock that issuing to this ID must hold from the check to the
+     * issue, so two desks cannot both find the ID new and both issue.
+     * @param personId The ID / phone number.
+     * @return The lock object for it.
+     */
+    Object lockFor(String personId) {
+        int hash = personId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Finds the token this ID already took today. O(1).
+     * @param personId The ID / phone number.
+     * @return The number of its waiting token, or else of its last served one; 0 if it has none.
+     */
+    synchronized int findEarlierToken(String personId) {
+        if (!issuedIds.mightContain(personId)) {
+            return 0; // The usual case: a new person
+        }
+        Token token = waiting.get(personId);
+        if (token != null) {
+            return token.getTokenNumber();
+        }
+        return history.findLastNumberByPersonId(personId); // 0 if the filter was wrong
+    }
+
+    /**
+     * Returns the token this ID has waiting. O(1).
+     * @param personId The ID / phone number.
+     * @return Its last waiting token, or null if it has none.
+     */
+    synchronized Token findWaitingToken(String personId) {
+        return waiting.get(personId);
+    }
+
+    /**
+     * Notes a token that joined the waiting queue. O(1) amortized.
+     * @param token The new token.
+     */
+    synchronized void tokenIssued(Token token) {
+        String personId = token.getPerson().getId();
+        waiting.put(personId, token);
+        if (!issuedIds.mightContain(personId)) {
+            if (issuedIds.getCount() >= issuedIds.getCapacity()) {
+                rebuild(issuedIds.getCapacity() * 2); // Full: its false positive rate would climb
+            }
+            issuedIds.add(personId);
+        }
+    }
+
+    /**
+     * Notes that a token was served (its ID is in the history from now on). O(1).
+     * @param token The served token.
+     */
+    synchronized void tokenServed(Token token) {
+        String personId = token.getPerson().getId();
+        Token waitingToken = waiting.get(personId);
+        if (waitingToken != null && waitingToken.getTokenNumber() == token.getTokenNumber()) {
+            waiting.remove(personId);
+        }
+    }
+
+    /**
+     * Adds the IDs of a history that was loaded in the background. O(people in it).
+     */
+    synchronized void historyRestored() {
+        rebuild(issuedIds.getCapacity());
+    }
+
+    /**
+     * Fills a new filter with every ID in the history and the waiting map,
+     * sized for at least twice as many, so it does not fill up again soon.
+     */
+    private void rebuild(int minCapacity) {
+        MyLinkedList<String> servedIds = history.getPersonIds();
+        int known = servedIds.getSize() + waiting.size();
+        issuedIds = new BloomFilter(Math.max(minCapacity, known * 2), FALSE_POSITIVE_RATE);
+        for (String personId : servedIds) {
+            issuedIds.add(personId);
+        }
+        for (String personId : waiting.keySet()) {
+            if (!issuedIds.mightContain(personId)) {
+                issuedIds.add(personId);
+            }
+        }
+    }
+}
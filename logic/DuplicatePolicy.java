@@ -0,0 +1,28 @@
+package logic;
+
+/**
+ * What QueueManager.generateNewToken does when a person asks for a token
+ * with an ID / phone number that already took one today (still waiting,
+ * or already served).
+ * Only single tokens at a desk or kiosk are checked. Groups
+ * (generateNewTokens, e.g. a CSV import) and appointments are issued as
+ * booked, but their tokens count as taken for later requests.
+ */
+public enum DuplicatePolicy {
+
+    /** Issue the token without checking (the default; nothing is tracked). */
+    ALLOW,
+
+    /** Issue the token, but tell the listeners (see QueueListener.duplicateIssued). */
+    WARN,
+
+    /** Issue nothing and throw a DuplicateTokenException. */
+    REJECT,
+
+    /**
+     * Give back the person's token that is still waiting instead of a new one,
+     * so they keep their place. Someone whose token was already served gets
+     * a new one (there is nothing left to merge with), like WARN.
+     */
+    MERGE
+}
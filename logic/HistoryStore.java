@@ -0,0 +1,368 @@
+package logic;
+
+import ds.ColumnarTokenStore;
+import ds.IntColumn;
+import ds.MyLinkedList;
+import model.Token;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The store for every token that has already been served today.
+ * The tokens themselves live in a compact ColumnarTokenStore (primitive
+ * columns and string dictionaries, in served order), and Token objects are
+ * only built when one is asked for, so a long day of history costs a few
+ * dozen bytes per token instead of several objects.
+ * Lookups do not have to walk the whole history:
+ * - by token number: O(1), because token numbers are handed out one after another
+ * - by Person ID / phone: O(k) for k matches, following a chain of positions
+ *   that links each token to the same person's previous one
+ * - by issue time: O(log n + k), using positions sorted by issue time,
+ *   which are brought up to date on the first time query after new tokens
+ * It is Serializable so it can be saved together with the QueueManager.
+ * Only the columns are saved; the indexes are rebuilt on load.
+ * All methods are synchronized, so counters on different threads can add
+ * to the history while the GUI reads it.
+ */
+public class HistoryStore implements Iterable<Token>, java.io.Serializable {
+
+    private static final long serialVersionUID = 1884150291867453327L;
+    // Version of the saved format written by writeObject
+    // (version 1 wrote every Token object; it can still be read)
+    private static final int STREAM_VERSION = 2;
+
+    // The served tokens, in served order (position -> token fields)
+    private transient ColumnarTokenStore tokens;
+    // Token number -> position + 1 (0 = not served)
+    private transient IntColumn positionByNumber;
+    // Position -> position + 1 of the same person's previous token (0 = none)
+    private transient IntColumn previousSamePerson;
+    // Person key (see ColumnarTokenStore.getPersonKey) -> position + 1 of the person's last token
+    private transient IntColumn lastByPerson;
+    // Positions sorted by issue time; only the first issueIndexed positions are included
+    private transient int[] byIssueTime;
+    private transient int issueIndexed;
+
+    /**
+     * Constructor for a new, empty history store.
+     */
+    public HistoryStore() {
+        clear();
+    }
+
+    /**
+     * Resets the store (and its indexes) to empty.
+     */
+    private void clear() {
+        this.tokens = new ColumnarTokenStore();
+        this.positionByNumber = new IntColumn();
+        this.previousSamePerson = new IntColumn();
+        this.lastByPerson = new IntColumn();
+        this.byIssueTime = new int[0];
+        this.issueIndexed = 0;
+    }
+
+    /**
+     * Adds a served token to the end of the history and to every index.
+     * Only the token's values are kept, not the Token object itself.
+     * @param token The token that was just served.
+     */
+    public synchronized void addLast(Token token) {
+        index(tokens.add(token));
+    }
+
+    /**
+     * Adds the token at a position to the number and person indexes.
+     */
+    private void index(int position) {
+        positionByNumber.set(tokens.getTokenNumber(position), position + 1);
+        int personKey = tokens.getPersonKey(position);
+        previousSamePerson.set(position, lastByPerson.get(personKey));
+        lastByPerson.set(personKey, position + 1);
+    }
+
+    /**
+     * Puts the tokens of an earlier history in front of the tokens already here,
+     * e.g. when a snapshot's history finishes loading after startup and some
+     * tokens have been served in the meantime. Only those few newer tokens are
+     * copied (O(k)); the earlier store's columns and indexes are taken over.
+     * @param earlier The earlier history; it must not be used anywhere else afterwards.
+     */
+    public synchronized void restoreEarlier(HistoryStore earlier) {
+        synchronized (earlier) {
+            for (int position = 0; position < tokens.size(); position++) {
+                earlier.addLast(tokens.get(position));
+            }
+            this.tokens = earlier.tokens;
+            this.positionByNumber = earlier.positionByNumber;
+            this.previousSamePerson = earlier.previousSamePerson;
+            this.lastByPerson = earlier.lastByPerson;
+            this.byIssueTime = earlier.byIssueTime;
+            this.issueIndexed = earlier.issueIndexed;
+            earlier.clear();
+        }
+    }
+
+    /**
+     * Returns the token at a position in served order (0 = first served).
+     * The Token is rebuilt from the columns, so every call returns a new object.
+     * @param position The position in the history.
+     * @return The token at that position.
+     * @throws IndexOutOfBoundsException if the position is outside the history.
+     */
+    public synchronized Token get(int position) {
+        return tokens.get(position);
+    }
+
+    /**
+     * Finds a served token by its number in O(1).
+     * @param tokenNumber The number of the token to find.
+     * @return The Token, or null if it has not been served.
+     */
+    public synchronized Token findByNumber(int tokenNumber) {
+        int position = positionByNumber.get(tokenNumber) - 1;
+        return position < 0 ? null : tokens.get(position);
+    }
+
+    /**
+     * Finds the number of the last token the given person was served with, in O(1)
+     * (without building the Token).
+     * @param personId The ID / phone number of the person.
+     * @return The token number, or 0 if the person has not been served.
+     */
+    public synchronized int findLastNumberByPersonId(String personId) {
+        int personKey = tokens.personKeyOf(personId);
+        int position = personKey < 0 ? -1 : lastByPerson.get(personKey) - 1;
+        return position < 0 ? 0 : tokens.getTokenNumber(position);
+    }
+
+    /**
+     * Returns every different person ID in the history, e.g. to fill a filter.
+     * O(number of people), not O(number of tokens).
+     * @return The IDs, each once.
+     */
+    public synchronized MyLinkedList<String> getPersonIds() {
+        MyLinkedList<String> ids = new MyLinkedList<>();
+        for (int personKey = 0; personKey < tokens.getPersonCount(); personKey++) {
+            ids.addLast(tokens.getPersonId(personKey));
+        }
+        return ids;
+    }
+
+    /**
+     * Finds every served token taken by the given person.
+     * @param personId The ID / phone number of the person.
+     * @return The tokens in served order (an empty list if there are none).
+     */
+    public synchronized MyLinkedList<Token> findByPersonId(String personId) {
+        MyLinkedList<Token> result = new MyLinkedList<>();
+        int personKey = tokens.personKeyOf(personId);
+        if (personKey < 0) {
+            return result;
+        }
+        // The chain runs from the newest token back to the oldest
+        int[] positions = new int[8];
+        int count = 0;
+        for (int link = lastByPerson.get(personKey); link != 0; link = previousSamePerson.get(link - 1)) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = link - 1;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            result.addLast(tokens.get(positions[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Finds every served token that was issued within a time range.
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (inclusive).
+     * @return The tokens ordered by issue time (an empty list if there are none).
+     */
+    public synchronized MyLinkedList<Token> findIssuedBetween(Date from, Date to) {
+        updateIssueTimeIndex();
+        MyLinkedList<Token> result = new MyLinkedList<>();
+        long start = from.getTime();
+        long end = to.getTime();
+        // Binary search for the first position issued at or after "from"
+        int low = 0;
+        int high = issueIndexed;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.getIssueTime(byIssueTime[middle]) < start) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < issueIndexed && tokens.getIssueTime(byIssueTime[i]) <= end; i++) {
+            result.addLast(tokens.get(byIssueTime[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the positions served since the last time query to the issue time index:
+     * the new positions are sorted on their own and then merged with the old ones (O(n)).
+     * Both steps are stable, so tokens issued in the same millisecond stay in served order.
+     */
+    private void updateIssueTimeIndex() {
+        int size = tokens.size();
+        if (issueIndexed == size) {
+            return;
+        }
+        int added = size - issueIndexed;
+        int[] newPositions = new int[added];
+        long[] newTimes = new long[added];
+        for (int i = 0; i < added; i++) {
+            newPositions[i] = issueIndexed + i;
+            newTimes[i] = tokens.getIssueTime(issueIndexed + i);
+        }
+        mergeSort(newTimes, newPositions, new long[added], new int[added], 0, added);
+
+        int[] merged = new int[size];
+        int oldIndex = 0;
+        int newIndex = 0;
+        for (int i = 0; i < size; i++) {
+            if (newIndex == added || oldIndex < issueIndexed
+                    && tokens.getIssueTime(byIssueTime[oldIndex]) <= newTimes[newIndex]) {
+                merged[i] = byIssueTime[oldIndex++];
+            } else {
+                merged[i] = newPositions[newIndex++];
+            }
+        }
+        byIssueTime = merged;
+        issueIndexed = size;
+    }
+
+    /**
+     * A stable merge sort of positions by their issue times, on [from, to).
+     */
+    private static void mergeSort(long[] times, int[] positions, long[] timeBuffer, int[] positionBuffer,
+                                  int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(times, positions, timeBuffer, positionBuffer, from, middle);
+        mergeSort(times, positions, timeBuffer, positionBuffer, middle, to);
+        if (times[middle - 1] <= times[middle]) {
+            return; // Already in order (the usual case: tokens are mostly served in issue order)
+        }
+        System.arraycopy(times, from, timeBuffer, from, to - from);
+        System.arraycopy(positions, from, positionBuffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || left < middle && timeBuffer[left] <= timeBuffer[right]) {
+                times[i] = timeBuffer[left];
+                positions[i] = positionBuffer[left++];
+            } else {
+                times[i] = timeBuffer[right];
+                positions[i] = positionBuffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of served tokens.
+     * @return The size of the history.
+     */
+    public synchronized int getSize() {
+        return tokens.size();
+    }
+
+    /**
+     * Checks if the history is empty.
+     * @return true if no token has been served yet.
+     */
+    public synchronized boolean isEmpty() {
+        return tokens.size() == 0;
+    }
+
+    /**
+     * Returns a read-only copy of the tokens served so far, for writing a
+     * snapshot on another thread while tokens keep being served. The copy
+     * shares the columns (see ColumnarTokenStore.frozenCopy), so it is made in
+     * O(size / 1024) instead of O(size), and it has no indexes: only get,
+     * getSize, iteration and serialization may be used on it.
+     * @return A history with the same tokens; it must not be changed.
+     */
+    public synchronized HistoryStore frozenCopy() {
+        HistoryStore copy = new HistoryStore();
+        copy.tokens = tokens.frozenCopy();
+        return copy;
+    }
+
+    /**
+     * Provides an iterator over the history in served order.
+     * This allows the GUI to use a for-each loop on the history.
+     * The iterator covers the tokens served before it was created.
+     * @return An iterator for the history.
+     */
+    @Override
+    public Iterator<Token> iterator() {
+        final int end = getSize();
+        return new Iterator<Token>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < end;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(position++);
+            }
+        };
+    }
+
+    /**
+     * Custom serialization: writes a version and the columnar token store.
+     * The indexes are not written.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeObject(tokens);
+    }
+
+    /**
+     * Custom deserialization: reads the token store (or, for version 1, every
+     * token in served order) and rebuilds the indexes.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        clear();
+        if (version == 1) {
+            int count = in.readInt();
+            if (count < 0) {
+                throw new InvalidObjectException("Negative HistoryStore size: " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                addLast((Token) in.readObject());
+            }
+        } else if (version == STREAM_VERSION) {
+            tokens = (ColumnarTokenStore) in.readObject();
+            for (int position = 0; position < tokens.size(); position++) {
+                index(position);
+            }
+        } else {
+            throw new InvalidObjectException("Unsupported HistoryStore format version: " + version);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package logic;
+
+import java.util.Comparator;
+
+/**
+ * A binary min-heap of ServiceLanes, built from scratch.
+ * Each lane remembers its own position (heapIndex), so a lane can be
+ * removed or re-positioned after its key changes in O(log k),
+ * where k is the number of lanes in the heap.
+ */
+class LaneHeap {
+
+    private final Comparator<ServiceLane> order;
+    private ServiceLane[] heap = new ServiceLane[8];
+    private int size;
+
+    /**
+     * Constructor for a new, empty heap.
+     * @param order Decides which lane is "smallest" (served first).
+     */
+    LaneHeap(Comparator<ServiceLane> order) {
+        this.order = order;
+    }
+
+    /**
+     * Returns the smallest lane without removing it.
+     * @return The smallest lane, or null if the heap is empty.
+     */
+    ServiceLane peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    /**
+     * Adds a lane to the heap.
+     * @param lane The lane to add (must not already be in a heap).
+     */
+    void add(ServiceLane lane) {
+        if (size == heap.length) {
+            ServiceLane[] bigger = new ServiceLane[heap.length * 2];
+            System.arraycopy(heap, 0, bigger, 0, size);
+            heap = bigger;
+        }
+        heap[size] = lane;
+        lane.heapIndex = size;
+        size++;
+        siftUp(lane.heapIndex);
+    }
+
+    /**
+     * Removes a lane from anywhere in the heap.
+     * @param lane The lane to remove.
+     */
+    void remove(ServiceLane lane) {
+        int index = lane.heapIndex;
+        if (index < 0) {
+            return;
+        }
+        size--;
+        ServiceLane last = heap[size];
+        heap[size] = null;
+        lane.heapIndex = -1;
+        if (index < size) {
+            heap[index] = last;
+            last.heapIndex = index;
+            update(last);
+        }
+    }
+
+    /**
+     * Moves a lane to its correct position after its key has changed.
+     * @param lane The lane whose key changed.
+     */
+    void update(ServiceLane lane) {
+        siftUp(lane.heapIndex);
+        siftDown(lane.heapIndex);
+    }
+
+    /**
+     * Removes every lane from the heap.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].heapIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (order.compare(heap[index], heap[parent]) >= 0) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && order.compare(heap[left], heap[smallest]) < 0) {
+                smallest = left;
+            }
+            if (right < size && order.compare(heap[right], heap[smallest]) < 0) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        ServiceLane temp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = temp;
+        heap[a].heapIndex = a;
+        heap[b].heapIndex = b;
+    }
+}
@@ -0,0 +1,140 @@
+package logic;
+
+import ds.MyLinkedList;
+import exceptions.InvalidInputException;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Checks the details typed in for a new token and creates the right kind
+ * of Person for the app mode.
+ * Both the Swing form (MainFrame) and the headless server use it, so a
+ * token is accepted or rejected by exactly the same rules everywhere,
+ * including for people imported from a CSV file.
+ */
+public final class PersonFactory {
+
+    // The most characters allowed in each field (the journal stores every
+    // field with a two-byte length, see persistence.TokenRecordCodec)
+    public static final int MAX_FIELD_LENGTH = 200;
+
+    private PersonFactory() {
+        // Only static helpers, so no instances
+    }
+
+    /**
+     * Validates the input and creates a BankCustomer ("Bank" mode) or a Patient (any other mode).
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param name The person's name (letters and spaces only).
+     * @param id The person's ID / phone number (digits only).
+     * @param detail The service type (Bank) or ailment (Hospital).
+     * @return The new Person.
+     * @throws InvalidInputException if a field is missing, too long or has the wrong format.
+     */
+    public static Person createPerson(String appMode, String name, String id, String detail)
+            throws InvalidInputException {
+        // Check if any field is empty
+        if (name == null || id == null || detail == null
+                || name.isEmpty() || id.isEmpty() || detail.isEmpty()) {
+            throw new InvalidInputException("Please fill in all fields.");
+        }
+        if (name.length() > MAX_FIELD_LENGTH || id.length() > MAX_FIELD_LENGTH || detail.length() > MAX_FIELD_LENGTH) {
+            throw new InvalidInputException("Each field can be at most " + MAX_FIELD_LENGTH + " characters long.");
+        }
+
+        // Check if name contains only letters and spaces
+        // This is a "regular expression"
+        if (!name.matches("[a-zA-Z\\s]+")) {
+            throw new InvalidInputException("Name must contain only letters and spaces.");
+        }
+
+        // Check if ID/Phone contains only numbers
+        if (!id.matches("\\d+")) {
+            throw new InvalidInputException("ID / Phone must contain only numbers.");
+        }
+
+        // Create the correct Person object based on the appMode
+        if (appMode.equals("Bank")) {
+            return new BankCustomer(name, id, detail);
+        }
+        return new Patient(name, id, detail);
+    }
+
+    /**
+     * Reads a list of people from CSV text, one person per line:
+     *     name,id,detail
+     * A first line of "name,id,detail" (a header) and blank lines are skipped.
+     * A field may be put in double quotes to contain commas ("Lee, Ann"), with
+     * "" for a quote inside it. Every line is checked like createPerson, and
+     * nothing is returned unless every line is valid, so a bad file issues no tokens.
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param reader The CSV text.
+     * @return The people, in file order.
+     * @throws IOException if the text cannot be read.
+     * @throws InvalidInputException if a line is badly formed or has invalid details (the message names the line).
+     */
+    public static MyLinkedList<Person> createPeopleFromCsv(String appMode, BufferedReader reader)
+            throws IOException, InvalidInputException {
+        MyLinkedList<Person> people = new MyLinkedList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = splitCsvLine(line, lineNumber);
+            if (lineNumber == 1 && fields[0].trim().equalsIgnoreCase("name")) {
+                continue; // Header line
+            }
+            try {
+                people.addLast(createPerson(appMode, fields[0].trim(), fields[1].trim(), fields[2].trim()));
+            } catch (InvalidInputException e) {
+                throw new InvalidInputException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return people;
+    }
+
+    /**
+     * Splits one CSV line into exactly three fields.
+     */
+    private static String[] splitCsvLine(String line, int lineNumber) throws InvalidInputException {
+        String[] fields = new String[3];
+        int count = 0;
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"'); // "" inside quotes is one quote
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                if (count == 2) {
+                    throw new InvalidInputException("Line " + lineNumber + ": expected 3 fields (name,id,detail).");
+                }
+                fields[count++] = field.toString();
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted || count != 2) {
+            throw new InvalidInputException("Line " + lineNumber + ": expected 3 fields (name,id,detail).");
+        }
+        fields[2] = field.toString();
+        return fields;
+    }
+}
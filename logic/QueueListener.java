@@ -0,0 +1,82 @@
+package logic;
+
+import ds.MyLinkedList;
+import model.Appointment;
+import model.Token;
+
+/**
+ * A listener that is told about every change the QueueManager makes.
+ * Other parts of the app (such as persistence) implement this interface
+ * so they can react to each operation as it happens, instead of
+ * re-reading the whole state later.
+ */
+public interface QueueListener {
+
+    /**
+     * Called after a new token has been added to the waiting queue.
+     * @param token The newly issued token.
+     */
+    void tokenIssued(Token token);
+
+    /**
+     * Called after a token has been served and moved to the history.
+     * @param token The token that was just served.
+     */
+    void tokenServed(Token token);
+
+    /**
+     * Called once after a group of tokens has been issued together
+     * (QueueManager.generateNewTokens), instead of tokenIssued for each.
+     * By default it calls tokenIssued for each token; override it to handle
+     * the group in one go (e.g. one journal record, one screen refresh).
+     * @param tokens The newly issued tokens, in order.
+     */
+    default void tokensIssued(MyLinkedList<Token> tokens) {
+        for (Token token : tokens) {
+            tokenIssued(token);
+        }
+    }
+
+    /**
+     * Called once after a group of tokens has been served together
+     * (QueueManager.serveNextTokens), instead of tokenServed for each.
+     * By default it calls tokenServed for each token.
+     * @param tokens The served tokens, in the order they were served.
+     */
+    default void tokensServed(MyLinkedList<Token> tokens) {
+        for (Token token : tokens) {
+            tokenServed(token);
+        }
+    }
+
+    /**
+     * Called after the served tokens of an earlier session have been put
+     * back in front of the history (e.g. when a snapshot's history has
+     * finished loading in the background). Does nothing by default.
+     */
+    default void historyRestored() {
+    }
+
+    /**
+     * Called after an appointment was booked, checked in, or closed (it joined
+     * the queue, was a no-show, or was cancelled); see Appointment.getStatus.
+     * When an appointment joins the queue, tokenIssued is called first for its
+     * new token. Does nothing by default.
+     * @param appointment The appointment, in its new state.
+     */
+    default void appointmentChanged(Appointment appointment) {
+    }
+
+    /**
+     * Called when generateNewToken issued a token to an ID that already took
+     * one today, because the DuplicatePolicy is WARN (or MERGE, and the earlier
+     * token was already served). tokenIssued has been called first for it.
+     * Unlike the other callbacks it comes after the manager has released its
+     * locks, so it may take its time (other desks are not held up).
+     * Does nothing by default.
+     * @param token The new token.
+     * @param earlierTokenNumber The token the same ID took before.
+     */
+    default void duplicateIssued(Token token, int earlierTokenNumber) {
+    }
+}
@@ -1,93 +1,879 @@
 package logic;
 
+import ds.ArrayQueue;
 import ds.MyLinkedList;
-import ds.MyQueue;
+import ds.QueueADT;
+import exceptions.DuplicateTokenException;
 import exceptions.EmptyQueueException;
+import exceptions.InvalidInputException;
+import model.Appointment;
 import model.Person;
 import model.Token;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Clock;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * The "Brain" of the application. This class is the *only* class
  * that should modify the data structures.
  * The GUI talks to this class, and this class talks to the data.
  * This separation of logic from GUI is a core OOP principle.
  * It is Serializable so the entire state of the app can be saved.
+ * The saved form starts with a version number so older files can be recognised.
+ *
+ * It is safe to issue and serve tokens from several threads at once when it
+ * is built with a thread-safe queue such as ConcurrentQueue. Token numbers
+ * come from an atomic counter, so they stay unique and without gaps.
+ * A token can be served at one desk while the desk that issued it is still
+ * telling the listeners; the serve then waits for that, so every listener
+ * (e.g. the journal) always hears about a token's issue before its serve.
+ *
+ * Besides walk-ins it keeps booked appointments (see AppointmentBook), which
+ * join the waiting queue at their appointment time. Something must call
+ * advanceAppointments regularly for that to happen, e.g. an AppointmentClock.
+ *
+ * Issue and serve times come from a java.time.Clock, the system clock unless
+ * setClock replaces it; a simulation (bench.LoadSimulator) uses a clock of its own.
+ *
+ * setDuplicatePolicy can stop one ID / phone number from taking several
+ * tokens in a day (see DuplicatePolicy and DuplicateGuard).
  */
 public class QueueManager implements java.io.Serializable {
 
+    // Fixed, so saved files stay readable when methods are added or changed;
+    // changes to the saved data itself are tracked by STREAM_VERSION instead
+    private static final long serialVersionUID = 3959758052139554811L;
+    // Version of the saved format written by writeObject
+    // (2 added the appointment book; version 1 files are still read)
+    private static final int STREAM_VERSION = 2;
+
     // The queue for people currently waiting
-    private MyQueue<Token> waitingQueue;
-    // The list for people who have already been served
-    private MyLinkedList<Token> historyList;
+    private transient QueueADT<Token> waitingQueue;
+    // The indexed store for people who have already been served
+    private transient HistoryStore historyList;
     // The number for the next token to be generated
-    private int nextTokenNumber;
+    private transient AtomicInteger nextTokenNumber;
+    // Booked appointments that have not joined the queue yet (guarded by the exclusive lock)
+    private transient AppointmentBook appointmentBook;
+    // Listeners told about every operation (not saved with the manager)
+    private transient CopyOnWriteArrayList<QueueListener> listeners;
+    // Issue and serve share the read lock (they may run together);
+    // the write lock gives one thread a consistent view, e.g. for a snapshot
+    private transient ReentrantReadWriteLock stateLock;
+    // Wait/service times, throughput and queue depth (not saved with the manager)
+    private transient QueueMetrics metrics;
+    // Predicts the wait of each new token (rebuilt from the waiting queue on load)
+    private transient WaitEstimator waitEstimator;
+    // Where issue and serve times come from (not saved; the system clock after loading)
+    private transient volatile Clock clock;
+    // Word search over waiting and served tokens; null until the first search builds it
+    private transient volatile TokenSearchIndex searchIndex;
+    // What to do when an ID asks for a second token today (not saved; ALLOW after loading)
+    private transient volatile DuplicatePolicy duplicatePolicy;
+    // Knows which IDs took a token today; null while the policy is ALLOW
+    private transient volatile DuplicateGuard duplicateGuard;
+    // Numbers of tokens already in the queue whose issue the listeners have not all heard of yet
+    private transient Set<Integer> issuesInProgress;
 
     /**
      * Constructor for a new QueueManager, initializing empty data structures.
+     * It uses an ArrayQueue, which is the fastest choice for a single desk.
      */
     public QueueManager() {
-        this.waitingQueue = new MyQueue<>();
-        this.historyList = new MyLinkedList<>();
-        this.nextTokenNumber = 1;
+        this(new ArrayQueue<>());
+    }
+
+    /**
+     * Constructor for a new QueueManager that uses the given (empty) waiting queue.
+     * Any QueueADT works (MyQueue, ArrayQueue, ...); pass a ConcurrentQueue
+     * when several threads will issue and serve tokens.
+     * @param waitingQueue The queue implementation to use for waiting tokens.
+     */
+    public QueueManager(QueueADT<Token> waitingQueue) {
+        this.waitingQueue = waitingQueue;
+        this.historyList = new HistoryStore();
+        this.nextTokenNumber = new AtomicInteger(1);
+        this.appointmentBook = new AppointmentBook();
+        initTransientState();
+    }
+
+    /**
+     * Creates the parts that are never saved (listeners, the lock, the metrics
+     * and the wait estimator, which counts the tokens already waiting).
+     */
+    private void initTransientState() {
+        this.clock = Clock.systemUTC();
+        this.duplicatePolicy = DuplicatePolicy.ALLOW;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.issuesInProgress = ConcurrentHashMap.newKeySet();
+        this.stateLock = new ReentrantReadWriteLock();
+        this.metrics = new QueueMetrics(waitingQueue.size());
+        this.waitEstimator = new WaitEstimator();
+        for (Token token : waitingQueue) {
+            waitEstimator.tokenQueued(token.getPerson().getServiceClass());
+        }
     }
 
     /**
      * Creates a new token, adds it to the waiting queue, and increments the token counter.
+     * The token carries an estimate of when it will be served (see WaitEstimator).
+     * If the person's ID already took a token today, the DuplicatePolicy decides
+     * what happens; that check is O(1) (see DuplicateGuard).
      * @param person The Person (Patient or BankCustomer) for whom to generate a token.
-     * @return The newly created Token.
+     * @return The newly created Token; with MERGE, possibly the person's earlier waiting token.
+     * @throws DuplicateTokenException if the ID already took a token today and the policy is REJECT.
+     */
+    public Token generateNewToken(Person person) throws DuplicateTokenException {
+        Token newToken;
+        int earlier;
+        stateLock.readLock().lock();
+        try {
+            DuplicateGuard guard = duplicateGuard;
+            if (guard == null) {
+                return issueToken(person);
+            }
+            String personId = person.getId();
+            // Held from the check to the issue, so two desks cannot both let the same ID through
+            synchronized (guard.lockFor(personId)) {
+                earlier = guard.findEarlierToken(personId);
+                if (earlier == 0) {
+                    return issueToken(person);
+                }
+                metrics.duplicateFound();
+                DuplicatePolicy policy = duplicatePolicy;
+                if (policy == DuplicatePolicy.REJECT) {
+                    throw new DuplicateTokenException("ID " + personId + " already took token " + earlier
+                            + " today.", earlier);
+                }
+                if (policy == DuplicatePolicy.MERGE) {
+                    Token waitingToken = guard.findWaitingToken(personId);
+                    if (waitingToken != null) {
+                        return waitingToken; // They keep their place
+                    }
+                }
+                newToken = issueToken(person);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        // Told only after both locks are released, since a listener may take its
+        // time (e.g. show a dialog) and must not hold up the other desks meanwhile
+        for (QueueListener listener : listeners) {
+            listener.duplicateIssued(newToken, earlier);
+        }
+        return newToken;
+    }
+
+    /**
+     * Issues one token and tells the listeners. The caller holds the read or exclusive lock.
      */
-    public Token generateNewToken(Person person) {
-        Token newToken = new Token(nextTokenNumber, person);
-        waitingQueue.enqueue(newToken);
-        nextTokenNumber++;
+    private Token issueToken(Person person) {
+        // getAndIncrement hands each caller its own number, even under contention
+        Token newToken = new Token(nextTokenNumber.getAndIncrement(), person, clock.millis());
+        newToken.setExpectedServeTime(newToken.getIssueTime()
+                + waitEstimator.tokenIssued(person.getServiceClass()));
+        // Another desk may dequeue the token as soon as it is enqueued; its serve
+        // waits (see awaitIssued) until everyone below has heard of the issue
+        issuesInProgress.add(newToken.getTokenNumber());
+        try {
+            waitingQueue.enqueue(newToken);
+            metrics.tokenIssued();
+            TokenSearchIndex index = searchIndex;
+            if (index != null) {
+                index.tokenIssued(newToken);
+            }
+            DuplicateGuard guard = duplicateGuard;
+            if (guard != null) {
+                guard.tokenIssued(newToken);
+            }
+            for (QueueListener listener : listeners) {
+                listener.tokenIssued(newToken);
+            }
+        } finally {
+            issuesInProgress.remove(newToken.getTokenNumber());
+        }
         return newToken;
     }
 
     /**
-     * Serves the next person in the queue.
-     * Removes the token from the waiting queue and adds it to the history list.
+     * Waits until the issue of a token just dequeued has been told to the
+     * indexes and listeners, so a serve is never reported before its issue
+     * (the journal would otherwise replay a serve of a token not yet issued).
+     * The wait is short: the issuing thread is only running its listeners.
+     */
+    private void awaitIssued(Token token) {
+        while (issuesInProgress.contains(token.getTokenNumber())) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Issues tokens for a group that arrives together (a tour, an appointment
+     * block, a pre-booked list). The group gets one contiguous range of token
+     * numbers, reserved in one step, and joins the queue as one block: other
+     * issuing and serving pause until the whole group is in (O(n) for n people).
+     * Listeners are told once, with the whole group (see QueueListener.tokensIssued),
+     * so it is saved as one journal record and shown with one refresh.
+     * The DuplicatePolicy is *not* applied: a group is one token per person,
+     * decided in advance, so none is rejected or merged. Its tokens do count
+     * as taken today, so the same IDs asking again at a desk are caught.
+     * @param people The people to issue tokens for, in order.
+     * @return The new tokens, in the same order (empty if the list was empty).
+     */
+    public MyLinkedList<Token> generateNewTokens(MyLinkedList<Person> people) {
+        MyLinkedList<Token> issued = new MyLinkedList<>();
+        if (people.isEmpty()) {
+            return issued;
+        }
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            int tokenNumber = nextTokenNumber.getAndAdd(people.getSize());
+            long issueTime = clock.millis();
+            TokenSearchIndex index = searchIndex;
+            DuplicateGuard guard = duplicateGuard;
+            for (Person person : people) {
+                Token newToken = new Token(tokenNumber++, person, issueTime);
+                newToken.setExpectedServeTime(issueTime + waitEstimator.tokenIssued(person.getServiceClass()));
+                waitingQueue.enqueue(newToken);
+                metrics.tokenIssued();
+                if (index != null) {
+                    index.tokenIssued(newToken);
+                }
+                if (guard != null) {
+                    guard.tokenIssued(newToken);
+                }
+                issued.addLast(newToken);
+            }
+            for (QueueListener listener : listeners) {
+                listener.tokensIssued(issued);
+            }
+            return issued;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Serves the next person in the queue at the default counter (counter 1).
      * @return The Token that was just served.
      * @throws EmptyQueueException if the waiting queue is empty.
      */
     public Token serveNextToken() throws EmptyQueueException {
-        // Dequeue will throw the exception if the queue is empty
-        Token servingToken = waitingQueue.dequeue();
-        
-        // If successful, add to history
-        historyList.addLast(servingToken);
+        return serveNextToken(1);
+    }
+
+    /**
+     * Serves the next person in the queue at the given service counter.
+     * Removes the token from the waiting queue and adds it to the history list.
+     * With a TokenScheduler as the waiting queue, its policy picks the token.
+     * @param counterId The number of the counter that is serving (1, 2, ...).
+     * @return The Token that was just served.
+     * @throws EmptyQueueException if the waiting queue is empty.
+     */
+    public Token serveNextToken(int counterId) throws EmptyQueueException {
+        stateLock.readLock().lock();
+        try {
+            // Dequeue will throw the exception if the queue is empty
+            Token servingToken = waitingQueue.dequeue();
+            awaitIssued(servingToken);
+            servingToken.markServed(counterId, clock.millis());
+            metrics.tokenServed(counterId, servingToken.getIssueTime(), servingToken.getServedTime());
+            waitEstimator.tokenServed(servingToken.getPerson().getServiceClass(), counterId,
+                    servingToken.getIssueTime(), servingToken.getServedTime());
+
+            // If successful, add to history
+            historyList.addLast(servingToken);
+            TokenSearchIndex index = searchIndex;
+            if (index != null) {
+                index.tokenServed(servingToken);
+            }
+            DuplicateGuard guard = duplicateGuard;
+            if (guard != null) {
+                guard.tokenServed(servingToken);
+            }
+            for (QueueListener listener : listeners) {
+                listener.tokenServed(servingToken);
+            }
+            return servingToken;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Serves up to maxCount people together at one counter, e.g. to call a
+     * whole group to the desk. They are served in queue order (or the
+     * TokenScheduler's order) with the same serve time. For the measurements
+     * the group counts as one customer: only the first token's serve gives a
+     * service time sample, so the group does not look like n instant services.
+     * Listeners are told once, with the whole group (see QueueListener.tokensServed).
+     * @param counterId The number of the counter that is serving (1, 2, ...).
+     * @param maxCount The most tokens to serve, 1 or more (fewer are served if fewer are waiting).
+     * @return The served tokens, in the order they were served.
+     * @throws EmptyQueueException if the waiting queue is empty.
+     */
+    public MyLinkedList<Token> serveNextTokens(int counterId, int maxCount) throws EmptyQueueException {
+        if (maxCount < 1) {
+            throw new IllegalArgumentException("maxCount must be 1 or more: " + maxCount);
+        }
+        stateLock.readLock().lock();
+        try {
+            MyLinkedList<Token> served = new MyLinkedList<>();
+            long servedTime = clock.millis();
+            TokenSearchIndex index = searchIndex;
+            DuplicateGuard guard = duplicateGuard;
+            // The first dequeue throws the exception if the queue is empty
+            Token servingToken = waitingQueue.dequeue();
+            while (true) {
+                awaitIssued(servingToken);
+                servingToken.markServed(counterId, servedTime);
+                String serviceClass = servingToken.getPerson().getServiceClass();
+                if (served.isEmpty()) {
+                    metrics.tokenServed(counterId, servingToken.getIssueTime(), servedTime);
+                    waitEstimator.tokenServed(serviceClass, counterId, servingToken.getIssueTime(), servedTime);
+                } else {
+                    metrics.tokenServedWithGroup(counterId, servingToken.getIssueTime(), servedTime);
+                    waitEstimator.tokenDequeued(serviceClass);
+                }
+                historyList.addLast(servingToken);
+                if (index != null) {
+                    index.tokenServed(servingToken);
+                }
+                if (guard != null) {
+                    guard.tokenServed(servingToken);
+                }
+                served.addLast(servingToken);
+                if (served.getSize() >= maxCount) {
+                    break;
+                }
+                try {
+                    servingToken = waitingQueue.dequeue();
+                } catch (EmptyQueueException e) {
+                    break; // Fewer waiting than asked for
+                }
+            }
+            for (QueueListener listener : listeners) {
+                listener.tokensServed(served);
+            }
+            return served;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Books an appointment: the person joins the waiting queue at the given
+     * time if they have checked in by then (see checkInAppointment), and is
+     * dropped as a no-show if they have not arrived within
+     * AppointmentBook.GRACE_MILLIS after it. O(1).
+     * @param person The Person (Patient or BankCustomer) who is expected.
+     * @param appointmentTime When they should join the queue, in epoch milliseconds.
+     * @return The new appointment, with its number.
+     * @throws InvalidInputException if the appointment time has already passed
+     *                               (by the manager's clock).
+     */
+    public Appointment bookAppointment(Person person, long appointmentTime) throws InvalidInputException {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            if (appointmentTime < clock.millis()) {
+                throw new InvalidInputException("The appointment time has already passed.");
+            }
+            Appointment appointment = new Appointment(appointmentBook.takeNextNumber(), person, appointmentTime);
+            appointmentBook.book(appointment);
+            for (QueueListener listener : listeners) {
+                listener.appointmentChanged(appointment);
+            }
+            return appointment;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Records that the person with an appointment has arrived. Before the
+     * appointment time they join the queue when it comes; at or after it
+     * (within the grace period) they get a token right away. O(1).
+     * The DuplicatePolicy is *not* applied to appointment tokens (here or
+     * in advanceAppointments): the booking already reserved the visit. The
+     * token counts as taken today, so a walk-in token for the same ID is caught.
+     * @param appointmentNumber The number of the appointment.
+     * @return The new token, or null if the person joins the queue later.
+     * @throws InvalidInputException if there is no open appointment with that number,
+     *                               or the person has already checked in.
+     */
+    public Token checkInAppointment(int appointmentNumber) throws InvalidInputException {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            Appointment appointment = requireOpenAppointment(appointmentNumber);
+            if (appointment.getStatus() == Appointment.Status.CHECKED_IN) {
+                throw new InvalidInputException("Appointment " + appointmentNumber + " has already checked in.");
+            }
+            Token token = null;
+            if (appointmentBook.checkIn(appointment, clock.millis())) {
+                token = issueToken(appointment.getPerson());
+                appointment.markQueued(token.getTokenNumber());
+            }
+            for (QueueListener listener : listeners) {
+                listener.appointmentChanged(appointment);
+            }
+            return token;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Cancels an open appointment. O(1).
+     * @param appointmentNumber The number of the appointment.
+     * @throws InvalidInputException if there is no open appointment with that number.
+     */
+    public void cancelAppointment(int appointmentNumber) throws InvalidInputException {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            Appointment appointment = requireOpenAppointment(appointmentNumber);
+            appointmentBook.close(appointment);
+            appointment.setStatus(Appointment.Status.CANCELLED);
+            for (QueueListener listener : listeners) {
+                listener.appointmentChanged(appointment);
+            }
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Lets every appointment that is due by now join the queue (if checked in)
+     * or expire (if the grace period is over). Only the due appointments are
+     * looked at, so this is cheap to call every second however many are booked.
+     * Issuing and serving pause while it runs.
+     * @param now The current time in epoch milliseconds.
+     * @return The tokens issued for appointments (empty if none were due).
+     */
+    public MyLinkedList<Token> advanceAppointments(long now) {
+        MyLinkedList<Token> issued = new MyLinkedList<>();
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            if (appointmentBook.size() == 0) {
+                return issued;
+            }
+            MyLinkedList<Appointment> joining = new MyLinkedList<>();
+            MyLinkedList<Appointment> noShows = new MyLinkedList<>();
+            appointmentBook.advance(now, joining, noShows);
+            for (Appointment appointment : joining) {
+                // The token is journaled before the appointment is closed: a crash
+                // in between could issue it twice on replay, but never lose it
+                Token token = issueToken(appointment.getPerson());
+                appointment.markQueued(token.getTokenNumber());
+                issued.addLast(token);
+                for (QueueListener listener : listeners) {
+                    listener.appointmentChanged(appointment);
+                }
+            }
+            for (Appointment appointment : noShows) {
+                for (QueueListener listener : listeners) {
+                    listener.appointmentChanged(appointment);
+                }
+            }
+            return issued;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Returns the open appointments (booked or checked in), ordered by time.
+     * @return A new list of the open appointments.
+     */
+    public MyLinkedList<Appointment> getOpenAppointments() {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            return appointmentBook.listOpen();
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Moves every open appointment of another manager into this one, e.g. so
+     * future bookings survive "Reset Data / New Day". The other manager is left
+     * with an empty book. Listeners are not told (take a snapshot afterwards).
+     * @param previous The manager to take the appointments from.
+     */
+    public void carryOverAppointments(QueueManager previous) {
+        Lock theirs = previous.exclusiveLock();
+        theirs.lock();
+        try {
+            Lock exclusive = exclusiveLock();
+            exclusive.lock();
+            try {
+                AppointmentBook book = previous.appointmentBook;
+                previous.appointmentBook = appointmentBook;
+                appointmentBook = book;
+            } finally {
+                exclusive.unlock();
+            }
+        } finally {
+            theirs.unlock();
+        }
+    }
+
+    /**
+     * Finds an open appointment (booked or checked in) by its number. O(1).
+     * @param appointmentNumber The number of the appointment.
+     * @return The appointment, or null if there is no open one with that number.
+     */
+    public Appointment findOpenAppointment(int appointmentNumber) {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            return appointmentBook.get(appointmentNumber);
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    private Appointment requireOpenAppointment(int appointmentNumber) throws InvalidInputException {
+        Appointment appointment = appointmentBook.get(appointmentNumber);
+        if (appointment == null) {
+            throw new InvalidInputException("There is no open appointment " + appointmentNumber + ".");
+        }
+        return appointment;
+    }
+
+    /**
+     * Puts back an appointment change from an earlier session, e.g. while
+     * replaying the journal. Listeners are *not* notified.
+     * @param appointment The appointment in its new state: BOOKED adds it,
+     *                    CHECKED_IN marks the open one, a final state removes it.
+     */
+    public void restoreAppointment(Appointment appointment) {
+        Appointment existing = appointmentBook.get(appointment.getAppointmentNumber());
+        if (appointment.getStatus() == Appointment.Status.BOOKED) {
+            appointmentBook.restore(appointment);
+        } else if (existing == null) {
+            return; // Already closed in the snapshot
+        } else if (appointment.getStatus() == Appointment.Status.CHECKED_IN) {
+            existing.setStatus(Appointment.Status.CHECKED_IN);
+        } else {
+            appointmentBook.close(existing);
+        }
+    }
+
+    /**
+     * Puts back a token that was issued in an earlier session, e.g. while
+     * replaying the journal on startup. Listeners are *not* notified,
+     * because the operation has already been recorded.
+     * @param token The token to add to the back of the waiting queue.
+     */
+    public void restoreIssuedToken(Token token) {
+        waitingQueue.enqueue(token);
+        nextTokenNumber.accumulateAndGet(token.getTokenNumber() + 1, Math::max);
+        metrics.tokensRestored(1);
+        waitEstimator.tokenQueued(token.getPerson().getServiceClass());
+        TokenSearchIndex index = searchIndex;
+        if (index != null) {
+            index.tokenIssued(token);
+        }
+        DuplicateGuard guard = duplicateGuard;
+        if (guard != null) {
+            guard.tokenIssued(token);
+        }
+    }
+
+    /**
+     * Serves a token again for an operation from an earlier session,
+     * e.g. while replaying the journal on startup. Listeners are *not* notified.
+     * Normally the token is at the front of the queue. When several threads
+     * were working, the journal order can differ slightly from the queue
+     * order, so otherwise the queue is rebuilt without the token (O(n)).
+     * @param tokenNumber The number of the token that was served.
+     * @param counterId The counter that served it.
+     * @param servedTime When it was served, in epoch milliseconds.
+     * @return The Token that was moved to the history, or null if it is not waiting.
+     */
+    public Token restoreServedToken(int tokenNumber, int counterId, long servedTime) {
+        Token servingToken = null;
+        try {
+            if (waitingQueue.peek().getTokenNumber() == tokenNumber) {
+                servingToken = waitingQueue.dequeue();
+            } else {
+                int count = waitingQueue.size();
+                for (int i = 0; i < count; i++) {
+                    Token token = waitingQueue.dequeue();
+                    if (servingToken == null && token.getTokenNumber() == tokenNumber) {
+                        servingToken = token;
+                    } else {
+                        waitingQueue.enqueue(token);
+                    }
+                }
+            }
+        } catch (EmptyQueueException e) {
+            // Nothing waiting, so the token cannot be found
+        }
+        if (servingToken != null) {
+            servingToken.markServed(counterId, servedTime);
+            historyList.addLast(servingToken);
+            metrics.tokensRestored(-1);
+            waitEstimator.tokenDequeued(servingToken.getPerson().getServiceClass());
+            TokenSearchIndex index = searchIndex;
+            if (index != null) {
+                index.tokenServed(servingToken);
+            }
+            DuplicateGuard guard = duplicateGuard;
+            if (guard != null) {
+                guard.tokenServed(servingToken);
+            }
+        }
         return servingToken;
     }
 
     /**
-     * Finds a token in the *history* list by its number.
-     * This is a **Linear Search** algorithm.
+     * Puts the served tokens of an earlier session in front of the history,
+     * e.g. once a snapshot's history has been loaded in the background, and
+     * tells the listeners. Tokens served since startup stay at the end.
+     * Issuing and serving pause while the two are joined.
+     * @param earlier The history loaded from the snapshot (taken over by this manager).
+     */
+    public void restoreEarlierHistory(HistoryStore earlier) {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            historyList.restoreEarlier(earlier);
+            searchIndex = null; // Built again, with the earlier tokens, on the next search
+            DuplicateGuard guard = duplicateGuard;
+            if (guard != null) {
+                guard.historyRestored();
+            }
+        } finally {
+            exclusive.unlock();
+        }
+        for (QueueListener listener : listeners) {
+            listener.historyRestored();
+        }
+    }
+
+    /**
+     * Moves every waiting token, in order, into a different queue implementation
+     * and uses that queue from now on. For example, the headless server switches
+     * a recovered manager to a ConcurrentQueue before handling requests in parallel.
+     * Issuing and serving are paused while the tokens are moved (O(n)).
+     * @param newQueue The (empty) queue to use for waiting tokens.
+     */
+    public void replaceWaitingQueue(QueueADT<Token> newQueue) {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            for (Token token : waitingQueue) {
+                newQueue.enqueue(token);
+            }
+            waitingQueue = newQueue;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Returns the lock that pauses all issuing and serving while it is held.
+     * Persistence uses it to take a snapshot that matches the journal exactly.
+     * @return The exclusive (write) lock of this manager.
+     */
+    public Lock exclusiveLock() {
+        return stateLock.writeLock();
+    }
+
+    /**
+     * Replaces the clock that issue and serve times are taken from, e.g. with
+     * simulated time. Set it before the first token; times from two different
+     * clocks in one queue make no sense together.
+     * @param clock The clock to use from now on.
+     */
+    public void setClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * Chooses what generateNewToken does when an ID already took a token today
+     * (groups and appointments are not checked, but count as taken).
+     * Turning the check on files every token of today (O(n), with issuing and
+     * serving paused); from then on each issue and serve updates it in O(1).
+     * The policy is not saved; a loaded manager starts with ALLOW.
+     * @param policy The policy to use from now on.
+     */
+    public void setDuplicatePolicy(DuplicatePolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            if (policy == DuplicatePolicy.ALLOW) {
+                duplicateGuard = null; // Nothing to check, so nothing to keep up to date
+            } else if (duplicateGuard == null) {
+                duplicateGuard = new DuplicateGuard(historyList, waitingQueue);
+            }
+            duplicatePolicy = policy;
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * @return What generateNewToken does when an ID already took a token today.
+     */
+    public DuplicatePolicy getDuplicatePolicy() {
+        return duplicatePolicy;
+    }
+
+    /**
+     * Returns the live metrics of this manager (wait and service times,
+     * throughput and queue depth). They start empty whenever the manager is
+     * created or loaded.
+     * @return The metrics.
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the estimator that predicts how long a new token will wait.
+     * @return The wait estimator.
+     */
+    public WaitEstimator getWaitEstimator() {
+        return waitEstimator;
+    }
+
+    /**
+     * Registers a listener to be told about every issue and serve operation.
+     * @param listener The listener to add.
+     */
+    public void addQueueListener(QueueListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added with addQueueListener.
+     * @param listener The listener to remove.
+     */
+    public void removeQueueListener(QueueListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Finds a token in the *history* by its number.
+     * Token numbers are handed out one after another, so the history keeps
+     * them in an array indexed by number and this lookup is O(1).
      * @param tokenNumber The number of the token to find.
      * @return The Token, or null if not found.
      */
     public Token findTokenInHistory(int tokenNumber) {
-        // We use the for-each loop (iterator) to traverse the list
-        for (Token token : historyList) {
-            if (token.getTokenNumber() == tokenNumber) {
-                return token;
+        return historyList.findByNumber(tokenNumber);
+    }
+
+    /**
+     * Finds every served token taken by one person.
+     * @param personId The ID / phone number of the person.
+     * @return The served tokens for that person, in served order.
+     */
+    public MyLinkedList<Token> findTokensByPersonId(String personId) {
+        return historyList.findByPersonId(personId);
+    }
+
+    /**
+     * Finds every served token that was issued within a time range.
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (inclusive).
+     * @return The served tokens, ordered by issue time.
+     */
+    public MyLinkedList<Token> findTokensIssuedBetween(Date from, Date to) {
+        return historyList.findIssuedBetween(from, to);
+    }
+
+    /**
+     * Finds waiting and served tokens by the start of a word in the person's
+     * name, ID / phone number or details, e.g. "ann", "555" or "lee fev"
+     * (every word typed must match; case is ignored). Meant for typeahead:
+     * it looks only at the index entries for the words typed, never at every
+     * token, and stops at the limit (see TokenSearchIndex).
+     * The index is built on the first search (O(n) for n tokens today, with
+     * issuing and serving paused) and kept up to date from then on.
+     * A QueueListener must not search from inside its callback: the issue or
+     * serve it is told about still holds the shared lock, which cannot be
+     * upgraded to the exclusive lock a build needs (search later instead,
+     * e.g. with SwingUtilities.invokeLater).
+     * @param query The text typed.
+     * @param limit The most tokens to return.
+     * @return The matching tokens, ordered by the matching word.
+     * @throws IllegalStateException if the index must be built and this thread
+     *                               is inside an issue or serve (a listener).
+     */
+    public MyLinkedList<Token> searchTokens(String query, int limit) {
+        TokenSearchIndex index = searchIndex;
+        if (index == null) {
+            index = buildSearchIndex();
+        }
+        return index.search(query, limit);
+    }
+
+    /**
+     * Files every token of today in a new search index, while nothing is issued or served.
+     */
+    private TokenSearchIndex buildSearchIndex() {
+        if (stateLock.getReadHoldCount() > 0 && !stateLock.isWriteLockedByCurrentThread()) {
+            // Waiting for the exclusive lock here would wait for ourselves forever
+            throw new IllegalStateException("The search index cannot be built from inside a QueueListener");
+        }
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            if (searchIndex == null) {
+                TokenSearchIndex index = new TokenSearchIndex(historyList);
+                for (Token token : historyList) {
+                    index.tokenFromHistory(token);
+                }
+                for (Token token : waitingQueue) {
+                    index.tokenIssued(token);
+                }
+                searchIndex = index;
             }
+            return searchIndex;
+        } finally {
+            exclusive.unlock();
         }
-        return null; // Not found
     }
 
     /**
      * Getter for the history list, for display in the GUI.
-     * @return The list of served tokens.
+     * @return The store of served tokens.
      */
-    public MyLinkedList<Token> getHistoryList() {
+    public HistoryStore getHistoryList() {
         return historyList;
     }
 
     /**
      * Getter for the waiting list, for display in the GUI.
-     * @return The list of waiting tokens.
+     * @return The queue of waiting tokens (iterates from front to back).
      */
-    public MyLinkedList<Token> getWaitingList() {
-        return waitingQueue.getList();
+    public QueueADT<Token> getWaitingList() {
+        return waitingQueue;
     }
     
     /**
@@ -102,4 +888,34 @@ public class QueueManager implements java.io.Serializable {
             return "--";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Custom serialization: writes a version, the token counter,
+     * and then the waiting queue, history and appointment book (which stream their own items).
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(nextTokenNumber.get());
+        out.writeObject(waitingQueue);
+        out.writeObject(historyList);
+        out.writeObject(appointmentBook);
+    }
+
+    /**
+     * Custom deserialization: reads the fields back in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != 1 && version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported QueueManager format version: " + version);
+        }
+        nextTokenNumber = new AtomicInteger(in.readInt());
+        waitingQueue = (QueueADT<Token>) in.readObject();
+        historyList = (HistoryStore) in.readObject();
+        appointmentBook = version >= 2 ? (AppointmentBook) in.readObject() : new AppointmentBook();
+        initTransientState();
+    }
+}
@@ -0,0 +1,292 @@
+package logic;
+
+import ds.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live measurements of one QueueManager, updated on every issue and serve:
+ * - wait time: from a token's issue to its serve
+ * - service time: how long a counter spent on one customer, i.e. the time
+ *   between two serves at the same counter. It is only measured when the
+ *   next customer was already waiting, so time a counter sat idle is not counted.
+ * - throughput: tokens issued, tokens served (in total and per counter)
+ * - queue depth: tokens waiting now, and the highest it has been
+ * Updates use atomic counters and LatencyHistograms only, so they take no
+ * locks and allocate nothing.
+ * Read it through JMX (see registerMBean) or as text (see writeText).
+ */
+public class QueueMetrics implements QueueMetricsMBean {
+
+    // Counters 1 to MAX_COUNTERS are counted one by one (higher ones only in the totals)
+    public static final int MAX_COUNTERS = 64;
+
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLongArray servedPerCounter = new AtomicLongArray(MAX_COUNTERS);
+    private final AtomicLong duplicates = new AtomicLong();
+    // When each counter last served a token (0 = not yet)
+    private final AtomicLongArray lastServedAt = new AtomicLongArray(MAX_COUNTERS);
+    // Depth = waiting at the start + issued - served + restoredChange (not a counter of its own,
+    // so serving costs one atomic update less)
+    private final int initialDepth;
+    private final AtomicInteger restoredChange = new AtomicInteger();
+    private final AtomicInteger peakDepth;
+
+    /**
+     * Constructor for the metrics of a manager.
+     * @param waiting The number of tokens already waiting (e.g. after loading a snapshot).
+     */
+    public QueueMetrics(int waiting) {
+        this.initialDepth = waiting;
+        this.peakDepth = new AtomicInteger(waiting);
+    }
+
+    /**
+     * Called by the QueueManager after a token was added to the waiting queue.
+     */
+    void tokenIssued() {
+        issued.incrementAndGet();
+        updatePeak();
+    }
+
+    /**
+     * Called by the QueueManager after a token was served.
+     * @param counterId The counter that served it.
+     * @param issueTime When the token was issued (epoch milliseconds).
+     * @param servedTime When it was served (epoch milliseconds).
+     */
+    void tokenServed(int counterId, long issueTime, long servedTime) {
+        served.incrementAndGet();
+        waitTimes.record(servedTime - issueTime);
+        if (counterId >= 1 && counterId <= MAX_COUNTERS) {
+            servedPerCounter.incrementAndGet(counterId - 1);
+            long previous = lastServedAt.getAndSet(counterId - 1, servedTime);
+            // The customer was already waiting when the counter took its previous one,
+            // so the counter went straight from one to the next
+            if (previous != 0 && issueTime <= previous) {
+                serviceTimes.record(servedTime - previous);
+            }
+        }
+    }
+
+    /**
+     * Called by the QueueManager for every token after the first of a group
+     * served together: it counts as served and its wait is recorded, but it
+     * gives no service time sample (the group took one service).
+     * @param counterId The counter that served it.
+     * @param issueTime When the token was issued (epoch milliseconds).
+     * @param servedTime When it was served (epoch milliseconds).
+     */
+    void tokenServedWithGroup(int counterId, long issueTime, long servedTime) {
+        served.incrementAndGet();
+        waitTimes.record(servedTime - issueTime);
+        if (counterId >= 1 && counterId <= MAX_COUNTERS) {
+            servedPerCounter.incrementAndGet(counterId - 1);
+        }
+    }
+
+    /**
+     * Called by the QueueManager when an ID asked for a token but already had one
+     * today (whether the DuplicatePolicy then issued, merged or rejected it).
+     */
+    void duplicateFound() {
+        duplicates.incrementAndGet();
+    }
+
+    /**
+     * Called when tokens are put back into or taken out of the waiting queue
+     * for operations of an earlier session (journal replay). Only the depth changes.
+     * @param change +1 for a restored issue, -1 for a restored serve.
+     */
+    void tokensRestored(int change) {
+        restoredChange.addAndGet(change);
+        updatePeak();
+    }
+
+    private void updatePeak() {
+        int now = getQueueDepth();
+        if (now > peakDepth.get()) {
+            peakDepth.accumulateAndGet(now, Math::max);
+        }
+    }
+
+    /**
+     * Returns the wait time histogram (issue to serve, in milliseconds).
+     * @return The histogram.
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * Returns the service time histogram (per customer at a counter, in milliseconds).
+     * @return The histogram.
+     */
+    public LatencyHistogram getServiceTimes() {
+        return serviceTimes;
+    }
+
+    @Override
+    public long getIssuedCount() {
+        return issued.get();
+    }
+
+    @Override
+    public long getServedCount() {
+        return served.get();
+    }
+
+    @Override
+    public long[] getServedPerCounter() {
+        // Trim to the highest counter that has served anyone
+        int used = MAX_COUNTERS;
+        while (used > 0 && servedPerCounter.get(used - 1) == 0) {
+            used--;
+        }
+        long[] result = new long[used];
+        for (int i = 0; i < used; i++) {
+            result[i] = servedPerCounter.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return (int) (initialDepth + issued.get() - served.get() + restoredChange.get());
+    }
+
+    @Override
+    public int getPeakQueueDepth() {
+        return peakDepth.get();
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    @Override
+    public long getWaitTimeP50() {
+        return waitTimes.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getWaitTimeP90() {
+        return waitTimes.getValueAtPercentile(90);
+    }
+
+    @Override
+    public long getWaitTimeP99() {
+        return waitTimes.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getWaitTimeMax() {
+        return waitTimes.getMax();
+    }
+
+    @Override
+    public double getWaitTimeMean() {
+        return waitTimes.getMean();
+    }
+
+    @Override
+    public long getServiceTimeP50() {
+        return serviceTimes.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getServiceTimeP90() {
+        return serviceTimes.getValueAtPercentile(90);
+    }
+
+    @Override
+    public long getServiceTimeP99() {
+        return serviceTimes.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getServiceTimeMax() {
+        return serviceTimes.getMax();
+    }
+
+    @Override
+    public double getServiceTimeMean() {
+        return serviceTimes.getMean();
+    }
+
+    /**
+     * Registers these metrics with the JVM's platform MBean server as
+     * "DigitalQueue:type=QueueMetrics,mode=<appMode>", replacing the metrics
+     * of an earlier manager (e.g. from before a reset).
+     * @param appMode The system mode ("Bank" or "Hospital").
+     */
+    public void registerMBean(String appMode) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("DigitalQueue:type=QueueMetrics,mode=" + appMode);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace(); // Metrics are optional, keep running without JMX
+        }
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format, e.g.
+     *     queue_tokens_served_total{counter="2"} 41
+     *     queue_wait_time_ms{quantile="0.99"} 420000
+     * @param out The text to append to.
+     */
+    public void writeText(StringBuilder out) {
+        header(out, "queue_tokens_issued_total", "counter", "Tokens issued.");
+        out.append("queue_tokens_issued_total ").append(getIssuedCount()).append('\n');
+        header(out, "queue_tokens_served_total", "counter", "Tokens served, per counter.");
+        long[] perCounter = getServedPerCounter();
+        for (int i = 0; i < perCounter.length; i++) {
+            out.append("queue_tokens_served_total{counter=\"").append(i + 1).append("\"} ")
+                    .append(perCounter[i]).append('\n');
+        }
+        long otherCounters = getServedCount();
+        for (long count : perCounter) {
+            otherCounters -= count;
+        }
+        if (otherCounters > 0) {
+            out.append("queue_tokens_served_total{counter=\"other\"} ").append(otherCounters).append('\n');
+        }
+        header(out, "queue_depth", "gauge", "Tokens waiting now.");
+        out.append("queue_depth ").append(getQueueDepth()).append('\n');
+        header(out, "queue_depth_peak", "gauge", "Most tokens waiting at once.");
+        out.append("queue_depth_peak ").append(getPeakQueueDepth()).append('\n');
+        header(out, "queue_duplicate_ids_total", "counter", "Token requests from an ID that already had one today.");
+        out.append("queue_duplicate_ids_total ").append(getDuplicateCount()).append('\n');
+        summary(out, "queue_wait_time_ms", "Time from issue to serve.", waitTimes);
+        summary(out, "queue_service_time_ms", "Time a counter spent per customer.", serviceTimes);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, "summary", help);
+        for (String quantile : new String[] {"0.5", "0.9", "0.99", "0.999"}) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(Double.parseDouble(quantile) * 100)).append('\n');
+        }
+        out.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+        out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+}
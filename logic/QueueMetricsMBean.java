@@ -0,0 +1,48 @@
+package logic;
+
+/**
+ * The management interface of QueueMetrics, as seen in JMX tools such as
+ * JConsole or VisualVM (under "DigitalQueue" -> "QueueMetrics").
+ * Times are in milliseconds. Counts and histograms cover the time since the
+ * QueueManager was loaded or created; they are not saved.
+ */
+public interface QueueMetricsMBean {
+
+    long getIssuedCount();
+
+    long getServedCount();
+
+    /**
+     * @return The number of tokens served by each counter; index 0 is counter 1.
+     */
+    long[] getServedPerCounter();
+
+    int getQueueDepth();
+
+    int getPeakQueueDepth();
+
+    /**
+     * @return The number of times an ID asked for a token when it already had one today.
+     */
+    long getDuplicateCount();
+
+    long getWaitTimeP50();
+
+    long getWaitTimeP90();
+
+    long getWaitTimeP99();
+
+    long getWaitTimeMax();
+
+    double getWaitTimeMean();
+
+    long getServiceTimeP50();
+
+    long getServiceTimeP90();
+
+    long getServiceTimeP99();
+
+    long getServiceTimeMax();
+
+    double getServiceTimeMean();
+}
@@ -0,0 +1,36 @@
+package logic;
+
+/**
+ * Decides which lane of the TokenScheduler is served next.
+ * The scheduler tells the policy when a lane becomes non-empty and after
+ * each serve, so a policy can keep its own structure (a heap, a ring, ...)
+ * up to date instead of looking at every lane on every call.
+ * Policies are Serializable so the chosen policy is saved with the scheduler;
+ * their internal structures are rebuilt with reset() after loading.
+ */
+public interface SchedulingPolicy extends java.io.Serializable {
+
+    /**
+     * Forgets all lanes. The scheduler calls this before (re)adding its
+     * non-empty lanes, e.g. after loading or when the policy is changed.
+     */
+    void reset();
+
+    /**
+     * Called when a lane goes from empty to non-empty.
+     * @param lane The lane that now has tokens waiting.
+     */
+    void laneActivated(ServiceLane lane);
+
+    /**
+     * Returns the lane that should be served next, without changing anything.
+     * @return The chosen lane, or null if every lane is empty.
+     */
+    ServiceLane peekLane();
+
+    /**
+     * Called after a token was taken from the front of a lane.
+     * @param lane The lane that was served (it may now be empty).
+     */
+    void laneServed(ServiceLane lane);
+}
@@ -0,0 +1,90 @@
+package logic;
+
+import ds.ArrayQueue;
+import exceptions.EmptyQueueException;
+import model.Token;
+
+/**
+ * One lane (service class) of the TokenScheduler, such as "Loans" at a
+ * bank or "Emergency" at a hospital. Each lane is a FIFO queue of its own.
+ * - priority: lower numbers are served first by the priority policies
+ * - weight: how many tokens in a row the lane gets under weighted round-robin
+ * The extra fields at the bottom are bookkeeping for the scheduling policies.
+ */
+public class ServiceLane implements java.io.Serializable {
+
+    private static final long serialVersionUID = -7374701236734896915L;
+
+    private final String name;
+    private int priority;
+    private int weight;
+    private ArrayQueue<Token> tokens;
+
+    // Position in the TokenScheduler's list of lanes (0 = created first), set by the scheduler
+    transient int creationIndex;
+    // Position in a policy's LaneHeap (-1 when not in a heap)
+    transient int heapIndex = -1;
+    // Neighbours in the round-robin ring of active lanes
+    transient ServiceLane nextActive;
+    transient ServiceLane prevActive;
+
+    /**
+     * Constructor for a new, empty lane.
+     * @param name The lane's name (e.g. a service type or ailment).
+     * @param priority The lane's priority (lower is more urgent).
+     * @param weight The lane's round-robin weight (at least 1).
+     */
+    public ServiceLane(String name, int priority, int weight) {
+        this.name = name;
+        this.priority = priority;
+        this.weight = Math.max(1, weight);
+        this.tokens = new ArrayQueue<>();
+    }
+
+    // --- Standard Getters ---
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    public boolean isEmpty() {
+        return tokens.isEmpty();
+    }
+
+    /**
+     * Returns the token at the front of this lane.
+     * @return The oldest waiting token in the lane.
+     * @throws EmptyQueueException if the lane is empty.
+     */
+    public Token peek() throws EmptyQueueException {
+        return tokens.peek();
+    }
+
+    ArrayQueue<Token> getTokens() {
+        return tokens;
+    }
+
+    void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    void setWeight(int weight) {
+        this.weight = Math.max(1, weight);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (priority " + priority + ", weight " + weight + ", waiting " + tokens.size() + ")";
+    }
+}
@@ -0,0 +1,46 @@
+package logic;
+
+import java.util.Comparator;
+
+/**
+ * Always serves the most urgent (lowest priority number) non-empty lane.
+ * Lanes with the same priority are served in the order they were created
+ * (the heap breaks ties on each lane's position in the TokenScheduler, since
+ * a heap on its own does not keep equal items in any particular order).
+ * Non-empty lanes are kept in a LaneHeap, so choosing is O(1) and
+ * updating after a serve is O(log k) for k lanes.
+ * Low-priority lanes can wait forever while urgent ones are busy;
+ * use AgingPolicy if that is a problem.
+ */
+public class StrictPriorityPolicy implements SchedulingPolicy {
+
+    private static final long serialVersionUID = -2737313154839044494L;
+
+    private transient LaneHeap activeLanes;
+
+    @Override
+    public void reset() {
+        if (activeLanes != null) {
+            activeLanes.clear();
+        }
+        activeLanes = new LaneHeap(Comparator.comparingInt(ServiceLane::getPriority)
+                .thenComparingInt(lane -> lane.creationIndex));
+    }
+
+    @Override
+    public void laneActivated(ServiceLane lane) {
+        activeLanes.add(lane);
+    }
+
+    @Override
+    public ServiceLane peekLane() {
+        return activeLanes.peek();
+    }
+
+    @Override
+    public void laneServed(ServiceLane lane) {
+        if (lane.isEmpty()) {
+            activeLanes.remove(lane);
+        }
+    }
+}
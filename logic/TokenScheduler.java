@@ -0,0 +1,243 @@
+package logic;
+
+import ds.QueueADT;
+import exceptions.EmptyQueueException;
+import model.Token;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A multi-lane waiting queue for QueueManager.
+ * Instead of one FIFO line, every service class (the bank service type or
+ * the patient's ailment, see Person.getServiceClass) waits in its own
+ * ServiceLane, and a pluggable SchedulingPolicy decides which lane is served
+ * next: StrictPriorityPolicy, WeightedRoundRobinPolicy or AgingPolicy.
+ *
+ * It implements QueueADT, so it can be passed straight to the QueueManager
+ * constructor; "dequeue" then means "serve the token the policy picks".
+ * Lanes that were never defined are created on first use with the default
+ * priority and weight.
+ * All methods are synchronized, so several counters can serve at once.
+ */
+public class TokenScheduler implements QueueADT<Token>, java.io.Serializable {
+
+    private static final long serialVersionUID = -3941798191277722835L;
+    // Version of the saved format written by writeObject
+    private static final int STREAM_VERSION = 1;
+
+    private transient SchedulingPolicy policy;
+    // Lanes in the order they were created (also the order for display)
+    private transient ArrayList<ServiceLane> lanes;
+    // Lanes by their normalised name, for O(1) lookup on enqueue
+    private transient HashMap<String, ServiceLane> lanesByKey;
+    private transient int defaultPriority;
+    private transient int defaultWeight;
+    private transient int size;
+
+    /**
+     * Constructor for a scheduler with no lanes yet.
+     * New lanes get priority 10 and weight 1 unless defined otherwise.
+     * @param policy The policy that picks which lane to serve next.
+     */
+    public TokenScheduler(SchedulingPolicy policy) {
+        this.policy = policy;
+        this.lanes = new ArrayList<>();
+        this.lanesByKey = new HashMap<>();
+        this.defaultPriority = 10;
+        this.defaultWeight = 1;
+        this.size = 0;
+        policy.reset();
+    }
+
+    /**
+     * Creates a lane, or changes the priority and weight of an existing one.
+     * @param name The service class the lane is for (case-insensitive).
+     * @param priority The lane's priority (lower is more urgent).
+     * @param weight The lane's round-robin weight (at least 1).
+     * @return The lane.
+     */
+    public synchronized ServiceLane defineLane(String name, int priority, int weight) {
+        ServiceLane lane = lanesByKey.get(keyOf(name));
+        if (lane == null) {
+            lane = new ServiceLane(name.trim(), priority, weight);
+            lane.creationIndex = lanes.size();
+            lanes.add(lane);
+            lanesByKey.put(keyOf(name), lane);
+        } else {
+            lane.setPriority(priority);
+            lane.setWeight(weight);
+            rebuildPolicy(); // The lane's position in the policy may have changed
+        }
+        return lane;
+    }
+
+    /**
+     * Switches to a different scheduling policy. Waiting tokens keep their places in their lanes.
+     * @param newPolicy The policy to use from now on.
+     */
+    public synchronized void setPolicy(SchedulingPolicy newPolicy) {
+        this.policy = newPolicy;
+        rebuildPolicy();
+    }
+
+    /**
+     * Returns a copy of the list of lanes, in the order they were created.
+     * @return The lanes.
+     */
+    public synchronized List<ServiceLane> getLanes() {
+        return new ArrayList<>(lanes);
+    }
+
+    /**
+     * Adds a token to the back of its service class's lane.
+     * @param token The token to add.
+     */
+    @Override
+    public synchronized void enqueue(Token token) {
+        String serviceClass = token.getPerson().getServiceClass();
+        ServiceLane lane = lanesByKey.get(keyOf(serviceClass));
+        if (lane == null) {
+            lane = defineLane(serviceClass, defaultPriority, defaultWeight);
+        }
+        boolean wasEmpty = lane.isEmpty();
+        lane.getTokens().enqueue(token);
+        size++;
+        if (wasEmpty) {
+            policy.laneActivated(lane);
+        }
+    }
+
+    /**
+     * Removes and returns the token the policy picks.
+     * @return The next token to serve.
+     * @throws EmptyQueueException if no token is waiting in any lane.
+     */
+    @Override
+    public synchronized Token dequeue() throws EmptyQueueException {
+        ServiceLane lane = policy.peekLane();
+        if (lane == null) {
+            throw new EmptyQueueException("Cannot dequeue from an empty queue.");
+        }
+        Token token = lane.getTokens().dequeue();
+        size--;
+        policy.laneServed(lane);
+        return token;
+    }
+
+    /**
+     * "Peeks" at the token the policy would serve next.
+     * @return The next token to serve.
+     * @throws EmptyQueueException if no token is waiting in any lane.
+     */
+    @Override
+    public synchronized Token peek() throws EmptyQueueException {
+        ServiceLane lane = policy.peekLane();
+        if (lane == null) {
+            throw new EmptyQueueException("Cannot peek into an empty queue.");
+        }
+        return lane.peek();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Provides an iterator over a copy of all waiting tokens, lane by lane
+     * (not in the order they will be served).
+     * @return An iterator for the waiting tokens.
+     */
+    @Override
+    public synchronized Iterator<Token> iterator() {
+        List<Token> copy = new ArrayList<>(size);
+        for (ServiceLane lane : lanes) {
+            for (Token token : lane.getTokens()) {
+                copy.add(token);
+            }
+        }
+        return copy.iterator();
+    }
+
+    /**
+     * Lane names are matched ignoring case and surrounding spaces.
+     */
+    private static String keyOf(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gives the policy a fresh start and tells it about every non-empty lane.
+     */
+    private void rebuildPolicy() {
+        policy.reset();
+        for (ServiceLane lane : lanes) {
+            lane.heapIndex = -1;
+            lane.nextActive = null;
+            lane.prevActive = null;
+        }
+        for (ServiceLane lane : lanes) {
+            if (!lane.isEmpty()) {
+                policy.laneActivated(lane);
+            }
+        }
+    }
+
+    /**
+     * Custom serialization: writes a version, the policy, the defaults,
+     * and then every lane (each lane streams its own tokens).
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(STREAM_VERSION);
+        out.writeObject(policy);
+        out.writeInt(defaultPriority);
+        out.writeInt(defaultWeight);
+        out.writeInt(lanes.size());
+        for (ServiceLane lane : lanes) {
+            out.writeObject(lane);
+        }
+    }
+
+    /**
+     * Custom deserialization: reads the lanes back and rebuilds the policy.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != STREAM_VERSION) {
+            throw new InvalidObjectException("Unsupported TokenScheduler format version: " + version);
+        }
+        policy = (SchedulingPolicy) in.readObject();
+        defaultPriority = in.readInt();
+        defaultWeight = in.readInt();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative TokenScheduler lane count: " + count);
+        }
+        lanes = new ArrayList<>(count);
+        lanesByKey = new HashMap<>();
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            ServiceLane lane = (ServiceLane) in.readObject();
+            lane.creationIndex = i;
+            lanes.add(lane);
+            lanesByKey.put(keyOf(lane.getName()), lane);
+            size += lane.size();
+        }
+        rebuildPolicy();
+    }
+}
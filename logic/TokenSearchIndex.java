@@ -0,0 +1,166 @@
+package logic;
+
+import ds.MyLinkedList;
+import ds.PrefixTrie;
+import model.Person;
+import model.Token;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A search index over the waiting and the served tokens, for "type a few
+ * letters" search. Every token is filed in a PrefixTrie under each word of
+ * the person's name, their ID / phone number and each word of their details
+ * (all in lower case), with its token number as the value. So "ann" finds
+ * Ann Lee and Joanne Anning, "555" finds every phone number starting with
+ * 555, and "lee fev" finds the Lees with a fever.
+ *
+ * The QueueManager keeps it up to date on every issue and serve. A search
+ * only walks the trie below the words typed and stops after the first
+ * matches, so it does not depend on how many tokens there are.
+ * The waiting tokens are kept here by number; served ones are fetched
+ * from the HistoryStore, which finds a token by number in O(1).
+ * All methods are synchronized, so counters on different threads can
+ * issue and serve while the GUI searches.
+ */
+class TokenSearchIndex {
+
+    // Everything that is not a letter or a digit separates words
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final PrefixTrie words = new PrefixTrie();
+    // The tokens still waiting, by number
+    private final HashMap<Integer, Token> waiting = new HashMap<>();
+    private final HistoryStore history;
+
+    /**
+     * Constructor for an empty index.
+     * @param history The history that served tokens are fetched from.
+     */
+    TokenSearchIndex(HistoryStore history) {
+        this.history = history;
+    }
+
+    /**
+     * Files a new waiting token. O(length of its words).
+     * @param token The token that joined the waiting queue.
+     */
+    synchronized void tokenIssued(Token token) {
+        waiting.put(token.getTokenNumber(), token);
+        addWords(token);
+    }
+
+    /**
+     * Notes that a token has been served (it is in the history from now on). O(1).
+     * @param token The token that was served.
+     */
+    synchronized void tokenServed(Token token) {
+        waiting.remove(token.getTokenNumber());
+    }
+
+    /**
+     * Files a token that was already served before the index was built.
+     * @param token A token from the history.
+     */
+    synchronized void tokenFromHistory(Token token) {
+        addWords(token);
+    }
+
+    /**
+     * Finds the tokens whose words start with every word of the query, in
+     * the order of the matching words. The query word with the fewest
+     * matches picks the candidates from the trie; any other words are
+     * checked on each candidate.
+     * @param query The text typed, e.g. "ann" or "lee 555".
+     * @param limit The most tokens to return.
+     * @return The matching tokens, waiting or served (empty for an empty query).
+     */
+    synchronized MyLinkedList<Token> search(String query, int limit) {
+        MyLinkedList<Token> found = new MyLinkedList<>();
+        String[] terms = splitWords(query);
+        if (terms.length == 0 || limit < 1) {
+            return found;
+        }
+        // Candidates come from the rarest word, so as few as possible are checked
+        int rarest = 0;
+        int rarestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < terms.length; i++) {
+            int count = words.countWithPrefix(terms[i]);
+            if (count < rarestCount) {
+                rarest = i;
+                rarestCount = count;
+            }
+        }
+        if (rarestCount == 0) {
+            return found;
+        }
+        HashSet<Integer> seen = new HashSet<>();
+        final int candidateTerm = rarest;
+        words.forEachWithPrefix(terms[candidateTerm], number -> {
+            if (!seen.add(number)) {
+                return true; // Filed under two matching words
+            }
+            Token token = find(number);
+            if (token != null && (terms.length == 1 || matchesAll(token, terms, candidateTerm))) {
+                found.addLast(token);
+            }
+            return found.getSize() < limit;
+        });
+        return found;
+    }
+
+    private Token find(int tokenNumber) {
+        Token token = waiting.get(tokenNumber);
+        return token != null ? token : history.findByNumber(tokenNumber);
+    }
+
+    private void addWords(Token token) {
+        Person person = token.getPerson();
+        int number = token.getTokenNumber();
+        HashSet<String> filed = new HashSet<>();
+        for (String word : wordsOf(person)) {
+            if (filed.add(word)) {
+                words.add(word, number);
+            }
+        }
+    }
+
+    /**
+     * Checks that every query word other than the one the candidate came from
+     * starts one of the token's words.
+     */
+    private static boolean matchesAll(Token token, String[] terms, int alreadyMatched) {
+        String[] tokenWords = wordsOf(token.getPerson());
+        for (int i = 0; i < terms.length; i++) {
+            if (i == alreadyMatched) {
+                continue;
+            }
+            boolean match = false;
+            for (String word : tokenWords) {
+                if (word.startsWith(terms[i])) {
+                    match = true;
+                    break;
+                }
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] wordsOf(Person person) {
+        return splitWords(person.getName() + " " + person.getId() + " " + person.getDetails());
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     */
+    private static String[] splitWords(String text) {
+        String trimmed = SEPARATORS.matcher(text.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(" ");
+    }
+}
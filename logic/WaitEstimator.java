@@ -0,0 +1,196 @@
+package logic;
+
+import ds.StringDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Predicts how long a newly issued token will wait, from what the queue
+ * has seen so far. It keeps "exponentially weighted moving averages" (EWMA)
+ * of the service time:
+ * - per service type / ailment (some services take longer than others)
+ * - per counter (some counters are faster than others)
+ * - overall
+ * An EWMA is updated as avg = avg + ALPHA * (sample - avg), so recent
+ * customers count most and no list of old samples is kept.
+ *
+ * The work waiting ahead of a new token is the sum of the expected service
+ * times of every waiting token. It is kept as a running total (updated on
+ * each issue and serve, and corrected when a type's average changes), so
+ * both updating and predicting are O(1):
+ *     wait = (work ahead / overall average) / (sum over counters of 1 / counter average)
+ * i.e. the number of "average customers" ahead divided by how many customers
+ * all counters together serve per millisecond.
+ * This assumes first-come-first-served; with a priority TokenScheduler it is
+ * the wait of a normal customer.
+ * Methods are synchronized (each is short), so counters on different
+ * threads can use it together.
+ */
+public class WaitEstimator {
+
+    // Weight of the newest sample in each average
+    private static final double ALPHA = 0.2;
+    // Service time assumed before any customer has been measured
+    private static final double DEFAULT_SERVICE_MILLIS = 3 * 60_000;
+
+    // Service type / ailment -> type id
+    private final StringDictionary types = new StringDictionary();
+    // Per type id: the service time used for its waiting tokens, and how many are waiting
+    private double[] typeServiceMillis = new double[8];
+    private boolean[] typeMeasured = new boolean[8];
+    private int[] typeWaiting = new int[8];
+    private int waiting;
+    // The sum of typeServiceMillis[t] * typeWaiting[t] over all types
+    private double workAhead;
+    // Average service time over all types and counters (0 until the first sample)
+    private double overallServiceMillis;
+
+    // Per counter (index = counterId - 1): average service time, last serve time and its type
+    private final double[] counterServiceMillis = new double[QueueMetrics.MAX_COUNTERS];
+    private final long[] counterLastServe = new long[QueueMetrics.MAX_COUNTERS];
+    private final int[] counterLastType = new int[QueueMetrics.MAX_COUNTERS];
+    // The sum of 1 / counterServiceMillis over counters that have been measured
+    private double counterRateSum;
+
+    /**
+     * Counts a newly issued token and predicts its wait.
+     * @param serviceClass The token's service type or ailment.
+     * @return The expected wait in milliseconds.
+     */
+    public synchronized long tokenIssued(String serviceClass) {
+        long estimate = estimateWaitMillis();
+        tokenQueued(serviceClass);
+        return estimate;
+    }
+
+    /**
+     * Counts a token that joined the queue without a prediction
+     * (e.g. a waiting token loaded from the save files).
+     * @param serviceClass The token's service type or ailment.
+     */
+    public synchronized void tokenQueued(String serviceClass) {
+        int type = typeOf(serviceClass);
+        typeWaiting[type]++;
+        waiting++;
+        workAhead += typeServiceMillis[type];
+    }
+
+    /**
+     * Removes a token that left the queue without being measured (journal replay).
+     * @param serviceClass The token's service type or ailment.
+     */
+    public synchronized void tokenDequeued(String serviceClass) {
+        int type = typeOf(serviceClass);
+        if (typeWaiting[type] > 0) {
+            typeWaiting[type]--;
+            waiting--;
+            workAhead -= typeServiceMillis[type];
+        }
+        if (waiting == 0) {
+            workAhead = 0; // Drop any rounding error while the queue is empty
+        }
+    }
+
+    /**
+     * Removes a served token from the queue and learns from it.
+     * When a counter serves a customer who was already waiting at its previous
+     * serve, the time between the two serves is how long the previous customer
+     * took, which updates the averages of that customer's type and of the counter.
+     * @param serviceClass The served token's service type or ailment.
+     * @param counterId The counter that served it.
+     * @param issueTime When the token was issued (epoch milliseconds).
+     * @param servedTime When it was served (epoch milliseconds).
+     */
+    public synchronized void tokenServed(String serviceClass, int counterId, long issueTime, long servedTime) {
+        tokenDequeued(serviceClass);
+        if (counterId < 1 || counterId > QueueMetrics.MAX_COUNTERS) {
+            return;
+        }
+        int counter = counterId - 1;
+        long previous = counterLastServe[counter];
+        if (previous != 0 && issueTime <= previous && servedTime > previous) {
+            learn(counterLastType[counter], counter, servedTime - previous);
+        }
+        counterLastServe[counter] = servedTime;
+        counterLastType[counter] = typeOf(serviceClass);
+    }
+
+    /**
+     * Predicts how long a token issued now would wait.
+     * @return The expected wait in milliseconds.
+     */
+    public synchronized long estimateWaitMillis() {
+        double averageCustomersAhead = Math.max(0, workAhead) / serviceOrDefault(overallServiceMillis);
+        if (counterRateSum == 0) {
+            // No counter measured yet: assume one counter at the average speed
+            return Math.round(averageCustomersAhead * serviceOrDefault(overallServiceMillis));
+        }
+        return Math.round(averageCustomersAhead / counterRateSum);
+    }
+
+    /**
+     * Returns the average service time of a service type or ailment.
+     * @param serviceClass The service type or ailment.
+     * @return The average in milliseconds, or 0 if no customer of that type has been measured.
+     */
+    public synchronized long getServiceMillis(String serviceClass) {
+        int type = types.idOf(serviceClass);
+        return type >= 0 && typeMeasured[type] ? Math.round(typeServiceMillis[type]) : 0;
+    }
+
+    /**
+     * Returns the average service time of a counter.
+     * @param counterId The counter (1, 2, ...).
+     * @return The average in milliseconds, or 0 if the counter has not been measured.
+     */
+    public synchronized long getCounterServiceMillis(int counterId) {
+        if (counterId < 1 || counterId > QueueMetrics.MAX_COUNTERS) {
+            return 0;
+        }
+        return Math.round(counterServiceMillis[counterId - 1]);
+    }
+
+    /**
+     * Adds one measured service time to the type, counter and overall averages.
+     */
+    private void learn(int type, int counter, long sample) {
+        double serviceMillis = Math.max(sample, 1); // Two serves in the same millisecond count as 1 ms
+        double old = typeServiceMillis[type];
+        double updated = typeMeasured[type] ? old + ALPHA * (serviceMillis - old) : serviceMillis;
+        typeServiceMillis[type] = updated;
+        typeMeasured[type] = true;
+        // Every waiting token of this type now counts with the new average
+        workAhead += typeWaiting[type] * (updated - old);
+
+        double counterOld = counterServiceMillis[counter];
+        double counterNew = counterOld == 0 ? serviceMillis : counterOld + ALPHA * (serviceMillis - counterOld);
+        counterRateSum += 1 / counterNew - (counterOld == 0 ? 0 : 1 / counterOld);
+        counterServiceMillis[counter] = counterNew;
+
+        overallServiceMillis = overallServiceMillis == 0
+                ? serviceMillis : overallServiceMillis + ALPHA * (serviceMillis - overallServiceMillis);
+    }
+
+    /**
+     * Returns the id of a service type, adding it if it is new.
+     * A new type starts with the overall average until one of its own customers is measured.
+     */
+    private int typeOf(String serviceClass) {
+        int knownTypes = types.size();
+        int type = types.intern(serviceClass);
+        if (types.size() > knownTypes) {
+            if (type == typeServiceMillis.length) {
+                int newLength = typeServiceMillis.length * 2;
+                typeServiceMillis = Arrays.copyOf(typeServiceMillis, newLength);
+                typeMeasured = Arrays.copyOf(typeMeasured, newLength);
+                typeWaiting = Arrays.copyOf(typeWaiting, newLength);
+            }
+            typeServiceMillis[type] = serviceOrDefault(overallServiceMillis);
+        }
+        return type;
+    }
+
+    private static double serviceOrDefault(double serviceMillis) {
+        return serviceMillis > 0 ? serviceMillis : DEFAULT_SERVICE_MILLIS;
+    }
+}
@@ -0,0 +1,68 @@
+package logic;
+
+/**
+ * Takes turns between the non-empty lanes. A lane with weight w gets up to
+ * w tokens served in a row before the turn moves on, so a lane with weight 3
+ * gets three times the service of a lane with weight 1, and every lane is
+ * served eventually.
+ * The active lanes form a circular doubly linked "ring", so every
+ * operation is O(1) no matter how many lanes there are.
+ */
+public class WeightedRoundRobinPolicy implements SchedulingPolicy {
+
+    private static final long serialVersionUID = -2054200953970239846L;
+
+    // The lane whose turn it is (null when every lane is empty)
+    private transient ServiceLane current;
+    // How many tokens the current lane has had in this turn
+    private transient int servedThisTurn;
+
+    @Override
+    public void reset() {
+        current = null;
+        servedThisTurn = 0;
+    }
+
+    @Override
+    public void laneActivated(ServiceLane lane) {
+        if (current == null) {
+            lane.nextActive = lane;
+            lane.prevActive = lane;
+            current = lane;
+            servedThisTurn = 0;
+        } else {
+            // Insert just before the current lane, i.e. at the end of the round
+            lane.nextActive = current;
+            lane.prevActive = current.prevActive;
+            current.prevActive.nextActive = lane;
+            current.prevActive = lane;
+        }
+    }
+
+    @Override
+    public ServiceLane peekLane() {
+        return current;
+    }
+
+    @Override
+    public void laneServed(ServiceLane lane) {
+        servedThisTurn++;
+        if (lane.isEmpty()) {
+            // Take the empty lane out of the ring
+            ServiceLane next = lane.nextActive;
+            if (next == lane) {
+                current = null;
+            } else {
+                lane.prevActive.nextActive = next;
+                next.prevActive = lane.prevActive;
+                current = next;
+            }
+            lane.nextActive = null;
+            lane.prevActive = null;
+            servedThisTurn = 0;
+        } else if (servedThisTurn >= lane.getWeight()) {
+            current = lane.nextActive;
+            servedThisTurn = 0;
+        }
+    }
+}
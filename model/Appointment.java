@@ -0,0 +1,121 @@
+package model;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Represents a booked slot: a Person who should join the queue at a set time.
+ * It is Serializable so open appointments are saved with the queue.
+ *
+ * Life of an appointment:
+ *   BOOKED -> CHECKED_IN (arrived early) -> QUEUED (a token was issued at the appointment time)
+ *   BOOKED -> QUEUED (arrived late, but within the grace period)
+ *   BOOKED -> NO_SHOW (did not arrive within the grace period)
+ *   BOOKED or CHECKED_IN -> CANCELLED
+ * The last three states are final; the AppointmentBook forgets the appointment then.
+ */
+public class Appointment implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    /**
+     * Where an appointment is in its life.
+     */
+    public enum Status {
+        BOOKED, CHECKED_IN, QUEUED, NO_SHOW, CANCELLED;
+
+        /**
+         * @return True for the final states (QUEUED, NO_SHOW, CANCELLED).
+         */
+        public boolean isClosed() {
+            return this == QUEUED || this == NO_SHOW || this == CANCELLED;
+        }
+    }
+
+    private final int appointmentNumber;
+    private final Person person;
+    private final long appointmentTime; // Epoch milliseconds
+    private Status status = Status.BOOKED;
+    private int tokenNumber; // The token issued for it, 0 until QUEUED
+
+    /**
+     * Constructor for a new, booked appointment.
+     * @param appointmentNumber The appointment's number (unique within one AppointmentBook).
+     * @param person The person who is expected.
+     * @param appointmentTime When they should join the queue, in epoch milliseconds.
+     */
+    public Appointment(int appointmentNumber, Person person, long appointmentTime) {
+        this.appointmentNumber = appointmentNumber;
+        this.person = person;
+        this.appointmentTime = appointmentTime;
+    }
+
+    // --- Standard Getters ---
+    public int getAppointmentNumber() {
+        return appointmentNumber;
+    }
+
+    public Person getPerson() {
+        return person;
+    }
+
+    /**
+     * Returns when the person should join the queue.
+     * @return The appointment time in epoch milliseconds.
+     */
+    public long getAppointmentTime() {
+        return appointmentTime;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the number of the token issued for this appointment.
+     * @return The token number, or 0 if it has not joined the queue.
+     */
+    public int getTokenNumber() {
+        return tokenNumber;
+    }
+
+    /**
+     * Moves the appointment to a new state (only the AppointmentBook does this).
+     * @param status The new state.
+     */
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * Records the token issued for this appointment and marks it QUEUED.
+     * @param tokenNumber The number of the new token.
+     */
+    public void markQueued(int tokenNumber) {
+        this.tokenNumber = tokenNumber;
+        this.status = Status.QUEUED;
+    }
+
+    /**
+     * Creates a user-friendly string representation of the appointment for display.
+     * @return A formatted string.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("Appt ").append(appointmentNumber).append(" | ");
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(appointmentTime), sb);
+        sb.append(" | ").append(person.getName())
+          .append(" | ").append(person.getDetails());
+        if (status == Status.CHECKED_IN) {
+            sb.append(" | Checked in");
+        } else if (status.isClosed()) {
+            sb.append(" | ").append(status);
+        }
+        return sb.toString();
+    }
+}
@@ -5,6 +5,8 @@ package model;
  * It inherits from the Person abstract class.
  */
 public class BankCustomer extends Person {
+
+    private static final long serialVersionUID = -4361720272008936973L;
     
     private String serviceType;
 
@@ -13,6 +15,10 @@ public class BankCustomer extends Person {
         this.serviceType = serviceType;
     }
 
+    public String getServiceType() {
+        return serviceType;
+    }
+
     /**
      * This is the implementation of the abstract method from Person.
      */
@@ -20,4 +26,12 @@ public class BankCustomer extends Person {
     public String getDetails() {
         return "Bank Customer, Service: " + serviceType;
     }
+
+    /**
+     * The scheduling lane is the service type, so each service gets its own lane.
+     */
+    @Override
+    public String getServiceClass() {
+        return serviceType;
+    }
 }
\ No newline at end of file
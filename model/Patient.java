@@ -5,6 +5,8 @@ package model;
  * It inherits from the Person abstract class.
  */
 public class Patient extends Person {
+
+    private static final long serialVersionUID = -4936136734579068134L;
     
     private String ailment;
 
@@ -13,6 +15,10 @@ public class Patient extends Person {
         this.ailment = ailment;
     }
 
+    public String getAilment() {
+        return ailment;
+    }
+
     /**
      * This is the implementation of the abstract method from Person.
      */
@@ -20,4 +26,12 @@ public class Patient extends Person {
     public String getDetails() {
         return "Patient, Ailment: " + ailment;
     }
+
+    /**
+     * The scheduling lane is the ailment, so urgent ailments can be given a higher priority.
+     */
+    @Override
+    public String getServiceClass() {
+        return ailment;
+    }
 }
\ No newline at end of file
@@ -7,6 +7,8 @@ package model;
  * It is Serializable so its subclasses can be saved.
  */
 public abstract class Person implements java.io.Serializable {
+
+    private static final long serialVersionUID = -8854790224141167534L;
     
     protected String name;
     protected String id;
@@ -30,6 +32,12 @@ public abstract class Person implements java.io.Serializable {
      */
     public abstract String getDetails();
 
+    /**
+     * An abstract method that returns the "service class" (queue lane)
+     * this person should wait in, e.g. the bank service type or the ailment.
+     */
+    public abstract String getServiceClass();
+
     @Override
     public String toString() {
         return name + " (ID: " + id + ")";
@@ -1,7 +1,8 @@
 package model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
  * Represents a single token in the queue.
@@ -9,10 +10,23 @@ import java.util.Date;
  * It is Serializable so it can be saved to the file.
  */
 public class Token implements java.io.Serializable {
-    
+
+    // Fixed, so tokens saved before servedTime was added can still be loaded
+    private static final long serialVersionUID = -4505628030589325279L;
+
+    // One shared formatter: DateTimeFormatter is immutable and thread-safe,
+    // unlike SimpleDateFormat, so it does not need to be created per call
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
     private int tokenNumber;
     private Person person;
-    private Date issueTime; // Use java.util.Date as it's Serializable
+    private long issueTime; // Milliseconds since 1970 (a primitive, so no extra Date object)
+    private int servedByCounter; // 0 until the token is served
+    private long servedTime; // Epoch milliseconds, 0 until the token is served
+    private long expectedServeTime; // Epoch milliseconds, 0 if no estimate was made
+    // The display text, built the first time toString is called (never saved)
+    private transient String displayText;
 
     /**
      * Constructor for a new Token.
@@ -20,9 +34,35 @@ public class Token implements java.io.Serializable {
      * @param person The person associated with the token.
      */
     public Token(int tokenNumber, Person person) {
+        this(tokenNumber, person, System.currentTimeMillis()); // Set issue time to now
+    }
+
+    /**
+     * Constructor for a Token that was issued earlier, e.g. when it is
+     * rebuilt from the journal on startup.
+     * @param tokenNumber The token's number.
+     * @param person The person associated with the token.
+     * @param issueTime The time the token was originally issued, in epoch milliseconds.
+     */
+    public Token(int tokenNumber, Person person, long issueTime) {
         this.tokenNumber = tokenNumber;
         this.person = person;
-        this.issueTime = new Date(); // Set issue time to now
+        this.issueTime = issueTime;
+    }
+
+    /**
+     * Constructor for a Token that has already been served, e.g. when the
+     * history rebuilds it from its compact columns.
+     * @param tokenNumber The token's number.
+     * @param person The person associated with the token.
+     * @param issueTime The time the token was issued, in epoch milliseconds.
+     * @param servedByCounter The counter that served it.
+     * @param servedTime The time it was served, in epoch milliseconds.
+     */
+    public Token(int tokenNumber, Person person, long issueTime, int servedByCounter, long servedTime) {
+        this(tokenNumber, person, issueTime);
+        this.servedByCounter = servedByCounter;
+        this.servedTime = servedTime;
     }
 
     // --- Standard Getters ---
@@ -34,17 +74,86 @@ public class Token implements java.io.Serializable {
         return person;
     }
 
+    /**
+     * Returns when the token was issued.
+     * @return The issue time in milliseconds since 1970 (epoch millis).
+     */
+    public long getIssueTime() {
+        return issueTime;
+    }
+
+    public int getServedByCounter() {
+        return servedByCounter;
+    }
+
+    /**
+     * Returns when the token was served.
+     * @return The served time in epoch milliseconds, or 0 if it is still waiting.
+     */
+    public long getServedTime() {
+        return servedTime;
+    }
+
+    /**
+     * Returns when the token is expected to be served, as estimated when it was issued.
+     * @return The expected time in epoch milliseconds, or 0 if there is no estimate.
+     */
+    public long getExpectedServeTime() {
+        return expectedServeTime;
+    }
+
+    /**
+     * Returns the expected wait that was estimated when the token was issued.
+     * @return The expected wait in milliseconds, or -1 if there is no estimate.
+     */
+    public long getExpectedWaitMillis() {
+        return expectedServeTime == 0 ? -1 : expectedServeTime - issueTime;
+    }
+
+    /**
+     * Stores the estimated serve time. It must be set before the token is shown,
+     * because the display text is cached.
+     * @param expectedServeTime The expected time in epoch milliseconds.
+     */
+    public void setExpectedServeTime(long expectedServeTime) {
+        this.expectedServeTime = expectedServeTime;
+    }
+
+    /**
+     * Records which service counter served this token, and when.
+     * @param counterId The counter's number (1, 2, ...).
+     * @param servedTime The time it was served, in epoch milliseconds.
+     */
+    public void markServed(int counterId, long servedTime) {
+        this.servedByCounter = counterId;
+        this.servedTime = servedTime;
+    }
+
     /**
      * Creates a user-friendly string representation of the token for display.
+     * The text never changes, so it is built once (into a single pre-sized
+     * StringBuilder) and then cached for every later call.
      * @return A formatted string.
      */
     @Override
     public String toString() {
-        // Using a core library for date formatting
-        SimpleDateFormat dtf = new SimpleDateFormat("HH:mm:ss");
-        return "Token " + tokenNumber + 
-               " | " + person.getName() +
-               " | " + person.getDetails() +
-               " | Issued at: " + dtf.format(issueTime);
-    }
-}
\ No newline at end of file
+        String text = displayText;
+        if (text == null) {
+            String name = person.getName();
+            String details = person.getDetails();
+            StringBuilder sb = new StringBuilder(64 + name.length() + details.length());
+            sb.append("Token ").append(tokenNumber)
+              .append(" | ").append(name)
+              .append(" | ").append(details)
+              .append(" | Issued at: ");
+            TIME_FORMAT.formatTo(Instant.ofEpochMilli(issueTime), sb);
+            if (expectedServeTime != 0) {
+                sb.append(" | Expected by: ");
+                TIME_FORMAT.formatTo(Instant.ofEpochMilli(expectedServeTime), sb);
+            }
+            text = sb.toString();
+            displayText = text; // A harmless race: every thread builds the same text
+        }
+        return text;
+    }
+}
@@ -0,0 +1,292 @@
+package persistence;
+
+import ds.MyLinkedList;
+import logic.HistoryStore;
+import model.Person;
+import model.Token;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One archived day of served tokens, stored in a single read-only file that
+ * is memory-mapped instead of read onto the heap. The operating system pages
+ * in only the parts a lookup touches, so months of segments cost almost no heap.
+ *
+ * File layout (all numbers big-endian):
+ *   Header (64 bytes):   [int magic][int version][int recordCount]
+ *                        [long firstIssueTime][long lastServedTime]
+ *                        [int recordsOffset][int numberIndexOffset]
+ *                        [int personIndexOffset][int peopleOffset][int peopleLength]
+ *   Records (32 bytes each, in served order):
+ *                        [int tokenNumber][int counter][long issueTime][long servedTime]
+ *                        [int personOffset][int personLength]
+ *   Number index:        one long per record, (tokenNumber << 32 | position), sorted
+ *   Person index:        one long per record, (hash of person ID << 32 | position), sorted
+ *   People:              each record's Person, written with TokenRecordCodec.writePerson
+ *
+ * Every record has the same width, so record i is at recordsOffset + i * 32
+ * and both indexes can be binary searched in place: O(log n) per lookup.
+ */
+public class ArchiveSegment {
+
+    // Written at the start of every segment file so other files are rejected
+    private static final int MAGIC = 0x44514131; // "DQA1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 32;
+    private static final int INDEX_ENTRY_SIZE = 8;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final long firstIssueTime;
+    private final long lastServedTime;
+    private final int recordsOffset;
+    private final int numberIndexOffset;
+    private final int personIndexOffset;
+    private final int peopleOffset;
+
+    /**
+     * Maps an existing segment file and checks its header.
+     * The mapping stays valid after the file channel is closed.
+     * @param file The segment file.
+     * @throws IOException if the file cannot be mapped or is not a valid segment.
+     */
+    public ArchiveSegment(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not an archive segment: " + file);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an archive segment (or an unknown version): " + file);
+        }
+        this.recordCount = buffer.getInt(8);
+        this.firstIssueTime = buffer.getLong(12);
+        this.lastServedTime = buffer.getLong(20);
+        this.recordsOffset = buffer.getInt(28);
+        this.numberIndexOffset = buffer.getInt(32);
+        this.personIndexOffset = buffer.getInt(36);
+        this.peopleOffset = buffer.getInt(40);
+        int peopleLength = buffer.getInt(44);
+        if (recordCount < 0
+                || recordsOffset + (long) recordCount * RECORD_SIZE > numberIndexOffset
+                || numberIndexOffset + (long) recordCount * INDEX_ENTRY_SIZE > personIndexOffset
+                || personIndexOffset + (long) recordCount * INDEX_ENTRY_SIZE > peopleOffset
+                || peopleOffset + (long) peopleLength > buffer.capacity()) {
+            throw new IOException("Corrupt archive segment header: " + file);
+        }
+    }
+
+    /**
+     * Writes every token in a history store into a new segment file.
+     * The file is written under a temporary name, forced to disk and then
+     * renamed, so a crash never leaves a half-written segment behind.
+     * The caller must stop the history from changing while it is written.
+     * @param file The segment file to create.
+     * @param history The served tokens of the day (must not be empty).
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(File file, HistoryStore history) throws IOException {
+        int count = history.getSize();
+        // First pass: lay out the people section and build both indexes
+        int[] personOffsets = new int[count];
+        long[] numberIndex = new long[count];
+        long[] personIndex = new long[count];
+        long peopleLength = 0;
+        for (int position = 0; position < count; position++) {
+            Token token = history.get(position);
+            Person person = token.getPerson();
+            personOffsets[position] = (int) peopleLength;
+            peopleLength += 1 + encodedLength(person.getName()) + encodedLength(person.getId())
+                    + encodedLength(TokenRecordCodec.detailOf(person));
+            numberIndex[position] = indexEntry(token.getTokenNumber(), position);
+            personIndex[position] = indexEntry(person.getId().hashCode(), position);
+        }
+        Arrays.sort(numberIndex);
+        Arrays.sort(personIndex);
+
+        long recordsOffset = HEADER_SIZE;
+        long numberIndexOffset = recordsOffset + (long) count * RECORD_SIZE;
+        long personIndexOffset = numberIndexOffset + (long) count * INDEX_ENTRY_SIZE;
+        long peopleOffset = personIndexOffset + (long) count * INDEX_ENTRY_SIZE;
+        long fileSize = peopleOffset + peopleLength;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Too many tokens for one archive segment: " + count);
+        }
+
+        // Second pass: write everything through a mapping of the new file
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            Token first = history.get(0);
+            Token last = history.get(count - 1);
+            out.putInt(MAGIC).putInt(VERSION).putInt(count)
+                    .putLong(first.getIssueTime()).putLong(last.getServedTime())
+                    .putInt((int) recordsOffset).putInt((int) numberIndexOffset)
+                    .putInt((int) personIndexOffset).putInt((int) peopleOffset).putInt((int) peopleLength);
+
+            out.position((int) peopleOffset);
+            for (int position = 0; position < count; position++) {
+                Token token = history.get(position);
+                int recordStart = (int) recordsOffset + position * RECORD_SIZE;
+                int personStart = out.position();
+                TokenRecordCodec.writePerson(out, token.getPerson());
+                out.putInt(recordStart, token.getTokenNumber());
+                out.putInt(recordStart + 4, token.getServedByCounter());
+                out.putLong(recordStart + 8, token.getIssueTime());
+                out.putLong(recordStart + 16, token.getServedTime());
+                out.putInt(recordStart + 24, personOffsets[position]);
+                out.putInt(recordStart + 28, out.position() - personStart);
+            }
+            for (int i = 0; i < count; i++) {
+                out.putLong((int) numberIndexOffset + i * INDEX_ENTRY_SIZE, numberIndex[i]);
+                out.putLong((int) personIndexOffset + i * INDEX_ENTRY_SIZE, personIndex[i]);
+            }
+            out.force();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Finds a token by its number.
+     * @param tokenNumber The number of the token.
+     * @return The Token, or null if it is not in this segment.
+     */
+    public Token findByNumber(int tokenNumber) {
+        int i = firstEntry(numberIndexOffset, tokenNumber);
+        if (i < recordCount && keyOf(entry(numberIndexOffset, i)) == tokenNumber) {
+            return readToken(positionOf(entry(numberIndexOffset, i)));
+        }
+        return null;
+    }
+
+    /**
+     * Finds every token taken by the given person.
+     * @param personId The ID / phone number of the person.
+     * @param results The list to add the tokens to, in served order.
+     */
+    public void findByPersonId(String personId, MyLinkedList<Token> results) {
+        int hash = personId.hashCode();
+        for (int i = firstEntry(personIndexOffset, hash); i < recordCount; i++) {
+            long entry = entry(personIndexOffset, i);
+            if (keyOf(entry) != hash) {
+                break;
+            }
+            // Different IDs can share a hash, so check the real ID
+            Token token = readToken(positionOf(entry));
+            if (token.getPerson().getId().equals(personId)) {
+                results.addLast(token);
+            }
+        }
+    }
+
+    /**
+     * Builds the Token stored at a position.
+     * @param position The position in served order (0 = first served).
+     * @return The rebuilt Token.
+     * @throws IndexOutOfBoundsException if there is no such position.
+     */
+    public Token get(int position) {
+        if (position < 0 || position >= recordCount) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + recordCount);
+        }
+        return readToken(position);
+    }
+
+    /**
+     * Returns the number of tokens in this segment.
+     * @return The record count.
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the issue time of the first token served in this segment.
+     * @return The time in epoch milliseconds.
+     */
+    public long getFirstIssueTime() {
+        return firstIssueTime;
+    }
+
+    /**
+     * Returns the serve time of the last token served in this segment.
+     * @return The time in epoch milliseconds.
+     */
+    public long getLastServedTime() {
+        return lastServedTime;
+    }
+
+    /**
+     * Returns the segment file.
+     * @return The file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private Token readToken(int position) {
+        int recordStart = recordsOffset + position * RECORD_SIZE;
+        // A duplicate has its own position, so lookups on other threads do not interfere
+        ByteBuffer people = buffer.duplicate();
+        people.position(peopleOffset + buffer.getInt(recordStart + 24));
+        Person person = TokenRecordCodec.readPerson(people);
+        return new Token(buffer.getInt(recordStart), person, buffer.getLong(recordStart + 8),
+                buffer.getInt(recordStart + 4), buffer.getLong(recordStart + 16));
+    }
+
+    /**
+     * Binary search for the first index entry whose key is at least the given key.
+     */
+    private int firstEntry(int indexOffset, int key) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyOf(entry(indexOffset, middle)) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long entry(int indexOffset, int i) {
+        return buffer.getLong(indexOffset + i * INDEX_ENTRY_SIZE);
+    }
+
+    // An index entry is a key in the high 32 bits and a position in the low 32 bits,
+    // so sorting the longs sorts by key and then by served order
+    private static long indexEntry(int key, int position) {
+        return (long) key << 32 | position;
+    }
+
+    private static int keyOf(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static int positionOf(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * The number of bytes TokenRecordCodec.writeString uses for a string.
+     */
+    private static int encodedLength(String text) {
+        return 2 + text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
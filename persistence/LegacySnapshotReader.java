@@ -0,0 +1,190 @@
+package persistence;
+
+import logic.QueueManager;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+import model.Token;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Reads a "<mode>_queue.dat" written by the first version of the program,
+ * which saved the QueueManager with a plain ObjectOutputStream on exit
+ * (a MyQueue and a MyLinkedList of Tokens, with java.util.Date issue times).
+ * Those classes have all changed since, so the file cannot be read back
+ * into them. Instead every old class is read into a small "mirror" class
+ * here with the same fields and serialVersionUID, and the tokens are then
+ * copied into a new QueueManager:
+ * - served tokens go into the history, in the same order (the old version
+ *   did not record when or where a token was served, so the issue time
+ *   and counter 0 are used)
+ * - waiting tokens go into the waiting queue, in the same order
+ */
+class LegacySnapshotReader {
+
+    // Old class name -> the mirror class that reads it, with the old serialVersionUIDs
+    private static final HashMap<String, Class<?>> MIRRORS = new HashMap<>();
+    private static final HashMap<String, Long> OLD_UIDS = new HashMap<>();
+
+    static {
+        mirror("logic.QueueManager", OldQueueManager.class, -5189424144646030338L);
+        mirror("ds.MyQueue", OldQueue.class, -2606130449402624635L);
+        mirror("ds.MyLinkedList", OldList.class, -7454479394614361910L);
+        mirror("ds.MyLinkedList$Node", OldList.Node.class, -7773554334998129343L);
+        mirror("model.Token", OldToken.class, 1280796478805787238L);
+        mirror("model.Person", OldPerson.class, 8316150722431093485L);
+        mirror("model.BankCustomer", OldBankCustomer.class, -3627188457971313314L);
+        mirror("model.Patient", OldPatient.class, 3796304190218881620L);
+    }
+
+    private static void mirror(String oldName, Class<?> mirrorClass, long oldUid) {
+        MIRRORS.put(oldName, mirrorClass);
+        OLD_UIDS.put(oldName, oldUid);
+    }
+
+    /**
+     * Checks whether a snapshot file starts the way the old format did:
+     * a serialization stream whose first item is an object (the newer
+     * single-stream format starts with an int, DQS1, instead).
+     * @param start At least the first 5 bytes of the file.
+     * @return true if it looks like the old format.
+     */
+    static boolean looksLegacy(byte[] start) {
+        return start.length >= 5
+                && (start[0] & 0xFF) == 0xAC && (start[1] & 0xFF) == 0xED // ObjectOutputStream magic
+                && start[4] == 0x73; // TC_OBJECT
+    }
+
+    /**
+     * Reads an old snapshot and copies its tokens into a new QueueManager.
+     * @param in The file contents, from the start.
+     * @return The migrated manager.
+     * @throws IOException if the file is not a readable old snapshot.
+     */
+    static QueueManager read(InputStream in) throws IOException {
+        OldQueueManager old;
+        try (ObjectInputStream ois = new MirrorInputStream(in)) {
+            Object object = ois.readObject();
+            if (!(object instanceof OldQueueManager)) {
+                throw new InvalidClassException("The old snapshot does not hold a QueueManager");
+            }
+            old = (OldQueueManager) object;
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException("The old snapshot holds an unknown class: " + e.getMessage());
+        }
+
+        QueueManager manager = new QueueManager();
+        if (old.historyList != null) {
+            for (OldList.Node node = old.historyList.head; node != null; node = node.next) {
+                Token token = convert((OldToken) node.data);
+                manager.restoreIssuedToken(token);
+                manager.restoreServedToken(token.getTokenNumber(), 0, token.getIssueTime());
+            }
+        }
+        if (old.waitingQueue != null && old.waitingQueue.list != null) {
+            for (OldList.Node node = old.waitingQueue.list.head; node != null; node = node.next) {
+                manager.restoreIssuedToken(convert((OldToken) node.data));
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Builds a current Token (and Person) from an old one.
+     */
+    private static Token convert(OldToken old) throws IOException {
+        if (old == null || old.person == null) {
+            throw new InvalidClassException("The old snapshot holds an incomplete token");
+        }
+        Person person;
+        if (old.person instanceof OldPatient) {
+            person = new Patient(old.person.name, old.person.id, ((OldPatient) old.person).ailment);
+        } else {
+            person = new BankCustomer(old.person.name, old.person.id, ((OldBankCustomer) old.person).serviceType);
+        }
+        long issueTime = old.issueTime != null ? old.issueTime.getTime() : System.currentTimeMillis();
+        return new Token(old.tokenNumber, person, issueTime);
+    }
+
+    /**
+     * Reads each old class into its mirror. The mirror's descriptor is used
+     * in place of the old one, so the old serialVersionUID is checked here.
+     */
+    private static class MirrorInputStream extends ObjectInputStream {
+
+        MirrorInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass streamClass = super.readClassDescriptor();
+            Class<?> mirrorClass = MIRRORS.get(streamClass.getName());
+            if (mirrorClass == null) {
+                return streamClass; // e.g. java.util.Date
+            }
+            if (streamClass.getSerialVersionUID() != OLD_UIDS.get(streamClass.getName())) {
+                throw new InvalidClassException(streamClass.getName(), "not the old snapshot format");
+            }
+            return ObjectStreamClass.lookup(mirrorClass);
+        }
+    }
+
+    // --- Mirrors of the old classes: same field names, types and serialVersionUIDs ---
+
+    private static class OldQueueManager implements java.io.Serializable {
+        private static final long serialVersionUID = -5189424144646030338L;
+        private OldQueue waitingQueue;
+        private OldList historyList;
+        private int nextTokenNumber;
+    }
+
+    private static class OldQueue implements java.io.Serializable {
+        private static final long serialVersionUID = -2606130449402624635L;
+        private OldList list;
+    }
+
+    private static class OldList implements java.io.Serializable {
+        private static final long serialVersionUID = -7454479394614361910L;
+        private Node head;
+        private Node tail;
+        private int size;
+
+        // An inner (not static) class, like the old one, so it has the same this$0 field
+        private class Node implements java.io.Serializable {
+            private static final long serialVersionUID = -7773554334998129343L;
+            Object data;
+            Node next;
+        }
+    }
+
+    private static class OldToken implements java.io.Serializable {
+        private static final long serialVersionUID = 1280796478805787238L;
+        private int tokenNumber;
+        private OldPerson person;
+        private Date issueTime;
+    }
+
+    private abstract static class OldPerson implements java.io.Serializable {
+        private static final long serialVersionUID = 8316150722431093485L;
+        protected String name;
+        protected String id;
+    }
+
+    private static class OldBankCustomer extends OldPerson {
+        private static final long serialVersionUID = -3627188457971313314L;
+        private String serviceType;
+    }
+
+    private static class OldPatient extends OldPerson {
+        private static final long serialVersionUID = 3796304190218881620L;
+        private String ailment;
+    }
+}
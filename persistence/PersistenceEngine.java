@@ -0,0 +1,457 @@
+package persistence;
+
+import ds.MyLinkedList;
+import logic.HistoryStore;
+import logic.QueueListener;
+import logic.QueueManager;
+import model.Appointment;
+import model.Token;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Saves the QueueManager using a journal plus periodic snapshots.
+ * - Every issue and serve (and appointment change) is appended to the TokenJournal as it happens.
+ * - When the journal has grown to half the size of the last snapshot (and
+ *   on exit) the whole manager is written to "<baseName>_queue.dat", and
+ *   the journal before it is deleted.
+ * Tying the snapshot to the size of the state keeps saving O(1) per
+ * operation on average: a snapshot of S bytes is only written after about
+ * S / 2 bytes of journal, so every journaled byte pays for at most two
+ * snapshot bytes however long the history gets, and recovery never replays
+ * more than about half a snapshot's worth of journal. (A fixed count of
+ * operations would rewrite a million-token history, some 60 MB, every time.)
+ * On startup the snapshot is loaded and the journal is replayed on top of it,
+ * so a crash loses at most the last few milliseconds of work.
+ * A save file from the first version of the program (the whole manager,
+ * written on exit) is converted on startup by LegacySnapshotReader.
+ *
+ * Snapshot layout: [int magic][long sequence][long historyOffset]
+ *                  [the manager, with an empty history in place of the real one]
+ *                  [the history, starting at historyOffset]
+ * Both sections are Java serialization streams. Startup only reads the first
+ * one (the waiting queue), so the first token can be served right away no
+ * matter how long the history is; the history is read on a background thread
+ * and then put in front of any tokens served in the meantime.
+ * Periodic snapshots are started on a background thread, because the
+ * listener methods are called while the manager is in the middle of an
+ * operation. Issuing and serving are only paused while a snapshot's image
+ * is taken (the waiting queue serialized into memory and the history
+ * frozen, see HistoryStore.frozenCopy); the SnapshotWriter thread then
+ * writes it to disk, so a long history no longer holds up the counters or
+ * the GUI while the file is written and forced to disk.
+ * Starting a new day moves the served history into the TokenArchive
+ * ("<baseName>_archive" folder) before the manager is replaced.
+ */
+public class PersistenceEngine implements QueueListener {
+
+    // Take a new snapshot once the journal is 1 / JOURNAL_SIZE_DIVISOR of the last snapshot's size...
+    private static final int JOURNAL_SIZE_DIVISOR = 2;
+    // ...or this many bytes, if that is more (so a small queue is not snapshotted every few operations)
+    private static final long MIN_JOURNAL_BYTES = 64 * 1024;
+    // Written at the start of a snapshot file so old formats are recognised
+    private static final int SNAPSHOT_MAGIC = 0x44515332; // "DQS2"
+    private static final int SNAPSHOT_HEADER_SIZE = 20;
+    // Older snapshots were one serialization stream holding this magic and the whole manager
+    private static final int SINGLE_STREAM_SNAPSHOT_MAGIC = 0x44515331; // "DQS1"
+
+    private final File snapshotFile;
+    private final TokenJournal journal;
+    // Earlier days, one memory-mapped segment per day
+    private final TokenArchive archive;
+    // Loads the snapshot's history after startup, then takes the periodic snapshots
+    private final ExecutorService snapshotter;
+    // Writes the snapshots taken to disk, one at a time
+    private final SnapshotWriter writer;
+    // The background history load (null if there was nothing to load)
+    private volatile Future<?> historyLoad;
+    // Describes data that could not be loaded, for the GUI to show (null if none)
+    private volatile String recoveryWarning;
+    // Makes sure only one periodic snapshot is waiting at a time
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
+    // The manager whose operations are being journaled
+    private volatile QueueManager manager;
+
+    /**
+     * Constructor for a persistence engine.
+     * @param directory The folder for the snapshot and journal files.
+     * @param baseName The file name prefix, based on the appMode (e.g. "Bank").
+     */
+    public PersistenceEngine(File directory, String baseName) {
+        this.snapshotFile = new File(directory, baseName + "_queue.dat");
+        this.journal = new TokenJournal(directory, baseName);
+        this.archive = new TokenArchive(new File(directory, baseName + "_archive"), ZoneId.systemDefault());
+        this.snapshotter = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, baseName + "-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer = new SnapshotWriter(snapshotFile, journal, SNAPSHOT_MAGIC, SNAPSHOT_HEADER_SIZE,
+                baseName + "-snapshot-writer");
+    }
+
+    /**
+     * Loads the last snapshot's waiting queue, replays the journal on top of
+     * it and starts journaling the recovered manager. The snapshot's history
+     * is loaded in the background afterwards (see awaitHistoryLoaded).
+     * If there is no usable snapshot, recovery starts from an empty manager;
+     * an unreadable snapshot is kept under another name (see getRecoveryWarning).
+     * @return The recovered QueueManager.
+     * @throws IOException if the journal cannot be read or opened.
+     */
+    public QueueManager recover() throws IOException {
+        QueueManager loaded = null;
+        long snapshotSequence = 0;
+        long historyOffset = 0;
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.position() == SNAPSHOT_HEADER_SIZE && header.getInt(0) == SNAPSHOT_MAGIC) {
+                snapshotSequence = header.getLong(4);
+                historyOffset = header.getLong(12);
+                loaded = (QueueManager) openStream(channel, SNAPSHOT_HEADER_SIZE).readObject();
+            } else if (header.position() >= 5 && LegacySnapshotReader.looksLegacy(header.array())) {
+                // Saved by the first version of the program (the whole QueueManager on exit):
+                // convert it, and keep the original, since the next snapshot replaces the file
+                loaded = LegacySnapshotReader.read(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+                keepLegacySnapshot();
+            } else {
+                // Older single-stream snapshot: everything is loaded now
+                ObjectInputStream ois = openStream(channel, 0);
+                if (ois.readInt() == SINGLE_STREAM_SNAPSHOT_MAGIC) {
+                    snapshotSequence = ois.readLong();
+                    loaded = (QueueManager) ois.readObject();
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // First run: nothing saved yet
+        } catch (Exception e) {
+            e.printStackTrace(); // Unreadable snapshot, start again from the journal
+            keepUnreadableSnapshot("The saved queue could not be read", e, true);
+            loaded = null;
+            snapshotSequence = 0;
+            historyOffset = 0;
+        }
+        if (loaded == null) {
+            loaded = new QueueManager();
+        }
+        journal.recover(loaded, snapshotSequence);
+        attach(loaded);
+        if (historyOffset > 0) {
+            QueueManager target = loaded;
+            long offset = historyOffset;
+            historyLoad = snapshotter.submit(() -> loadHistory(target, offset));
+        }
+        return loaded;
+    }
+
+    /**
+     * Reads the history section of the snapshot and puts it in front of the manager's history.
+     * No snapshot is taken until it has finished (see awaitHistoryLoaded),
+     * so none can replace the file meanwhile.
+     */
+    private void loadHistory(QueueManager target, long historyOffset) {
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            target.restoreEarlierHistory((HistoryStore) openStream(channel, historyOffset).readObject());
+        } catch (Exception e) {
+            e.printStackTrace(); // The queue is fine, only the served history is missing
+            keepUnreadableSnapshot("The served history could not be read", e, false);
+        }
+    }
+
+    /**
+     * Opens a serialization stream on the snapshot file, starting at a byte offset.
+     */
+    private static ObjectInputStream openStream(FileChannel channel, long offset) throws IOException {
+        return new ObjectInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset)), 64 * 1024));
+    }
+
+    /**
+     * Keeps a copy of a snapshot in the first program version's format
+     * next to the new one ("<baseName>_queue.dat.v1-backup"), unless one was already kept.
+     */
+    private void keepLegacySnapshot() {
+        File kept = new File(snapshotFile.getPath() + ".v1-backup");
+        try {
+            if (!kept.exists()) {
+                Files.copy(snapshotFile.toPath(), kept.toPath());
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // The converted data is loaded; only the copy of the original is missing
+        }
+    }
+
+    /**
+     * Keeps an unreadable snapshot under another name, so the next snapshot
+     * does not overwrite it, and remembers a warning for the user.
+     * @param move true to move the file away, false to keep a copy (it is still being used).
+     */
+    private void keepUnreadableSnapshot(String problem, Exception cause, boolean move) {
+        File kept = new File(snapshotFile.getPath() + ".unreadable-" + System.currentTimeMillis());
+        String warning = problem + " (" + cause + ").";
+        try {
+            if (move) {
+                Files.move(snapshotFile.toPath(), kept.toPath());
+            } else {
+                Files.copy(snapshotFile.toPath(), kept.toPath());
+            }
+            warning += " The file was kept as " + kept.getName() + ".";
+        } catch (IOException e) {
+            e.printStackTrace(); // Could not keep it, the warning still goes out
+        }
+        recoveryWarning = warning;
+    }
+
+    /**
+     * Waits until the snapshot's history has been loaded in the background
+     * (returns at once if there was none, or if it has already finished).
+     */
+    public void awaitHistoryLoaded() {
+        Future<?> load = historyLoad;
+        if (load == null) {
+            return;
+        }
+        try {
+            load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace(); // loadHistory reports its own errors, so this is unexpected
+        }
+    }
+
+    /**
+     * Returns a description of saved data that could not be loaded by recover,
+     * or null if everything was loaded.
+     * @return The warning text, or null.
+     */
+    public String getRecoveryWarning() {
+        return recoveryWarning;
+    }
+
+    /**
+     * Starts journaling a different manager (e.g. after "Reset Data / New Day").
+     * @param newManager The manager to journal from now on.
+     */
+    public synchronized void attach(QueueManager newManager) {
+        if (manager != null) {
+            manager.removeQueueListener(this);
+        }
+        manager = newManager;
+        manager.addQueueListener(this);
+    }
+
+    /**
+     * Starts a new day: archives the served history of the current manager,
+     * then journals the new manager and writes its snapshot.
+     * It writes O(history) to disk and waits for it, so GUI code should call
+     * it from a background thread (MainFrame uses a SwingWorker).
+     * @param newManager The (usually empty) manager for the new day.
+     * @throws IOException if the history cannot be archived (nothing is changed then).
+     */
+    public synchronized void startNewDay(QueueManager newManager) throws IOException {
+        awaitHistoryLoaded();
+        Lock exclusive = manager.exclusiveLock();
+        exclusive.lock();
+        try {
+            archive.archiveDay(manager.getHistoryList());
+        } finally {
+            exclusive.unlock();
+        }
+        attach(newManager);
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if saving fails
+        }
+    }
+
+    /**
+     * Returns the archive of earlier days.
+     * @return The TokenArchive.
+     */
+    public TokenArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Writes a snapshot of the whole manager and deletes the journal it replaces,
+     * and waits until it is safely on disk.
+     * The snapshot is written to a temporary file first and then renamed,
+     * so a crash never leaves a half-written snapshot behind.
+     * Issuing and serving are only paused while its image is taken (see
+     * takeSnapshot), not while it is written.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void checkpoint() throws IOException {
+        writer.awaitWritten(takeSnapshot());
+    }
+
+    /**
+     * Takes an image of the manager that matches the journal sequence number
+     * exactly, and hands it to the writer thread without waiting for it.
+     * Issuing and serving are paused meanwhile, but only for O(waiting tokens):
+     * the journal is rotated, the manager is serialized into memory without its
+     * history, and the history is frozen in O(size / 1024) instead of written.
+     * If the history from the last snapshot is still loading, this waits for it first.
+     * @return The image's number, for SnapshotWriter.awaitWritten.
+     * @throws IOException if the journal cannot be rotated or the manager serialized.
+     */
+    private synchronized long takeSnapshot() throws IOException {
+        awaitHistoryLoaded();
+        Lock exclusive = manager.exclusiveLock();
+        exclusive.lock();
+        try {
+            long sequence = journal.getLastSequence();
+            int closedSegment = journal.rotate();
+
+            HistoryStore history = manager.getHistoryList();
+            ByteArrayOutputStream queueBytes = new ByteArrayOutputStream(64 * 1024);
+            ObjectOutputStream queueSection = new WithoutHistoryOutputStream(queueBytes, history);
+            queueSection.writeObject(manager);
+            queueSection.flush();
+            // Submitted under the engine's lock, so images are numbered in the order they were taken
+            return writer.submit(new SnapshotWriter.Image(sequence, closedSegment,
+                    queueBytes.toByteArray(), history.frozenCopy()));
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Returns how many snapshots were never written because a newer one
+     * replaced them while they were waiting for the writer thread.
+     * @return The number of coalesced snapshots.
+     */
+    public long getCoalescedSnapshotCount() {
+        return writer.getCoalescedCount();
+    }
+
+    /**
+     * Takes a final snapshot and closes the journal.
+     * @throws IOException if the snapshot or journal cannot be written.
+     */
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        try {
+            // A periodic snapshot may still be queued; it must not run after the journal is closed
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
+        writer.close();
+        journal.close();
+        archive.close();
+    }
+
+    @Override
+    public void tokenIssued(Token token) {
+        try {
+            journal.appendIssued(token);
+            journalGrew();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if journaling fails
+        }
+    }
+
+    @Override
+    public void tokenServed(Token token) {
+        try {
+            journal.appendServed(token);
+            journalGrew();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if journaling fails
+        }
+    }
+
+    @Override
+    public void tokensIssued(MyLinkedList<Token> tokens) {
+        try {
+            journal.appendIssuedGroup(tokens);
+            journalGrew();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if journaling fails
+        }
+    }
+
+    @Override
+    public void tokensServed(MyLinkedList<Token> tokens) {
+        try {
+            journal.appendServedGroup(tokens);
+            journalGrew();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if journaling fails
+        }
+    }
+
+    @Override
+    public void appointmentChanged(Appointment appointment) {
+        try {
+            journal.appendAppointment(appointment);
+            journalGrew();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if journaling fails
+        }
+    }
+
+    /**
+     * Writes the manager with a new, empty HistoryStore in place of its real
+     * one, so the history can be written (and later read) as its own section.
+     * ReplicationPrimary uses it for the snapshots it sends, too.
+     */
+    static class WithoutHistoryOutputStream extends ObjectOutputStream {
+
+        private final HistoryStore history;
+
+        WithoutHistoryOutputStream(OutputStream out, HistoryStore history) throws IOException {
+            super(out);
+            this.history = history;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            return obj == history ? new HistoryStore() : obj;
+        }
+    }
+
+    /**
+     * Called after every journal append: schedules a snapshot once the
+     * journal has grown large enough compared with the last snapshot. O(1).
+     */
+    private void journalGrew() {
+        long threshold = Math.max(MIN_JOURNAL_BYTES, writer.getLastSize() / JOURNAL_SIZE_DIVISOR);
+        if (journal.getBytesSinceRotate() >= threshold
+                && snapshotPending.compareAndSet(false, true)) {
+            snapshotter.execute(() -> {
+                snapshotPending.set(false);
+                try {
+                    takeSnapshot(); // Not waited for; the writer thread reports its own errors
+                } catch (IOException e) {
+                    e.printStackTrace(); // Print error to console if saving fails
+                }
+            });
+        }
+    }
+}
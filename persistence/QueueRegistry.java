@@ -0,0 +1,279 @@
+package persistence;
+
+import ds.ConcurrentQueue;
+import ds.QueueADT;
+import exceptions.InvalidInputException;
+import logic.QueueManager;
+import logic.TokenScheduler;
+import model.Token;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many independent queues ("shards") in one process, one per branch
+ * or department, e.g. "north", "cardiology". Every shard has its own
+ * QueueManager, its own lock and its own PersistenceEngine, with its files
+ * in a folder of its own: "<root>/<shardId>/<appMode>_queue.dat" and so on.
+ *
+ * - Shards are loaded lazily, the first time they are used.
+ * - A shard nobody has used for idleMillis is evicted: it takes a final
+ *   snapshot and is dropped from memory. The next use loads it again.
+ * - There is no global lock. Finding a shard is a ConcurrentHashMap lookup,
+ *   and using it only counts the users on that shard, so requests for
+ *   different branches run side by side on different cores. Loading and
+ *   evicting lock only the shard concerned.
+ *
+ * Use a shard through a Lease, and close the lease when done:
+ *     try (QueueRegistry.Lease lease = registry.acquire("north")) {
+ *         lease.getManager().generateNewToken(person);
+ *     }
+ * A shard is never evicted while a lease on it is open.
+ */
+public class QueueRegistry {
+
+    // Shard ids become folder names, so they are short and use only letters, digits, '-' and '_'
+    private static final int MAX_SHARD_ID_LENGTH = 64;
+
+    private final File rootDirectory;
+    private final String appMode;
+    private final long idleMillis;
+    private final ConcurrentHashMap<String, Shard> shards = new ConcurrentHashMap<>();
+    // Looks for idle shards in the background
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * One branch or department: its manager and persistence, loaded on first use.
+     * users counts the open leases; -1 means the shard is evicted and must not be used.
+     */
+    private static final class Shard {
+        final String id;
+        final AtomicInteger users = new AtomicInteger();
+        volatile long lastUsed = System.currentTimeMillis();
+        // Both set by load, under the shard's own lock
+        volatile QueueManager manager;
+        volatile PersistenceEngine persistence;
+
+        Shard(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Counts one more user, unless the shard has been evicted.
+         */
+        boolean tryEnter() {
+            while (true) {
+                int count = users.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * An open use of one shard. Closing it lets the shard be evicted again once it is idle.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final Shard shard;
+        private boolean closed;
+
+        private Lease(Shard shard) {
+            this.shard = shard;
+        }
+
+        /**
+         * Returns the shard's manager (thread-safe, so it may be shared with other leases).
+         * @return The QueueManager of the shard.
+         */
+        public QueueManager getManager() {
+            return shard.manager;
+        }
+
+        /**
+         * Returns the shard's persistence engine (e.g. for its archive).
+         * @return The PersistenceEngine of the shard.
+         */
+        public PersistenceEngine getPersistence() {
+            return shard.persistence;
+        }
+
+        /**
+         * Returns the id of the shard.
+         * @return The branch or department id.
+         */
+        public String getShardId() {
+            return shard.id;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                shard.lastUsed = System.currentTimeMillis();
+                shard.users.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Constructor for a registry. Nothing is loaded until a shard is acquired.
+     * @param rootDirectory The folder that holds one sub-folder per shard.
+     * @param appMode The system mode ("Bank" or "Hospital"), used as the file name prefix.
+     * @param idleMillis How long a shard may go unused before it is evicted.
+     */
+    public QueueRegistry(File rootDirectory, String appMode, long idleMillis) {
+        this.rootDirectory = rootDirectory;
+        this.appMode = appMode;
+        this.idleMillis = idleMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, appMode + "-shard-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleMillis / 4, 1);
+        evictor.scheduleWithFixedDelay(this::evictIdleShards, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a lease on a shard, loading the shard from its files if it is not in memory.
+     * @param shardId The branch or department id (letters, digits, '-' and '_'; case is ignored).
+     * @return The lease; close it when done.
+     * @throws InvalidInputException if the id is not a valid shard id.
+     * @throws IOException if the shard's saved data cannot be loaded.
+     */
+    public Lease acquire(String shardId) throws InvalidInputException, IOException {
+        checkShardId(shardId);
+        // "North" and "north" must not become two shards writing to one folder
+        // (folder names ignore case on Windows and macOS)
+        shardId = shardId.toLowerCase(Locale.ROOT);
+        while (true) {
+            Shard shard = shards.computeIfAbsent(shardId, Shard::new);
+            if (!shard.tryEnter()) {
+                // Being evicted: wait until its final snapshot is written, then load it afresh
+                synchronized (shard) {
+                    shards.remove(shardId, shard);
+                }
+                continue;
+            }
+            Lease lease = new Lease(shard);
+            if (shard.manager == null) {
+                try {
+                    load(shard);
+                } catch (IOException | RuntimeException e) {
+                    lease.close();
+                    throw e;
+                }
+            }
+            return lease;
+        }
+    }
+
+    /**
+     * Loads a shard's manager (once; other users of the same shard wait for it).
+     * The waiting queue is switched to a thread-safe one, like QueueServer.startHeadless does.
+     */
+    private void load(Shard shard) throws IOException {
+        synchronized (shard) {
+            if (shard.manager != null) {
+                return;
+            }
+            File directory = new File(rootDirectory, shard.id);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create shard folder: " + directory);
+            }
+            PersistenceEngine persistence = new PersistenceEngine(directory, appMode);
+            QueueManager manager = persistence.recover();
+            if (persistence.getRecoveryWarning() != null) {
+                System.err.println(shard.id + ": " + persistence.getRecoveryWarning());
+            }
+            QueueADT<Token> waiting = manager.getWaitingList();
+            if (!(waiting instanceof ConcurrentQueue) && !(waiting instanceof TokenScheduler)) {
+                manager.replaceWaitingQueue(new ConcurrentQueue<>());
+            }
+            shard.persistence = persistence;
+            shard.manager = manager;
+        }
+    }
+
+    /**
+     * Evicts every shard that has no open lease and has not been used for idleMillis.
+     */
+    private void evictIdleShards() {
+        long now = System.currentTimeMillis();
+        for (Shard shard : shards.values()) {
+            if (now - shard.lastUsed >= idleMillis && shard.users.compareAndSet(0, -1)) {
+                evict(shard);
+            }
+        }
+    }
+
+    /**
+     * Writes a shard's final snapshot and drops it. The shard's lock is held
+     * until the files are closed, so it cannot be loaded again half-way.
+     */
+    private void evict(Shard shard) {
+        synchronized (shard) {
+            try {
+                if (shard.persistence != null) {
+                    shard.persistence.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // Print error to console; the journal still holds the operations
+            } finally {
+                shard.manager = null;
+                shard.persistence = null;
+                shards.remove(shard.id, shard);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of shards in memory now.
+     * @return The number of loaded (or loading) shards.
+     */
+    public int getLoadedShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Stops evicting and closes every shard (final snapshots included).
+     * Leases still open at this point must not be used any more.
+     */
+    public void close() {
+        // Let a running eviction finish its snapshot (interrupting it would close its files)
+        evictor.shutdown();
+        try {
+            evictor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Shard shard : shards.values()) {
+            shard.users.set(-1);
+            evict(shard);
+        }
+    }
+
+    private static void checkShardId(String shardId) throws InvalidInputException {
+        if (shardId == null || shardId.isEmpty() || shardId.length() > MAX_SHARD_ID_LENGTH) {
+            throw new InvalidInputException("Branch id must be 1 to " + MAX_SHARD_ID_LENGTH + " characters.");
+        }
+        for (int i = 0; i < shardId.length(); i++) {
+            char c = shardId.charAt(i);
+            boolean allowed = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_';
+            if (!allowed) {
+                throw new InvalidInputException("Branch id may only contain letters, digits, '-' and '_'.");
+            }
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package persistence;
+
+import ds.MyLinkedList;
+import logic.HistoryStore;
+import logic.QueueListener;
+import logic.QueueManager;
+import model.Appointment;
+import model.Token;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The primary side of a hot standby: it streams every issue and serve of
+ * its QueueManager over TCP to one ReplicationStandby, which keeps an
+ * up-to-date copy and takes over if this process dies.
+ *
+ * - When a standby connects it first gets a snapshot of the whole manager,
+ *   then every later operation. Issuing and serving are only paused while
+ *   the snapshot's image is taken, as PersistenceEngine does it: the
+ *   waiting queue is serialized into memory and the history is frozen (see
+ *   HistoryStore.frozenCopy). The history is serialized afterwards and sent
+ *   in parts of SNAPSHOT_PART_BYTES as it goes, the first one at once, so
+ *   the standby keeps hearing from the primary and never mistakes a long
+ *   history for a dead primary.
+ * - The listener methods only encode the operation into a buffer. A sender
+ *   thread writes everything buffered in one go ("batching"), without
+ *   waiting for the standby to answer ("pipelining"), so the queue is never
+ *   slowed down by the network.
+ * - When nothing happens, a heartbeat is sent every HEARTBEAT_MILLIS, so the
+ *   standby notices a silent primary quickly.
+ * - The standby reports the last sequence number it applied (see
+ *   getAcknowledgedSequence). Replication is asynchronous: operations done
+ *   just before a crash may not have reached the standby yet.
+ * - A standby that falls more than MAX_PENDING_BYTES behind is sent a fresh
+ *   snapshot instead of the backlog.
+ *
+ * Message layout (both ways): [int length][byte type][long sequence][payload]
+ * See ReplicationStandby for the payload of each type.
+ */
+public class ReplicationPrimary implements QueueListener, Closeable {
+
+    // Message types
+    static final byte MSG_SNAPSHOT = 1;
+    static final byte MSG_ISSUED = 2;
+    static final byte MSG_SERVED = 3;
+    static final byte MSG_ISSUED_GROUP = 4;
+    static final byte MSG_SERVED_GROUP = 5;
+    static final byte MSG_HEARTBEAT = 6;
+    static final byte MSG_ACK = 7;
+    static final byte MSG_APPOINTMENT = 8;
+    static final byte MSG_SNAPSHOT_PART = 9;
+
+    // How often an idle primary tells the standby it is alive
+    static final long HEARTBEAT_MILLIS = 100;
+    // A standby further behind than this gets a new snapshot instead
+    private static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+    // The most snapshot bytes sent in one message
+    private static final int SNAPSHOT_PART_BYTES = 64 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private volatile QueueManager manager;
+    private volatile boolean open = true;
+
+    // Encoded operations waiting for the sender, and the sequence number of the last one.
+    // Guarded by bufferLock; the sender swaps pending with spare to send it.
+    private final Object bufferLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+    private long sequence;
+    // The connected standby (null if none); operations are only encoded while there is one
+    private StandbyConnection standby;
+    // The last sequence number the standby has applied
+    private volatile long acknowledgedSequence;
+
+    /**
+     * Constructor for a primary that listens for a standby on the given address.
+     * Call start to begin accepting.
+     * @param manager The queue to replicate.
+     * @param address The address and port for the standby to connect to (port 0 picks a free port).
+     * @throws IOException if the port cannot be opened.
+     */
+    public ReplicationPrimary(QueueManager manager, InetSocketAddress address) throws IOException {
+        this.manager = manager;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        this.acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts listening to the manager and accepting a standby.
+     */
+    public void start() {
+        manager.addQueueListener(this);
+        acceptor.start();
+    }
+
+    /**
+     * Replicates a different manager from now on (e.g. after "Reset Data / New Day").
+     * The standby is sent a fresh snapshot.
+     * @param newManager The manager to replicate.
+     */
+    public void attach(QueueManager newManager) {
+        manager.removeQueueListener(this);
+        manager = newManager;
+        newManager.addQueueListener(this);
+        requestSnapshot();
+    }
+
+    /**
+     * Returns the port the standby should connect to.
+     * @return The port number.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns whether a standby is connected.
+     * @return True if a standby is connected.
+     */
+    public boolean hasStandby() {
+        synchronized (bufferLock) {
+            return standby != null;
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last operation sent to the standby
+     * (including ones still in the buffer).
+     * @return The last sequence number.
+     */
+    public long getSequence() {
+        synchronized (bufferLock) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last operation the standby has applied.
+     * getSequence() minus this is how far the standby is behind.
+     * @return The acknowledged sequence number.
+     */
+    public long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+
+    /**
+     * Stops accepting, disconnects the standby and stops listening to the manager.
+     * The standby will take over, so only close the primary when the process is ending.
+     */
+    @Override
+    public void close() throws IOException {
+        open = false;
+        manager.removeQueueListener(this);
+        serverSocket.close();
+        StandbyConnection current;
+        synchronized (bufferLock) {
+            current = standby;
+            standby = null;
+            bufferLock.notifyAll();
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    // --- QueueListener: encode each operation for the sender ---
+
+    @Override
+    public void tokenIssued(Token token) {
+        synchronized (bufferLock) {
+            if (standby == null) {
+                return;
+            }
+            while (true) {
+                try {
+                    begin(MSG_ISSUED);
+                    scratch.putInt(token.getTokenNumber());
+                    scratch.putLong(token.getIssueTime());
+                    TokenRecordCodec.writePerson(scratch, token.getPerson());
+                    break;
+                } catch (BufferOverflowException e) {
+                    growScratch();
+                }
+            }
+            finish();
+        }
+    }
+
+    @Override
+    public void tokenServed(Token token) {
+        synchronized (bufferLock) {
+            if (standby == null) {
+                return;
+            }
+            begin(MSG_SERVED);
+            scratch.putInt(token.getTokenNumber());
+            scratch.putInt(token.getServedByCounter());
+            scratch.putLong(token.getServedTime());
+            finish();
+        }
+    }
+
+    @Override
+    public void tokensIssued(MyLinkedList<Token> tokens) {
+        synchronized (bufferLock) {
+            if (standby == null) {
+                return;
+            }
+            Token first = tokens.getFirst();
+            while (true) {
+                try {
+                    begin(MSG_ISSUED_GROUP);
+                    scratch.putInt(first.getTokenNumber());
+                    scratch.putLong(first.getIssueTime());
+                    scratch.putInt(tokens.getSize());
+                    for (Token token : tokens) {
+                        TokenRecordCodec.writePerson(scratch, token.getPerson());
+                    }
+                    break;
+                } catch (BufferOverflowException e) {
+                    growScratch();
+                }
+            }
+            finish();
+        }
+    }
+
+    @Override
+    public void tokensServed(MyLinkedList<Token> tokens) {
+        synchronized (bufferLock) {
+            if (standby == null) {
+                return;
+            }
+            Token first = tokens.getFirst();
+            while (true) {
+                try {
+                    begin(MSG_SERVED_GROUP);
+                    scratch.putInt(first.getServedByCounter());
+                    scratch.putLong(first.getServedTime());
+                    scratch.putInt(tokens.getSize());
+                    for (Token token : tokens) {
+                        scratch.putInt(token.getTokenNumber());
+                    }
+                    break;
+                } catch (BufferOverflowException e) {
+                    growScratch();
+                }
+            }
+            finish();
+        }
+    }
+
+    @Override
+    public void appointmentChanged(Appointment appointment) {
+        synchronized (bufferLock) {
+            if (standby == null) {
+                return;
+            }
+            while (true) {
+                try {
+                    begin(MSG_APPOINTMENT);
+                    scratch.putInt(appointment.getAppointmentNumber());
+                    scratch.putLong(appointment.getAppointmentTime());
+                    TokenRecordCodec.writeAppointmentChange(scratch, appointment);
+                    break;
+                } catch (BufferOverflowException e) {
+                    growScratch();
+                }
+            }
+            finish();
+        }
+    }
+
+    @Override
+    public void historyRestored() {
+        // The earlier history arrived after the standby's snapshot was taken
+        requestSnapshot();
+    }
+
+    /**
+     * Starts a message in the scratch buffer (the length is filled in by finish).
+     */
+    private void begin(byte type) {
+        scratch.clear();
+        scratch.putInt(0);
+        scratch.put(type);
+        scratch.putLong(sequence + 1);
+    }
+
+    /**
+     * Completes the message in the scratch buffer and moves it to the pending buffer.
+     */
+    private void finish() {
+        scratch.putInt(0, scratch.position() - 4);
+        scratch.flip();
+        if (pending.remaining() < scratch.remaining()) {
+            if (pending.position() + scratch.remaining() > MAX_PENDING_BYTES) {
+                // The standby is too far behind: drop the backlog and resend everything
+                pending.clear();
+                standby.snapshotNeeded.set(true);
+            } else {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+                        pending.position() + scratch.remaining()));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+        }
+        pending.put(scratch);
+        sequence++;
+        bufferLock.notifyAll(); // Wake the sender
+    }
+
+    private void growScratch() {
+        scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+    }
+
+    private void requestSnapshot() {
+        synchronized (bufferLock) {
+            if (standby != null) {
+                standby.snapshotNeeded.set(true);
+                bufferLock.notifyAll();
+            }
+        }
+    }
+
+    // --- Threads ---
+
+    /**
+     * Accepts standbys. A new standby replaces the current one.
+     */
+    private void acceptLoop() {
+        while (open) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                StandbyConnection connection = new StandbyConnection(socket);
+                StandbyConnection previous;
+                synchronized (bufferLock) {
+                    previous = standby;
+                    standby = connection;
+                    pending.clear();
+                }
+                if (previous != null) {
+                    previous.close();
+                }
+                connection.start();
+            } catch (IOException e) {
+                if (open) {
+                    e.printStackTrace(); // Print error to console and keep accepting
+                }
+            }
+        }
+    }
+
+    /**
+     * One connected standby: a sender thread for the operations and a
+     * reader thread for its acknowledgements.
+     */
+    private final class StandbyConnection {
+        final Socket socket;
+        final AtomicBoolean snapshotNeeded = new AtomicBoolean(true);
+        final Thread sender;
+        final Thread ackReader;
+
+        StandbyConnection(Socket socket) {
+            this.socket = socket;
+            this.sender = new Thread(this::sendLoop, "replication-sender");
+            this.ackReader = new Thread(this::ackLoop, "replication-acks");
+            sender.setDaemon(true);
+            ackReader.setDaemon(true);
+        }
+
+        void start() {
+            sender.start();
+            ackReader.start();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace(); // Print error to console, the socket is dropped anyway
+            }
+        }
+
+        /**
+         * Sends a snapshot when one is needed, then everything buffered, or a heartbeat.
+         */
+        private void sendLoop() {
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (open && isCurrent()) {
+                    if (snapshotNeeded.getAndSet(false)) {
+                        sendSnapshot(out);
+                        continue;
+                    }
+                    ByteBuffer batch;
+                    synchronized (bufferLock) {
+                        if (pending.position() == 0) {
+                            bufferLock.wait(HEARTBEAT_MILLIS);
+                        }
+                        if (standby != this || snapshotNeeded.get()) {
+                            continue;
+                        }
+                        if (pending.position() == 0) {
+                            // Nothing happened: a heartbeat carries the current sequence number
+                            pending.putInt(9).put(MSG_HEARTBEAT).putLong(sequence);
+                        }
+                        batch = pending;
+                        pending = spare;
+                        spare = batch;
+                    }
+                    out.write(batch.array(), 0, batch.position());
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The standby went away; a new one will get a fresh snapshot
+            } finally {
+                disconnect();
+            }
+        }
+
+        /**
+         * Takes an image of the manager while issuing and serving are paused,
+         * so the snapshot and the following operations fit together exactly,
+         * then sends it in parts. Only the waiting queue is serialized during
+         * the pause (O(waiting tokens)); the frozen history is serialized
+         * afterwards, while the queue carries on.
+         * Snapshot bytes: [int queue section length][the manager, with an empty history][the history]
+         */
+        private void sendSnapshot(OutputStream out) throws IOException {
+            QueueManager current = manager;
+            ByteArrayOutputStream queueBytes = new ByteArrayOutputStream(64 * 1024);
+            HistoryStore history;
+            long cut;
+            Lock exclusive = current.exclusiveLock();
+            exclusive.lock();
+            try {
+                HistoryStore liveHistory = current.getHistoryList();
+                ObjectOutputStream queueSection = new PersistenceEngine.WithoutHistoryOutputStream(queueBytes, liveHistory);
+                queueSection.writeObject(current);
+                queueSection.flush();
+                history = liveHistory.frozenCopy();
+                synchronized (bufferLock) {
+                    pending.clear(); // Everything so far is in the snapshot
+                    cut = sequence;
+                }
+            } finally {
+                exclusive.unlock();
+            }
+            SnapshotParts parts = new SnapshotParts(out, cut);
+            DataOutputStream data = new DataOutputStream(parts);
+            data.writeInt(queueBytes.size());
+            queueBytes.writeTo(data);
+            parts.flush(); // The first part goes out before the history is serialized
+            ObjectOutputStream historySection = new ObjectOutputStream(parts);
+            historySection.writeObject(history);
+            historySection.flush();
+            parts.finish();
+        }
+
+        /**
+         * Reads the standby's acknowledgements until the connection closes.
+         */
+        private void ackLoop() {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                while (true) {
+                    int length = in.readInt();
+                    byte type = in.readByte();
+                    long acked = in.readLong();
+                    in.skipNBytes(length - 9);
+                    if (type == MSG_ACK) {
+                        acknowledgedSequence = acked;
+                    }
+                }
+            } catch (SocketException e) {
+                // Closed
+            } catch (IOException e) {
+                // The standby went away
+            } finally {
+                disconnect();
+            }
+        }
+
+        private boolean isCurrent() {
+            synchronized (bufferLock) {
+                return standby == this;
+            }
+        }
+
+        private void disconnect() {
+            synchronized (bufferLock) {
+                if (standby == this) {
+                    standby = null;
+                    pending.clear();
+                }
+                bufferLock.notifyAll();
+            }
+            close();
+        }
+    }
+
+    /**
+     * Cuts the bytes of a snapshot into messages of at most
+     * SNAPSHOT_PART_BYTES: MSG_SNAPSHOT_PART for each full one and for
+     * flush, and MSG_SNAPSHOT for the last (see finish). Each message
+     * carries the snapshot's sequence number.
+     */
+    private static final class SnapshotParts extends OutputStream {
+        private final OutputStream out;
+        private final long cut;
+        // The message being filled: a 13-byte header, then up to SNAPSHOT_PART_BYTES
+        private final byte[] message = new byte[13 + SNAPSHOT_PART_BYTES];
+        private int count = 13;
+
+        SnapshotParts(OutputStream out, long cut) {
+            this.out = out;
+            this.cut = cut;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == message.length) {
+                send(MSG_SNAPSHOT_PART);
+            }
+            message[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == message.length) {
+                    send(MSG_SNAPSHOT_PART);
+                }
+                int n = Math.min(length, message.length - count);
+                System.arraycopy(bytes, offset, message, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        /**
+         * Sends what has been written so far as a part, if anything.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (count > 13) {
+                send(MSG_SNAPSHOT_PART);
+            }
+        }
+
+        /**
+         * Sends the rest as the last message, which tells the standby the snapshot is complete.
+         */
+        void finish() throws IOException {
+            send(MSG_SNAPSHOT);
+        }
+
+        private void send(byte type) throws IOException {
+            ByteBuffer.wrap(message, 0, 13).putInt(count - 4).put(type).putLong(cut);
+            out.write(message, 0, count);
+            out.flush();
+            count = 13;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package persistence;
+
+import logic.HistoryStore;
+import logic.QueueManager;
+import model.Person;
+import model.Token;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * The standby side of a hot standby: it connects to a ReplicationPrimary,
+ * keeps a copy of the primary's QueueManager by applying every operation it
+ * is sent, and takes over ("is promoted") when the primary is gone.
+ *
+ * Payloads after [int length][byte type][long sequence]:
+ * - snapshot part: the next bytes of a snapshot (sequence = the last operation it contains)
+ * - snapshot:     the last bytes of a snapshot, which is then complete. All its bytes together:
+ *                 [int queue section length][the QueueManager, with an empty history][the history]
+ * - issued:       [int tokenNumber][long issueTime][person]
+ * - served:       [int tokenNumber][int counter][long servedTime]
+ * - issued group: [int firstTokenNumber][long issueTime][int count][person]...
+ * - served group: [int counter][long servedTime][int count][int tokenNumber]...
+ * - heartbeat:    nothing
+ * - appointment:  [int appointmentNumber][long appointmentTime][byte status][int tokenNumber][person if booked]
+ * The standby answers with an ack ([int 9][byte 7][long applied sequence])
+ * after every batch it has applied.
+ *
+ * Failover: a primary that dies closes its connection, which the standby
+ * sees at once; a primary that hangs stops sending heartbeats, which the
+ * standby notices after FAILOVER_TIMEOUT_MILLIS. Either way the standby is
+ * promoted well within a second. There is no third machine to break ties,
+ * so a standby must only be used where losing the connection means the
+ * primary is gone (e.g. both on one machine, over loopback); otherwise both
+ * could end up serving.
+ * Until the first snapshot has arrived the standby keeps trying to connect,
+ * and is never promoted (it has nothing to take over). While a later
+ * snapshot arrives, every part counts as hearing from the primary; if the
+ * primary dies half-way, the standby takes over with the copy it had.
+ */
+public class ReplicationStandby implements Closeable {
+
+    // No message for this long means the primary is gone (heartbeats come every 100 ms)
+    static final int FAILOVER_TIMEOUT_MILLIS = 500;
+    // Pause between connection attempts while waiting for the primary
+    private static final long RETRY_MILLIS = 200;
+
+    private final InetSocketAddress primaryAddress;
+    private final Consumer<QueueManager> onPromote;
+    private final Thread receiver;
+    private volatile boolean open = true;
+    private volatile Socket socket;
+    // The copy of the primary's manager (null until the first snapshot)
+    private volatile QueueManager manager;
+    private volatile long appliedSequence;
+    private volatile boolean promoted;
+
+    /**
+     * Constructor for a standby of the primary at the given address. Call start to connect.
+     * @param primaryAddress Where the ReplicationPrimary listens.
+     * @param onPromote Called once, on the standby's thread, with the up-to-date
+     *                  manager when the primary is gone; it should start serving with it.
+     */
+    public ReplicationStandby(InetSocketAddress primaryAddress, Consumer<QueueManager> onPromote) {
+        this.primaryAddress = primaryAddress;
+        this.onPromote = onPromote;
+        this.receiver = new Thread(this::receiveLoop, "replication-standby");
+    }
+
+    /**
+     * Starts connecting to the primary and applying its operations.
+     */
+    public void start() {
+        receiver.start();
+    }
+
+    /**
+     * Returns the copy of the primary's manager. Until promotion it is changed
+     * by the standby's thread, so only read simple values from it.
+     * @return The replicated manager, or null before the first snapshot.
+     */
+    public QueueManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Returns the sequence number of the last operation applied.
+     * @return The applied sequence number.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Returns whether this standby has taken over from the primary.
+     * @return True once promoted.
+     */
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * Waits until the standby has been promoted (or the timeout passes).
+     * @param timeoutMillis The longest time to wait.
+     * @return True if it was promoted.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public boolean awaitPromotion(long timeoutMillis) throws InterruptedException {
+        receiver.join(timeoutMillis);
+        return promoted;
+    }
+
+    /**
+     * Stops replicating without taking over.
+     */
+    @Override
+    public void close() throws IOException {
+        open = false;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        receiver.interrupt();
+    }
+
+    /**
+     * Connects (again and again until a snapshot has arrived), applies
+     * everything the primary sends, and promotes when the primary is gone.
+     */
+    private void receiveLoop() {
+        while (open) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(primaryAddress, FAILOVER_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                connection.setSoTimeout(FAILOVER_TIMEOUT_MILLIS);
+                replicate(connection);
+            } catch (SocketTimeoutException | EOFException e) {
+                // The primary stopped sending or closed the connection
+            } catch (IOException | ClassNotFoundException e) {
+                if (manager == null && open) {
+                    sleepBeforeRetry(); // The primary is not up yet
+                    continue;
+                }
+            }
+            if (manager != null && open) {
+                promoted = true;
+                onPromote.accept(manager);
+                return;
+            }
+            if (open) {
+                sleepBeforeRetry();
+            }
+        }
+    }
+
+    /**
+     * Reads and applies messages until the connection fails.
+     */
+    private void replicate(Socket connection) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024));
+        DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+        byte[] body = new byte[1024];
+        // The parts of a snapshot received so far (null when none is arriving)
+        ByteArrayOutputStream snapshotBytes = null;
+        while (open) {
+            int length = in.readInt();
+            if (length > body.length) {
+                body = new byte[Math.max(length, body.length * 2)];
+            }
+            in.readFully(body, 0, length);
+            ByteBuffer message = ByteBuffer.wrap(body, 0, length);
+            byte type = message.get();
+            long sequence = message.getLong();
+            if (type == ReplicationPrimary.MSG_SNAPSHOT_PART || type == ReplicationPrimary.MSG_SNAPSHOT) {
+                if (snapshotBytes == null) {
+                    snapshotBytes = new ByteArrayOutputStream(Math.max(length, 64 * 1024));
+                }
+                snapshotBytes.write(body, 9, length - 9);
+                if (type == ReplicationPrimary.MSG_SNAPSHOT) {
+                    manager = readSnapshot(snapshotBytes.toByteArray());
+                    appliedSequence = sequence;
+                    snapshotBytes = null;
+                }
+            } else if (manager != null && sequence > appliedSequence) {
+                apply(type, message);
+                appliedSequence = sequence;
+            }
+            if (in.available() == 0) {
+                // The batch is done: tell the primary how far we are
+                out.writeInt(9);
+                out.writeByte(ReplicationPrimary.MSG_ACK);
+                out.writeLong(appliedSequence);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the primary's manager from the bytes of a whole snapshot.
+     */
+    private static QueueManager readSnapshot(byte[] snapshot) throws IOException, ClassNotFoundException {
+        int queueLength = ByteBuffer.wrap(snapshot).getInt();
+        QueueManager copy = (QueueManager) new ObjectInputStream(
+                new ByteArrayInputStream(snapshot, 4, queueLength)).readObject();
+        HistoryStore history = (HistoryStore) new ObjectInputStream(
+                new ByteArrayInputStream(snapshot, 4 + queueLength, snapshot.length - 4 - queueLength)).readObject();
+        copy.restoreEarlierHistory(history);
+        return copy;
+    }
+
+    /**
+     * Applies one operation to the copy, the same way the journal is replayed.
+     */
+    private void apply(byte type, ByteBuffer message) {
+        if (type == ReplicationPrimary.MSG_ISSUED) {
+            int tokenNumber = message.getInt();
+            long issueTime = message.getLong();
+            Person person = TokenRecordCodec.readPerson(message);
+            manager.restoreIssuedToken(new Token(tokenNumber, person, issueTime));
+        } else if (type == ReplicationPrimary.MSG_SERVED) {
+            int tokenNumber = message.getInt();
+            int counterId = message.getInt();
+            manager.restoreServedToken(tokenNumber, counterId, message.getLong());
+        } else if (type == ReplicationPrimary.MSG_ISSUED_GROUP) {
+            int tokenNumber = message.getInt();
+            long issueTime = message.getLong();
+            int count = message.getInt();
+            for (int i = 0; i < count; i++) {
+                manager.restoreIssuedToken(new Token(tokenNumber + i, TokenRecordCodec.readPerson(message), issueTime));
+            }
+        } else if (type == ReplicationPrimary.MSG_SERVED_GROUP) {
+            int counterId = message.getInt();
+            long servedTime = message.getLong();
+            int count = message.getInt();
+            for (int i = 0; i < count; i++) {
+                manager.restoreServedToken(message.getInt(), counterId, servedTime);
+            }
+        } else if (type == ReplicationPrimary.MSG_APPOINTMENT) {
+            int appointmentNumber = message.getInt();
+            long appointmentTime = message.getLong();
+            manager.restoreAppointment(
+                    TokenRecordCodec.readAppointmentChange(message, appointmentNumber, appointmentTime));
+        }
+        // Heartbeats only carry the sequence number
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            open = false;
+        }
+    }
+}
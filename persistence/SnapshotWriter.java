@@ -0,0 +1,237 @@
+package persistence;
+
+import logic.HistoryStore;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The one thread that writes PersistenceEngine snapshots to disk.
+ * The engine only pauses the queue long enough to take an Image (the
+ * waiting queue already serialized into memory, plus a frozen copy of the
+ * history) and hands it over through a small bounded queue; serializing the
+ * history, forcing the file to disk and renaming it all happen here, while
+ * tokens keep being issued and served.
+ * - submit(image) never blocks: when the queue is full the oldest image
+ *   still waiting is dropped, since a newer snapshot replaces it anyway
+ * - the thread writes only the newest of the images waiting for it, so a
+ *   burst of snapshot requests costs one write (they are "coalesced")
+ * - awaitWritten(number) lets a caller wait for its image, or a newer
+ *   one, to be safely on disk
+ * Each snapshot is written to a temporary file and then renamed over the
+ * old one, so a crash never leaves a half-written snapshot behind. Images
+ * are written in the order they were taken, and only after a snapshot is
+ * on disk are the journal segments it replaces deleted.
+ */
+class SnapshotWriter {
+
+    // Images waiting to be written; more than this are coalesced
+    private static final int QUEUE_CAPACITY = 2;
+
+    /**
+     * Everything one snapshot needs, taken while the manager was paused.
+     * Nothing in it changes afterwards.
+     */
+    static final class Image {
+        // Numbered in the order they were taken (see submit)
+        private long number;
+        private final long sequence;
+        private final int closedSegment;
+        private final byte[] queueSection;
+        private final HistoryStore history;
+
+        /**
+         * @param sequence The journal sequence number the snapshot includes.
+         * @param closedSegment The last journal segment it replaces.
+         * @param queueSection The manager (without its history), already serialized.
+         * @param history A frozen copy of the history (see HistoryStore.frozenCopy).
+         */
+        Image(long sequence, int closedSegment, byte[] queueSection, HistoryStore history) {
+            this.sequence = sequence;
+            this.closedSegment = closedSegment;
+            this.queueSection = queueSection;
+            this.history = history;
+        }
+    }
+
+    private final File snapshotFile;
+    private final TokenJournal journal;
+    private final int magic;
+    private final int headerSize;
+    private final BlockingQueue<Image> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    // Guarded by this: the last image submitted, written, and failed
+    private long submitted;
+    private long written;
+    private long failed;
+    private IOException failure;
+    // Images dropped or skipped because a newer one replaced them
+    private long coalesced;
+    // The size of the snapshot file on disk, in bytes (0 if there is none)
+    private volatile long lastSize;
+
+    /**
+     * Constructor for a writer; its thread starts at once.
+     * @param snapshotFile The snapshot file to replace.
+     * @param journal The journal whose segments each snapshot replaces.
+     * @param magic The number at the start of the header.
+     * @param headerSize The size of [magic][sequence][history offset] in bytes.
+     * @param threadName The name of the writer thread.
+     */
+    SnapshotWriter(File snapshotFile, TokenJournal journal, int magic, int headerSize, String threadName) {
+        this.snapshotFile = snapshotFile;
+        this.journal = journal;
+        this.magic = magic;
+        this.headerSize = headerSize;
+        this.lastSize = snapshotFile.length();
+        this.thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an image for writing without waiting for it. O(1).
+     * @param image The image to write.
+     * @return Its number, for awaitWritten.
+     */
+    long submit(Image image) {
+        synchronized (this) {
+            image.number = ++submitted;
+            // Under the lock, so images enter the queue in number order
+            while (!pending.offer(image)) {
+                if (pending.poll() != null) {
+                    coalesced++; // The newer image replaces it
+                }
+            }
+        }
+        return image.number;
+    }
+
+    /**
+     * Waits until the image with this number, or a newer one, is on disk.
+     * @param number A number returned by submit.
+     * @throws IOException if that snapshot could not be written.
+     */
+    synchronized void awaitWritten(long number) throws IOException {
+        boolean interrupted = false;
+        while (written < number && failed < number) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true; // The snapshot still has to be waited for
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (written < number) {
+            throw new IOException("The snapshot could not be written", failure);
+        }
+    }
+
+    /**
+     * Returns how many images were never written because a newer one replaced them.
+     * @return The number of coalesced images.
+     */
+    synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * Returns the size of the last snapshot written (or of the one found on
+     * disk when the writer was created). Does not wait for the writer.
+     * @return The snapshot size in bytes, 0 if there is none.
+     */
+    long getLastSize() {
+        return lastSize;
+    }
+
+    /**
+     * Waits for every submitted image to be written, then stops the thread.
+     * @throws IOException if the last snapshot could not be written.
+     */
+    void close() throws IOException {
+        long last;
+        synchronized (this) {
+            last = submitted;
+        }
+        try {
+            awaitWritten(last);
+        } finally {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * The writer thread: takes the newest waiting image and writes it, until interrupted.
+     */
+    private void run() {
+        while (true) {
+            Image image;
+            try {
+                image = pending.take();
+            } catch (InterruptedException e) {
+                return; // close() has waited for everything
+            }
+            Image newer;
+            int skipped = 0;
+            while ((newer = pending.poll()) != null) {
+                image = newer;
+                skipped++;
+            }
+            try {
+                write(image);
+                synchronized (this) {
+                    written = image.number;
+                    coalesced += skipped;
+                    notifyAll();
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace(); // Print error to console; the journal still holds every operation
+                synchronized (this) {
+                    failed = image.number;
+                    failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    coalesced += skipped;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one snapshot: header, queue section and history section, forced
+     * to disk and renamed over the old snapshot, then deletes the journal
+     * segments it replaces.
+     */
+    private void write(Image image) throws IOException {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        long size;
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            FileChannel channel = fos.getChannel();
+            long historyOffset = headerSize + image.queueSection.length;
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.putInt(magic).putLong(image.sequence).putLong(historyOffset).flip();
+            channel.write(header);
+            BufferedOutputStream out = new BufferedOutputStream(fos, 64 * 1024);
+            out.write(image.queueSection);
+            ObjectOutputStream historySection = new ObjectOutputStream(out);
+            historySection.writeObject(image.history);
+            historySection.flush();
+            fos.getFD().sync();
+            size = channel.size();
+        }
+        Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSize = size;
+        journal.deleteSegmentsUpTo(image.closedSegment);
+    }
+}
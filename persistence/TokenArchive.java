@@ -0,0 +1,242 @@
+package persistence;
+
+import ds.MyLinkedList;
+import logic.HistoryStore;
+import model.Token;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The archive of earlier days: every "Reset Data / New Day" moves the served
+ * history into one ArchiveSegment file per day, named after the day it started
+ * (e.g. "2024-03-18.seg", or "2024-03-18-2.seg" for a second reset that day).
+ * Segments are memory-mapped the first time they are searched, so lookups
+ * across months of data do not load the tokens onto the heap; only the
+ * tokens that are found are built as objects.
+ * Methods are synchronized, so the GUI can search while a day is archived.
+ */
+public class TokenArchive implements java.io.Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final ZoneId zone;
+    // Known segment files, oldest day first; each is mapped on first use
+    private final List<File> segmentFiles = new ArrayList<>();
+    private final List<ArchiveSegment> mapped = new ArrayList<>();
+
+    /**
+     * Constructor for an archive stored in the given folder.
+     * Leftovers of a crash while writing (".tmp" files) are deleted.
+     * @param directory The folder holding the segment files (created if missing).
+     * @param zone The time zone that decides which day a token belongs to.
+     */
+    public TokenArchive(File directory, ZoneId zone) {
+        this.directory = directory;
+        this.zone = zone;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return; // No archive yet
+        }
+        Arrays.sort(files, TokenArchive::compareSegments);
+        for (File file : files) {
+            if (file.getName().endsWith(SEGMENT_SUFFIX + ".tmp")) {
+                file.delete();
+            } else if (dayOf(file) != null) {
+                segmentFiles.add(file);
+                mapped.add(null);
+            }
+        }
+    }
+
+    /**
+     * Writes a day's served history into a new segment.
+     * Nothing is written if the history is empty, or if the same history
+     * was already archived (e.g. the app stopped after archiving but
+     * before the reset was saved, and the day is reset again).
+     * @param history The served tokens of the day; it must not change while this runs.
+     * @return The new segment file, or null if nothing was written.
+     * @throws IOException if the segment cannot be written.
+     */
+    public synchronized File archiveDay(HistoryStore history) throws IOException {
+        if (history.isEmpty()) {
+            return null;
+        }
+        Token first = history.get(0);
+        Token last = history.get(history.getSize() - 1);
+        LocalDate day = Instant.ofEpochMilli(first.getIssueTime()).atZone(zone).toLocalDate();
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            if (!day.equals(dayOf(segmentFiles.get(i)))) {
+                continue;
+            }
+            ArchiveSegment segment = segment(i);
+            if (segment != null && segment.size() == history.getSize()
+                    && segment.getFirstIssueTime() == first.getIssueTime()
+                    && segment.getLastServedTime() == last.getServedTime()) {
+                return null; // Already archived
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create archive folder: " + directory);
+        }
+        File file = new File(directory, day + SEGMENT_SUFFIX);
+        for (int n = 2; file.exists(); n++) {
+            file = new File(directory, day + "-" + n + SEGMENT_SUFFIX);
+        }
+        ArchiveSegment.write(file, history);
+
+        // Keep the list sorted by day (a history can start on an earlier day than the last one archived)
+        int insertAt = segmentFiles.size();
+        while (insertAt > 0 && compareSegments(segmentFiles.get(insertAt - 1), file) > 0) {
+            insertAt--;
+        }
+        segmentFiles.add(insertAt, file);
+        mapped.add(insertAt, null);
+        return file;
+    }
+
+    /**
+     * Finds a token by the day it was issued and its number (numbers start again every day).
+     * @param day The day of the archived history.
+     * @param tokenNumber The token number on that day.
+     * @return The Token, or null if it is not in the archive.
+     */
+    public synchronized Token findByNumber(LocalDate day, int tokenNumber) {
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            if (day.equals(dayOf(segmentFiles.get(i)))) {
+                ArchiveSegment segment = segment(i);
+                Token token = segment == null ? null : segment.findByNumber(tokenNumber);
+                if (token != null) {
+                    return token;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds every archived token taken by the given person, on any day.
+     * @param personId The ID / phone number of the person.
+     * @return The tokens, oldest day first and in served order within a day.
+     */
+    public MyLinkedList<Token> findByPersonId(String personId) {
+        return findByPersonId(personId, LocalDate.MIN, LocalDate.MAX);
+    }
+
+    /**
+     * Finds every archived token taken by the given person within a range of days.
+     * Only the segments of those days are searched.
+     * @param personId The ID / phone number of the person.
+     * @param from The first day to search (inclusive).
+     * @param to The last day to search (inclusive).
+     * @return The tokens, oldest day first and in served order within a day.
+     */
+    public synchronized MyLinkedList<Token> findByPersonId(String personId, LocalDate from, LocalDate to) {
+        MyLinkedList<Token> results = new MyLinkedList<>();
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            LocalDate day = dayOf(segmentFiles.get(i));
+            if (day.isBefore(from) || day.isAfter(to)) {
+                continue;
+            }
+            ArchiveSegment segment = segment(i);
+            if (segment != null) {
+                segment.findByPersonId(personId, results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the days that have archived tokens, oldest first.
+     * @return The list of days (a day with several segments is listed once).
+     */
+    public synchronized List<LocalDate> getDays() {
+        List<LocalDate> days = new ArrayList<>();
+        for (File file : segmentFiles) {
+            LocalDate day = dayOf(file);
+            if (days.isEmpty() || !days.get(days.size() - 1).equals(day)) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Forgets the mapped segments. The mappings themselves are released by
+     * the garbage collector, as Java has no way to unmap a file directly.
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < mapped.size(); i++) {
+            mapped.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the mapped segment at an index, mapping it on first use.
+     * A segment that cannot be read is reported and skipped (returns null).
+     */
+    private ArchiveSegment segment(int index) {
+        ArchiveSegment segment = mapped.get(index);
+        if (segment == null) {
+            try {
+                segment = new ArchiveSegment(segmentFiles.get(index));
+                mapped.set(index, segment);
+            } catch (IOException e) {
+                e.printStackTrace(); // Unreadable segment, search the others
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Orders segment files by day, then by their number within the day.
+     * Other files sort after every segment.
+     */
+    private static int compareSegments(File a, File b) {
+        LocalDate dayA = dayOf(a);
+        LocalDate dayB = dayOf(b);
+        if (dayA == null || dayB == null) {
+            return dayA == null ? (dayB == null ? a.compareTo(b) : 1) : -1;
+        }
+        int byDay = dayA.compareTo(dayB);
+        return byDay != 0 ? byDay : Integer.compare(numberWithinDay(a), numberWithinDay(b));
+    }
+
+    /**
+     * Returns 1 for "2024-03-18.seg" and n for "2024-03-18-n.seg".
+     */
+    private static int numberWithinDay(File file) {
+        String name = file.getName();
+        String suffix = name.substring(10, name.length() - SEGMENT_SUFFIX.length());
+        try {
+            return suffix.isEmpty() ? 1 : Integer.parseInt(suffix.substring(1));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Reads the day from a segment file name ("2024-03-18.seg" or "2024-03-18-2.seg").
+     * @return The day, or null if the file is not a segment.
+     */
+    private static LocalDate dayOf(File file) {
+        String name = file.getName();
+        if (!name.endsWith(SEGMENT_SUFFIX) || name.length() < 10 + SEGMENT_SUFFIX.length()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
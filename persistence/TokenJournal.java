@@ -0,0 +1,444 @@
+package persistence;
+
+import ds.MyLinkedList;
+import logic.QueueManager;
+import model.Appointment;
+import model.Person;
+import model.Token;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only "write-ahead" journal of queue operations.
+ * Every issue and serve is written as one small binary record, so saving
+ * costs O(1) per operation instead of rewriting every token.
+ *
+ * Record layout: [int length][body][int CRC32 of body]
+ * Body layout:   [byte type][long sequence][int tokenNumber][long time]
+ *                then the person (issue records) or the counter ID (serve records)
+ * A group issued or served together is one record, with the first token's number:
+ *   issued group: [int count][person]...         (numbers tokenNumber, tokenNumber + 1, ...)
+ *   served group: [int counter][int count][int tokenNumber]...
+ * An appointment record has the appointment number and time in the header,
+ * then [byte status][int tokenNumber] and, for a new booking, the person.
+ *
+ * Writes go straight to a FileChannel. Forcing the data to disk (fsync) is
+ * slow, so a background thread does it for all pending records together
+ * every few milliseconds ("group commit").
+ *
+ * The journal is split into numbered segment files. When a snapshot is taken
+ * the current segment is closed, and once the snapshot is safely on disk
+ * the old segments can be deleted.
+ */
+public class TokenJournal implements java.io.Closeable {
+
+    // Record types
+    public static final byte RECORD_ISSUED = 1;
+    public static final byte RECORD_SERVED = 2;
+    public static final byte RECORD_ISSUED_GROUP = 3;
+    public static final byte RECORD_SERVED_GROUP = 4;
+    public static final byte RECORD_APPOINTMENT = 5;
+
+    // How often the background thread forces pending records to disk
+    private static final long SYNC_INTERVAL_MILLIS = 20;
+
+    private final File directory;
+    private final String baseName;
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncer;
+
+    // The segment currently being appended to
+    private FileChannel channel;
+    private int segmentNumber;
+    // The sequence number of the last record written
+    private long lastSequence;
+    // Reusable buffer for encoding one record
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    // Set when records were written but not yet forced to disk
+    private volatile boolean dirty;
+    // Bytes in the segments since the last rotate (the journal a snapshot would replace);
+    // written under the lock, read without it by PersistenceEngine after every append
+    private volatile long bytesSinceRotate;
+    // During recover: token number -> {counter, serve time} of serve records
+    // read before the token's issue record (only journals from older versions)
+    private HashMap<Integer, long[]> servedBeforeIssued;
+
+    /**
+     * Constructor for a journal whose segments are named "<baseName>_journal_<n>.log".
+     * Nothing is opened until recover is called.
+     * @param directory The folder holding the journal segments.
+     * @param baseName The file name prefix (e.g. "Bank").
+     */
+    public TokenJournal(File directory, String baseName) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, baseName + "-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Replays every record newer than the snapshot into the manager, then
+     * opens a fresh segment for new records.
+     * Replay stops quietly at the first torn or corrupt record, which is
+     * what a crash in the middle of a write leaves behind.
+     * QueueManager makes sure a token's issue is journaled before its serve,
+     * but older versions could write them the other way round when two desks
+     * were busy; such a serve is kept until the issue record turns up.
+     * @param manager The manager loaded from the snapshot.
+     * @param snapshotSequence The last sequence number already in the snapshot.
+     * @return The number of records that were replayed.
+     * @throws IOException if a segment cannot be read or the new one cannot be created.
+     */
+    public synchronized int recover(QueueManager manager, long snapshotSequence) throws IOException {
+        lastSequence = snapshotSequence;
+        servedBeforeIssued = new HashMap<>();
+        int replayed = 0;
+        List<Integer> segments = listSegments();
+        long replayedBytes = 0;
+        for (int number : segments) {
+            replayed += replaySegment(manager, segmentFile(number));
+            replayedBytes += segmentFile(number).length();
+        }
+        // The old segments stay until the next snapshot replaces them
+        bytesSinceRotate = replayedBytes;
+        for (Map.Entry<Integer, long[]> served : servedBeforeIssued.entrySet()) {
+            System.err.println("Journal served token " + served.getKey() + " but never issued it");
+        }
+        servedBeforeIssued = null;
+        segmentNumber = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        channel = openSegment(segmentNumber);
+        syncer.scheduleWithFixedDelay(this::syncQuietly, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return replayed;
+    }
+
+    /**
+     * Appends an "issued" record for a new token.
+     * @param token The token that was issued.
+     * @throws IOException if the record cannot be written.
+     */
+    public synchronized void appendIssued(Token token) throws IOException {
+        append(RECORD_ISSUED, token.getTokenNumber(), token.getIssueTime(), token.getPerson(), 0, null, null);
+    }
+
+    /**
+     * Appends a "served" record for a token.
+     * @param token The token that was served.
+     * @throws IOException if the record cannot be written.
+     */
+    public synchronized void appendServed(Token token) throws IOException {
+        append(RECORD_SERVED, token.getTokenNumber(), token.getServedTime(), null, token.getServedByCounter(),
+                null, null);
+    }
+
+    /**
+     * Appends one "issued group" record for tokens issued together.
+     * @param tokens The tokens, with consecutive numbers and one issue time.
+     * @throws IOException if the record cannot be written.
+     */
+    public synchronized void appendIssuedGroup(MyLinkedList<Token> tokens) throws IOException {
+        Token first = tokens.getFirst();
+        append(RECORD_ISSUED_GROUP, first.getTokenNumber(), first.getIssueTime(), null, 0, tokens, null);
+    }
+
+    /**
+     * Appends one "served group" record for tokens served together.
+     * @param tokens The tokens, all served by one counter at one time.
+     * @throws IOException if the record cannot be written.
+     */
+    public synchronized void appendServedGroup(MyLinkedList<Token> tokens) throws IOException {
+        Token first = tokens.getFirst();
+        append(RECORD_SERVED_GROUP, first.getTokenNumber(), first.getServedTime(), null,
+                first.getServedByCounter(), tokens, null);
+    }
+
+    /**
+     * Appends an "appointment" record for a booking, check-in or closed appointment.
+     * @param appointment The appointment, in its new state.
+     * @throws IOException if the record cannot be written.
+     */
+    public synchronized void appendAppointment(Appointment appointment) throws IOException {
+        append(RECORD_APPOINTMENT, appointment.getAppointmentNumber(), appointment.getAppointmentTime(),
+                null, 0, null, appointment);
+    }
+
+    /**
+     * Returns the sequence number of the last record written or replayed.
+     * @return The last sequence number.
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Returns how many bytes have been journaled since the last rotate,
+     * counting the segments replayed by recover. Does not wait for the lock.
+     * @return The journal size a snapshot taken now would replace.
+     */
+    public long getBytesSinceRotate() {
+        return bytesSinceRotate;
+    }
+
+    /**
+     * Closes the current segment and starts a new one.
+     * Called just before a snapshot is written.
+     * @return The number of the segment that was closed.
+     * @throws IOException if the segments cannot be switched.
+     */
+    public synchronized int rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        int closed = segmentNumber;
+        segmentNumber++;
+        channel = openSegment(segmentNumber);
+        bytesSinceRotate = 0;
+        return closed;
+    }
+
+    /**
+     * Deletes every segment up to and including the given number.
+     * Called once a snapshot that covers them is safely on disk.
+     * @param lastNumber The last segment number to delete.
+     * @throws IOException if a segment cannot be deleted.
+     */
+    public synchronized void deleteSegmentsUpTo(int lastNumber) throws IOException {
+        for (int number : listSegments()) {
+            if (number <= lastNumber) {
+                Files.deleteIfExists(segmentFile(number).toPath());
+            }
+        }
+    }
+
+    /**
+     * Forces every record written so far to disk.
+     * @throws IOException if the data cannot be forced.
+     */
+    public void sync() throws IOException {
+        FileChannel current;
+        synchronized (this) {
+            current = channel;
+        }
+        if (current == null) {
+            return;
+        }
+        dirty = false;
+        try {
+            // Forcing is done outside the lock so appends are not blocked
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // The segment was rotated, which already forced it
+        }
+    }
+
+    /**
+     * Stops the sync thread, forces the remaining records and closes the file.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        syncer.shutdown();
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Encodes one record into the reusable buffer and writes it.
+     * group is only given for the group record types, appointment only for appointment records.
+     */
+    private void append(byte type, int tokenNumber, long time, Person person, int counterId,
+                        MyLinkedList<Token> group, Appointment appointment) throws IOException {
+        long sequence = lastSequence + 1;
+        while (true) {
+            try {
+                buffer.clear();
+                buffer.putInt(0); // Length placeholder, filled in below
+                buffer.put(type);
+                buffer.putLong(sequence);
+                buffer.putInt(tokenNumber);
+                buffer.putLong(time);
+                if (type == RECORD_ISSUED_GROUP) {
+                    buffer.putInt(group.getSize());
+                    for (Token token : group) {
+                        TokenRecordCodec.writePerson(buffer, token.getPerson());
+                    }
+                } else if (type == RECORD_SERVED_GROUP) {
+                    buffer.putInt(counterId);
+                    buffer.putInt(group.getSize());
+                    for (Token token : group) {
+                        buffer.putInt(token.getTokenNumber());
+                    }
+                } else if (type == RECORD_APPOINTMENT) {
+                    TokenRecordCodec.writeAppointmentChange(buffer, appointment);
+                } else if (person != null) {
+                    TokenRecordCodec.writePerson(buffer, person);
+                } else {
+                    buffer.putInt(counterId);
+                }
+                int bodyLength = buffer.position() - 4;
+                crc.reset();
+                crc.update(buffer.array(), 4, bodyLength);
+                buffer.putInt((int) crc.getValue());
+                buffer.putInt(0, bodyLength);
+                break;
+            } catch (BufferOverflowException e) {
+                // A very long name or detail, or a large group: use a bigger buffer and try again
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        buffer.flip();
+        int recordLength = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        bytesSinceRotate += recordLength;
+        lastSequence = sequence;
+        dirty = true;
+    }
+
+    /**
+     * Reads one segment and applies each valid record to the manager.
+     */
+    private int replaySegment(QueueManager manager, File file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        int replayed = 0;
+        while (data.remaining() >= 4) {
+            int bodyLength = data.getInt();
+            if (bodyLength <= 0 || data.remaining() < bodyLength + 4) {
+                break; // Torn write at the end of the segment
+            }
+            int bodyStart = data.position();
+            crc.reset();
+            crc.update(data.array(), bodyStart, bodyLength);
+            int storedCrc = data.getInt(bodyStart + bodyLength);
+            if (storedCrc != (int) crc.getValue()) {
+                break; // Corrupt record: ignore it and everything after it
+            }
+            ByteBuffer body = ByteBuffer.wrap(data.array(), bodyStart, bodyLength);
+            byte type = body.get();
+            long sequence = body.getLong();
+            int tokenNumber = body.getInt();
+            long time = body.getLong();
+            if (sequence > lastSequence) {
+                apply(manager, type, tokenNumber, time, body);
+                lastSequence = sequence;
+                replayed++;
+            }
+            data.position(bodyStart + bodyLength + 4);
+        }
+        return replayed;
+    }
+
+    /**
+     * Applies one decoded record to the manager without notifying its listeners.
+     */
+    private void apply(QueueManager manager, byte type, int tokenNumber, long time, ByteBuffer body) {
+        if (type == RECORD_ISSUED) {
+            Person person = TokenRecordCodec.readPerson(body);
+            restoreIssued(manager, new Token(tokenNumber, person, time));
+        } else if (type == RECORD_SERVED) {
+            restoreServed(manager, tokenNumber, body.getInt(), time);
+        } else if (type == RECORD_ISSUED_GROUP) {
+            int count = body.getInt();
+            for (int i = 0; i < count; i++) {
+                restoreIssued(manager, new Token(tokenNumber + i, TokenRecordCodec.readPerson(body), time));
+            }
+        } else if (type == RECORD_SERVED_GROUP) {
+            int counterId = body.getInt();
+            int count = body.getInt();
+            for (int i = 0; i < count; i++) {
+                restoreServed(manager, body.getInt(), counterId, time);
+            }
+        } else if (type == RECORD_APPOINTMENT) {
+            manager.restoreAppointment(TokenRecordCodec.readAppointmentChange(body, tokenNumber, time));
+        }
+    }
+
+    /**
+     * Puts an issued token back in the queue, and serves it at once if its
+     * serve record came first.
+     */
+    private void restoreIssued(QueueManager manager, Token token) {
+        manager.restoreIssuedToken(token);
+        long[] served = servedBeforeIssued.remove(token.getTokenNumber());
+        if (served != null) {
+            manager.restoreServedToken(token.getTokenNumber(), (int) served[0], served[1]);
+        }
+    }
+
+    /**
+     * Serves a token again; if it is not waiting yet, remembers the serve for its issue record.
+     */
+    private void restoreServed(QueueManager manager, int tokenNumber, int counterId, long time) {
+        if (manager.restoreServedToken(tokenNumber, counterId, time) == null) {
+            servedBeforeIssued.put(tokenNumber, new long[] {counterId, time});
+        }
+    }
+
+    /**
+     * Called by the background thread to group-commit pending records.
+     */
+    private void syncQuietly() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            e.printStackTrace(); // Print error to console if syncing fails
+        }
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(segmentFile(number).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, baseName + "_journal_" + number + ".log");
+    }
+
+    /**
+     * Finds the numbers of all existing segments, in ascending order.
+     */
+    private List<Integer> listSegments() {
+        List<Integer> numbers = new ArrayList<>();
+        String prefix = baseName + "_journal_";
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return numbers;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.endsWith(".log")) {
+                try {
+                    numbers.add(Integer.parseInt(name.substring(prefix.length(), name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // Not one of our segments
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
@@ -0,0 +1,163 @@
+package persistence;
+
+import model.Appointment;
+import model.BankCustomer;
+import model.Patient;
+import model.Person;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helper methods for writing tokens and people into a compact binary form.
+ * A Person is written as a one-byte "kind" followed by three short strings
+ * (name, ID and the mode-specific detail), so we do not need the much
+ * bigger Java serialization format for every record.
+ */
+public final class TokenRecordCodec {
+
+    // Marks which Person subclass a record belongs to
+    public static final byte KIND_BANK_CUSTOMER = 'B';
+    public static final byte KIND_PATIENT = 'P';
+    // The longest string writeString can store (its length is an unsigned short)
+    public static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private TokenRecordCodec() {
+        // Only static helpers, so no instances
+    }
+
+    /**
+     * Returns the "kind" byte for a Person.
+     * @param person The Person to inspect.
+     * @return KIND_BANK_CUSTOMER or KIND_PATIENT.
+     */
+    public static byte kindOf(Person person) {
+        return person instanceof BankCustomer ? KIND_BANK_CUSTOMER : KIND_PATIENT;
+    }
+
+    /**
+     * Returns the mode-specific detail of a Person
+     * (the service type for a BankCustomer, the ailment for a Patient).
+     * @param person The Person to inspect.
+     * @return The raw detail text.
+     */
+    public static String detailOf(Person person) {
+        if (person instanceof BankCustomer) {
+            return ((BankCustomer) person).getServiceType();
+        }
+        return ((Patient) person).getAilment();
+    }
+
+    /**
+     * Creates the right Person subclass for a kind byte.
+     * @param kind KIND_BANK_CUSTOMER or KIND_PATIENT.
+     * @param name The person's name.
+     * @param id The person's ID / phone.
+     * @param detail The service type or ailment.
+     * @return The new Person.
+     * @throws IllegalArgumentException if the kind is unknown.
+     */
+    public static Person newPerson(byte kind, String name, String id, String detail) {
+        if (kind == KIND_BANK_CUSTOMER) {
+            return new BankCustomer(name, id, detail);
+        }
+        if (kind == KIND_PATIENT) {
+            return new Patient(name, id, detail);
+        }
+        throw new IllegalArgumentException("Unknown person kind: " + kind);
+    }
+
+    /**
+     * Writes a Person as kind, name, ID and detail.
+     * @param buffer The buffer to write into.
+     * @param person The Person to write.
+     */
+    public static void writePerson(ByteBuffer buffer, Person person) {
+        buffer.put(kindOf(person));
+        writeString(buffer, person.getName());
+        writeString(buffer, person.getId());
+        writeString(buffer, detailOf(person));
+    }
+
+    /**
+     * Reads a Person that was written with writePerson.
+     * @param buffer The buffer to read from.
+     * @return The rebuilt Person.
+     * @throws BufferUnderflowException if the record is cut short.
+     */
+    public static Person readPerson(ByteBuffer buffer) {
+        byte kind = buffer.get();
+        String name = readString(buffer);
+        String id = readString(buffer);
+        String detail = readString(buffer);
+        return newPerson(kind, name, id, detail);
+    }
+
+    /**
+     * Writes the changing part of an appointment: [byte status][int tokenNumber],
+     * then the person for a new booking. The appointment number and time are
+     * written by the caller (e.g. in the journal record header).
+     * @param buffer The buffer to write into.
+     * @param appointment The appointment, in its new state.
+     */
+    public static void writeAppointmentChange(ByteBuffer buffer, Appointment appointment) {
+        buffer.put((byte) appointment.getStatus().ordinal());
+        buffer.putInt(appointment.getTokenNumber());
+        if (appointment.getStatus() == Appointment.Status.BOOKED) {
+            writePerson(buffer, appointment.getPerson());
+        }
+    }
+
+    /**
+     * Reads an appointment change that was written with writeAppointmentChange.
+     * Except for a new booking the person is not stored, so it is null.
+     * @param buffer The buffer to read from.
+     * @param appointmentNumber The appointment number from the caller's header.
+     * @param appointmentTime The appointment time from the caller's header.
+     * @return The appointment, in its new state.
+     * @throws BufferUnderflowException if the record is cut short.
+     */
+    public static Appointment readAppointmentChange(ByteBuffer buffer, int appointmentNumber, long appointmentTime) {
+        Appointment.Status status = Appointment.Status.values()[buffer.get()];
+        int tokenNumber = buffer.getInt();
+        Person person = status == Appointment.Status.BOOKED ? readPerson(buffer) : null;
+        Appointment appointment = new Appointment(appointmentNumber, person, appointmentTime);
+        if (status == Appointment.Status.QUEUED) {
+            appointment.markQueued(tokenNumber);
+        } else {
+            appointment.setStatus(status);
+        }
+        return appointment;
+    }
+
+    /**
+     * Writes a string as a two-byte length followed by its UTF-8 bytes.
+     * PersonFactory keeps typed-in fields far below the limit; a longer
+     * string is refused instead of having its length silently cut, which
+     * would leave the rest of the record unreadable.
+     * @param buffer The buffer to write into.
+     * @param text The string to write.
+     * @throws IllegalArgumentException if the string is longer than MAX_STRING_BYTES in UTF-8.
+     */
+    public static void writeString(ByteBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long to store: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string that was written with writeString.
+     * @param buffer The buffer to read from.
+     * @return The string.
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
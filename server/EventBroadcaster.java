@@ -0,0 +1,326 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import ds.ConcurrentQueue;
+import exceptions.EmptyQueueException;
+import logic.HistoryStore;
+import logic.QueueListener;
+import logic.QueueManager;
+import model.Token;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes every issue and serve to display boards as Server-Sent Events
+ * (a long-lived HTTP response of "event:/data:" lines that browsers read
+ * with EventSource), so lobby screens never have to poll.
+ *
+ * The work is split in three so the queue is never slowed down by a screen:
+ * 1. The QueueListener methods run inside issue/serve. They only add the
+ *    token to a lock-free ConcurrentQueue and wake the dispatcher.
+ * 2. One dispatcher thread turns each event into SSE text once and offers
+ *    the same bytes to every subscriber's bounded buffer. Offering never blocks.
+ * 3. Every subscriber has its own writer thread (a virtual thread when the
+ *    JVM has them) that sends its buffer to the socket.
+ * If a screen reads too slowly and its buffer fills up, the buffer is
+ * emptied and the screen gets one "state" event with the latest now-serving,
+ * next and waiting values instead of the events it missed ("coalescing").
+ *
+ * Events sent:
+ * - state:  {"nowServing": token or null, "next": number or null, "waiting": count}
+ *           (first event on every connection, and after coalescing)
+ * - issued: {"token": token, "waiting": count}
+ * - served: {"token": token, "next": number or null, "waiting": count}
+ */
+public class EventBroadcaster implements QueueListener {
+
+    // Events a subscriber may fall behind by before its backlog is coalesced
+    private static final int BUFFER_EVENTS = 64;
+    // A comment line is sent when nothing happened for this long, to notice dead connections
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+    // Put in a buffer to tell its writer to finish
+    private static final byte[] CLOSE = new byte[0];
+
+    private final QueueManager manager;
+    // Issued and served tokens waiting for the dispatcher
+    private final ConcurrentQueue<Event> pending;
+    private final Set<Subscriber> subscribers;
+    private final ExecutorService writers;
+    private final Thread dispatcher;
+    // True while the dispatcher is parked, so listeners only wake it when needed
+    private final AtomicBoolean dispatcherSleeping;
+    private final AtomicLong coalescedEvents;
+    // The token served most recently (shown as "now serving")
+    private volatile Token nowServing;
+    private volatile boolean running;
+    private long nextEventId;
+
+    /**
+     * One issued or served token on its way to the dispatcher.
+     */
+    private static final class Event {
+        final boolean served;
+        final Token token;
+
+        Event(boolean served, Token token) {
+            this.served = served;
+            this.token = token;
+        }
+    }
+
+    /**
+     * Constructor for a broadcaster for the given manager. Call start, then
+     * add it to the manager with addQueueListener.
+     * @param manager The queue whose events are broadcast.
+     * @param writers The executor that runs one writer task per subscriber
+     *                (it must be able to run as many tasks at once as there are subscribers).
+     */
+    public EventBroadcaster(QueueManager manager, ExecutorService writers) {
+        this.manager = manager;
+        this.pending = new ConcurrentQueue<>();
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.writers = writers;
+        this.dispatcherSleeping = new AtomicBoolean();
+        this.coalescedEvents = new AtomicLong();
+        HistoryStore history = manager.getHistoryList();
+        int served = history.getSize();
+        this.nowServing = served == 0 ? null : history.get(served - 1);
+        this.dispatcher = new Thread(this::dispatchLoop, "event-dispatcher");
+        dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Starts the dispatcher thread.
+     */
+    public void start() {
+        running = true;
+        dispatcher.start();
+    }
+
+    /**
+     * Stops the dispatcher and ends every subscriber's stream.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Turns an HTTP exchange into an event stream and starts its writer.
+     * The exchange stays open (the HTTP handler may return) until the
+     * client disconnects or the broadcaster stops.
+     * @param exchange The GET request from the display board.
+     * @throws IOException if the response headers cannot be sent.
+     */
+    public void subscribe(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // 0 = length unknown, stream in chunks
+        Subscriber subscriber = new Subscriber(exchange);
+        subscribers.add(subscriber);
+        if (!running) {
+            subscriber.close();
+        }
+        writers.execute(subscriber);
+    }
+
+    /**
+     * Returns the number of connected display boards.
+     * @return The number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Returns how many events were replaced by a "state" event because a subscriber was too slow.
+     * @return The total number of coalesced events.
+     */
+    public long getCoalescedEventCount() {
+        return coalescedEvents.get();
+    }
+
+    @Override
+    public void tokenIssued(Token token) {
+        publish(false, token);
+    }
+
+    @Override
+    public void tokenServed(Token token) {
+        nowServing = token;
+        publish(true, token);
+    }
+
+    /**
+     * Hands an event to the dispatcher. Called inside issue/serve, so it never blocks.
+     */
+    private void publish(boolean served, Token token) {
+        if (subscribers.isEmpty()) {
+            return; // Nobody is watching; new subscribers start with a state event anyway
+        }
+        pending.enqueue(new Event(served, token));
+        if (dispatcherSleeping.get()) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * The dispatcher thread: encodes each event once and offers it to every subscriber.
+     */
+    private void dispatchLoop() {
+        while (running) {
+            if (pending.isEmpty()) {
+                dispatcherSleeping.set(true);
+                // Check again after announcing the sleep, so no wake-up is missed
+                if (pending.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                dispatcherSleeping.set(false);
+                continue;
+            }
+            Event event;
+            try {
+                event = pending.dequeue(); // This is the only thread that dequeues
+            } catch (EmptyQueueException e) {
+                continue;
+            }
+            byte[] encoded = encode(event);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(encoded);
+            }
+        }
+    }
+
+    /**
+     * Writes an issued/served event as SSE text.
+     */
+    private byte[] encode(Event event) {
+        StringBuilder data = new StringBuilder(256).append("{\"token\":");
+        Json.token(data, event.token);
+        if (event.served) {
+            data.append(",\"next\":").append(nextNumber());
+        }
+        data.append(",\"waiting\":").append(manager.getWaitingList().size()).append('}');
+        return sse(event.served ? "served" : "issued", data);
+    }
+
+    /**
+     * Builds a "state" event from the current values.
+     */
+    private byte[] stateEvent() {
+        StringBuilder data = new StringBuilder(256).append("{\"nowServing\":");
+        Token current = nowServing;
+        if (current == null) {
+            data.append("null");
+        } else {
+            Json.token(data, current);
+        }
+        data.append(",\"next\":").append(nextNumber());
+        data.append(",\"waiting\":").append(manager.getWaitingList().size()).append('}');
+        return sse("state", data);
+    }
+
+    /**
+     * The number of the next waiting token as JSON, or null.
+     */
+    private String nextNumber() {
+        String next = manager.getNextTokenInQueue();
+        return next.equals("--") ? "null" : next;
+    }
+
+    private synchronized byte[] sse(String type, StringBuilder data) {
+        String text = "id: " + (nextEventId++) + "\nevent: " + type + "\ndata: " + data + "\n\n";
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One connected display board: a bounded buffer of encoded events and
+     * the task that writes them to the connection.
+     */
+    private final class Subscriber implements Runnable {
+        private final HttpExchange exchange;
+        private final ArrayBlockingQueue<byte[]> buffer;
+        // Set when the buffer overflowed; the writer then sends a fresh state event
+        private final AtomicBoolean lagged;
+
+        Subscriber(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.buffer = new ArrayBlockingQueue<>(BUFFER_EVENTS);
+            this.lagged = new AtomicBoolean();
+        }
+
+        /**
+         * Adds an event without blocking; when the buffer is full the backlog is dropped
+         * and replaced by a state event.
+         */
+        void offer(byte[] event) {
+            if (!buffer.offer(event)) {
+                coalescedEvents.addAndGet(buffer.size() + 1);
+                lagged.set(true);
+                buffer.clear();
+            }
+        }
+
+        /**
+         * Asks the writer to finish.
+         */
+        void close() {
+            buffer.clear();
+            buffer.offer(CLOSE);
+        }
+
+        @Override
+        public void run() {
+            ArrayList<byte[]> batch = new ArrayList<>(BUFFER_EVENTS);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(stateEvent());
+                out.flush();
+                while (running) {
+                    if (lagged.getAndSet(false)) {
+                        buffer.clear();
+                        out.write(stateEvent());
+                        out.flush();
+                        continue;
+                    }
+                    byte[] event = buffer.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                    if (event == CLOSE) {
+                        break;
+                    }
+                    out.write(event == null ? HEARTBEAT : event);
+                    // Send everything else that is already waiting with one flush
+                    batch.clear();
+                    buffer.drainTo(batch);
+                    for (byte[] more : batch) {
+                        if (more == CLOSE) {
+                            return;
+                        }
+                        out.write(more);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The display board disconnected
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscribers.remove(this);
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package server;
+
+import model.Appointment;
+import model.Person;
+import model.Token;
+
+/**
+ * A few hand-written helpers that turn tokens into JSON text.
+ * The API only ever *writes* small, flat objects, so a JSON library is not needed
+ * and the project still compiles with a plain javac command.
+ */
+final class Json {
+
+    private Json() {
+        // Only static helpers, so no instances
+    }
+
+    /**
+     * Writes a token as a JSON object, e.g.
+     * {"tokenNumber":7,"name":"Ann","id":"555","serviceClass":"Deposit","issueTime":1700000000000,
+     * "expectedServeTime":1700000480000,"servedByCounter":0,"servedTime":0}
+     * @param out The builder to append to.
+     * @param token The token to write.
+     * @return The same builder.
+     */
+    static StringBuilder token(StringBuilder out, Token token) {
+        Person person = token.getPerson();
+        out.append("{\"tokenNumber\":").append(token.getTokenNumber());
+        out.append(",\"name\":");
+        string(out, person.getName());
+        out.append(",\"id\":");
+        string(out, person.getId());
+        out.append(",\"serviceClass\":");
+        string(out, person.getServiceClass());
+        out.append(",\"issueTime\":").append(token.getIssueTime());
+        out.append(",\"expectedServeTime\":").append(token.getExpectedServeTime());
+        out.append(",\"servedByCounter\":").append(token.getServedByCounter());
+        out.append(",\"servedTime\":").append(token.getServedTime());
+        return out.append('}');
+    }
+
+    /**
+     * Writes a token as a JSON object, or null when there is no token.
+     */
+    static String token(Token token) {
+        if (token == null) {
+            return "null";
+        }
+        return token(new StringBuilder(160), token).toString();
+    }
+
+    /**
+     * Writes an appointment as a JSON object, e.g.
+     * {"appointmentNumber":3,"name":"Ann","id":"555","serviceClass":"Checkup",
+     * "appointmentTime":1700000000000,"status":"BOOKED","tokenNumber":0}
+     * @param out The builder to append to.
+     * @param appointment The appointment to write.
+     * @return The same builder.
+     */
+    static StringBuilder appointment(StringBuilder out, Appointment appointment) {
+        Person person = appointment.getPerson();
+        out.append("{\"appointmentNumber\":").append(appointment.getAppointmentNumber());
+        out.append(",\"name\":");
+        string(out, person.getName());
+        out.append(",\"id\":");
+        string(out, person.getId());
+        out.append(",\"serviceClass\":");
+        string(out, person.getServiceClass());
+        out.append(",\"appointmentTime\":").append(appointment.getAppointmentTime());
+        out.append(",\"status\":\"").append(appointment.getStatus()).append('"');
+        out.append(",\"tokenNumber\":").append(appointment.getTokenNumber());
+        return out.append('}');
+    }
+
+    /**
+     * Writes an error message as {"error":"..."}.
+     */
+    static String error(String message) {
+        StringBuilder out = new StringBuilder(64).append("{\"error\":");
+        return string(out, message).append('}').toString();
+    }
+
+    /**
+     * Writes a string as a quoted JSON string, escaping the characters JSON requires.
+     */
+    static StringBuilder string(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+}
@@ -0,0 +1,705 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import ds.ConcurrentQueue;
+import ds.MyLinkedList;
+import ds.OffHeapTokenQueue;
+import ds.QueueADT;
+import exceptions.DuplicateTokenException;
+import exceptions.EmptyQueueException;
+import exceptions.InvalidInputException;
+import logic.AppointmentBook;
+import logic.AppointmentClock;
+import logic.DuplicatePolicy;
+import logic.PersonFactory;
+import logic.QueueManager;
+import logic.TokenScheduler;
+import model.Appointment;
+import model.Person;
+import model.Token;
+import persistence.PersistenceEngine;
+import persistence.QueueRegistry;
+import persistence.ReplicationPrimary;
+import persistence.ReplicationStandby;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A headless version of the app: it offers the QueueManager as a small
+ * HTTP/JSON API (using the JDK's built-in HttpServer), so kiosks, counters
+ * and display boards on other machines can share one queue.
+ *
+ * Endpoints (parameters may be sent in the query string or as a form body):
+ * - POST /api/tokens           name, id, detail  -> 201 and the new token (see setDuplicatePolicy:
+ *                              409 if the ID already took one today and duplicates are rejected,
+ *                              200 and the earlier token if they are merged)
+ * - POST /api/serve            counter (default 1) -> the served token, 409 if nobody is waiting
+ * - GET  /api/next             -> {"next": token or null, "waiting": count, "estimatedWaitMillis": for a new token}
+ * - GET  /api/history/{number} -> the served token, 404 if it is not in the history
+ * - GET  /api/history?personId=... -> every served token of that person
+ * - GET  /api/search?q=...&limit=20 -> waiting and served tokens whose name, ID / phone
+ *                                      or details have words starting with every word of q
+ *                                      (limit 1 to 100, else 400)
+ * - GET  /api/events           -> a Server-Sent Events stream for display boards (see EventBroadcaster)
+ * - POST /api/appointments     name, id, detail, time ("14:30" or "2025-03-01 14:30") -> 201 and the appointment (400 if the time has passed)
+ * - GET  /api/appointments     -> the open appointments, by time
+ * - POST /api/appointments/{number}/check-in -> {"appointment": ..., "token": the new token, or null until its time}
+ * - POST /api/appointments/{number}/cancel   -> the cancelled appointment (404 if it is not open)
+ * - GET  /metrics              -> wait/service time, throughput and queue depth in Prometheus text format
+ *
+ * Every request runs on its own virtual thread when the JVM has them
+ * (Java 21+), otherwise on a pool of ordinary threads. The manager should
+ * use a thread-safe waiting queue (see startHeadless).
+ *
+ * In branch mode (see startBranches) the server hosts one queue per branch
+ * or department from a QueueRegistry. Every request then names its queue
+ * with a "branch" parameter, e.g. POST /api/serve?branch=north&counter=2.
+ * Event streams and appointments are only offered in single-queue mode
+ * (an unloaded branch would have nothing to move its appointments on time).
+ */
+public class QueueServer {
+
+    // Pending connections the operating system may hold before accept
+    private static final int BACKLOG = 1024;
+    // Larger request bodies are refused (a token form is a few dozen bytes)
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // The most results one search may ask for (the "limit" parameter)
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    static {
+        // The JDK server writes the headers and the body separately; without
+        // TCP_NODELAY, Nagle's algorithm holds the body back ~40 ms per response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    // The queue in single-queue mode (null in branch mode)
+    private final QueueManager manager;
+    // The queues in branch mode (null in single-queue mode)
+    private final QueueRegistry registry;
+    private final String appMode;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    // Runs one long-lived writer per event stream
+    private final ExecutorService streamExecutor;
+    // Feeds /api/events (null in branch mode)
+    private final EventBroadcaster broadcaster;
+    // Applied to every queue when it issues a token (branch queues are loaded and unloaded)
+    private volatile DuplicatePolicy duplicatePolicy = DuplicatePolicy.ALLOW;
+
+    /**
+     * Constructor for a server that is bound to the address but not started yet.
+     * @param manager The queue to offer over HTTP.
+     * @param appMode The system mode ("Bank" or "Hospital"), which decides the kind of Person created.
+     * @param address The address and port to listen on (port 0 picks a free port).
+     * @throws IOException if the port cannot be opened.
+     */
+    public QueueServer(QueueManager manager, String appMode, InetSocketAddress address) throws IOException {
+        this(manager, null, appMode, address);
+    }
+
+    /**
+     * Constructor for a server in branch mode, bound to the address but not started yet.
+     * @param registry The queues to offer over HTTP, chosen by the "branch" parameter.
+     * @param appMode The system mode ("Bank" or "Hospital"), which decides the kind of Person created.
+     * @param address The address and port to listen on (port 0 picks a free port).
+     * @throws IOException if the port cannot be opened.
+     */
+    public QueueServer(QueueRegistry registry, String appMode, InetSocketAddress address) throws IOException {
+        this(null, registry, appMode, address);
+    }
+
+    private QueueServer(QueueManager manager, QueueRegistry registry, String appMode,
+                        InetSocketAddress address) throws IOException {
+        this.manager = manager;
+        this.registry = registry;
+        this.appMode = appMode;
+        this.httpServer = HttpServer.create(address, BACKLOG);
+        this.executor = newRequestExecutor();
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/api/tokens", route("POST", this::issue));
+        httpServer.createContext("/api/serve", route("POST", this::serve));
+        httpServer.createContext("/api/next", route("GET", this::next));
+        httpServer.createContext("/api/history", route("GET", this::history));
+        httpServer.createContext("/api/search", route("GET", this::search));
+        this.streamExecutor = newStreamExecutor();
+        this.broadcaster = manager == null ? null : new EventBroadcaster(manager, streamExecutor);
+        httpServer.createContext("/api/events", this::events);
+        httpServer.createContext("/metrics", route("GET", this::metrics));
+        HttpHandler listAppointments = route("GET", this::listAppointments);
+        HttpHandler changeAppointment = route("POST", this::changeAppointment);
+        httpServer.createContext("/api/appointments", exchange ->
+                (exchange.getRequestMethod().equalsIgnoreCase("GET") ? listAppointments : changeAppointment)
+                        .handle(exchange));
+    }
+
+    /**
+     * Starts handling requests and broadcasting queue events.
+     */
+    public void start() {
+        if (broadcaster != null) {
+            broadcaster.start();
+            manager.addQueueListener(broadcaster);
+        }
+        httpServer.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for running ones, and stops the threads.
+     */
+    public void stop() {
+        if (broadcaster != null) {
+            manager.removeQueueListener(broadcaster);
+            broadcaster.stop();
+        }
+        httpServer.stop(1);
+        executor.shutdown();
+        streamExecutor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on (useful when it was started with port 0).
+     * @return The port number.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Runs the app without a GUI: recovers the saved queue for the mode
+     * (the same files the GUI uses), switches it to a thread-safe queue,
+     * and serves it over HTTP until the JVM is stopped. A shutdown hook
+     * stops the server and takes a final snapshot.
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param port The port to listen on.
+     * @return The running server.
+     * @throws IOException if the saved data cannot be read or the port cannot be opened.
+     */
+    public static QueueServer startHeadless(String appMode, int port) throws IOException {
+        return startHeadless(appMode, port, -1);
+    }
+
+    /**
+     * Like startHeadless(appMode, port), and also replicates the queue to a
+     * hot standby (see startStandby) that connects to replicationPort.
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param port The port to listen on.
+     * @param replicationPort The port for the standby to connect to, or -1 for no replication.
+     * @return The running server.
+     * @throws IOException if the saved data cannot be read or a port cannot be opened.
+     */
+    public static QueueServer startHeadless(String appMode, int port, int replicationPort) throws IOException {
+        return startHeadless(appMode, port, replicationPort, false);
+    }
+
+    /**
+     * Like startHeadless(appMode, port, replicationPort), optionally keeping the
+     * waiting tokens off the Java heap in an OffHeapTokenQueue, for queues of
+     * millions where the garbage collector would otherwise pause for long.
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param port The port to listen on.
+     * @param replicationPort The port for the standby to connect to, or -1 for no replication.
+     * @param offHeap True for an OffHeapTokenQueue, false for a ConcurrentQueue.
+     * @return The running server.
+     * @throws IOException if the saved data cannot be read or a port cannot be opened.
+     */
+    public static QueueServer startHeadless(String appMode, int port, int replicationPort, boolean offHeap)
+            throws IOException {
+        PersistenceEngine persistence = new PersistenceEngine(new File("."), appMode);
+        QueueManager manager = persistence.recover();
+        if (persistence.getRecoveryWarning() != null) {
+            System.err.println(persistence.getRecoveryWarning());
+        }
+        if (offHeap && !(manager.getWaitingList() instanceof OffHeapTokenQueue)) {
+            manager.replaceWaitingQueue(new OffHeapTokenQueue());
+        }
+        return serveHeadless(appMode, port, persistence, manager, replicationPort);
+    }
+
+    /**
+     * Runs a hot standby for a headless server started with a replication port:
+     * it keeps a copy of the primary's queue and, as soon as the primary is
+     * gone, saves that copy in this folder's files and starts serving it over
+     * HTTP on the given port. Run it from a different folder than the primary.
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param port The port to serve on after taking over.
+     * @param primaryAddress The primary's replication address.
+     * @return The running standby.
+     */
+    public static ReplicationStandby startStandby(String appMode, int port, InetSocketAddress primaryAddress) {
+        ReplicationStandby standby = new ReplicationStandby(primaryAddress, replica -> {
+            try {
+                PersistenceEngine persistence = new PersistenceEngine(new File("."), appMode);
+                persistence.recover(); // Opens the journal; the snapshot below replaces this folder's older data
+                persistence.attach(replica);
+                persistence.checkpoint();
+                serveHeadless(appMode, port, persistence, replica, -1);
+                System.out.println("The primary is gone: this standby has taken over");
+            } catch (IOException e) {
+                e.printStackTrace(); // Print error to console; the copy could not be saved or served
+            }
+        });
+        standby.start();
+        System.out.println(appMode + " standby replicating from " + primaryAddress);
+        return standby;
+    }
+
+    /**
+     * Switches the manager to a thread-safe queue and serves it over HTTP
+     * (and to a standby, if replicationPort is not -1) until the JVM is stopped.
+     * A shutdown hook stops the server and takes a final snapshot.
+     */
+    private static QueueServer serveHeadless(String appMode, int port, PersistenceEngine persistence,
+                                             QueueManager manager, int replicationPort) throws IOException {
+        QueueADT<Token> waiting = manager.getWaitingList();
+        if (!(waiting instanceof ConcurrentQueue) && !(waiting instanceof TokenScheduler)
+                && !(waiting instanceof OffHeapTokenQueue)) {
+            manager.replaceWaitingQueue(new ConcurrentQueue<>());
+        }
+        ReplicationPrimary replication = null;
+        if (replicationPort >= 0) {
+            replication = new ReplicationPrimary(manager, new InetSocketAddress(replicationPort));
+            replication.start();
+        }
+        QueueServer server = new QueueServer(manager, appMode, new InetSocketAddress(port));
+        AppointmentClock appointmentClock = new AppointmentClock(manager);
+        ReplicationPrimary primary = replication;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            appointmentClock.close();
+            try {
+                persistence.close();
+                if (primary != null) {
+                    primary.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // Print error to console if saving fails
+            }
+        }, "queue-server-shutdown"));
+        server.start();
+        // After starting: setting up JMX the first time takes a while, and a standby taking over should not wait for it
+        manager.getMetrics().registerMBean(appMode);
+        System.out.println(appMode + " queue server listening on port " + server.getPort()
+                + " (" + manager.getWaitingList().size() + " waiting)"
+                + (primary == null ? "" : ", standby port " + primary.getPort()));
+        return server;
+    }
+
+    /**
+     * Runs the app without a GUI in branch mode: one queue per branch or
+     * department, each saved in its own folder under the given one
+     * ("<directory>/<branch>/<appMode>_queue.dat", ...). Queues are loaded
+     * when first used and written out and dropped after idleMinutes without
+     * requests. A shutdown hook stops the server and saves every loaded queue.
+     * @param appMode The system mode, "Bank" or "Hospital".
+     * @param port The port to listen on.
+     * @param directory The folder holding the branch folders.
+     * @param idleMinutes How long a branch's queue stays in memory without requests.
+     * @return The running server.
+     * @throws IOException if the port cannot be opened.
+     */
+    public static QueueServer startBranches(String appMode, int port, File directory, long idleMinutes)
+            throws IOException {
+        QueueRegistry registry = new QueueRegistry(directory, appMode, TimeUnit.MINUTES.toMillis(idleMinutes));
+        QueueServer server = new QueueServer(registry, appMode, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            registry.close();
+        }, "queue-server-shutdown"));
+        server.start();
+        System.out.println(appMode + " queue server listening on port " + server.getPort()
+                + " (branches in " + directory + ")");
+        return server;
+    }
+
+    /**
+     * Chooses what POST /api/tokens does when an ID already took a token today
+     * (see QueueManager.setDuplicatePolicy). In branch mode it applies to every branch.
+     * @param policy The policy to use from now on.
+     */
+    public void setDuplicatePolicy(DuplicatePolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+        this.duplicatePolicy = policy;
+    }
+
+    /**
+     * Returns the broadcaster that feeds the /api/events streams.
+     * @return The event broadcaster (null in branch mode).
+     */
+    public EventBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    /**
+     * Creates the executor that runs the requests: one virtual thread per
+     * request on Java 21+, otherwise a fixed pool of daemon threads.
+     * @return The executor for request handlers.
+     */
+    static ExecutorService newRequestExecutor() {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        int threads = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(threads, daemonThreads("queue-server-"));
+    }
+
+    /**
+     * Creates the executor for event streams, which each keep a thread for as
+     * long as the display board is connected: virtual threads on Java 21+,
+     * otherwise a pool that grows with the number of streams.
+     * @return The executor for event stream writers.
+     */
+    static ExecutorService newStreamExecutor() {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        return Executors.newCachedThreadPool(daemonThreads("event-stream-"));
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor by reflection, so the
+     * code still compiles and runs on JDKs older than 21.
+     * @return The executor, or null when this JVM has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // No virtual threads on this JVM
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // --- Endpoints ---
+
+    /**
+     * POST /api/tokens: validates the form and issues a new token.
+     */
+    private void issue(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception {
+        Person person = PersonFactory.createPerson(appMode, params.get("name"), params.get("id"), params.get("detail"));
+        DuplicatePolicy policy = duplicatePolicy;
+        if (manager.getDuplicatePolicy() != policy) {
+            manager.setDuplicatePolicy(policy); // Once per queue (a branch may have just been loaded)
+        }
+        Token token = manager.generateNewToken(person);
+        // A merged request gets the token the person was already waiting with
+        send(exchange, token.getPerson() == person ? 201 : 200, Json.token(token));
+    }
+
+    /**
+     * POST /api/serve: serves the next token at the given counter.
+     */
+    private void serve(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception {
+        String counter = params.get("counter");
+        int counterId = counter == null ? 1 : parseNumber(counter, "counter");
+        if (counterId < 1) {
+            throw new InvalidInputException("counter must be 1 or more.");
+        }
+        send(exchange, 200, Json.token(manager.serveNextToken(counterId)));
+    }
+
+    /**
+     * GET /api/next: the token that would be served next, without serving it.
+     */
+    private void next(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception {
+        QueueADT<Token> waiting = manager.getWaitingList();
+        Token next;
+        try {
+            next = waiting.peek();
+        } catch (EmptyQueueException e) {
+            next = null; // Nobody waiting
+        }
+        send(exchange, 200, "{\"next\":" + Json.token(next) + ",\"waiting\":" + waiting.size()
+                + ",\"estimatedWaitMillis\":" + manager.getWaitEstimator().estimateWaitMillis() + "}");
+    }
+
+    /**
+     * GET /api/history/{number} or /api/history?personId=...: looks up served tokens.
+     */
+    private void history(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception {
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.substring("/api/history".length());
+        if (rest.length() > 1 && rest.charAt(0) == '/') {
+            int tokenNumber = parseNumber(rest.substring(1), "token number");
+            Token token = manager.findTokenInHistory(tokenNumber);
+            if (token == null) {
+                send(exchange, 404, Json.error("Token " + tokenNumber + " has not been served."));
+            } else {
+                send(exchange, 200, Json.token(token));
+            }
+            return;
+        }
+        String personId = params.get("personId");
+        if (personId == null || !rest.isEmpty() && !rest.equals("/")) {
+            throw new InvalidInputException("Use /api/history/{number} or /api/history?personId=...");
+        }
+        send(exchange, 200, tokenArray(manager.findTokensByPersonId(personId)));
+    }
+
+    /**
+     * GET /api/search?q=...&limit=20: typeahead search over waiting and served tokens.
+     */
+    private void search(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception {
+        String query = params.get("q");
+        if (query == null) {
+            throw new InvalidInputException("Use /api/search?q=...");
+        }
+        String limit = params.get("limit");
+        int maxResults = limit == null ? 20 : parseNumber(limit, "limit");
+        if (maxResults < 1 || maxResults > MAX_SEARCH_LIMIT) {
+            throw new InvalidInputException("limit must be between 1 and " + MAX_SEARCH_LIMIT + ".");
+        }
+        send(exchange, 200, tokenArray(manager.searchTokens(query, maxResults)));
+    }
+
+    /**
+     * Writes tokens as a JSON array.
+     */
+    private static String tokenArray(MyLinkedList<Token> tokens) {
+        StringBuilder out = new StringBuilder(32 + 160 * tokens.getSize()).append('[');
+        boolean first = true;
+        for (Token token : tokens) {
+            if (!first) {
+                out.append(',');
+            }
+            Json.token(out, token);
+            first = false;
+        }
+        return out.append(']').toString();
+    }
+
+    /**
+     * GET /api/events: hands the connection to the broadcaster, which keeps it open.
+     */
+    private void events(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            send(exchange, 405, Json.error("Use GET for this endpoint."));
+            exchange.close();
+            return;
+        }
+        exchange.getRequestBody().close();
+        if (broadcaster == null) {
+            send(exchange, 400, Json.error("Event streams are not offered in branch mode."));
+            exchange.close();
+            return;
+        }
+        broadcaster.subscribe(exchange);
+    }
+
+    /**
+     * GET /metrics: the QueueMetrics as plain text, for monitoring tools to scrape.
+     */
+    private void metrics(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception {
+        StringBuilder text = new StringBuilder(2048);
+        manager.getMetrics().writeText(text);
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * GET /api/appointments: the open appointments, ordered by time.
+     */
+    private void listAppointments(HttpExchange exchange, QueueManager manager, Map<String, String> params)
+            throws Exception {
+        checkAppointmentsOffered();
+        MyLinkedList<Appointment> appointments = manager.getOpenAppointments();
+        StringBuilder out = new StringBuilder(32 + 160 * appointments.getSize()).append('[');
+        boolean first = true;
+        for (Appointment appointment : appointments) {
+            if (!first) {
+                out.append(',');
+            }
+            Json.appointment(out, appointment);
+            first = false;
+        }
+        send(exchange, 200, out.append(']').toString());
+    }
+
+    /**
+     * POST /api/appointments (book), /api/appointments/{number}/check-in or /api/appointments/{number}/cancel.
+     */
+    private void changeAppointment(HttpExchange exchange, QueueManager manager, Map<String, String> params)
+            throws Exception {
+        checkAppointmentsOffered();
+        String rest = exchange.getRequestURI().getPath().substring("/api/appointments".length());
+        if (rest.isEmpty() || rest.equals("/")) {
+            long time = AppointmentBook.parseTime(params.get("time"));
+            Appointment appointment = manager.bookAppointment(PersonFactory.createPerson(appMode,
+                    params.get("name"), params.get("id"), params.get("detail")), time);
+            send(exchange, 201, Json.appointment(new StringBuilder(160), appointment).toString());
+            return;
+        }
+        String[] parts = rest.substring(1).split("/");
+        if (parts.length != 2) {
+            throw new InvalidInputException("Use /api/appointments/{number}/check-in or /cancel.");
+        }
+        int appointmentNumber = parseNumber(parts[0], "appointment number");
+        // Look it up first: once checked in or cancelled it may no longer be open
+        Appointment appointment = manager.findOpenAppointment(appointmentNumber);
+        if (appointment == null) {
+            send(exchange, 404, Json.error("There is no open appointment " + appointmentNumber + "."));
+            return;
+        }
+        if (parts[1].equals("check-in")) {
+            Token token = manager.checkInAppointment(appointmentNumber);
+            StringBuilder out = new StringBuilder(320).append("{\"appointment\":");
+            Json.appointment(out, appointment);
+            send(exchange, 200, out.append(",\"token\":").append(Json.token(token)).append('}').toString());
+        } else if (parts[1].equals("cancel")) {
+            manager.cancelAppointment(appointmentNumber);
+            send(exchange, 200, Json.appointment(new StringBuilder(160), appointment).toString());
+        } else {
+            throw new InvalidInputException("Use /api/appointments/{number}/check-in or /cancel.");
+        }
+    }
+
+    private void checkAppointmentsOffered() throws InvalidInputException {
+        if (registry != null) {
+            throw new InvalidInputException("Appointments are not offered in branch mode.");
+        }
+    }
+
+    // --- Plumbing ---
+
+    /**
+     * One API operation on one queue; it sends its own response.
+     */
+    private interface Endpoint {
+        void handle(HttpExchange exchange, QueueManager manager, Map<String, String> params) throws Exception;
+    }
+
+    /**
+     * Wraps an endpoint with the checks every request needs: the HTTP method,
+     * reading the parameters, picking the queue (in branch mode, the one named
+     * by the "branch" parameter), and turning exceptions into JSON error responses.
+     */
+    private HttpHandler route(String method, Endpoint endpoint) {
+        return exchange -> {
+            try {
+                if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    send(exchange, 405, Json.error("Use " + method + " for this endpoint."));
+                    return;
+                }
+                Map<String, String> params = readParameters(exchange);
+                if (registry == null) {
+                    endpoint.handle(exchange, manager, params);
+                } else {
+                    String branch = params.get("branch");
+                    if (branch == null) {
+                        throw new InvalidInputException("branch is required.");
+                    }
+                    try (QueueRegistry.Lease lease = registry.acquire(branch)) {
+                        endpoint.handle(exchange, lease.getManager(), params);
+                    }
+                }
+            } catch (InvalidInputException e) {
+                send(exchange, 400, Json.error(e.getMessage()));
+            } catch (EmptyQueueException e) {
+                send(exchange, 409, Json.error("No customers are currently waiting."));
+            } catch (DuplicateTokenException e) {
+                send(exchange, 409, Json.error(e.getMessage()));
+            } catch (Exception e) {
+                e.printStackTrace(); // Print error to console, the client only sees a 500
+                send(exchange, 500, Json.error("Internal error."));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    /**
+     * Collects the parameters from the query string and, for a form post, the body.
+     */
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IOException, InvalidInputException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new InvalidInputException("Request body is too large.");
+            }
+            if (body.length > 0) {
+                parseForm(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Parses "a=1&b=two" (URL-encoded) into the map.
+     */
+    private static void parseForm(String form, Map<String, String> params) throws InvalidInputException {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        try {
+            for (String pair : form.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8).trim());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Badly encoded parameters.");
+        }
+    }
+
+    private static int parseNumber(String text, String what) throws InvalidInputException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new InvalidInputException(what + " must be a number.");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}